@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of {@link Account Accounts} that can be looked up by id, email address, or username.
+ * Each Account is held once, under its id; its email address and username index into it.
+ * The least recently used Accounts are evicted once the cache is full.
+ * An Account loaded while any Account was being invalidated is returned but not cached, so a load racing a change never caches stale data.
+ * Subclasses decide how an Account is loaded.
+ */
+abstract class AccountCache {
+
+	private final Map<Long, Account> accounts;
+
+	private final Map<String, Long> signins = new HashMap<String, Long>();
+
+	private long invalidations;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a cache holding at most maxAccounts Accounts.
+	 */
+	public AccountCache(final int maxAccounts) {
+		this.accounts = new LinkedHashMap<Long, Account>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Long, Account> eldest) {
+				if (size() > maxAccounts) {
+					removeSignins(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * The Account with the id, loaded if not already cached.
+	 */
+	public Account findById(Long accountId) {
+		long invalidationsBeforeLoad;
+		synchronized (accounts) {
+			Account account = accounts.get(accountId);
+			if (account != null) {
+				hits.incrementAndGet();
+				return account;
+			}
+			invalidationsBeforeLoad = invalidations;
+		}
+		misses.incrementAndGet();
+		Account account = loadById(accountId);
+		put(account, invalidationsBeforeLoad);
+		return account;
+	}
+
+	/**
+	 * The Account with the sign-in name, either its email address or username, loaded if not already cached.
+	 * @throws SignInNotFoundException no Account has the sign-in name
+	 */
+	public Account findBySignin(String signin) throws SignInNotFoundException {
+		long invalidationsBeforeLoad;
+		synchronized (accounts) {
+			Long accountId = signins.get(signin);
+			if (accountId != null) {
+				hits.incrementAndGet();
+				return accounts.get(accountId);
+			}
+			invalidationsBeforeLoad = invalidations;
+		}
+		misses.incrementAndGet();
+		Account account = loadBySignin(signin);
+		put(account, invalidationsBeforeLoad);
+		return account;
+	}
+
+	/**
+	 * Discards the cached Account with the id, if any.
+	 */
+	public void invalidate(Long accountId) {
+		synchronized (accounts) {
+			invalidations++;
+			Account account = accounts.remove(accountId);
+			if (account != null) {
+				removeSignins(account);
+			}
+		}
+	}
+
+	/**
+	 * Discards every cached Account.
+	 */
+	public void invalidateAll() {
+		synchronized (accounts) {
+			invalidations++;
+			accounts.clear();
+			signins.clear();
+		}
+	}
+
+	/**
+	 * The number of lookups answered from the cache.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of lookups that loaded the Account.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of Accounts cached.
+	 */
+	public int getSize() {
+		synchronized (accounts) {
+			return accounts.size();
+		}
+	}
+
+	// subclassing hooks
+
+	/**
+	 * Load the Account with the id from the system of record.
+	 */
+	protected abstract Account loadById(Long accountId);
+
+	/**
+	 * Load the Account with the sign-in name from the system of record.
+	 * @throws SignInNotFoundException no Account has the sign-in name
+	 */
+	protected abstract Account loadBySignin(String signin) throws SignInNotFoundException;
+
+	// internal helpers
+
+	private void put(Account account, long invalidationsBeforeLoad) {
+		synchronized (accounts) {
+			if (invalidations != invalidationsBeforeLoad) {
+				return;
+			}
+			Account previous = accounts.put(account.getId(), account);
+			if (previous != null) {
+				removeSignins(previous);
+			}
+			signins.put(account.getEmail(), account.getId());
+			if (account.getUsername() != null) {
+				signins.put(account.getUsername(), account.getId());
+			}
+		}
+	}
+
+	private void removeSignins(Account account) {
+		removeSignin(account.getEmail(), account.getId());
+		if (account.getUsername() != null) {
+			removeSignin(account.getUsername(), account.getId());
+		}
+	}
+
+	private void removeSignin(String signin, Long accountId) {
+		if (accountId.equals(signins.get(signin))) {
+			signins.remove(signin);
+		}
+	}
+
+}
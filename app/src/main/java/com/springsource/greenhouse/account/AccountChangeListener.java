@@ -0,0 +1,30 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+/**
+ * Callback notified after a member's Account data has been written to the system of record outside the {@link AccountRepository}.
+ * Lets the repository discard any copy of the Account it holds in memory.
+ */
+public interface AccountChangeListener {
+
+	/**
+	 * Called after the Account's details, such as its profile picture, have been updated.
+	 * @param accountId the internal Account identifier
+	 */
+	void accountChanged(Long accountId);
+
+}
@@ -22,6 +22,7 @@ import javax.inject.Inject;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.FileStorage;
+import org.springframework.jdbc.core.ColumnIndexRowMapper;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriTemplate;
@@ -33,11 +34,12 @@ import org.springframework.web.util.UriTemplate;
  * picture and profile URL field mapping.
  * Also supports mapping AccountReference objects for generating links to public user profiles
  * without exposing private user data.
+ * Columns are read by index, resolved once per ResultSet.
  * 
  * @author Keith Donald
  */
 @Component
-public class AccountMapper implements RowMapper<Account> {
+public class AccountMapper extends ColumnIndexRowMapper<Account> {
 
 	/**
 	 * SELECT clause for Account fields.
@@ -49,6 +51,20 @@ public class AccountMapper implements RowMapper<Account> {
 	 */
 	public static final String SELECT_ACCOUNT_REFERENCE = "select id, username, firstName, lastName, gender, pictureSet from Member";
 
+	// positions of the mapped columns; the reference mapper reads the first four
+
+	private static final int ID = 0;
+
+	private static final int FIRST_NAME = 1;
+
+	private static final int LAST_NAME = 2;
+
+	private static final int USERNAME = 3;
+
+	private static final int EMAIL = 4;
+
+	private static final int GENDER = 5;
+
 	private final PictureUrlMapper pictureUrlMapper;
 
 	private final UriTemplate profileUrlTemplate;
@@ -61,6 +77,7 @@ public class AccountMapper implements RowMapper<Account> {
 	 *                           profile links
 	 */
 	public AccountMapper(PictureUrlMapper pictureUrlMapper, UriTemplate profileUrlTemplate) {
+		super("id", "firstName", "lastName", "username", "email", "gender");
 		this.pictureUrlMapper = pictureUrlMapper;
 		this.profileUrlTemplate = profileUrlTemplate;
 	}
@@ -82,16 +99,18 @@ public class AccountMapper implements RowMapper<Account> {
 	/**
 	 * Maps a ResultSet row to an Account object.
 	 * 
-	 * @param rs  SQL query result set
-	 * @param row current row number
+	 * @param rs      SQL query result set
+	 * @param columns indexes of the Account columns
+	 * @param row     current row number
 	 * @return Account object
 	 */
 	@Override
-	public Account mapRow(ResultSet rs, int row) throws SQLException {
-		String genderStr = rs.getString("gender");
+	protected Account mapColumns(ResultSet rs, int[] columns, int row) throws SQLException {
+		String genderStr = rs.getString(columns[GENDER]);
 		Gender gender = genderStr != null && !genderStr.isEmpty() ? Gender.valueOf(genderStr.charAt(0)) : null;
-		return new Account(rs.getLong("id"), rs.getString("firstName"), rs.getString("lastName"), rs.getString("email"),
-				rs.getString("username"), pictureUrlMapper.mapRow(rs, row), profileUrlTemplate, gender);
+		return new Account(rs.getLong(columns[ID]), rs.getString(columns[FIRST_NAME]), rs.getString(columns[LAST_NAME]),
+				rs.getString(columns[EMAIL]), rs.getString(columns[USERNAME]), pictureUrlMapper.mapRow(rs, row),
+				profileUrlTemplate, gender);
 	}
 
 	/**
@@ -122,23 +141,25 @@ public class AccountMapper implements RowMapper<Account> {
 	/**
 	 * Internal RowMapper for mapping ProfileReference objects.
 	 */
-	private final RowMapper<ProfileReference> referenceMapper = new RowMapper<ProfileReference>() {
+	private final RowMapper<ProfileReference> referenceMapper = new ColumnIndexRowMapper<ProfileReference>("id",
+			"firstName", "lastName", "username") {
 		@Override
-		public ProfileReference mapRow(ResultSet rs, int row) throws SQLException {
-			String id = getId(rs);
-			String label = rs.getString("firstName") + " " + rs.getString("lastName");
+		protected ProfileReference mapColumns(ResultSet rs, int[] columns, int row) throws SQLException {
+			String id = getId(rs, columns);
+			String label = rs.getString(columns[FIRST_NAME]) + " " + rs.getString(columns[LAST_NAME]);
 			return new ProfileReference(id, label, pictureUrlMapper.mapRow(rs, row));
 		}
 
 		/**
 		 * Helper method to get ID from ResultSet.
 		 * 
-		 * @param rs SQL query result set
+		 * @param rs      SQL query result set
+		 * @param columns indexes of the id and username columns
 		 * @return ID string
 		 */
-		private String getId(ResultSet rs) throws SQLException {
-			String username = rs.getString("username");
-			return username != null ? username : rs.getString("id");
+		private String getId(ResultSet rs, int[] columns) throws SQLException {
+			String username = rs.getString(columns[USERNAME]);
+			return username != null ? username : rs.getString(columns[ID]);
 		}
 	};
 
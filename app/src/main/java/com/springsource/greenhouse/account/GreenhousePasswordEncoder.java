@@ -15,15 +15,11 @@
  */
 package com.springsource.greenhouse.account;
 
-import static org.springframework.security.crypto.util.EncodingUtils.concatenate;
-import static org.springframework.security.crypto.util.EncodingUtils.subArray;
-
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.util.Arrays;
+import java.util.concurrent.Callable;
 
-import org.springframework.security.crypto.codec.Hex;
 import org.springframework.security.crypto.codec.Utf8;
 import org.springframework.security.crypto.keygen.BytesKeyGenerator;
 import org.springframework.security.crypto.keygen.KeyGenerators;
@@ -36,18 +32,27 @@ import org.springframework.security.crypto.password.StandardPasswordEncoder;
  * Compatibility note: This implementation does not perform digest iteration.
  * This is for compatibility with existing password databases.
  * For a more secure digest implementation, see StandardPasswordEncoder.
+ * <p>
+ * Safe for concurrent use without locking: each thread digests with its own MessageDigest,
+ * and the salt, secret, and password are fed to the digest in turn rather than copied into one array.
+ * Hashing may optionally be confined to a {@link PasswordHashingExecutor}.
+ * </p>
  * 
  * @author Keith Donald
  * @see StandardPasswordEncoder
  */
 public class GreenhousePasswordEncoder implements PasswordEncoder {
 
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
 	private final Digester digester;
 
 	private final byte[] secret;
 
 	private final BytesKeyGenerator saltGenerator;
 
+	private final PasswordHashingExecutor hashingExecutor;
+
 	/**
 	 * Constructs a standard password encoder.
 	 * 
@@ -65,9 +70,23 @@ public class GreenhousePasswordEncoder implements PasswordEncoder {
 	 * @param secret    secret key used in the encoding process
 	 */
 	public GreenhousePasswordEncoder(String algorithm, String provider, String secret) {
+		this(algorithm, provider, secret, null);
+	}
+
+	/**
+	 * Creates a fully customized standard password encoder that hashes on the threads of an executor.
+	 * 
+	 * @param algorithm       hashing algorithm
+	 * @param provider        security provider
+	 * @param secret          secret key used in the encoding process
+	 * @param hashingExecutor executor passwords are hashed on; null to hash on the calling thread
+	 */
+	public GreenhousePasswordEncoder(String algorithm, String provider, String secret,
+			PasswordHashingExecutor hashingExecutor) {
 		this.digester = new Digester(algorithm, provider);
 		this.secret = Utf8.encode(secret);
 		this.saltGenerator = KeyGenerators.secureRandom();
+		this.hashingExecutor = hashingExecutor;
 	}
 
 	/**
@@ -75,24 +94,47 @@ public class GreenhousePasswordEncoder implements PasswordEncoder {
 	 * 
 	 * @param rawPassword raw password to encode
 	 * @return encoded password
+	 * @throws PasswordHashingBusyException hashing is confined to an executor that is saturated
 	 */
 	@Override
-	public String encode(CharSequence rawPassword) {
-		return encode(rawPassword, saltGenerator.generateKey());
+	public String encode(final CharSequence rawPassword) {
+		final byte[] salt = saltGenerator.generateKey();
+		if (hashingExecutor == null) {
+			return encode(rawPassword, salt);
+		}
+		return hashingExecutor.execute(new Callable<String>() {
+			public String call() {
+				return encode(rawPassword, salt);
+			}
+		});
 	}
 
 	/**
 	 * Checks if a password matches the encoded password.
+	 * A null password, or an encoded password that was not produced by this encoder, never matches.
 	 * 
 	 * @param rawPassword     raw password to check
 	 * @param encodedPassword encoded password to compare against
 	 * @return true if passwords match
+	 * @throws PasswordHashingBusyException hashing is confined to an executor that is saturated
 	 */
 	@Override
-	public boolean matches(CharSequence rawPassword, String encodedPassword) {
-		byte[] digested = decode(encodedPassword);
-		byte[] salt = subArray(digested, 0, saltGenerator.getKeyLength());
-		return matches(digested, digest(rawPassword, salt));
+	public boolean matches(final CharSequence rawPassword, String encodedPassword) {
+		if (rawPassword == null) {
+			return false;
+		}
+		final byte[] digested = decode(encodedPassword);
+		if (digested == null || digested.length != saltGenerator.getKeyLength() + digester.getDigestLength()) {
+			return false;
+		}
+		if (hashingExecutor == null) {
+			return matches(digested, rawPassword);
+		}
+		return hashingExecutor.execute(new Callable<Boolean>() {
+			public Boolean call() {
+				return matches(digested, rawPassword);
+			}
+		});
 	}
 
 	// internal helpers
@@ -102,81 +144,140 @@ public class GreenhousePasswordEncoder implements PasswordEncoder {
 	 * 
 	 * @param rawPassword raw password to encode
 	 * @param salt        salt bytes
-	 * @return encoded password string
+	 * @return encoded password string: the hex of the salt followed by the hex of the digest
 	 */
 	private String encode(CharSequence rawPassword, byte[] salt) {
-		byte[] digest = digest(rawPassword, salt);
-		return new String(Hex.encode(digest));
+		byte[] digest = digester.digest(salt, salt.length, secret, Utf8.encode(rawPassword));
+		char[] encoded = new char[(salt.length + digest.length) * 2];
+		int position = appendHex(salt, encoded, 0);
+		appendHex(digest, encoded, position);
+		return new String(encoded);
 	}
 
 	/**
-	 * Digests a password with salt.
+	 * Checks if a password digests, with the salt at the start of the decoded password, to the digest that follows the salt.
+	 * The digests are compared in constant time.
 	 * 
+	 * @param digested    decoded password: salt followed by digest
 	 * @param rawPassword raw password
-	 * @param salt        salt bytes
-	 * @return digested bytes
+	 * @return true if the digests are equal
 	 */
-	private byte[] digest(CharSequence rawPassword, byte[] salt) {
-		byte[] digest = digester.digest(concatenate(salt, secret, Utf8.encode(rawPassword)));
-		return concatenate(salt, digest);
+	private boolean matches(byte[] digested, CharSequence rawPassword) {
+		int saltLength = saltGenerator.getKeyLength();
+		byte[] actual = digester.digest(digested, saltLength, secret, Utf8.encode(rawPassword));
+		int difference = 0;
+		for (int i = 0; i < actual.length; i++) {
+			difference |= digested[saltLength + i] ^ actual[i];
+		}
+		return difference == 0;
 	}
 
 	/**
 	 * Decodes an encoded password.
 	 * 
 	 * @param encodedPassword encoded password string
-	 * @return decoded bytes
+	 * @return decoded bytes, or null if the string is null or not hex
 	 */
 	private byte[] decode(String encodedPassword) {
-		return Hex.decode(encodedPassword);
+		if (encodedPassword == null || encodedPassword.length() % 2 != 0) {
+			return null;
+		}
+		byte[] decoded = new byte[encodedPassword.length() / 2];
+		for (int i = 0; i < decoded.length; i++) {
+			int high = Character.digit(encodedPassword.charAt(i * 2), 16);
+			int low = Character.digit(encodedPassword.charAt(i * 2 + 1), 16);
+			if (high < 0 || low < 0) {
+				return null;
+			}
+			decoded[i] = (byte) ((high << 4) | low);
+		}
+		return decoded;
 	}
 
 	/**
-	 * Checks if expected and actual byte arrays match.
+	 * Writes the lower-case hex of bytes into a char array.
 	 * 
-	 * @param expected expected byte array
-	 * @param actual   actual byte array
-	 * @return true if arrays match
+	 * @param bytes    bytes to write
+	 * @param hex      array to write into
+	 * @param position index of the first char to write
+	 * @return index after the last char written
 	 */
-	private boolean matches(byte[] expected, byte[] actual) {
-		return Arrays.equals(expected, actual);
+	private static int appendHex(byte[] bytes, char[] hex, int position) {
+		for (byte b : bytes) {
+			hex[position++] = HEX[(b >> 4) & 0xf];
+			hex[position++] = HEX[b & 0xf];
+		}
+		return position;
 	}
 
 	private static class Digester {
 
-		private final MessageDigest messageDigest;
+		private final String algorithm;
+
+		private final String provider;
+
+		private final int digestLength;
+
+		private final ThreadLocal<MessageDigest> messageDigests = new ThreadLocal<MessageDigest>() {
+			@Override
+			protected MessageDigest initialValue() {
+				return createMessageDigest();
+			}
+		};
 
 		/**
 		 * Computes digest.
 		 * For additional security, at least 1024 iterations should be applied.
 		 * Unfortunately, this was not done when the password database was created.
 		 * Therefore, we need to maintain compatible digest behavior.
+		 * The algorithm and provider are checked at once; each thread then creates its own MessageDigest on first use.
 		 * 
 		 * @param algorithm hashing algorithm
 		 * @param provider  security provider
 		 */
 		public Digester(String algorithm, String provider) {
-			try {
-				messageDigest = MessageDigest.getInstance(algorithm, provider);
-			} catch (NoSuchAlgorithmException e) {
-				throw new IllegalStateException("No such hashing algorithm", e);
-			} catch (NoSuchProviderException e) {
-				throw new IllegalStateException("No such provider for hashing algorithm", e);
-			}
+			this.algorithm = algorithm;
+			this.provider = provider;
+			MessageDigest messageDigest = createMessageDigest();
+			this.digestLength = messageDigest.getDigestLength();
+			messageDigests.set(messageDigest);
 		}
 
 		/**
-		 * Computes digest for the given value.
+		 * The length of the digests computed, in bytes.
+		 * 
+		 * @return digest length
+		 */
+		public int getDigestLength() {
+			return digestLength;
+		}
+
+		/**
+		 * Computes digest for the salt, secret, and password, in that order.
 		 * Note: At least 1024 iterations should be applied here for additional security
 		 * against brute-force attacks. Unfortunately this was not done when the password
 		 * database was populated. Thus, we need to preserve compatible digest behavior.
 		 * 
-		 * @param value value to digest
+		 * @param salt       array starting with the salt
+		 * @param saltLength length of the salt
+		 * @param secret     secret bytes
+		 * @param password   password bytes
 		 * @return digested bytes
 		 */
-		public byte[] digest(byte[] value) {
-			synchronized (messageDigest) {
-				return messageDigest.digest(value);
+		public byte[] digest(byte[] salt, int saltLength, byte[] secret, byte[] password) {
+			MessageDigest messageDigest = messageDigests.get();
+			messageDigest.update(salt, 0, saltLength);
+			messageDigest.update(secret);
+			return messageDigest.digest(password);
+		}
+
+		private MessageDigest createMessageDigest() {
+			try {
+				return MessageDigest.getInstance(algorithm, provider);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("No such hashing algorithm", e);
+			} catch (NoSuchProviderException e) {
+				throw new IllegalStateException("No such provider for hashing algorithm", e);
 			}
 		}
 
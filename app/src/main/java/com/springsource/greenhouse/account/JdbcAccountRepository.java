@@ -17,16 +17,22 @@ package com.springsource.greenhouse.account;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -35,11 +41,18 @@ import com.springsource.greenhouse.utils.EmailUtils;
 
 /**
  * JDBC-based implementation of AccountRepository that stores accounts in a relational database.
+ * Accounts looked up by id or sign-in name are cached, and discarded from the cache when changed.
+ * Profile references of long Account lists are looked up in chunks, in parallel.
+ * Passwords whose stored encoding the PasswordEncoder reports as outdated are rehashed in the background after a successful sign-in.
  * 
  * @author Keith Donald
  */
 @Repository
-public class JdbcAccountRepository implements AccountRepository {
+public class JdbcAccountRepository implements AccountRepository, AccountChangeListener, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(JdbcAccountRepository.class);
+
+	private static final int PASSWORD_UPGRADE_CAPACITY = 100;
 
 	private final JdbcTemplate jdbcTemplate;
 
@@ -47,12 +60,44 @@ public class JdbcAccountRepository implements AccountRepository {
 
 	private final AccountMapper accountMapper;
 
+	private final AccountCache accountCache = new JdbcAccountCache(MAX_CACHED_ACCOUNTS);
+
+	private final Executor passwordUpgrader;
+
+	private final ExecutorService ownedPasswordUpgrader;
+
+	private final ExecutorService profileReferenceExecutor;
+
+	private final ProfileReferenceLookup profileReferenceLookup;
+
+	/**
+	 * Creates a repository that rehashes outdated passwords on a single background thread.
+	 * Rehashes are dropped, and retried at the next sign-in, when more than a hundred are waiting.
+	 */
 	@Autowired
 	public JdbcAccountRepository(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder,
 			AccountMapper accountMapper) {
 		this.jdbcTemplate = jdbcTemplate;
 		this.passwordEncoder = passwordEncoder;
 		this.accountMapper = accountMapper;
+		this.ownedPasswordUpgrader = startPasswordUpgrader();
+		this.passwordUpgrader = ownedPasswordUpgrader;
+		this.profileReferenceExecutor = startProfileReferenceExecutor();
+		this.profileReferenceLookup = newProfileReferenceLookup();
+	}
+
+	/**
+	 * Creates a repository that rehashes outdated passwords on the given executor.
+	 */
+	public JdbcAccountRepository(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder,
+			AccountMapper accountMapper, Executor passwordUpgrader) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.passwordEncoder = passwordEncoder;
+		this.accountMapper = accountMapper;
+		this.ownedPasswordUpgrader = null;
+		this.passwordUpgrader = passwordUpgrader;
+		this.profileReferenceExecutor = startProfileReferenceExecutor();
+		this.profileReferenceLookup = newProfileReferenceLookup();
 	}
 
 	/**
@@ -72,6 +117,7 @@ public class JdbcAccountRepository implements AccountRepository {
 					passwordEncoder.encode(person.getPassword()), person.getGender().code(),
 					person.getBirthdate().toString());
 			Long accountId = jdbcTemplate.queryForObject("call identity()", Long.class);
+			accountCache.invalidate(accountId);
 			return accountMapper.newAccount(accountId, person);
 		} catch (DuplicateKeyException e) {
 			throw new EmailAlreadyOnFileException(person.getEmail());
@@ -80,6 +126,7 @@ public class JdbcAccountRepository implements AccountRepository {
 
 	/**
 	 * Authenticates an account using sign-in information and password.
+	 * If the stored password needs upgrading to the current encoding, it is rehashed in the background.
 	 * 
 	 * @param signin   sign-in name (username or email)
 	 * @param password password
@@ -90,13 +137,18 @@ public class JdbcAccountRepository implements AccountRepository {
 	@Override
 	public Account authenticate(String signin, String password)
 			throws SignInNotFoundException, InvalidPasswordException {
+		PasswordProtectedAccount passwordProtectedAccount;
 		try {
-			return jdbcTemplate
-					.queryForObject(passwordProtectedAccountQuery(signin), passwordProtectedAccountMapper, signin)
-					.accessAccount(password, passwordEncoder);
+			passwordProtectedAccount = jdbcTemplate.queryForObject(passwordProtectedAccountQuery(signin),
+					passwordProtectedAccountMapper, signin);
 		} catch (EmptyResultDataAccessException e) {
 			throw new SignInNotFoundException(signin);
 		}
+		Account account = passwordProtectedAccount.accessAccount(password, passwordEncoder);
+		if (passwordEncoder.upgradeEncoding(passwordProtectedAccount.encodedPassword)) {
+			upgradePassword(account.getId(), password, passwordProtectedAccount.encodedPassword);
+		}
+		return account;
 	}
 
 	/**
@@ -108,6 +160,7 @@ public class JdbcAccountRepository implements AccountRepository {
 	@Override
 	public void changePassword(Long accountId, String password) {
 		jdbcTemplate.update("update Member set password = ? where id = ?", passwordEncoder.encode(password), accountId);
+		accountCache.invalidate(accountId);
 	}
 
 	/**
@@ -118,22 +171,19 @@ public class JdbcAccountRepository implements AccountRepository {
 	 */
 	@Override
 	public Account findById(Long id) {
-		return jdbcTemplate.queryForObject(AccountMapper.SELECT_ACCOUNT + " where id = ?", accountMapper, id);
+		return accountCache.findById(id);
 	}
 
 	/**
 	 * Finds profile references by a list of account IDs.
+	 * Ids are queried in fixed-size chunks in parallel, or through a temporary table when there are very many.
 	 * 
 	 * @param accountIds list of account IDs
-	 * @return list of profile references
+	 * @return list of profile references, in the order of the account IDs
 	 */
 	@Override
 	public List<ProfileReference> findProfileReferencesByIds(List<Long> accountIds) {
-		NamedParameterJdbcTemplate namedTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
-		Map<String, Object> params = new HashMap<String, Object>(2, 1);
-		params.put("accountIds", accountIds);
-		return namedTemplate.query(AccountMapper.SELECT_ACCOUNT_REFERENCE + " where id in ( :accountIds )", params,
-				accountMapper.getReferenceMapper());
+		return profileReferenceLookup.find(accountIds);
 	}
 
 	/**
@@ -145,15 +195,85 @@ public class JdbcAccountRepository implements AccountRepository {
 	 */
 	@Override
 	public Account findBySignin(String signin) throws SignInNotFoundException {
-		try {
-			return jdbcTemplate.queryForObject(accountQuery(signin), accountMapper, signin);
-		} catch (EmptyResultDataAccessException e) {
-			throw new SignInNotFoundException(signin);
+		return accountCache.findBySignin(signin);
+	}
+
+	// implementing AccountChangeListener
+
+	public void accountChanged(Long accountId) {
+		accountCache.invalidate(accountId);
+	}
+
+	/**
+	 * Stops the profile reference lookup threads, and the background password upgrade thread if this repository started one.
+	 */
+	public void destroy() {
+		profileReferenceExecutor.shutdown();
+		if (ownedPasswordUpgrader != null) {
+			ownedPasswordUpgrader.shutdown();
 		}
 	}
 
 	// internal helpers
 
+	AccountCache getAccountCache() {
+		return accountCache;
+	}
+
+	/**
+	 * Rehashes a verified password with the current encoding in the background.
+	 * The update only applies if the stored password is unchanged, so a password changed meanwhile is never overwritten.
+	 * Failures are logged and the rehash is retried at the next sign-in.
+	 */
+	private void upgradePassword(final Long accountId, final String password, final String encodedPassword) {
+		Runnable upgrade = new Runnable() {
+			public void run() {
+				try {
+					jdbcTemplate.update("update Member set password = ? where id = ? and password = ?",
+							passwordEncoder.encode(password), accountId, encodedPassword);
+				} catch (RuntimeException e) {
+					logger.warn("Unable to upgrade password of account " + accountId + "; will retry at next sign-in", e);
+				}
+			}
+		};
+		try {
+			passwordUpgrader.execute(upgrade);
+		} catch (RuntimeException e) {
+			logger.debug("Password upgrade of account " + accountId + " not scheduled; will retry at next sign-in", e);
+		}
+	}
+
+	/**
+	 * Starts a bounded pool of daemon threads for profile reference chunks; when it is saturated, chunks are queried on the calling thread.
+	 */
+	private ExecutorService startProfileReferenceExecutor() {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("profile-reference-lookup-");
+		threadFactory.setDaemon(true);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(PROFILE_REFERENCE_THREADS, PROFILE_REFERENCE_THREADS, 60,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(PROFILE_REFERENCE_THREADS * 4), threadFactory,
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private ProfileReferenceLookup newProfileReferenceLookup() {
+		return new ProfileReferenceLookup(jdbcTemplate, accountMapper.getReferenceMapper(), PROFILE_REFERENCE_CHUNK_SIZE,
+				PROFILE_REFERENCE_TEMP_TABLE_THRESHOLD, profileReferenceExecutor);
+	}
+
+	/**
+	 * Starts a single daemon thread for password upgrades with a bounded queue, discarding upgrades when it is full.
+	 */
+	private ExecutorService startPasswordUpgrader() {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("password-upgrade-");
+		threadFactory.setDaemon(true);
+		ThreadPoolExecutor upgrader = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(PASSWORD_UPGRADE_CAPACITY), threadFactory,
+				new ThreadPoolExecutor.DiscardPolicy());
+		upgrader.allowCoreThreadTimeOut(true);
+		return upgrader;
+	}
+
 	/**
 	 * Determines whether sign-in is email or username and returns appropriate query.
 	 * 
@@ -176,6 +296,29 @@ public class JdbcAccountRepository implements AccountRepository {
 				: SELECT_PASSWORD_PROTECTED_ACCOUNT + " where username = ?";
 	}
 
+	/**
+	 * Loads uncached Accounts from the Member table.
+	 */
+	private class JdbcAccountCache extends AccountCache {
+		public JdbcAccountCache(int maxAccounts) {
+			super(maxAccounts);
+		}
+
+		@Override
+		protected Account loadById(Long accountId) {
+			return jdbcTemplate.queryForObject(AccountMapper.SELECT_ACCOUNT + " where id = ?", accountMapper, accountId);
+		}
+
+		@Override
+		protected Account loadBySignin(String signin) throws SignInNotFoundException {
+			try {
+				return jdbcTemplate.queryForObject(accountQuery(signin), accountMapper, signin);
+			} catch (EmptyResultDataAccessException e) {
+				throw new SignInNotFoundException(signin);
+			}
+		}
+	}
+
 	/**
 	 * RowMapper for mapping database rows to PasswordProtectedAccount objects.
 	 */
@@ -219,5 +362,13 @@ public class JdbcAccountRepository implements AccountRepository {
 
 	}
 
+	private static final int MAX_CACHED_ACCOUNTS = 1000;
+
+	private static final int PROFILE_REFERENCE_CHUNK_SIZE = 100;
+
+	private static final int PROFILE_REFERENCE_TEMP_TABLE_THRESHOLD = 2000;
+
+	private static final int PROFILE_REFERENCE_THREADS = 4;
+
 	private static final String SELECT_PASSWORD_PROTECTED_ACCOUNT = "select id, firstName, lastName, email, password, username, gender, pictureSet from Member";
 }
\ No newline at end of file
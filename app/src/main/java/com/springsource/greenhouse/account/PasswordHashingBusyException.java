@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a password cannot be hashed because too many passwords are already waiting to be hashed.
+ * Clients may retry later.
+ */
+@SuppressWarnings("serial")
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public final class PasswordHashingBusyException extends IllegalStateException {
+
+	private final int capacity;
+
+	public PasswordHashingBusyException(int capacity) {
+		super("Too many passwords are waiting to be hashed");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * The maximum number of passwords that may be waiting to be hashed.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+}
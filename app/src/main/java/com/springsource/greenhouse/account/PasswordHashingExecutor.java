@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Fixed pool of threads that password hashing is confined to, with a bounded queue in front of it.
+ * Hashing is CPU-bound, so during a sign-in storm running it on request threads only makes every request slower;
+ * confined to the pool, at most the pool's threads hash at once and callers beyond the queue's capacity are turned away at once
+ * with a {@link PasswordHashingBusyException} instead of tying up a request thread.
+ */
+public class PasswordHashingExecutor {
+
+	private final int capacity;
+
+	private final ThreadPoolExecutor executor;
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Creates an executor.
+	 * @param threads the number of passwords that may be hashed in parallel, typically no more than the number of cores
+	 * @param capacity the maximum number of passwords waiting to be hashed
+	 */
+	public PasswordHashingExecutor(int threads, int capacity) {
+		this.capacity = capacity;
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("password-hashing-");
+		threadFactory.setDaemon(true);
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Runs a hashing task on the pool and waits for its result.
+	 * @throws PasswordHashingBusyException too many passwords are already waiting to be hashed
+	 */
+	public <T> T execute(Callable<T> task) {
+		Future<T> result;
+		try {
+			result = executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw new PasswordHashingBusyException(capacity);
+		}
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			result.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for a password to be hashed", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Unable to hash password", e.getCause());
+		}
+	}
+
+	/**
+	 * The number of passwords waiting to be hashed.
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * The number of passwords turned away because the queue was full.
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Stops hashing; passwords still queued are discarded.
+	 */
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+}
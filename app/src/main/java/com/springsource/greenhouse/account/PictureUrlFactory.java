@@ -25,14 +25,28 @@ import org.springframework.data.FileStorage;
  */
 public class PictureUrlFactory {
 
-	private final FileStorage pictureStorage;
+	private final String profilePicturePath;
+
+	private final String[] filenames;
+
+	private final String[][] defaultPictureUrls;
 
 	/**
 	 * Creates a PictureUrlFactory that produces picture URLs that access pics from
 	 * the FileStorage provided.
+	 * The default picture URL of every gender and size is built up front, as they never change.
 	 */
 	public PictureUrlFactory(FileStorage pictureStorage) {
-		this.pictureStorage = pictureStorage;
+		this.profilePicturePath = pictureStorage.absoluteUrl("profile-pics");
+		this.filenames = new String[PictureSize.values().length];
+		for (PictureSize size : PictureSize.values()) {
+			filenames[size.ordinal()] = size.name().toLowerCase() + ".jpg";
+		}
+		this.defaultPictureUrls = new String[Gender.values().length][PictureSize.values().length];
+		for (PictureSize size : PictureSize.values()) {
+			defaultPictureUrls[Gender.MALE.ordinal()][size.ordinal()] = profilePicturePath + "/male/" + filename(size);
+			defaultPictureUrls[Gender.FEMALE.ordinal()][size.ordinal()] = profilePicturePath + "/female/" + filename(size);
+		}
 	}
 
 	/**
@@ -50,7 +64,7 @@ public class PictureUrlFactory {
 			size = PictureSize.NORMAL;
 		}
 		if (pictureSet) {
-			return getProfilePicturePath() + "/" + accountId + "/" + filename(size);
+			return profilePicturePath + "/" + accountId + "/" + filename(size);
 		} else {
 			return defaultPictureUrl(gender, size);
 		}
@@ -60,28 +74,13 @@ public class PictureUrlFactory {
 	 * The gender's default profile picture URL for the desired size.
 	 */
 	public String defaultPictureUrl(Gender gender, PictureSize size) {
-		if (gender == Gender.MALE) {
-			return malePictureUrl(size);
-		} else {
-			return femalePictureUrl(size);
-		}
+		Gender pictureGender = gender == Gender.MALE ? Gender.MALE : Gender.FEMALE;
+		return defaultPictureUrls[pictureGender.ordinal()][size.ordinal()];
 	}
 
 	// internal helpers
 
-	private String malePictureUrl(PictureSize size) {
-		return getProfilePicturePath() + "/male/" + filename(size);
-	}
-
-	private String femalePictureUrl(PictureSize size) {
-		return getProfilePicturePath() + "/female/" + filename(size);
-	}
-
-	private String getProfilePicturePath() {
-		return pictureStorage.absoluteUrl("profile-pics");
-	}
-
 	private String filename(PictureSize size) {
-		return size.name().toLowerCase() + ".jpg";
+		return filenames[size.ordinal()];
 	}
 }
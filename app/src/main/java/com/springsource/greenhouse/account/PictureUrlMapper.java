@@ -18,19 +18,26 @@ package com.springsource.greenhouse.account;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.ColumnIndexRowMapper;
 
 /**
  * A RowMapper that maps a group of Account fields to a absolute profile picture URL String using a {@link PictureUrlFactory} and {@link PictureSize}.
  * @author Keith Donald
  */
-public final class PictureUrlMapper implements RowMapper<String> {
+public final class PictureUrlMapper extends ColumnIndexRowMapper<String> {
+
+	private static final int ID = 0;
+
+	private static final int GENDER = 1;
+
+	private static final int PICTURE_SET = 2;
 
 	private final PictureUrlFactory urlFactory;
 	
 	private final PictureSize pictureSize;
 	
 	public PictureUrlMapper(PictureUrlFactory urlFactory, PictureSize pictureSize) {
+		super("id", "gender", "pictureSet");
 		this.urlFactory = urlFactory;
 		this.pictureSize = pictureSize;
 	}
@@ -38,14 +45,15 @@ public final class PictureUrlMapper implements RowMapper<String> {
 	/**
 	 * Maps a ResultSet row to a profile picture URL string.
 	 * 
-	 * @param rs  SQL query result set
-	 * @param row current row number
+	 * @param rs      SQL query result set
+	 * @param columns indexes of the id, gender and pictureSet columns
+	 * @param row     current row number
 	 * @return profile picture URL
 	 */
 	@Override
-	public String mapRow(ResultSet rs, int row) throws SQLException {
-		Gender gender = Gender.valueOf(rs.getString("gender").charAt(0));
-		return urlFactory.pictureUrl(rs.getLong("id"), pictureSize, rs.getBoolean("pictureSet"), gender);
+	protected String mapColumns(ResultSet rs, int[] columns, int row) throws SQLException {
+		Gender gender = Gender.valueOf(rs.getString(columns[GENDER]).charAt(0));
+		return urlFactory.pictureUrl(rs.getLong(columns[ID]), pictureSize, rs.getBoolean(columns[PICTURE_SET]), gender);
 	}
 
 	/**
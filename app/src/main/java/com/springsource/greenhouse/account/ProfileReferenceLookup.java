@@ -0,0 +1,245 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ColumnIndexes;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Finds the {@link ProfileReference ProfileReferences} of a list of Accounts, in the order the Account ids are given.
+ * Ids are queried in fixed-size chunks, the last chunk padded by repeating an id, so every query has the same text and the database reuses one prepared statement.
+ * The chunks of a long list are queried in parallel on an executor, unless a transaction is active, in which case they are queried in turn on its connection.
+ * Lists longer than a threshold are instead inserted into a temporary table that a single query joins with.
+ */
+class ProfileReferenceLookup {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final RowMapper<ProfileReference> referenceMapper;
+
+	private final int chunkSize;
+
+	private final int tempTableThreshold;
+
+	private final Executor executor;
+
+	private final String selectChunk;
+
+	/**
+	 * Creates a lookup.
+	 * @param chunkSize the number of ids each chunked query takes
+	 * @param tempTableThreshold lists of more ids than this are looked up through a temporary table
+	 * @param executor the executor chunks are queried on in parallel; should run tasks it cannot queue on the calling thread
+	 */
+	public ProfileReferenceLookup(JdbcTemplate jdbcTemplate, RowMapper<ProfileReference> referenceMapper, int chunkSize,
+			int tempTableThreshold, Executor executor) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.referenceMapper = referenceMapper;
+		this.chunkSize = chunkSize;
+		this.tempTableThreshold = tempTableThreshold;
+		this.executor = executor;
+		this.selectChunk = AccountMapper.SELECT_ACCOUNT_REFERENCE + " where id in (" + placeholders(chunkSize) + ")";
+	}
+
+	/**
+	 * The ProfileReferences of the Accounts, in the order of their ids.
+	 * Ids given more than once are returned once; ids of no Account are skipped.
+	 */
+	public List<ProfileReference> find(List<Long> accountIds) {
+		Set<Long> uniqueIds = new LinkedHashSet<Long>(accountIds);
+		if (uniqueIds.isEmpty()) {
+			return new ArrayList<ProfileReference>();
+		}
+		Long[] ids = uniqueIds.toArray(new Long[uniqueIds.size()]);
+		Map<Long, ProfileReference> references = ids.length > tempTableThreshold ? findThroughTempTable(ids) : findInChunks(ids);
+		List<ProfileReference> ordered = new ArrayList<ProfileReference>(references.size());
+		for (Long id : ids) {
+			ProfileReference reference = references.get(id);
+			if (reference != null) {
+				ordered.add(reference);
+			}
+		}
+		return ordered;
+	}
+
+	// internal helpers
+
+	private Map<Long, ProfileReference> findInChunks(final Long[] ids) {
+		int chunkCount = (ids.length + chunkSize - 1) / chunkSize;
+		if (chunkCount == 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+			Map<Long, ProfileReference> references = new HashMap<Long, ProfileReference>(ids.length * 2);
+			for (int chunk = 0; chunk < chunkCount; chunk++) {
+				references.putAll(findChunk(ids, chunk));
+			}
+			return references;
+		}
+		List<FutureTask<Map<Long, ProfileReference>>> tasks = new ArrayList<FutureTask<Map<Long, ProfileReference>>>(chunkCount - 1);
+		for (int chunk = 1; chunk < chunkCount; chunk++) {
+			final int start = chunk;
+			FutureTask<Map<Long, ProfileReference>> task = new FutureTask<Map<Long, ProfileReference>>(
+					new Callable<Map<Long, ProfileReference>>() {
+						public Map<Long, ProfileReference> call() {
+							return findChunk(ids, start);
+						}
+					});
+			executor.execute(task);
+			tasks.add(task);
+		}
+		Map<Long, ProfileReference> references = new HashMap<Long, ProfileReference>(ids.length * 2);
+		references.putAll(findChunk(ids, 0));
+		for (FutureTask<Map<Long, ProfileReference>> task : tasks) {
+			references.putAll(await(task));
+		}
+		return references;
+	}
+
+	private Map<Long, ProfileReference> findChunk(Long[] ids, int chunk) {
+		int from = chunk * chunkSize;
+		int to = Math.min(from + chunkSize, ids.length);
+		Object[] args = new Object[chunkSize];
+		System.arraycopy(ids, from, args, 0, to - from);
+		Arrays.fill(args, to - from, chunkSize, ids[to - 1]);
+		final Map<Long, ProfileReference> references = new HashMap<Long, ProfileReference>((to - from) * 2);
+		jdbcTemplate.query(selectChunk, new RowCallbackHandler() {
+			private int row;
+
+			public void processRow(ResultSet rs) throws SQLException {
+				references.put(rs.getLong(ID_COLUMN.resolve(rs)[0]), referenceMapper.mapRow(rs, row++));
+			}
+		}, args);
+		return references;
+	}
+
+	private Map<Long, ProfileReference> await(FutureTask<Map<Long, ProfileReference>> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for profile references", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Unable to find profile references", e.getCause());
+		}
+	}
+
+	/**
+	 * Inserts the ids into a transactional temporary table of the connection and joins with it.
+	 * The table is emptied before use, and its rows are deleted when the transaction commits.
+	 * Without a transaction, one is begun on the connection for the lookup, as the table's rows only last until commit.
+	 */
+	private Map<Long, ProfileReference> findThroughTempTable(final Long[] ids) {
+		return jdbcTemplate.execute(new ConnectionCallback<Map<Long, ProfileReference>>() {
+			public Map<Long, ProfileReference> doInConnection(Connection connection) throws SQLException, DataAccessException {
+				boolean autoCommit = connection.getAutoCommit();
+				if (autoCommit) {
+					connection.setAutoCommit(false);
+				}
+				try {
+					Map<Long, ProfileReference> references = joinTempTable(connection, ids);
+					if (autoCommit) {
+						connection.commit();
+					}
+					return references;
+				} catch (SQLException e) {
+					if (autoCommit) {
+						connection.rollback();
+					}
+					throw e;
+				} finally {
+					if (autoCommit) {
+						connection.setAutoCommit(true);
+					}
+				}
+			}
+		});
+	}
+
+	private Map<Long, ProfileReference> joinTempTable(Connection connection, Long[] ids) throws SQLException {
+		Statement statement = connection.createStatement();
+		PreparedStatement insert = null;
+		ResultSet rs = null;
+		try {
+			statement.execute(CREATE_TEMP_TABLE);
+			statement.executeUpdate(DELETE_TEMP_TABLE);
+			insert = connection.prepareStatement(INSERT_TEMP_TABLE);
+			for (int i = 0; i < ids.length; i++) {
+				insert.setLong(1, ids[i]);
+				insert.addBatch();
+				if ((i + 1) % chunkSize == 0 || i == ids.length - 1) {
+					insert.executeBatch();
+				}
+			}
+			Map<Long, ProfileReference> references = new HashMap<Long, ProfileReference>(ids.length * 2);
+			rs = statement.executeQuery(SELECT_TEMP_TABLE);
+			int row = 0;
+			while (rs.next()) {
+				references.put(rs.getLong(ID_COLUMN.resolve(rs)[0]), referenceMapper.mapRow(rs, row++));
+			}
+			return references;
+		} finally {
+			JdbcUtils.closeResultSet(rs);
+			JdbcUtils.closeStatement(insert);
+			JdbcUtils.closeStatement(statement);
+		}
+	}
+
+	private static String placeholders(int count) {
+		StringBuilder placeholders = new StringBuilder(count * 3);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				placeholders.append(", ");
+			}
+			placeholders.append('?');
+		}
+		return placeholders.toString();
+	}
+
+	private static final ColumnIndexes ID_COLUMN = new ColumnIndexes("id");
+
+	private static final String CREATE_TEMP_TABLE = "create local temporary table if not exists ProfileReferenceLookup (id bigint primary key) on commit delete rows transactional";
+
+	private static final String INSERT_TEMP_TABLE = "insert into ProfileReferenceLookup (id) values (?)";
+
+	private static final String SELECT_TEMP_TABLE = AccountMapper.SELECT_ACCOUNT_REFERENCE + " where id in (select id from ProfileReferenceLookup)";
+
+	private static final String DELETE_TEMP_TABLE = "delete from ProfileReferenceLookup";
+
+}
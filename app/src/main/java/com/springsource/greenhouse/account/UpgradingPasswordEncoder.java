@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * PasswordEncoder that encodes new passwords with BCrypt and still matches passwords stored by a legacy encoder.
+ * The stored format is detected from the encoded password itself, so no prefix or extra column is needed:
+ * BCrypt hashes are recognised by their "$2a$" style header, and anything else is handed to the legacy encoder.
+ * {@link #upgradeEncoding(String)} reports legacy hashes, and BCrypt hashes of a lower cost than the target, as needing a rehash;
+ * the account repository rehashes them once the password has been verified.
+ * Hashing may optionally be confined to a {@link PasswordHashingExecutor}.
+ */
+public class UpgradingPasswordEncoder implements PasswordEncoder {
+
+	private static final Logger logger = LoggerFactory.getLogger(UpgradingPasswordEncoder.class);
+
+	private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}");
+
+	private static final int MIN_STRENGTH = 4;
+
+	private static final int MAX_STRENGTH = 31;
+
+	private final BCryptPasswordEncoder target;
+
+	private final PasswordEncoder legacy;
+
+	private final PasswordHashingExecutor hashingExecutor;
+
+	/**
+	 * Creates an encoder that hashes on the calling thread.
+	 * @param strength the BCrypt cost new passwords are encoded with
+	 * @param legacy the encoder passwords not in BCrypt format were stored with
+	 */
+	public UpgradingPasswordEncoder(int strength, PasswordEncoder legacy) {
+		this(strength, legacy, null);
+	}
+
+	/**
+	 * Creates an encoder.
+	 * @param strength the BCrypt cost new passwords are encoded with
+	 * @param legacy the encoder passwords not in BCrypt format were stored with; it should hash on the calling thread
+	 * @param hashingExecutor executor passwords are hashed on; null to hash on the calling thread
+	 */
+	public UpgradingPasswordEncoder(int strength, PasswordEncoder legacy, PasswordHashingExecutor hashingExecutor) {
+		this.target = new BCryptPasswordEncoder(strength);
+		this.legacy = legacy;
+		this.hashingExecutor = hashingExecutor;
+	}
+
+	/**
+	 * Encodes a password with BCrypt at the target cost.
+	 * @throws PasswordHashingBusyException hashing is confined to an executor that is saturated
+	 */
+	public String encode(final CharSequence rawPassword) {
+		return hash(new Callable<String>() {
+			public String call() {
+				return target.encode(rawPassword);
+			}
+		});
+	}
+
+	/**
+	 * Checks a password with the encoder the stored format belongs to.
+	 * @throws PasswordHashingBusyException hashing is confined to an executor that is saturated
+	 */
+	public boolean matches(final CharSequence rawPassword, final String encodedPassword) {
+		if (rawPassword == null || encodedPassword == null) {
+			return false;
+		}
+		final PasswordEncoder encoder = isBCrypt(encodedPassword) ? target : legacy;
+		return hash(new Callable<Boolean>() {
+			public Boolean call() {
+				return encoder.matches(rawPassword, encodedPassword);
+			}
+		});
+	}
+
+	/**
+	 * Whether the stored password is not BCrypt, or is BCrypt of a lower cost than the target.
+	 */
+	@Override
+	public boolean upgradeEncoding(String encodedPassword) {
+		if (encodedPassword == null) {
+			return false;
+		}
+		return !isBCrypt(encodedPassword) || target.upgradeEncoding(encodedPassword);
+	}
+
+	/**
+	 * Finds the highest BCrypt cost whose hash takes no longer than the budget on this machine, to be called once at startup.
+	 * Each cost step doubles the work, so costs are timed from the minimum upwards until one exceeds the budget;
+	 * calibrating takes at most about twice the budget.
+	 * @param budgetMillis the longest a single hash may take, in milliseconds
+	 * @param minStrength the lowest cost to return, even if its hash exceeds the budget
+	 * @return the calibrated cost
+	 */
+	public static int calibrateStrength(long budgetMillis, int minStrength) {
+		String password = "calibration";
+		new BCryptPasswordEncoder(MIN_STRENGTH).encode(password);
+		int strength = MIN_STRENGTH;
+		while (strength < MAX_STRENGTH) {
+			long start = System.nanoTime();
+			new BCryptPasswordEncoder(strength + 1).encode(password);
+			long elapsedMillis = (System.nanoTime() - start) / 1000000;
+			if (elapsedMillis > budgetMillis) {
+				break;
+			}
+			strength++;
+		}
+		int calibrated = Math.max(strength, minStrength);
+		logger.info("Calibrated BCrypt cost {} for a hashing budget of {}ms", calibrated, budgetMillis);
+		return calibrated;
+	}
+
+	// internal helpers
+
+	private boolean isBCrypt(String encodedPassword) {
+		return BCRYPT_PATTERN.matcher(encodedPassword).matches();
+	}
+
+	private <T> T hash(Callable<T> task) {
+		if (hashingExecutor != null) {
+			return hashingExecutor.execute(task);
+		}
+		try {
+			return task.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to hash password", e);
+		}
+	}
+
+}
@@ -20,6 +20,7 @@ import java.util.List;
 import javax.inject.Inject;
 
 import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -49,7 +50,7 @@ public class UsernamePasswordAuthenticationProvider implements AuthenticationPro
 	 * 
 	 * @param authentication authentication request
 	 * @return authenticated token
-	 * @throws AuthenticationException if authentication fails
+	 * @throws AuthenticationException if authentication fails or the password cannot be checked
 	 */
 	@Override
 	public Authentication authenticate(Authentication authentication) throws AuthenticationException {
@@ -61,6 +62,8 @@ public class UsernamePasswordAuthenticationProvider implements AuthenticationPro
 			throw new org.springframework.security.core.userdetails.UsernameNotFoundException(token.getName(), e);
 		} catch (InvalidPasswordException e) {
 			throw new BadCredentialsException("Invalid password", e);
+		} catch (PasswordHashingBusyException e) {
+			throw new AuthenticationServiceException("Password hashing is busy; try again later", e);
 		}
 	}
 
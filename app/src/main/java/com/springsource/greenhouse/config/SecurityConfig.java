@@ -28,6 +28,8 @@ import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import com.springsource.greenhouse.account.GreenhousePasswordEncoder;
+import com.springsource.greenhouse.account.PasswordHashingExecutor;
+import com.springsource.greenhouse.account.UpgradingPasswordEncoder;
 
 /**
  * Spring Security configuration.
@@ -38,7 +40,7 @@ import com.springsource.greenhouse.account.GreenhousePasswordEncoder;
  * Temporary OAuth sessions are stored in an in-memory ConcurrentHashMap.
  * </p>
  * <p>
- * In standard mode, standard password encoding (SHA-256 with 1024 iterations + random salt)
+ * In standard mode, BCrypt password encoding with a cost calibrated at startup (passwords stored as SHA-256 + random salt are upgraded at sign-in)
  * and encryption (password-based 256-bit AES + site-wide salt + secure random 16-byte IV processing) are applied.
  * Temporary OAuth sessions are stored in a Redis key-value store.
  * </p>
@@ -95,9 +97,32 @@ public class SecurityConfig {
 			this.environment = environment;
 		}
 
+		/**
+		 * Encodes passwords with BCrypt, still matching SHA-256 passwords stored before, which are upgraded at sign-in.
+		 * The BCrypt cost is calibrated at startup so one hash takes about "security.passwordHashBudget" milliseconds,
+		 * but is never lower than "security.passwordHashMinStrength".
+		 * Hashes on request threads unless "security.passwordHashingThreads" is set; see {@link #passwordHashingExecutor()}.
+		 */
 		@Bean
 		public PasswordEncoder passwordEncoder() {
-			return new GreenhousePasswordEncoder(getEncryptPassword());
+			int strength = UpgradingPasswordEncoder.calibrateStrength(
+					environment.getProperty("security.passwordHashBudget", Long.class, 250L),
+					environment.getProperty("security.passwordHashMinStrength", Integer.class, 10));
+			GreenhousePasswordEncoder legacy = new GreenhousePasswordEncoder("SHA-256", "SUN", getEncryptPassword());
+			return new UpgradingPasswordEncoder(strength, legacy, passwordHashingExecutor());
+		}
+
+		/**
+		 * Confines password hashing to "security.passwordHashingThreads" threads with up to "security.passwordHashingCapacity" passwords waiting.
+		 * Null when no hashing threads are configured; its threads are stopped when the context closes.
+		 */
+		@Bean(destroyMethod = "destroy")
+		public PasswordHashingExecutor passwordHashingExecutor() {
+			int hashingThreads = environment.getProperty("security.passwordHashingThreads", Integer.class, 0);
+			if (hashingThreads <= 0) {
+				return null;
+			}
+			return new PasswordHashingExecutor(hashingThreads, environment.getProperty("security.passwordHashingCapacity", Integer.class, 100));
 		}
 
 		@Bean
@@ -97,7 +97,7 @@ public class DatabaseUpgrader {
 	 * @param upgrader database upgrader
 	 */
 	private void addInstallChangeSet(GenericDatabaseUpgrader upgrader) {
-		DatabaseChangeSet changeSet = new DatabaseChangeSet(DatabaseVersion.valueOf("4"));
+		DatabaseChangeSet changeSet = new DatabaseChangeSet(DatabaseVersion.valueOf("8"));
 		changeSet.add(installScript("Member.sql"));
 		changeSet.add(installScript("Group.sql"));
 		changeSet.add(installScript("Activity.sql"));
@@ -131,6 +131,10 @@ public class DatabaseUpgrader {
 		upgrader.addChangeSet(version2ChangeSet());
 		upgrader.addChangeSet(version3ChangeSet());
 		upgrader.addChangeSet(version4ChangeSet());
+		upgrader.addChangeSet(version5ChangeSet());
+		upgrader.addChangeSet(version6ChangeSet());
+		upgrader.addChangeSet(version7ChangeSet());
+		upgrader.addChangeSet(version8ChangeSet());
 	}
 
 	/**
@@ -169,6 +173,50 @@ public class DatabaseUpgrader {
 		return changeSet;
 	}
 
+	/**
+	 * Creates change set for version 5 upgrade.
+	 * 
+	 * @return change set
+	 */
+	private DatabaseChangeSet version5ChangeSet() {
+		DatabaseChangeSet changeSet = new DatabaseChangeSet(DatabaseVersion.valueOf("5"));
+		changeSet.add(upgradeScript("v5/AddSessionRatingTotals.sql"));
+		return changeSet;
+	}
+
+	/**
+	 * Creates change set for version 6 upgrade.
+	 * 
+	 * @return change set
+	 */
+	private DatabaseChangeSet version6ChangeSet() {
+		DatabaseChangeSet changeSet = new DatabaseChangeSet(DatabaseVersion.valueOf("6"));
+		changeSet.add(upgradeScript("v6/AddEventLookupKey.sql"));
+		return changeSet;
+	}
+
+	/**
+	 * Creates change set for version 7 upgrade.
+	 * 
+	 * @return change set
+	 */
+	private DatabaseChangeSet version7ChangeSet() {
+		DatabaseChangeSet changeSet = new DatabaseChangeSet(DatabaseVersion.valueOf("7"));
+		changeSet.add(upgradeScript("v7/CreateEventChangeTables.sql"));
+		return changeSet;
+	}
+
+	/**
+	 * Creates change set for version 8 upgrade.
+	 * 
+	 * @return change set
+	 */
+	private DatabaseChangeSet version8ChangeSet() {
+		DatabaseChangeSet changeSet = new DatabaseChangeSet(DatabaseVersion.valueOf("8"));
+		changeSet.add(upgradeScript("v8/AddSessionRatingHistogram.sql"));
+		return changeSet;
+	}
+
 	/**
 	 * Creates a database change from an upgrade script resource.
 	 * 
@@ -39,8 +39,12 @@ create table Event (id SERIAL PRIMARY KEY,
 					slug varchar not null,
 					description varchar,
 					memberGroup bigint not null,
+					startYear int generated always as (extract(year from startTime)),
+					startMonth int generated always as (extract(month from startTime)),
 					foreign key (memberGroup) references MemberGroup(id));
 
+create unique index EventLookupKey on Event(memberGroup, startYear, startMonth, slug);
+
 create table ExternalEvent (event bigint,
                     sourceId bigint,
                     source varchar,
@@ -89,6 +93,13 @@ create table EventSession (event bigint,
 					venue bigint,
 					room varchar,
 					rating real,
+					ratingSum int not null default 0,
+					ratingCount int not null default 0,
+					rating1Count int not null default 0,
+					rating2Count int not null default 0,
+					rating3Count int not null default 0,
+					rating4Count int not null default 0,
+					rating5Count int not null default 0,
 					master bigint,
 					timeslot bigint,
 					primary key (event, id),
@@ -138,9 +149,12 @@ create table EventSessionRating (event bigint,
 					attendee bigint,
 					rating tinyint not null check (rating in (1, 2, 3, 4, 5)),
 					comment varchar,
+					ratedAt timestamp(3) not null default current_timestamp,
 					primary key (event, session, attendee),
 					foreign key (event, session) references EventSession(event, id),
 					foreign key (attendee) references Member(id));
+
+create index EventSessionRatingTime on EventSessionRating(event, session, ratedAt, attendee);
 					
 create table EventTweetAction (memberAction bigint, 
 					event bigint not null,
@@ -149,4 +163,32 @@ create table EventTweetAction (memberAction bigint,
 					primary key (memberAction),
 					foreign key (memberAction) references MemberAction(id),
 					foreign key (event) references Event(id),
-					foreign key (event, session) references EventSession(event, id));
\ No newline at end of file
+					foreign key (event, session) references EventSession(event, id));
+
+create table EventChangeSequence (event bigint primary key,
+					lastChange bigint not null,
+					foreign key (event) references Event(id));
+
+create table EventChange (event bigint not null,
+					version bigint not null,
+					entity varchar not null,
+					session int,
+					timeSlot bigint,
+					leader bigint,
+					deleted boolean not null default false,
+					primary key (event, version),
+					foreign key (event) references Event(id));
+
+create table EventFavoriteChangeSequence (event bigint not null,
+					attendee bigint not null,
+					lastChange bigint not null,
+					primary key (event, attendee),
+					foreign key (event) references Event(id));
+
+create table EventFavoriteChange (event bigint not null,
+					attendee bigint not null,
+					version bigint not null,
+					session int not null,
+					deleted boolean not null default false,
+					primary key (event, attendee, version),
+					foreign key (event) references Event(id));
\ No newline at end of file
@@ -0,0 +1,6 @@
+alter table EventSession add column ratingSum int not null default 0;
+alter table EventSession add column ratingCount int not null default 0;
+
+update EventSession s set
+	ratingSum = coalesce((select sum(r.rating) from EventSessionRating r where r.event = s.event and r.session = s.id), 0),
+	ratingCount = (select count(*) from EventSessionRating r where r.event = s.event and r.session = s.id);
@@ -0,0 +1,6 @@
+alter table Event add column startYear int generated always as (extract(year from startTime));
+alter table Event add column startMonth int generated always as (extract(month from startTime));
+
+update Event set slug = slug || '-' || id where exists (select 1 from Event e where e.memberGroup = Event.memberGroup and e.startYear = Event.startYear and e.startMonth = Event.startMonth and e.slug = Event.slug and e.id < Event.id);
+
+create unique index EventLookupKey on Event(memberGroup, startYear, startMonth, slug);
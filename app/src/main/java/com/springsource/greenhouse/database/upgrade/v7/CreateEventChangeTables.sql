@@ -0,0 +1,27 @@
+create table EventChangeSequence (event bigint primary key,
+					lastChange bigint not null,
+					foreign key (event) references Event(id));
+
+create table EventChange (event bigint not null,
+					version bigint not null,
+					entity varchar not null,
+					session int,
+					timeSlot bigint,
+					leader bigint,
+					deleted boolean not null default false,
+					primary key (event, version),
+					foreign key (event) references Event(id));
+
+create table EventFavoriteChangeSequence (event bigint not null,
+					attendee bigint not null,
+					lastChange bigint not null,
+					primary key (event, attendee),
+					foreign key (event) references Event(id));
+
+create table EventFavoriteChange (event bigint not null,
+					attendee bigint not null,
+					version bigint not null,
+					session int not null,
+					deleted boolean not null default false,
+					primary key (event, attendee, version),
+					foreign key (event) references Event(id));
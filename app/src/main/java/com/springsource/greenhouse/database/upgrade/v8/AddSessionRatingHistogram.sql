@@ -0,0 +1,16 @@
+alter table EventSession add column rating1Count int not null default 0;
+alter table EventSession add column rating2Count int not null default 0;
+alter table EventSession add column rating3Count int not null default 0;
+alter table EventSession add column rating4Count int not null default 0;
+alter table EventSession add column rating5Count int not null default 0;
+
+update EventSession s set
+	rating1Count = (select count(*) from EventSessionRating r where r.event = s.event and r.session = s.id and r.rating = 1),
+	rating2Count = (select count(*) from EventSessionRating r where r.event = s.event and r.session = s.id and r.rating = 2),
+	rating3Count = (select count(*) from EventSessionRating r where r.event = s.event and r.session = s.id and r.rating = 3),
+	rating4Count = (select count(*) from EventSessionRating r where r.event = s.event and r.session = s.id and r.rating = 4),
+	rating5Count = (select count(*) from EventSessionRating r where r.event = s.event and r.session = s.id and r.rating = 5);
+
+alter table EventSessionRating add column ratedAt timestamp(3) not null default current_timestamp;
+
+create index EventSessionRatingTime on EventSessionRating(event, session, ratedAt, attendee);
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * EventChangeListener that forwards each change to a list of delegates once the current transaction commits.
+ * If no transaction is active the delegates are notified immediately.
+ * Changes made by a transaction that rolls back are never forwarded.
+ */
+public class AfterCommitEventChangeListener implements EventChangeListener {
+
+	private final List<EventChangeListener> listeners;
+
+	public AfterCommitEventChangeListener(EventChangeListener... listeners) {
+		this(Arrays.asList(listeners));
+	}
+
+	public AfterCommitEventChangeListener(List<EventChangeListener> listeners) {
+		this.listeners = listeners;
+	}
+
+	public void eventChanged(final Long eventId) {
+		afterCommit(new Notification() {
+			public void sendTo(EventChangeListener listener) {
+				listener.eventChanged(eventId);
+			}
+		});
+	}
+
+	public void eventScheduleChanged(final Long eventId) {
+		afterCommit(new Notification() {
+			public void sendTo(EventChangeListener listener) {
+				listener.eventScheduleChanged(eventId);
+			}
+		});
+	}
+
+	public void sessionChanged(final Long eventId, final Integer sessionId) {
+		afterCommit(new Notification() {
+			public void sendTo(EventChangeListener listener) {
+				listener.sessionChanged(eventId, sessionId);
+			}
+		});
+	}
+
+	public void leaderChanged(final Long leaderId) {
+		afterCommit(new Notification() {
+			public void sendTo(EventChangeListener listener) {
+				listener.leaderChanged(leaderId);
+			}
+		});
+	}
+
+	public void sessionRated(final Long eventId, final Integer sessionId) {
+		afterCommit(new Notification() {
+			public void sendTo(EventChangeListener listener) {
+				listener.sessionRated(eventId, sessionId);
+			}
+		});
+	}
+
+	public void favoriteChanged(final Long eventId, final Integer sessionId, final Long attendeeId,
+			final boolean favorite) {
+		afterCommit(new Notification() {
+			public void sendTo(EventChangeListener listener) {
+				listener.favoriteChanged(eventId, sessionId, attendeeId, favorite);
+			}
+		});
+	}
+
+	// internal helpers
+
+	private void afterCommit(final Notification notification) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				public void afterCommit() {
+					send(notification);
+				}
+			});
+		} else {
+			send(notification);
+		}
+	}
+
+	private void send(Notification notification) {
+		for (EventChangeListener listener : listeners) {
+			notification.sendTo(listener);
+		}
+	}
+
+	private interface Notification {
+		void sendTo(EventChangeListener listener);
+	}
+
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.springsource.greenhouse.events.FavoriteWriteBuffer.FavoriteChange;
+
+/**
+ * Per-Event counts of how many attendees marked each pair of sessions as favorites, answering
+ * "attendees who favorited this session also favorited" without reading the favorites table.
+ * The counts form a sparse matrix: each session has a row of co-favorite counts in an open-addressing map keyed by primitive session id.
+ * Each attendee's favorites are held too, so a favorite toggle updates only the rows of the attendee's other favorites.
+ * An Event's matrix is built on first read, counting attendees in parallel, and kept until {@link #invalidate(Long) invalidated};
+ * concurrent readers wait on a single build. Writers never build or wait: they record only their change.
+ * Subclasses decide how favorites are loaded.
+ */
+abstract class CoFavoriteIndex {
+
+	private final ConcurrentMap<Long, Build> events = new ConcurrentHashMap<Long, Build>();
+
+	private final AtomicLong loads = new AtomicLong();
+
+	/**
+	 * The ids of the sessions most often favorited by attendees who favorited the session, most often first; ties are broken by session id.
+	 * Sessions never favorited together with the session are not included.
+	 * @param excluded the ids of sessions to leave out, such as the requesting attendee's own favorites
+	 * @param max the maximum number of session ids to return
+	 */
+	public List<Integer> findCoFavorites(Long eventId, Integer sessionId, BitSet excluded, int max) {
+		return get(eventId).top(sessionId, excluded, max);
+	}
+
+	/**
+	 * The number of attendees who marked both sessions as favorites.
+	 */
+	public int getCoFavoriteCount(Long eventId, Integer sessionId, Integer otherSessionId) {
+		return get(eventId).count(sessionId, otherSessionId);
+	}
+
+	/**
+	 * Ensures the Event's matrix is built.
+	 */
+	public void prepare(Long eventId) {
+		get(eventId);
+	}
+
+	/**
+	 * Records a favorite being added or removed.
+	 * Should be called once the change is committed; it never builds the matrix or waits for a build.
+	 * A change the attendee's favorites already reflect is ignored, so a change counted by a concurrent build is not counted twice.
+	 * A change arriving while the matrix builds is held and applied when the build completes.
+	 * Nothing is recorded for an Event whose matrix is not built; its build will read the change from the system of record.
+	 */
+	public void favoriteChanged(Long eventId, Integer sessionId, Long attendeeId, boolean favorite) {
+		Build build = events.get(eventId);
+		if (build != null) {
+			build.favoriteChanged(sessionId, attendeeId, favorite);
+		}
+	}
+
+	/**
+	 * Discards the Event's matrix and builds it again from the system of record.
+	 */
+	public void rebuild(Long eventId) {
+		invalidate(eventId);
+		prepare(eventId);
+	}
+
+	/**
+	 * Discards the Event's matrix; it is built again on next access.
+	 */
+	public void invalidate(Long eventId) {
+		events.remove(eventId);
+	}
+
+	/**
+	 * The number of times an Event's matrix was built.
+	 */
+	public long getLoadCount() {
+		return loads.get();
+	}
+
+	// subclassing hooks
+
+	/**
+	 * Load the ids of each attendee's favorite sessions of the Event from the system of record, keyed by attendee id.
+	 * Attendees without favorites may be left out.
+	 */
+	protected abstract Map<Long, BitSet> loadFavorites(Long eventId);
+
+	// internal helpers
+
+	private CoFavorites get(final Long eventId) {
+		Build build = events.get(eventId);
+		if (build == null) {
+			Build newBuild = new Build(eventId, new Callable<CoFavorites>() {
+				public CoFavorites call() {
+					return new CoFavorites(loadFavorites(eventId));
+				}
+			});
+			build = events.putIfAbsent(eventId, newBuild);
+			if (build == null) {
+				build = newBuild;
+				loads.incrementAndGet();
+				build.run();
+			}
+		}
+		try {
+			return build.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for the co-favorites of event " + eventId, e);
+		} catch (ExecutionException e) {
+			events.remove(eventId, build);
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Unable to load the co-favorites of event " + eventId, e.getCause());
+		}
+	}
+
+	/**
+	 * The build of an Event's matrix.
+	 * Favorite changes recorded before it completes are held and applied, in order, before readers see the matrix.
+	 */
+	private static final class Build extends FutureTask<CoFavorites> {
+
+		private final Long eventId;
+
+		private final List<FavoriteChange> pendingChanges = new ArrayList<FavoriteChange>();
+
+		private CoFavorites coFavorites;
+
+		private boolean completed;
+
+		public Build(Long eventId, Callable<CoFavorites> callable) {
+			super(callable);
+			this.eventId = eventId;
+		}
+
+		public void favoriteChanged(int sessionId, Long attendeeId, boolean favorite) {
+			CoFavorites built;
+			synchronized (this) {
+				if (!completed) {
+					pendingChanges.add(new FavoriteChange(eventId, sessionId, attendeeId, favorite));
+					return;
+				}
+				built = coFavorites;
+			}
+			if (built != null) {
+				built.favoriteChanged(sessionId, attendeeId, favorite);
+			}
+		}
+
+		@Override
+		protected void set(CoFavorites coFavorites) {
+			synchronized (this) {
+				for (FavoriteChange change : pendingChanges) {
+					coFavorites.favoriteChanged(change.getSessionId(), change.getAttendeeId(), change.isFavorite());
+				}
+				pendingChanges.clear();
+				this.coFavorites = coFavorites;
+				completed = true;
+			}
+			super.set(coFavorites);
+		}
+
+		@Override
+		protected void setException(Throwable t) {
+			synchronized (this) {
+				pendingChanges.clear();
+				completed = true;
+			}
+			super.setException(t);
+		}
+
+	}
+
+	/**
+	 * An Event's attendee favorites and the co-favorite count rows derived from them.
+	 * Rows are keyed by session id; each row holds the counts of the sessions favorited together with it.
+	 */
+	private static final class CoFavorites {
+
+		private final Map<Long, BitSet> favorites;
+
+		private final Map<Integer, SessionCounts> rows;
+
+		public CoFavorites(Map<Long, BitSet> favorites) {
+			this.favorites = new HashMap<Long, BitSet>(favorites.size() * 2);
+			for (Map.Entry<Long, BitSet> entry : favorites.entrySet()) {
+				this.favorites.put(entry.getKey(), (BitSet) entry.getValue().clone());
+			}
+			BitSet[] attendeeFavorites = this.favorites.values().toArray(new BitSet[this.favorites.size()]);
+			this.rows = ForkJoinPool.commonPool().invoke(new CountTask(attendeeFavorites, 0, attendeeFavorites.length));
+		}
+
+		public synchronized void favoriteChanged(int sessionId, Long attendeeId, boolean favorite) {
+			BitSet attendeeFavorites = favorites.get(attendeeId);
+			if (attendeeFavorites == null) {
+				attendeeFavorites = new BitSet();
+				favorites.put(attendeeId, attendeeFavorites);
+			}
+			if (attendeeFavorites.get(sessionId) == favorite) {
+				return;
+			}
+			attendeeFavorites.clear(sessionId);
+			int delta = favorite ? 1 : -1;
+			for (int other = attendeeFavorites.nextSetBit(0); other >= 0; other = attendeeFavorites.nextSetBit(other + 1)) {
+				addPair(rows, sessionId, other, delta);
+			}
+			if (favorite) {
+				attendeeFavorites.set(sessionId);
+			}
+		}
+
+		public synchronized int count(int sessionId, int otherSessionId) {
+			SessionCounts row = rows.get(sessionId);
+			return row != null ? row.get(otherSessionId) : 0;
+		}
+
+		/**
+		 * Selects the top sessions of the row into parallel arrays kept in rank order; a row is read once, without sorting it.
+		 */
+		public synchronized List<Integer> top(int sessionId, BitSet excluded, int max) {
+			SessionCounts row = rows.get(sessionId);
+			if (row == null || max <= 0) {
+				return Collections.emptyList();
+			}
+			int[] topIds = new int[max];
+			int[] topCounts = new int[max];
+			int size = 0;
+			for (int slot = 0; slot < row.sessionIds.length; slot++) {
+				int id = row.sessionIds[slot];
+				int count = row.counts[slot];
+				if (id == SessionCounts.EMPTY || count <= 0 || excluded.get(id)) {
+					continue;
+				}
+				if (size == max && !ranksBefore(count, id, topCounts[size - 1], topIds[size - 1])) {
+					continue;
+				}
+				int position = size < max ? size++ : max - 1;
+				while (position > 0 && ranksBefore(count, id, topCounts[position - 1], topIds[position - 1])) {
+					topIds[position] = topIds[position - 1];
+					topCounts[position] = topCounts[position - 1];
+					position--;
+				}
+				topIds[position] = id;
+				topCounts[position] = count;
+			}
+			List<Integer> sessionIds = new ArrayList<Integer>(size);
+			for (int i = 0; i < size; i++) {
+				sessionIds.add(topIds[i]);
+			}
+			return sessionIds;
+		}
+
+		private static boolean ranksBefore(int count, int id, int otherCount, int otherId) {
+			return count > otherCount || (count == otherCount && id < otherId);
+		}
+
+	}
+
+	/**
+	 * Counts the co-favorites of a range of attendees, splitting large ranges across the fork-join pool and merging the partial rows.
+	 */
+	@SuppressWarnings("serial")
+	private static final class CountTask extends RecursiveTask<Map<Integer, SessionCounts>> {
+
+		private static final int ATTENDEES_PER_TASK = 512;
+
+		private final BitSet[] attendeeFavorites;
+
+		private final int low;
+
+		private final int high;
+
+		public CountTask(BitSet[] attendeeFavorites, int low, int high) {
+			this.attendeeFavorites = attendeeFavorites;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected Map<Integer, SessionCounts> compute() {
+			if (high - low <= ATTENDEES_PER_TASK) {
+				Map<Integer, SessionCounts> rows = new HashMap<Integer, SessionCounts>();
+				for (int i = low; i < high; i++) {
+					BitSet favorites = attendeeFavorites[i];
+					for (int session = favorites.nextSetBit(0); session >= 0; session = favorites.nextSetBit(session + 1)) {
+						for (int other = favorites.nextSetBit(session + 1); other >= 0; other = favorites.nextSetBit(other + 1)) {
+							addPair(rows, session, other, 1);
+						}
+					}
+				}
+				return rows;
+			}
+			int mid = (low + high) >>> 1;
+			CountTask left = new CountTask(attendeeFavorites, low, mid);
+			left.fork();
+			Map<Integer, SessionCounts> rows = new CountTask(attendeeFavorites, mid, high).compute();
+			Map<Integer, SessionCounts> leftRows = left.join();
+			for (Map.Entry<Integer, SessionCounts> entry : leftRows.entrySet()) {
+				SessionCounts row = rows.get(entry.getKey());
+				if (row == null) {
+					rows.put(entry.getKey(), entry.getValue());
+				} else {
+					row.addAll(entry.getValue());
+				}
+			}
+			return rows;
+		}
+
+	}
+
+	private static void addPair(Map<Integer, SessionCounts> rows, int sessionId, int otherSessionId, int delta) {
+		row(rows, sessionId).add(otherSessionId, delta);
+		row(rows, otherSessionId).add(sessionId, delta);
+	}
+
+	private static SessionCounts row(Map<Integer, SessionCounts> rows, int sessionId) {
+		SessionCounts row = rows.get(sessionId);
+		if (row == null) {
+			row = new SessionCounts();
+			rows.put(sessionId, row);
+		}
+		return row;
+	}
+
+	/**
+	 * Counts keyed by session id, in an open-addressing table with linear probing.
+	 * Keys are never removed; a count dropping to zero keeps its slot until the matrix is rebuilt.
+	 */
+	private static final class SessionCounts {
+
+		private static final int EMPTY = -1;
+
+		private int[] sessionIds;
+
+		private int[] counts;
+
+		private int size;
+
+		public SessionCounts() {
+			sessionIds = new int[8];
+			counts = new int[8];
+			Arrays.fill(sessionIds, EMPTY);
+		}
+
+		public int get(int sessionId) {
+			int slot = slot(sessionIds, sessionId);
+			return sessionIds[slot] == sessionId ? counts[slot] : 0;
+		}
+
+		public void add(int sessionId, int delta) {
+			int slot = slot(sessionIds, sessionId);
+			if (sessionIds[slot] == sessionId) {
+				counts[slot] += delta;
+				return;
+			}
+			sessionIds[slot] = sessionId;
+			counts[slot] = delta;
+			if (++size * 4 > sessionIds.length * 3) {
+				grow();
+			}
+		}
+
+		public void addAll(SessionCounts other) {
+			for (int slot = 0; slot < other.sessionIds.length; slot++) {
+				if (other.sessionIds[slot] != EMPTY) {
+					add(other.sessionIds[slot], other.counts[slot]);
+				}
+			}
+		}
+
+		private void grow() {
+			int[] oldIds = sessionIds;
+			int[] oldCounts = counts;
+			sessionIds = new int[oldIds.length * 2];
+			counts = new int[oldIds.length * 2];
+			Arrays.fill(sessionIds, EMPTY);
+			for (int i = 0; i < oldIds.length; i++) {
+				if (oldIds[i] != EMPTY) {
+					int slot = slot(sessionIds, oldIds[i]);
+					sessionIds[slot] = oldIds[i];
+					counts[slot] = oldCounts[i];
+				}
+			}
+		}
+
+		private static int slot(int[] sessionIds, int sessionId) {
+			int mask = sessionIds.length - 1;
+			int hash = sessionId * 0x9E3779B9;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (sessionIds[slot] != EMPTY && sessionIds[slot] != sessionId) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+	}
+
+}
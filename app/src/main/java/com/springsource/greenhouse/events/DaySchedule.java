@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sessions held on one day of an Event, shared by every attendee.
+ * Each session is held twice, once marked as a favorite and once not, with the same leader list;
+ * an attendee's schedule is assembled by choosing between them using the attendee's favorite session ids.
+ * Ratings change with every vote, so the ratings a session held when the schedule was built may be overridden per read.
+ * Instances are immutable once constructed.
+ */
+final class DaySchedule {
+
+	private final EventSession[] sessions;
+
+	private final EventSession[] favoriteSessions;
+
+	private final List<EventSession> sessionList;
+
+	/**
+	 * Creates a schedule from sessions mapped without attendee favorite information, in schedule order.
+	 */
+	public DaySchedule(List<EventSession> sessions) {
+		this.sessions = sessions.toArray(new EventSession[sessions.size()]);
+		this.favoriteSessions = new EventSession[this.sessions.length];
+		for (int i = 0; i < this.sessions.length; i++) {
+			favoriteSessions[i] = copy(this.sessions[i], this.sessions[i].getRating(), true);
+		}
+		this.sessionList = Collections.unmodifiableList(Arrays.asList(this.sessions));
+	}
+
+	/**
+	 * The number of sessions on the day.
+	 */
+	public int size() {
+		return sessions.length;
+	}
+
+	/**
+	 * The day's sessions as seen by an attendee.
+	 * @param favorites the ids of the sessions the attendee marked as favorites
+	 * @param ratings the current ratings of sessions, keyed by session id, overriding those the schedule was built with
+	 */
+	public List<EventSession> forAttendee(BitSet favorites, Map<Integer, Float> ratings) {
+		if (favorites.isEmpty() && ratings.isEmpty()) {
+			return sessionList;
+		}
+		List<EventSession> schedule = new ArrayList<EventSession>(sessions.length);
+		for (int i = 0; i < sessions.length; i++) {
+			schedule.add(session(i, favorites, ratings));
+		}
+		return schedule;
+	}
+
+	/**
+	 * A page of the day's sessions as seen by an attendee, keyed by session start time and then session id.
+	 * @param favorites the ids of the sessions the attendee marked as favorites
+	 * @param ratings the current ratings of sessions, keyed by session id, overriding those the schedule was built with
+	 * @param after the position after which the page starts; null for the first page
+	 * @param pageSize the maximum number of sessions on the page
+	 */
+	public Page<EventSession> page(BitSet favorites, Map<Integer, Float> ratings, PageCursor after, int pageSize) {
+		int from = after != null ? firstStartingAfter(after) : 0;
+		int to = Math.min(from + pageSize, sessions.length);
+		List<EventSession> page = new ArrayList<EventSession>(to - from);
+		for (int i = from; i < to; i++) {
+			page.add(session(i, favorites, ratings));
+		}
+		String nextCursor = null;
+		if (to < sessions.length) {
+			EventSession last = sessions[to - 1];
+			nextCursor = new PageCursor(last.getStartTime().getMillis(), last.getId()).encode();
+		}
+		return new Page<EventSession>(page, nextCursor);
+	}
+
+	// internal helpers
+
+	private EventSession session(int i, BitSet favorites, Map<Integer, Float> ratings) {
+		boolean favorite = favorites.get(sessions[i].getId());
+		EventSession session = favorite ? favoriteSessions[i] : sessions[i];
+		Float rating = ratings.get(session.getId());
+		if (rating == null || rating.equals(session.getRating())) {
+			return session;
+		}
+		return copy(session, rating, favorite);
+	}
+
+	private int firstStartingAfter(PageCursor after) {
+		int low = 0;
+		int high = sessions.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (after.isBefore(sessions[mid].getStartTime().getMillis(), sessions[mid].getId())) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	private static EventSession copy(EventSession session, Float rating, boolean favorite) {
+		EventSession copy = new EventSession(session.getId(), session.getTitle(), session.getStartTime(),
+				session.getEndTime(), session.getDescription(), session.getHashtag(), rating,
+				session.getRoom(), favorite);
+		for (EventSessionLeader leader : session.getLeaders()) {
+			copy.addLeader(leader);
+		}
+		return copy;
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.LocalDate;
+
+/**
+ * Bounded cache of {@link DaySchedule DaySchedules} keyed by Event and day.
+ * Concurrent requests for a schedule that is not cached wait on a single build rather than each querying the database.
+ * The least recently used schedules are evicted once the cache is full.
+ * Subclasses decide how a schedule is built.
+ */
+abstract class DayScheduleCache {
+
+	private final Map<Key, FutureTask<DaySchedule>> schedules;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong builds = new AtomicLong();
+
+	/**
+	 * Creates a cache holding at most maxSchedules schedules.
+	 */
+	public DayScheduleCache(final int maxSchedules) {
+		this.schedules = new LinkedHashMap<Key, FutureTask<DaySchedule>>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<DaySchedule>> eldest) {
+				return size() > maxSchedules;
+			}
+		};
+	}
+
+	/**
+	 * The schedule of the Event on the day, built if not already cached.
+	 */
+	public DaySchedule get(final Long eventId, final LocalDate day) {
+		Key key = new Key(eventId, day);
+		FutureTask<DaySchedule> schedule;
+		boolean build = false;
+		synchronized (schedules) {
+			schedule = schedules.get(key);
+			if (schedule == null) {
+				schedule = new FutureTask<DaySchedule>(new Callable<DaySchedule>() {
+					public DaySchedule call() {
+						return build(eventId, day);
+					}
+				});
+				schedules.put(key, schedule);
+				build = true;
+			}
+		}
+		if (build) {
+			builds.incrementAndGet();
+			schedule.run();
+		} else {
+			hits.incrementAndGet();
+		}
+		try {
+			return schedule.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for the schedule of event " + eventId + " on " + day, e);
+		} catch (ExecutionException e) {
+			remove(key, schedule);
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Unable to build the schedule of event " + eventId + " on " + day, e.getCause());
+		}
+	}
+
+	/**
+	 * Discards every cached schedule of the Event.
+	 */
+	public void invalidate(Long eventId) {
+		synchronized (schedules) {
+			Iterator<Key> keys = schedules.keySet().iterator();
+			while (keys.hasNext()) {
+				if (keys.next().eventId.equals(eventId)) {
+					keys.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Discards every cached schedule.
+	 */
+	public void invalidateAll() {
+		synchronized (schedules) {
+			schedules.clear();
+		}
+	}
+
+	/**
+	 * The number of requests answered with a schedule that was already cached or being built.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of schedules built.
+	 */
+	public long getBuildCount() {
+		return builds.get();
+	}
+
+	// subclassing hooks
+
+	/**
+	 * Build the schedule of the Event on the day from the system of record.
+	 */
+	protected abstract DaySchedule build(Long eventId, LocalDate day);
+
+	// internal helpers
+
+	private void remove(Key key, FutureTask<DaySchedule> schedule) {
+		synchronized (schedules) {
+			if (schedules.get(key) == schedule) {
+				schedules.remove(key);
+			}
+		}
+	}
+
+	private static final class Key {
+
+		private final Long eventId;
+
+		private final LocalDate day;
+
+		public Key(Long eventId, LocalDate day) {
+			this.eventId = eventId;
+			this.day = day;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return eventId.equals(other.eventId) && day.equals(other.day);
+		}
+
+		public int hashCode() {
+			return eventId.hashCode() * 31 + day.hashCode();
+		}
+
+	}
+
+}
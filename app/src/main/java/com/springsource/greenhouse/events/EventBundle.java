@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.util.StreamUtils;
+
+/**
+ * A whole-event schedule snapshot for offline use, stored gzip-compressed.
+ * Holds the Event with its venues and rooms, time slots, session leaders, and sessions, as a single JSON document.
+ * Attendee-specific data such as favorites, and frequently changing data such as ratings, are not included.
+ */
+public final class EventBundle {
+
+	private final Long eventId;
+
+	private final byte[] compressedBytes;
+
+	private final String tag;
+
+	private final long lastModified;
+
+	private final String url;
+
+	public EventBundle(Long eventId, byte[] compressedBytes, String tag, long lastModified, String url) {
+		this.eventId = eventId;
+		this.compressedBytes = compressedBytes;
+		this.tag = tag;
+		this.lastModified = lastModified;
+		this.url = url;
+	}
+
+	/**
+	 * The internal identifier of the Event bundled.
+	 */
+	public Long getEventId() {
+		return eventId;
+	}
+
+	/**
+	 * The gzip-compressed JSON document; shared, and may not be modified.
+	 */
+	public byte[] getCompressedBytes() {
+		return compressedBytes;
+	}
+
+	/**
+	 * The JSON document, decompressed on each call; for clients that do not accept gzip.
+	 */
+	public byte[] getBytes() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(compressedBytes.length * 4);
+			StreamUtils.copy(new GZIPInputStream(new ByteArrayInputStream(compressedBytes)), bytes);
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to decompress bundle for event " + eventId, e);
+		}
+	}
+
+	/**
+	 * An opaque tag that identifies this snapshot's content; suitable for use as a strong entity tag of the compressed document.
+	 */
+	public String getTag() {
+		return tag;
+	}
+
+	/**
+	 * The time this snapshot was generated, in milliseconds since the epoch.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * The URL of the copy kept in file storage; null if the copy could not be stored.
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+}
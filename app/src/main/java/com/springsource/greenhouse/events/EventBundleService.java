@@ -0,0 +1,375 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.FileData;
+import org.springframework.data.FileStorage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Generates {@link EventBundle EventBundles} and keeps the current bundle of each Event.
+ * A bundle is generated the first time it is requested after its Event's loader data changed, and then reused until the next change.
+ * Each generated bundle is also written to {@link FileStorage}, so it can be served from the store directly; the copy it supersedes is deleted.
+ * The document is written straight from the result sets in normalized form: sessions refer to their time slot, room, and leaders by id.
+ * It also carries the {@link EventChangeLog} watermark it was read at, so a client can follow up with {@link EventDelta deltas}.
+ */
+@Service
+public class EventBundleService implements EventChangeListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(EventBundleService.class);
+
+	private static final String BUNDLE_PATH = "event-bundles/";
+
+	private static final String CONTENT_TYPE = "application/json";
+
+	private static final int GENERATION_LOCK_STRIPES = 64;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final FileStorage storage;
+
+	private final EventChangeLog changeLog;
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+
+	private final ConcurrentMap<Long, EventBundle> bundles = new ConcurrentHashMap<Long, EventBundle>();
+
+	private final Object[] generationLocks = new Object[GENERATION_LOCK_STRIPES];
+
+	private final ConcurrentMap<Long, String> storedFiles = new ConcurrentHashMap<Long, String>();
+
+	private final AtomicLong changes = new AtomicLong();
+
+	private final AtomicLong generations = new AtomicLong();
+
+	@Inject
+	public EventBundleService(JdbcTemplate jdbcTemplate, FileStorage storage) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.storage = storage;
+		this.changeLog = new EventChangeLog(jdbcTemplate);
+		for (int i = 0; i < generationLocks.length; i++) {
+			generationLocks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Gets the current bundle of an Event, generating it if the Event changed since the bundle was last generated.
+	 * Concurrent requests for a bundle being generated wait for it rather than generating it again.
+	 * @param eventId the internal Event identifier
+	 * @throws EventNotFoundException there is no Event with the id
+	 */
+	public EventBundle getBundle(Long eventId) {
+		EventBundle bundle = bundles.get(eventId);
+		if (bundle != null) {
+			return bundle;
+		}
+		synchronized (generationLock(eventId)) {
+			bundle = bundles.get(eventId);
+			if (bundle == null) {
+				long changesBefore = changes.get();
+				bundle = generate(eventId);
+				if (changes.get() == changesBefore) {
+					bundles.put(eventId, bundle);
+				}
+			}
+			return bundle;
+		}
+	}
+
+	/**
+	 * The number of bundles generated.
+	 */
+	public long getGenerationCount() {
+		return generations.get();
+	}
+
+	// implementing EventChangeListener
+
+	public void eventChanged(Long eventId) {
+		invalidate(eventId);
+	}
+
+	public void eventScheduleChanged(Long eventId) {
+		invalidate(eventId);
+	}
+
+	public void sessionChanged(Long eventId, Integer sessionId) {
+	}
+
+	public void leaderChanged(Long leaderId) {
+		changes.incrementAndGet();
+		bundles.clear();
+	}
+
+	public void sessionRated(Long eventId, Integer sessionId) {
+	}
+
+	public void favoriteChanged(Long eventId, Integer sessionId, Long attendeeId, boolean favorite) {
+	}
+
+	// internal helpers
+
+	private void invalidate(Long eventId) {
+		changes.incrementAndGet();
+		bundles.remove(eventId);
+	}
+
+	/**
+	 * The lock guarding generation of an Event's bundle; Events share a fixed set of locks, so arbitrary ids cannot grow it.
+	 */
+	private Object generationLock(Long eventId) {
+		return generationLocks[(eventId.hashCode() & Integer.MAX_VALUE) % generationLocks.length];
+	}
+
+	private EventBundle generate(Long eventId) {
+		byte[] compressed;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+			JsonGenerator json = jsonFactory.createGenerator(gzip, JsonEncoding.UTF8);
+			writeBundle(json, eventId);
+			json.close();
+			gzip.close();
+			compressed = bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to write bundle for event " + eventId, e);
+		}
+		generations.incrementAndGet();
+		String tag = DigestUtils.md5DigestAsHex(compressed);
+		return new EventBundle(eventId, compressed, tag, System.currentTimeMillis(), store(eventId, tag, compressed));
+	}
+
+	private String store(Long eventId, String tag, byte[] compressed) {
+		String fileName = BUNDLE_PATH + eventId + "/" + tag + ".json.gz";
+		String url;
+		try {
+			url = storage.storeFile(new FileData(fileName, compressed, CONTENT_TYPE));
+		} catch (RuntimeException e) {
+			logger.warn("Unable to store bundle for event " + eventId + "; serving it from memory only", e);
+			return null;
+		}
+		String superseded = storedFiles.put(eventId, fileName);
+		if (superseded != null && !superseded.equals(fileName)) {
+			try {
+				storage.deleteFile(superseded);
+			} catch (RuntimeException e) {
+				logger.warn("Unable to delete superseded bundle " + superseded, e);
+			}
+		}
+		return url;
+	}
+
+	private void writeBundle(final JsonGenerator json, Long eventId) throws IOException {
+		json.writeStartObject();
+		json.writeNumberField("watermark", changeLog.findLatestVersion(eventId));
+		final DateTimeZone timeZone = writeEvent(json, eventId);
+		json.writeArrayFieldStart("venues");
+		query(SELECT_BUNDLE_VENUES, new RowWriter() {
+			public void writeRow(ResultSet rs) throws SQLException, IOException {
+				json.writeStartObject();
+				json.writeNumberField("id", rs.getLong("id"));
+				json.writeStringField("name", rs.getString("name"));
+				json.writeStringField("postalAddress", rs.getString("postalAddress"));
+				json.writeNumberField("latitude", rs.getDouble("latitude"));
+				json.writeNumberField("longitude", rs.getDouble("longitude"));
+				json.writeStringField("locationHint", rs.getString("locationHint"));
+				json.writeEndObject();
+			}
+		}, eventId);
+		json.writeEndArray();
+		json.writeArrayFieldStart("rooms");
+		query(SELECT_BUNDLE_ROOMS, new RowWriter() {
+			public void writeRow(ResultSet rs) throws SQLException, IOException {
+				json.writeStartObject();
+				json.writeNumberField("venue", rs.getLong("venue"));
+				json.writeNumberField("id", rs.getInt("id"));
+				json.writeStringField("name", rs.getString("name"));
+				json.writeStringField("locationHint", rs.getString("locationHint"));
+				json.writeEndObject();
+			}
+		}, eventId);
+		json.writeEndArray();
+		json.writeArrayFieldStart("timeSlots");
+		query(SELECT_BUNDLE_TIME_SLOTS, new RowWriter() {
+			public void writeRow(ResultSet rs) throws SQLException, IOException {
+				json.writeStartObject();
+				json.writeNumberField("id", rs.getLong("id"));
+				json.writeStringField("label", rs.getString("label"));
+				json.writeNumberField("startTime", EventTimes.toUtcMillis(rs.getTimestamp("startTime"), timeZone));
+				json.writeNumberField("endTime", EventTimes.toUtcMillis(rs.getTimestamp("endTime"), timeZone));
+				json.writeEndObject();
+			}
+		}, eventId);
+		json.writeEndArray();
+		json.writeArrayFieldStart("leaders");
+		query(SELECT_BUNDLE_LEADERS, new RowWriter() {
+			public void writeRow(ResultSet rs) throws SQLException, IOException {
+				json.writeStartObject();
+				json.writeNumberField("id", rs.getLong("id"));
+				json.writeStringField("name", rs.getString("name"));
+				json.writeStringField("company", rs.getString("company"));
+				json.writeStringField("title", rs.getString("title"));
+				json.writeStringField("location", rs.getString("location"));
+				json.writeStringField("bio", rs.getString("bio"));
+				json.writeStringField("personalUrl", rs.getString("personalUrl"));
+				json.writeStringField("twitterUsername", rs.getString("twitterUsername"));
+				json.writeEndObject();
+			}
+		}, eventId);
+		json.writeEndArray();
+		json.writeArrayFieldStart("sessions");
+		query(SELECT_BUNDLE_SESSIONS, new RowWriter() {
+			private int sessionId = -1;
+
+			public void writeRow(ResultSet rs) throws SQLException, IOException {
+				int id = rs.getInt("id");
+				if (id != sessionId) {
+					if (sessionId != -1) {
+						json.writeEndArray();
+						json.writeEndObject();
+					}
+					sessionId = id;
+					json.writeStartObject();
+					json.writeNumberField("id", id);
+					json.writeStringField("title", rs.getString("title"));
+					json.writeStringField("description", rs.getString("description"));
+					json.writeStringField("hashtag", rs.getString("hashtag"));
+					json.writeStringField("track", rs.getString("track"));
+					writeNumberField(json, "timeSlot", rs.getLong("timeSlot"), rs.wasNull());
+					writeNumberField(json, "venue", rs.getLong("venue"), rs.wasNull());
+					writeNumberField(json, "room", rs.getInt("room"), rs.wasNull());
+					json.writeArrayFieldStart("leaders");
+				}
+				long leader = rs.getLong("leader");
+				if (!rs.wasNull()) {
+					json.writeNumber(leader);
+				}
+			}
+
+			public void finish() throws IOException {
+				if (sessionId != -1) {
+					json.writeEndArray();
+					json.writeEndObject();
+				}
+			}
+		}, eventId);
+		json.writeEndArray();
+		json.writeEndObject();
+	}
+
+	private DateTimeZone writeEvent(final JsonGenerator json, Long eventId) throws IOException {
+		final DateTimeZone[] timeZone = new DateTimeZone[1];
+		query(SELECT_BUNDLE_EVENT, new RowWriter() {
+			public void writeRow(ResultSet rs) throws SQLException, IOException {
+				timeZone[0] = EventTimes.timeZone(rs.getString("timeZone"));
+				json.writeObjectFieldStart("event");
+				json.writeNumberField("id", rs.getLong("id"));
+				json.writeStringField("title", rs.getString("title"));
+				json.writeStringField("timeZone", rs.getString("timeZone"));
+				json.writeNumberField("startTime", EventTimes.toUtcMillis(rs.getTimestamp("startTime"), timeZone[0]));
+				json.writeNumberField("endTime", EventTimes.toUtcMillis(rs.getTimestamp("endTime"), timeZone[0]));
+				json.writeStringField("slug", rs.getString("slug"));
+				json.writeStringField("description", rs.getString("description"));
+				json.writeStringField("hashtag", rs.getString("hashtag"));
+				json.writeEndObject();
+			}
+		}, eventId);
+		if (timeZone[0] == null) {
+			throw new EventNotFoundException(eventId);
+		}
+		return timeZone[0];
+	}
+
+	private void query(String sql, final RowWriter writer, Long eventId) throws IOException {
+		try {
+			jdbcTemplate.query(sql, new RowCallbackHandler() {
+				public void processRow(ResultSet rs) throws SQLException {
+					try {
+						writer.writeRow(rs);
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}, eventId);
+		} catch (IllegalStateException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+		writer.finish();
+	}
+
+	private static void writeNumberField(JsonGenerator json, String name, long value, boolean wasNull) throws IOException {
+		if (wasNull) {
+			json.writeNullField(name);
+		} else {
+			json.writeNumberField(name, value);
+		}
+	}
+
+	/**
+	 * Writes each row of a query to the bundle document.
+	 */
+	private abstract static class RowWriter {
+
+		public abstract void writeRow(ResultSet rs) throws SQLException, IOException;
+
+		public void finish() throws IOException {
+		}
+
+	}
+
+	private static final String SELECT_BUNDLE_EVENT = "select e.id, e.title, e.timeZone, e.startTime, e.endTime, e.slug, e.description, g.hashtag from Event e " +
+			"inner join MemberGroup g on e.memberGroup = g.id where e.id = ?";
+
+	private static final String SELECT_BUNDLE_VENUES = "select v.id, v.name, v.postalAddress, v.latitude, v.longitude, v.locationHint from EventVenue ev " +
+			"inner join Venue v on ev.venue = v.id where ev.event = ? order by v.id";
+
+	private static final String SELECT_BUNDLE_ROOMS = "select r.venue, r.id, r.name, r.locationHint from EventVenue ev " +
+			"inner join VenueRoom r on ev.venue = r.venue where ev.event = ? order by r.venue, r.id";
+
+	private static final String SELECT_BUNDLE_TIME_SLOTS = "select id, label, startTime, endTime from EventTimeSlot where event = ? order by startTime, id";
+
+	private static final String SELECT_BUNDLE_LEADERS = "select l.id, l.name, l.company, l.title, l.location, l.bio, l.personalUrl, l.twitterUsername from Leader l " +
+			"where l.id in (select sl.leader from EventSessionLeader sl where sl.event = ?) order by l.id";
+
+	private static final String SELECT_BUNDLE_SESSIONS = "select s.id, s.title, s.description, s.hashtag, s.track, s.timeSlot, s.venue, s.room, sl.leader from EventSession s " +
+			"left outer join EventSessionLeader sl on s.event = sl.event and s.id = sl.session " +
+			"where s.event = ? order by s.id, sl.rank, sl.leader";
+
+}
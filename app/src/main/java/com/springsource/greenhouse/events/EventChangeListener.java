@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+/**
+ * Callback notified after Event data has been written to the system of record.
+ * Lets components that keep an in-memory read model of Event data, such as the {@link EventRepository}, refresh only what changed.
+ * Writers should notify after their transaction commits so a listener that reloads sees the new data.
+ */
+public interface EventChangeListener {
+
+	/**
+	 * Called after the Event's own details or its Venues have been created or updated.
+	 * @param eventId the internal Event identifier
+	 */
+	void eventChanged(Long eventId);
+
+	/**
+	 * Called after the Event's sessions, time slots, or session leader assignments have been created or updated.
+	 * @param eventId the internal Event identifier
+	 */
+	void eventScheduleChanged(Long eventId);
+
+	/**
+	 * Called after a session's own details or its leader assignments have been created or updated.
+	 * Writers also notify {@link #eventScheduleChanged(Long)}; this lets listeners that track sessions individually refresh just the one.
+	 * @param eventId the internal Event identifier
+	 * @param sessionId the internal session identifier, unique relative to the Event
+	 */
+	void sessionChanged(Long eventId, Integer sessionId);
+
+	/**
+	 * Called after a session Leader's details have been created or updated.
+	 * Leaders are not owned by a single Event, so any Event's schedule may be affected.
+	 * @param leaderId the internal Leader identifier
+	 */
+	void leaderChanged(Long leaderId);
+
+	/**
+	 * Called after an attendee rated a session, changing the session's average rating.
+	 * @param eventId the internal Event identifier
+	 * @param sessionId the internal session identifier, unique relative to the Event
+	 */
+	void sessionRated(Long eventId, Integer sessionId);
+
+	/**
+	 * Called after an attendee added or removed a session from their favorites.
+	 * @param eventId the internal Event identifier
+	 * @param sessionId the internal session identifier, unique relative to the Event
+	 * @param attendeeId the id of the attendee's member account
+	 * @param favorite true if the session is now a favorite, false if it no longer is
+	 */
+	void favoriteChanged(Long eventId, Integer sessionId, Long attendeeId, boolean favorite);
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.springsource.greenhouse.events.FavoriteWriteBuffer.FavoriteChange;
+
+/**
+ * Records changes to an Event's sessions, time slots, and session leaders in the EventChange table,
+ * so clients can sync only what changed since their last {@link EventDelta#getWatermark() watermark}.
+ * Each change is numbered from a per-Event sequence that is incremented under a row lock held until the writing transaction commits,
+ * so an Event's changes become visible in version order and a reader never sees a change numbered above one it has not seen yet.
+ * Favorites are private to an attendee, so their changes go to the EventFavoriteChange table and are numbered from a per-attendee sequence instead:
+ * a toggle only locks its own attendee's row, and never waits on other attendees' toggles or on schedule changes.
+ * Writers call this in the same transaction as the change itself.
+ */
+public final class EventChangeLog {
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public EventChangeLog(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * Records that a session was created or updated.
+	 */
+	public void sessionChanged(Long eventId, Integer sessionId) {
+		jdbcTemplate.update(INSERT_CHANGE, eventId, nextVersions(eventId, 1), "Session", sessionId, null, null, false);
+	}
+
+	/**
+	 * Records that a time slot was created or updated.
+	 */
+	public void timeSlotChanged(Long eventId, Long timeSlotId) {
+		jdbcTemplate.update(INSERT_CHANGE, eventId, nextVersions(eventId, 1), "TimeSlot", null, timeSlotId, null, false);
+	}
+
+	/**
+	 * Records that a leader was assigned to, or removed from, a session.
+	 */
+	public void sessionLeaderChanged(Long eventId, Integer sessionId, Long leaderId, boolean removed) {
+		jdbcTemplate.update(INSERT_CHANGE, eventId, nextVersions(eventId, 1), "SessionLeader", sessionId, null, leaderId, removed);
+	}
+
+	/**
+	 * Records that an attendee added a session to, or removed it from, their favorites.
+	 */
+	public void favoriteChanged(Long eventId, Integer sessionId, Long attendeeId, boolean favorite) {
+		jdbcTemplate.update(INSERT_FAVORITE_CHANGE, eventId, attendeeId, nextFavoriteVersions(eventId, attendeeId, 1), sessionId, !favorite);
+	}
+
+	/**
+	 * Records a batch of favorite changes, taking one range of versions per attendee.
+	 */
+	void favoritesChanged(List<FavoriteChange> changes) {
+		Map<Long, Map<Long, List<FavoriteChange>>> changesByEvent = new LinkedHashMap<Long, Map<Long, List<FavoriteChange>>>();
+		for (FavoriteChange change : changes) {
+			Map<Long, List<FavoriteChange>> changesByAttendee = changesByEvent.get(change.getEventId());
+			if (changesByAttendee == null) {
+				changesByAttendee = new LinkedHashMap<Long, List<FavoriteChange>>();
+				changesByEvent.put(change.getEventId(), changesByAttendee);
+			}
+			List<FavoriteChange> attendeeChanges = changesByAttendee.get(change.getAttendeeId());
+			if (attendeeChanges == null) {
+				attendeeChanges = new ArrayList<FavoriteChange>();
+				changesByAttendee.put(change.getAttendeeId(), attendeeChanges);
+			}
+			attendeeChanges.add(change);
+		}
+		List<Object[]> rows = new ArrayList<Object[]>(changes.size());
+		for (Map.Entry<Long, Map<Long, List<FavoriteChange>>> event : changesByEvent.entrySet()) {
+			for (Map.Entry<Long, List<FavoriteChange>> attendee : event.getValue().entrySet()) {
+				long version = nextFavoriteVersions(event.getKey(), attendee.getKey(), attendee.getValue().size());
+				for (FavoriteChange change : attendee.getValue()) {
+					rows.add(new Object[] { change.getEventId(), change.getAttendeeId(), version++, change.getSessionId(),
+							!change.isFavorite() });
+				}
+			}
+		}
+		jdbcTemplate.batchUpdate(INSERT_FAVORITE_CHANGE, rows);
+	}
+
+	/**
+	 * The version of the Event's latest schedule change; 0 if none has been recorded.
+	 */
+	public long findLatestVersion(Long eventId) {
+		List<Long> versions = jdbcTemplate.queryForList("select lastChange from EventChangeSequence where event = ?",
+				Long.class, eventId);
+		return versions.isEmpty() ? 0 : versions.get(0);
+	}
+
+	/**
+	 * The version of the attendee's latest favorite change at the Event; 0 if none has been recorded.
+	 */
+	public long findLatestFavoriteVersion(Long eventId, Long attendeeId) {
+		List<Long> versions = jdbcTemplate.queryForList(SELECT_FAVORITE_SEQUENCE, Long.class, eventId, attendeeId);
+		return versions.isEmpty() ? 0 : versions.get(0);
+	}
+
+	// internal helpers
+
+	/**
+	 * Reserves count versions for the Event, locking its sequence row until the current transaction ends.
+	 * @return the first version reserved
+	 */
+	private long nextVersions(Long eventId, int count) {
+		if (jdbcTemplate.update(INCREMENT_SEQUENCE, count, eventId) == 0) {
+			try {
+				jdbcTemplate.update("insert into EventChangeSequence (event, lastChange) values (?, ?)", eventId, count);
+				return 1;
+			} catch (DuplicateKeyException e) {
+				jdbcTemplate.update(INCREMENT_SEQUENCE, count, eventId);
+			}
+		}
+		return findLatestVersion(eventId) - count + 1;
+	}
+
+	/**
+	 * Reserves count favorite versions for the attendee, locking only the attendee's sequence row until the current transaction ends.
+	 * @return the first version reserved
+	 */
+	private long nextFavoriteVersions(Long eventId, Long attendeeId, int count) {
+		if (jdbcTemplate.update(INCREMENT_FAVORITE_SEQUENCE, count, eventId, attendeeId) == 0) {
+			try {
+				jdbcTemplate.update("insert into EventFavoriteChangeSequence (event, attendee, lastChange) values (?, ?, ?)",
+						eventId, attendeeId, count);
+				return 1;
+			} catch (DuplicateKeyException e) {
+				jdbcTemplate.update(INCREMENT_FAVORITE_SEQUENCE, count, eventId, attendeeId);
+			}
+		}
+		return findLatestFavoriteVersion(eventId, attendeeId) - count + 1;
+	}
+
+	private static final String INCREMENT_SEQUENCE = "update EventChangeSequence set lastChange = lastChange + ? where event = ?";
+
+	private static final String INSERT_CHANGE = "insert into EventChange (event, version, entity, session, timeSlot, leader, deleted) values (?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String INCREMENT_FAVORITE_SEQUENCE = "update EventFavoriteChangeSequence set lastChange = lastChange + ? where event = ? and attendee = ?";
+
+	private static final String SELECT_FAVORITE_SEQUENCE = "select lastChange from EventFavoriteChangeSequence where event = ? and attendee = ?";
+
+	private static final String INSERT_FAVORITE_CHANGE = "insert into EventFavoriteChange (event, attendee, version, session, deleted) values (?, ?, ?, ?, ?)";
+
+}
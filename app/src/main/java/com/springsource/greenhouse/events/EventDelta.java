@@ -0,0 +1,226 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.List;
+
+/**
+ * The changes to an Event's schedule, and to one attendee's favorites, since a client's watermark.
+ * Sessions and time slots have the same shape as in an {@link EventBundle}, so a client can apply a delta to the bundle it downloaded.
+ * Changed rows are sent in full; removed rows are sent as tombstones listing only their ids.
+ */
+public final class EventDelta {
+
+	private final long watermark;
+
+	private final long favoritesWatermark;
+
+	private final List<Session> sessions;
+
+	private final List<Integer> deletedSessions;
+
+	private final List<TimeSlot> timeSlots;
+
+	private final List<Long> deletedTimeSlots;
+
+	private final List<Integer> favorites;
+
+	private final List<Integer> unfavorites;
+
+	public EventDelta(long watermark, long favoritesWatermark, List<Session> sessions, List<Integer> deletedSessions,
+			List<TimeSlot> timeSlots, List<Long> deletedTimeSlots, List<Integer> favorites, List<Integer> unfavorites) {
+		this.watermark = watermark;
+		this.favoritesWatermark = favoritesWatermark;
+		this.sessions = sessions;
+		this.deletedSessions = deletedSessions;
+		this.timeSlots = timeSlots;
+		this.deletedTimeSlots = deletedTimeSlots;
+		this.favorites = favorites;
+		this.unfavorites = unfavorites;
+	}
+
+	/**
+	 * The version of the latest schedule change included; pass it back to get the changes after this delta.
+	 */
+	public long getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * The version of the attendee's latest favorite change included; favorites are versioned per attendee, apart from the schedule.
+	 */
+	public long getFavoritesWatermark() {
+		return favoritesWatermark;
+	}
+
+	/**
+	 * The sessions created or updated, including sessions whose leaders changed.
+	 */
+	public List<Session> getSessions() {
+		return sessions;
+	}
+
+	/**
+	 * The ids of the sessions removed.
+	 */
+	public List<Integer> getDeletedSessions() {
+		return deletedSessions;
+	}
+
+	/**
+	 * The time slots created or updated.
+	 */
+	public List<TimeSlot> getTimeSlots() {
+		return timeSlots;
+	}
+
+	/**
+	 * The ids of the time slots removed.
+	 */
+	public List<Long> getDeletedTimeSlots() {
+		return deletedTimeSlots;
+	}
+
+	/**
+	 * The ids of the sessions the attendee added to their favorites.
+	 */
+	public List<Integer> getFavorites() {
+		return favorites;
+	}
+
+	/**
+	 * The ids of the sessions the attendee removed from their favorites.
+	 */
+	public List<Integer> getUnfavorites() {
+		return unfavorites;
+	}
+
+	/**
+	 * A session, referring to its time slot, room, and leaders by id.
+	 */
+	public static final class Session {
+
+		private final Integer id;
+
+		private final String title;
+
+		private final String description;
+
+		private final String hashtag;
+
+		private final String track;
+
+		private final Long timeSlot;
+
+		private final Long venue;
+
+		private final Integer room;
+
+		private final List<Long> leaders;
+
+		public Session(Integer id, String title, String description, String hashtag, String track, Long timeSlot,
+				Long venue, Integer room, List<Long> leaders) {
+			this.id = id;
+			this.title = title;
+			this.description = description;
+			this.hashtag = hashtag;
+			this.track = track;
+			this.timeSlot = timeSlot;
+			this.venue = venue;
+			this.room = room;
+			this.leaders = leaders;
+		}
+
+		public Integer getId() {
+			return id;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public String getHashtag() {
+			return hashtag;
+		}
+
+		public String getTrack() {
+			return track;
+		}
+
+		public Long getTimeSlot() {
+			return timeSlot;
+		}
+
+		public Long getVenue() {
+			return venue;
+		}
+
+		public Integer getRoom() {
+			return room;
+		}
+
+		/**
+		 * The ids of the session's leaders, in rank order.
+		 */
+		public List<Long> getLeaders() {
+			return leaders;
+		}
+
+	}
+
+	/**
+	 * A time slot, with its start and end times in milliseconds since the epoch.
+	 */
+	public static final class TimeSlot {
+
+		private final Long id;
+
+		private final String label;
+
+		private final long startTime;
+
+		private final long endTime;
+
+		public TimeSlot(Long id, String label, long startTime, long endTime) {
+			this.id = id;
+			this.label = label;
+			this.startTime = startTime;
+			this.endTime = endTime;
+		}
+
+		public Long getId() {
+			return id;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		public long getStartTime() {
+			return startTime;
+		}
+
+		public long getEndTime() {
+			return endTime;
+		}
+
+	}
+
+}
@@ -34,6 +34,39 @@ public interface EventRepository {
 	 */
 	List<Event> findUpcomingEvents(Long clientTime);
 
+	/**
+	 * Get a page of the events that are coming up soon relative to the client's time.
+	 * Pages are keyed by Event start time and id, so a page stays stable as Events are added to or removed from earlier pages.
+	 * @param clientTime the time on the client device; may be intentionally set to a date in the past or future
+	 * @param cursor the {@link Page#getNextCursor() next cursor} of the previous page; null for the first page
+	 * @param pageSize the maximum number of Events to return; implementations may cap it
+	 * @return a page of the Events coming up, sorted ascending by their start time
+	 * @throws InvalidPageCursorException the cursor was not returned by a previous page
+	 */
+	Page<Event> findUpcomingEvents(Long clientTime, String cursor, int pageSize);
+
+	/**
+	 * Get the version of the events coming up relative to the client's time.
+	 * The version changes whenever the list returned by {@link #findUpcomingEvents(Long)} for the same client time would change,
+	 * and can be read without reading the Events themselves.
+	 * @param clientTime the time on the client device; may be intentionally set to a date in the past or future
+	 */
+	EventVersion findUpcomingEventsVersion(Long clientTime);
+
+	/**
+	 * Get the version of an event's schedule, session ratings, and favorites.
+	 * The version changes whenever the Event's sessions on any day, or any attendee's favorites at the Event, change.
+	 * @param eventId the internal Event identifier
+	 */
+	EventVersion findEventVersion(Long eventId);
+
+	/**
+	 * Get the version of an event's schedule as loaded: its sessions and their leaders.
+	 * Unlike {@link #findEventVersion(Long)}, the version does not change when sessions are rated or favorited.
+	 * @param eventId the internal Event identifier
+	 */
+	EventVersion findScheduleVersion(Long eventId);
+
 	/**
 	 * Get the details of an event.
 	 * Used to show Event details in a web browser at a friendly URL such as /events/2010/10/chicago.
@@ -67,6 +100,37 @@ public interface EventRepository {
 	 */
 	List<EventSession> findSessionsOnDay(Long eventId, LocalDate day, Long attendeeId);
 
+	/**
+	 * Get a page of the sessions that occur on a day for an attendee.
+	 * Pages are keyed by session start time and session id.
+	 * @param eventId the internal Event identifier
+	 * @param day the day an attendee
+	 * @param attendeeId the id of the member making the request; used to calculate Session favorite information
+	 * @param cursor the {@link Page#getNextCursor() next cursor} of the previous page; null for the first page
+	 * @param pageSize the maximum number of sessions to return; implementations may cap it
+	 * @return a page of the EventSessions on the day specified, sorted ascending by start time
+	 * @throws InvalidPageCursorException the cursor was not returned by a previous page
+	 */
+	Page<EventSession> findSessionsOnDay(Long eventId, LocalDate day, Long attendeeId, String cursor, int pageSize);
+
+	/**
+	 * Get the details of a session: its description and its leaders' profiles.
+	 * Session lists carry a summary of each session without these.
+	 * @param eventId the internal Event identifier
+	 * @param sessionId the internal session id, unique relative to the event
+	 * @throws EventSessionNotFoundException there is no such session
+	 */
+	EventSessionDetail findSessionDetail(Long eventId, Integer sessionId);
+
+	/**
+	 * Search the Event, its sessions, and its session leaders.
+	 * Each word of the query must match a word of a result, or the start of one.
+	 * @param eventId the internal Event identifier
+	 * @param query the words to search for
+	 * @return the best matches, best first; implementations may cap the number returned
+	 */
+	List<EventSearchResult> search(Long eventId, String query);
+
 	/**
 	 * Get the favorite sessions at this Event.
 	 * Attendees had previously marked these sessions as their favorites, typically after reviewing the session schedule by day.
@@ -76,6 +140,16 @@ public interface EventRepository {
 	 */
 	List<EventSession> findEventFavorites(Long eventId, Long attendeeId);
 
+	/**
+	 * Get the sessions attendees who favorited a session also favorited.
+	 * Sessions the attendee already marked as favorites are left out.
+	 * @param eventId the internal Event identifier
+	 * @param sessionId the internal session id, unique relative to the event
+	 * @param attendeeId the id of the attendee's member account
+	 * @return the recommended sessions, sorted by the number of attendees who favorited them together with the session
+	 */
+	List<EventSession> findRecommendedSessions(Long eventId, Integer sessionId, Long attendeeId);
+
 	/**
 	 * Get the attendee's favorite sessions.
 	 * The attendee had previously marked these sessions as his or her favorites, typically after reviewing the session schedule by day.
@@ -85,6 +159,18 @@ public interface EventRepository {
 	 */
 	List<EventSession> findAttendeeFavorites(Long eventId, Long attendeeId);
 
+	/**
+	 * Get a page of the attendee's favorite sessions.
+	 * Pages are keyed by session start time and session id.
+	 * @param eventId the internal Event identifier
+	 * @param attendeeId the id of the attendee's member account
+	 * @param cursor the {@link Page#getNextCursor() next cursor} of the previous page; null for the first page
+	 * @param pageSize the maximum number of sessions to return; implementations may cap it
+	 * @return a page of the attendee favorites, sorted ascending by start time
+	 * @throws InvalidPageCursorException the cursor was not returned by a previous page
+	 */
+	Page<EventSession> findAttendeeFavorites(Long eventId, Long attendeeId, String cursor, int pageSize);
+
 	/**
 	 * Toggle the attendee's favorite status for a session.
 	 * @param eventId the internal event id
@@ -94,6 +180,23 @@ public interface EventRepository {
 	 */
 	boolean toggleFavorite(Long eventId, Integer sessionId, Long attendeeId);
 
+	/**
+	 * Get the pairs of the attendee's favorite sessions that overlap in time.
+	 * @param eventId the internal Event identifier
+	 * @param attendeeId the id of the attendee's member account
+	 * @return the overlapping pairs, ordered by the start time of the earlier session
+	 */
+	List<FavoriteConflict> findFavoriteConflicts(Long eventId, Long attendeeId);
+
+	/**
+	 * Get the attendee's favorite sessions that overlap a session.
+	 * @param eventId the internal Event identifier
+	 * @param sessionId the internal session id, unique relative to the event
+	 * @param attendeeId the id of the attendee's member account
+	 * @return the ids of the overlapping favorites, other than the session itself, sorted by start time
+	 */
+	List<Integer> findConflictingFavorites(Long eventId, Integer sessionId, Long attendeeId);
+
 	/**
 	 * Rate a session on behalf of an attendee.
 	 * @param eventId the internal id of the event
@@ -104,5 +207,36 @@ public interface EventRepository {
 	 * @throws RatingPeriodClosedException the rating period for the session is not open
 	 */
 	Float rate(Long eventId, Integer sessionId, Long attendeeId, Rating rating) throws RatingPeriodClosedException;
+
+	/**
+	 * Get how many attendees gave a session each rating.
+	 * @param eventId the internal Event identifier
+	 * @param sessionId the internal session id, unique relative to the event
+	 * @throws org.springframework.dao.EmptyResultDataAccessException there is no such session
+	 */
+	RatingHistogram findRatingHistogram(Long eventId, Integer sessionId);
+
+	/**
+	 * Get a page of the comments attendees left when rating a session.
+	 * Pages are keyed by rating time and attendee; ratings without a comment are left out.
+	 * @param eventId the internal Event identifier
+	 * @param sessionId the internal session id, unique relative to the event
+	 * @param cursor the {@link Page#getNextCursor() next cursor} of the previous page; null for the first page
+	 * @param pageSize the maximum number of comments to return; implementations may cap it
+	 * @return a page of the comments, most recent first
+	 * @throws InvalidPageCursorException the cursor was not returned by a previous page
+	 */
+	Page<RatingComment> findRatingComments(Long eventId, Integer sessionId, String cursor, int pageSize);
+
+	/**
+	 * Get the changes to the Event's schedule, and to the attendee's favorites, since a watermark.
+	 * Sessions, time slots, and session leaders changed are included for every attendee; favorites only for this attendee.
+	 * @param eventId the internal Event identifier
+	 * @param attendeeId the id of the attendee's member account
+	 * @param watermark the {@link EventDelta#getWatermark() watermark} of the previous delta; 0 for every change recorded
+	 * @param favoritesWatermark the {@link EventDelta#getFavoritesWatermark() favorites watermark} of the previous delta; 0 for every change recorded
+	 * @return the rows changed since the watermarks, with tombstones for rows removed
+	 */
+	EventDelta findChangesSince(Long eventId, Long attendeeId, long watermark, long favoritesWatermark);
 		
 }
\ No newline at end of file
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.springsource.greenhouse.events.EventSearchResult.Type;
+
+/**
+ * Per-Event inverted index of the text of the Event, its sessions, and its session leaders.
+ * Text is split into lower-case tokens of letters and digits; each token's postings record how often it occurs in each document,
+ * weighted by the field it occurs in, so a title match counts for more than a description match.
+ * Every query token must match a document, either exactly or as the prefix of a longer token; matches are ranked by BM25 score,
+ * with prefix matches scoring half as much as exact ones.
+ * An Event's index is built on first access and then updated one document at a time as the Event, its sessions, or its leaders change;
+ * concurrent requests wait on a single build.
+ * Subclasses decide how documents are loaded.
+ */
+abstract class EventSearchIndex {
+
+	private final ConcurrentMap<Long, FutureTask<Index>> events = new ConcurrentHashMap<Long, FutureTask<Index>>();
+
+	private final AtomicLong loads = new AtomicLong();
+
+	/**
+	 * The documents matching every token of the query, best match first.
+	 * @param max the maximum number of results to return
+	 * @return the matches; empty if the query has no tokens
+	 */
+	public List<EventSearchResult> search(Long eventId, String query, int max) {
+		List<String> tokens = tokenize(query);
+		if (tokens.isEmpty() || max <= 0) {
+			return Collections.emptyList();
+		}
+		return get(eventId).search(tokens, max);
+	}
+
+	/**
+	 * Reindexes the Event's own document, if the Event's index is built.
+	 */
+	public void eventChanged(Long eventId) {
+		Index index = getIfBuilt(eventId);
+		if (index != null) {
+			index.put(Type.EVENT, eventId, loadEvent(eventId));
+		}
+	}
+
+	/**
+	 * Reindexes a session's document, if the Event's index is built.
+	 * Leaders of the session not yet in the index are added.
+	 */
+	public void sessionChanged(Long eventId, Integer sessionId) {
+		Index index = getIfBuilt(eventId);
+		if (index == null) {
+			return;
+		}
+		Document session = loadSession(eventId, sessionId);
+		index.put(Type.SESSION, sessionId.longValue(), session);
+		if (session != null) {
+			for (Long leaderId : session.leaderIds) {
+				if (!index.contains(Type.LEADER, leaderId)) {
+					index.put(Type.LEADER, leaderId, loadLeader(leaderId));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reindexes a leader's document, and the documents of the sessions the leader leads, in every built index the leader appears in.
+	 */
+	public void leaderChanged(Long leaderId) {
+		for (Map.Entry<Long, FutureTask<Index>> entry : events.entrySet()) {
+			Index index = getIfBuilt(entry.getKey());
+			if (index == null || !index.contains(Type.LEADER, leaderId)) {
+				continue;
+			}
+			index.put(Type.LEADER, leaderId, loadLeader(leaderId));
+			for (Long sessionId : index.sessionsLedBy(leaderId)) {
+				index.put(Type.SESSION, sessionId, loadSession(entry.getKey(), sessionId.intValue()));
+			}
+		}
+	}
+
+	/**
+	 * Discards the Event's index; it is built again on next access.
+	 */
+	public void invalidate(Long eventId) {
+		events.remove(eventId);
+	}
+
+	/**
+	 * The number of times an Event's index was built.
+	 */
+	public long getLoadCount() {
+		return loads.get();
+	}
+
+	/**
+	 * Splits text into lower-case tokens of consecutive letters and digits.
+	 */
+	static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<String>();
+		if (text == null) {
+			return tokens;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (tokenChar && start < 0) {
+				start = i;
+			} else if (!tokenChar && start >= 0) {
+				tokens.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	// subclassing hooks
+
+	/**
+	 * Load the documents of the Event, its sessions, and the leaders of its sessions.
+	 */
+	protected abstract List<Document> loadDocuments(Long eventId);
+
+	/**
+	 * Load the Event's document; null if the Event no longer exists.
+	 */
+	protected abstract Document loadEvent(Long eventId);
+
+	/**
+	 * Load a session's document, recording the ids of its leaders; null if the session no longer exists.
+	 */
+	protected abstract Document loadSession(Long eventId, Integer sessionId);
+
+	/**
+	 * Load a leader's document; null if the leader no longer exists.
+	 */
+	protected abstract Document loadLeader(Long leaderId);
+
+	/**
+	 * The text of an Event, session, or leader, as weighted fields.
+	 */
+	static final class Document {
+
+		private final Type type;
+
+		private final long id;
+
+		private final String title;
+
+		private final List<String> texts = new ArrayList<String>();
+
+		private final List<Integer> weights = new ArrayList<Integer>();
+
+		private final List<Long> leaderIds = new ArrayList<Long>();
+
+		public Document(Type type, long id, String title) {
+			this.type = type;
+			this.id = id;
+			this.title = title;
+		}
+
+		/**
+		 * Adds a field's text; each token in it counts weight times. Null text is ignored.
+		 */
+		public Document field(String text, int weight) {
+			if (text != null) {
+				texts.add(text);
+				weights.add(weight);
+			}
+			return this;
+		}
+
+		/**
+		 * Records a leader of a session document.
+		 */
+		public Document leader(long leaderId) {
+			if (!leaderIds.contains(leaderId)) {
+				leaderIds.add(leaderId);
+			}
+			return this;
+		}
+
+	}
+
+	// internal helpers
+
+	private Index get(final Long eventId) {
+		FutureTask<Index> task = events.get(eventId);
+		if (task == null) {
+			FutureTask<Index> newTask = new FutureTask<Index>(new Callable<Index>() {
+				public Index call() {
+					return new Index(loadDocuments(eventId));
+				}
+			});
+			task = events.putIfAbsent(eventId, newTask);
+			if (task == null) {
+				task = newTask;
+				loads.incrementAndGet();
+				task.run();
+			}
+		}
+		return get(eventId, task);
+	}
+
+	private Index getIfBuilt(Long eventId) {
+		FutureTask<Index> task = events.get(eventId);
+		return task != null ? get(eventId, task) : null;
+	}
+
+	private Index get(Long eventId, FutureTask<Index> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for the search index of event " + eventId, e);
+		} catch (ExecutionException e) {
+			events.remove(eventId, task);
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Unable to load the search index of event " + eventId, e.getCause());
+		}
+	}
+
+	/**
+	 * An Event's documents and the postings of their tokens.
+	 * Tokens are sorted so the tokens a query token prefixes form one contiguous range.
+	 */
+	private static final class Index {
+
+		private static final float K1 = 1.2f;
+
+		private static final float B = 0.75f;
+
+		private static final float PREFIX_BOOST = 0.5f;
+
+		private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+
+		private final TreeMap<String, Map<Entry, Integer>> postings = new TreeMap<String, Map<Entry, Integer>>();
+
+		private long totalLength;
+
+		public Index(List<Document> documents) {
+			for (Document document : documents) {
+				add(document);
+			}
+		}
+
+		public synchronized boolean contains(Type type, long id) {
+			return entries.containsKey(key(type, id));
+		}
+
+		public synchronized List<Long> sessionsLedBy(Long leaderId) {
+			List<Long> sessionIds = new ArrayList<Long>();
+			for (Entry entry : entries.values()) {
+				if (entry.document.type == Type.SESSION && entry.document.leaderIds.contains(leaderId)) {
+					sessionIds.add(entry.document.id);
+				}
+			}
+			return sessionIds;
+		}
+
+		/**
+		 * Replaces the document of the type and id; a null document removes it.
+		 */
+		public synchronized void put(Type type, long id, Document document) {
+			Entry entry = entries.remove(key(type, id));
+			if (entry != null) {
+				remove(entry);
+			}
+			if (document != null) {
+				add(document);
+			}
+		}
+
+		public synchronized List<EventSearchResult> search(List<String> tokens, int max) {
+			Map<Entry, Float> scores = null;
+			float averageLength = entries.isEmpty() ? 1 : (float) totalLength / entries.size();
+			for (String token : tokens) {
+				Map<Entry, Float> tokenScores = score(token, averageLength, scores);
+				if (scores != null) {
+					for (Map.Entry<Entry, Float> score : tokenScores.entrySet()) {
+						score.setValue(score.getValue() + scores.get(score.getKey()));
+					}
+				}
+				scores = tokenScores;
+				if (scores.isEmpty()) {
+					return Collections.emptyList();
+				}
+			}
+			PriorityQueue<Match> top = new PriorityQueue<Match>(max + 1);
+			for (Map.Entry<Entry, Float> score : scores.entrySet()) {
+				top.add(new Match(score.getKey().document, score.getValue()));
+				if (top.size() > max) {
+					top.poll();
+				}
+			}
+			List<Match> sorted = new ArrayList<Match>(top);
+			Collections.sort(sorted, Collections.reverseOrder());
+			List<EventSearchResult> results = new ArrayList<EventSearchResult>(sorted.size());
+			for (Match match : sorted) {
+				results.add(new EventSearchResult(match.document.type, match.document.id, match.document.title, match.score));
+			}
+			return results;
+		}
+
+		/**
+		 * Scores the documents a token matches, keeping each document's best scoring match.
+		 * @param candidates if not null, only these documents are scored
+		 */
+		private Map<Entry, Float> score(String token, float averageLength, Map<Entry, Float> candidates) {
+			Map<Entry, Float> scores = new HashMap<Entry, Float>();
+			for (Map.Entry<String, Map<Entry, Integer>> term : postings.subMap(token, token + Character.MAX_VALUE).entrySet()) {
+				Map<Entry, Integer> documents = term.getValue();
+				float idf = (float) Math.log(1 + (entries.size() - documents.size() + 0.5) / (documents.size() + 0.5));
+				float boost = term.getKey().length() == token.length() ? 1 : PREFIX_BOOST;
+				for (Map.Entry<Entry, Integer> posting : documents.entrySet()) {
+					Entry entry = posting.getKey();
+					if (candidates != null && !candidates.containsKey(entry)) {
+						continue;
+					}
+					int frequency = posting.getValue();
+					float score = boost * idf * frequency * (K1 + 1)
+							/ (frequency + K1 * (1 - B + B * entry.length / averageLength));
+					Float best = scores.get(entry);
+					if (best == null || score > best) {
+						scores.put(entry, score);
+					}
+				}
+			}
+			return scores;
+		}
+
+		private void add(Document document) {
+			Entry entry = new Entry(document);
+			for (int i = 0; i < document.texts.size(); i++) {
+				int weight = document.weights.get(i);
+				for (String token : tokenize(document.texts.get(i))) {
+					Integer frequency = entry.frequencies.get(token);
+					entry.frequencies.put(token, frequency != null ? frequency + weight : weight);
+					entry.length += weight;
+				}
+			}
+			for (Map.Entry<String, Integer> frequency : entry.frequencies.entrySet()) {
+				Map<Entry, Integer> documents = postings.get(frequency.getKey());
+				if (documents == null) {
+					documents = new HashMap<Entry, Integer>();
+					postings.put(frequency.getKey(), documents);
+				}
+				documents.put(entry, frequency.getValue());
+			}
+			entries.put(key(document.type, document.id), entry);
+			totalLength += entry.length;
+		}
+
+		private void remove(Entry entry) {
+			for (String token : entry.frequencies.keySet()) {
+				Map<Entry, Integer> documents = postings.get(token);
+				documents.remove(entry);
+				if (documents.isEmpty()) {
+					postings.remove(token);
+				}
+			}
+			totalLength -= entry.length;
+		}
+
+		private static Long key(Type type, long id) {
+			return ((long) type.ordinal() << 56) | id;
+		}
+
+	}
+
+	/**
+	 * An indexed document with the weighted frequency of each of its tokens.
+	 * Entries are compared by identity, so a reindexed document never shares postings with the entry it replaced.
+	 */
+	private static final class Entry {
+
+		private final Document document;
+
+		private final Map<String, Integer> frequencies = new HashMap<String, Integer>();
+
+		private int length;
+
+		public Entry(Document document) {
+			this.document = document;
+		}
+
+	}
+
+	/**
+	 * Orders worst match first, so the head of a bounded priority queue is the one to drop.
+	 */
+	private static final class Match implements Comparable<Match> {
+
+		private final Document document;
+
+		private final float score;
+
+		public Match(Document document, float score) {
+			this.document = document;
+			this.score = score;
+		}
+
+		public int compareTo(Match other) {
+			if (score != other.score) {
+				return score < other.score ? -1 : 1;
+			}
+			if (document.type != other.document.type) {
+				return other.document.type.compareTo(document.type);
+			}
+			return document.id < other.document.id ? 1 : (document.id == other.document.id ? 0 : -1);
+		}
+
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+/**
+ * An Event, session, or session leader matching a search of an Event.
+ */
+public final class EventSearchResult {
+
+	/**
+	 * The kinds of Event data a search matches.
+	 */
+	public enum Type {
+		EVENT, SESSION, LEADER
+	}
+
+	private final Type type;
+
+	private final Long id;
+
+	private final String title;
+
+	private final float score;
+
+	public EventSearchResult(Type type, Long id, String title, float score) {
+		this.type = type;
+		this.id = id;
+		this.title = title;
+		this.score = score;
+	}
+
+	/**
+	 * What kind of data matched.
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * The id of the Event, the session id relative to the Event, or the Leader id.
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * The Event or session title, or the Leader's name.
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * How well the result matched; results with higher scores are better matches.
+	 */
+	public float getScore() {
+		return score;
+	}
+
+}
@@ -21,6 +21,8 @@ import java.util.List;
 
 import org.joda.time.DateTime;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import com.springsource.greenhouse.utils.SubResourceReference;
 
 /**
@@ -124,7 +126,9 @@ public class EventSession {
 	 * A paragraph description of the session that describes the scope of what's
 	 * covered and how attendees will benefit.
 	 * セッションの説明文。カバーされる範囲と参加者がどのように利益を得るかを説明します。
+	 * Null in session lists, which carry only a summary of each session; see {@link EventSessionDetail}.
 	 */
+	@JsonInclude(JsonInclude.Include.NON_NULL)
 	public String getDescription() {
 		return description;
 	}
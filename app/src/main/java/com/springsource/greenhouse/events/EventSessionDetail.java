@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The long-form details of an EventSession: its description and its leaders' bios.
+ * Session lists carry only a summary of each session; a client reads the details when a session is opened.
+ */
+public class EventSessionDetail {
+
+	private final Integer id;
+
+	private final String title;
+
+	private final String description;
+
+	private final String hashtag;
+
+	private final String track;
+
+	private final List<Leader> leaders = new ArrayList<Leader>();
+
+	public EventSessionDetail(Integer id, String title, String description, String hashtag, String track) {
+		this.id = id;
+		this.title = title;
+		this.description = description;
+		this.hashtag = hashtag;
+		this.track = track;
+	}
+
+	/**
+	 * The internal id of the session, unique relative to the Event.
+	 */
+	public Integer getId() {
+		return id;
+	}
+
+	/**
+	 * The title of the session.
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * A paragraph description of the session that describes the scope of what's covered and how attendees will benefit.
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * The hashtag used to identify the Twitter conversation covering this session.
+	 */
+	public String getHashtag() {
+		return hashtag;
+	}
+
+	/**
+	 * The track the session belongs to; may be null.
+	 */
+	public String getTrack() {
+		return track;
+	}
+
+	/**
+	 * The people leading this session, in rank order.
+	 */
+	public List<Leader> getLeaders() {
+		return Collections.unmodifiableList(leaders);
+	}
+
+	/**
+	 * Add a session leader.
+	 * This is called when building the object and should not be called after that.
+	 */
+	public void addLeader(Leader leader) {
+		leaders.add(leader);
+	}
+
+	/**
+	 * A session leader's profile.
+	 */
+	public static class Leader {
+
+		private final Long id;
+
+		private final String name;
+
+		private final String company;
+
+		private final String title;
+
+		private final String location;
+
+		private final String bio;
+
+		private final String personalUrl;
+
+		private final String twitterUsername;
+
+		public Leader(Long id, String name, String company, String title, String location, String bio,
+				String personalUrl, String twitterUsername) {
+			this.id = id;
+			this.name = name;
+			this.company = company;
+			this.title = title;
+			this.location = location;
+			this.bio = bio;
+			this.personalUrl = personalUrl;
+			this.twitterUsername = twitterUsername;
+		}
+
+		public Long getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getCompany() {
+			return company;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public String getLocation() {
+			return location;
+		}
+
+		/**
+		 * A paragraph about the leader.
+		 */
+		public String getBio() {
+			return bio;
+		}
+
+		public String getPersonalUrl() {
+			return personalUrl;
+		}
+
+		public String getTwitterUsername() {
+			return twitterUsername;
+		}
+
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a request refers to a session that the Event does not have.
+ */
+@SuppressWarnings("serial")
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public final class EventSessionNotFoundException extends IllegalArgumentException {
+
+	private final Long eventId;
+
+	private final Integer sessionId;
+
+	public EventSessionNotFoundException(Long eventId, Integer sessionId) {
+		super("No session " + sessionId + " at event " + eventId);
+		this.eventId = eventId;
+		this.sessionId = sessionId;
+	}
+
+	/**
+	 * The internal identifier of the Event.
+	 */
+	public Long getEventId() {
+		return eventId;
+	}
+
+	/**
+	 * The session id that was not found, relative to the Event.
+	 */
+	public Integer getSessionId() {
+		return sessionId;
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.sql.Timestamp;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Converts the times Event data is stored with to UTC.
+ * Times are stored as wall-clock times in the Event's time zone.
+ * A conversion is offset arithmetic on the timestamp's millis, without intermediate date-time objects,
+ * and time zone ids read from result sets are resolved once and cached.
+ */
+final class EventTimes {
+
+	private static final ConcurrentMap<String, DateTimeZone> timeZones = new ConcurrentHashMap<String, DateTimeZone>();
+
+	/**
+	 * The time zone with the specified id.
+	 * @throws IllegalArgumentException the id is not recognised
+	 */
+	public static DateTimeZone timeZone(String id) {
+		DateTimeZone timeZone = timeZones.get(id);
+		if (timeZone == null) {
+			timeZone = DateTimeZone.forID(id);
+			timeZones.put(id, timeZone);
+		}
+		return timeZone;
+	}
+
+	/**
+	 * The instant, in milliseconds since the epoch, of a time stored as wall-clock time in the Event's time zone.
+	 */
+	public static long toUtcMillis(Timestamp timestamp, DateTimeZone eventTimeZone) {
+		return DateTimeZone.getDefault().getMillisKeepLocal(eventTimeZone, timestamp.getTime());
+	}
+
+	/**
+	 * The UTC date-time of a time stored as wall-clock time in the Event's time zone.
+	 */
+	public static DateTime toUtc(Timestamp timestamp, DateTimeZone eventTimeZone) {
+		return new DateTime(toUtcMillis(timestamp, eventTimeZone), DateTimeZone.UTC);
+	}
+
+	private EventTimes() {
+	}
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+/**
+ * The version of some Event data as last changed, used to answer conditional requests without reading the data itself.
+ * Two versions with the same tag describe byte-identical data.
+ */
+public final class EventVersion {
+
+	private final String tag;
+
+	private final long lastModified;
+
+	public EventVersion(String tag, long lastModified) {
+		this.tag = tag;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * An opaque tag that changes whenever the data changes; suitable for use as a strong entity tag.
+	 */
+	public String getTag() {
+		return tag;
+	}
+
+	/**
+	 * The time the data last changed, in milliseconds since the epoch.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * The version of this data as seen by a single attendee, for data that also depends on who is asking.
+	 * @param attendeeId the id of the attendee's member account
+	 */
+	public EventVersion forAttendee(Long attendeeId) {
+		return new EventVersion(tag + "-" + attendeeId, lastModified);
+	}
+
+	@Override
+	public String toString() {
+		return tag;
+	}
+
+}
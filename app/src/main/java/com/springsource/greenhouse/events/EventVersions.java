@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * In-memory version counters for Event data, bumped whenever a change is written.
+ * Versions are drawn from a single sequence, so a version never repeats while this instance lives;
+ * each tag also carries the time the instance was created, so tags issued before a restart are never matched again.
+ * An Event never changed since then reports the creation time as its last modification.
+ */
+final class EventVersions {
+
+	private final String epoch;
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final ConcurrentMap<Long, Stamp> eventStamps = new ConcurrentHashMap<Long, Stamp>();
+
+	private final ConcurrentMap<Long, Stamp> scheduleStamps = new ConcurrentHashMap<Long, Stamp>();
+
+	private volatile Stamp allEventsStamp;
+
+	private volatile Stamp upcomingEventsStamp;
+
+	public EventVersions() {
+		long now = System.currentTimeMillis();
+		this.epoch = Long.toString(now, Character.MAX_RADIX);
+		this.allEventsStamp = new Stamp(0, now);
+		this.upcomingEventsStamp = allEventsStamp;
+	}
+
+	/**
+	 * The version of the Event's details, schedule, ratings, and favorites.
+	 */
+	public EventVersion getEventVersion(Long eventId) {
+		Stamp stamp = eventStamps.get(eventId);
+		Stamp all = allEventsStamp;
+		return version(stamp != null && stamp.sequence > all.sequence ? stamp : all, "e" + eventId);
+	}
+
+	/**
+	 * The version of the Event's schedule as loaded: its sessions and their leaders, but not their ratings or favorites.
+	 */
+	public EventVersion getScheduleVersion(Long eventId) {
+		Stamp stamp = scheduleStamps.get(eventId);
+		Stamp all = allEventsStamp;
+		return version(stamp != null && stamp.sequence > all.sequence ? stamp : all, "s" + eventId);
+	}
+
+	/**
+	 * The version of the list of upcoming Events.
+	 */
+	public EventVersion getUpcomingEventsVersion() {
+		return version(upcomingEventsStamp, "u");
+	}
+
+	/**
+	 * Records a change to the Event's schedule, ratings, or favorites.
+	 */
+	public void eventDataChanged(Long eventId) {
+		eventStamps.merge(eventId, nextStamp(), LATEST);
+	}
+
+	/**
+	 * Records a change to the Event's schedule, which is also part of the Event's data.
+	 */
+	public void scheduleChanged(Long eventId) {
+		Stamp stamp = nextStamp();
+		scheduleStamps.merge(eventId, stamp, LATEST);
+		eventStamps.merge(eventId, stamp, LATEST);
+	}
+
+	/**
+	 * Records a change to the Event's own details, which also appear in the list of upcoming Events.
+	 */
+	public synchronized void eventChanged(Long eventId) {
+		Stamp stamp = nextStamp();
+		eventStamps.merge(eventId, stamp, LATEST);
+		upcomingEventsStamp = stamp;
+	}
+
+	/**
+	 * Records a change that may affect every Event.
+	 */
+	public synchronized void allEventsChanged() {
+		allEventsStamp = nextStamp();
+	}
+
+	// internal helpers
+
+	private Stamp nextStamp() {
+		return new Stamp(sequence.incrementAndGet(), System.currentTimeMillis());
+	}
+
+	private EventVersion version(Stamp stamp, String scope) {
+		return new EventVersion(epoch + "-" + scope + "-" + stamp.sequence, stamp.time);
+	}
+
+	private static final BiFunction<Stamp, Stamp, Stamp> LATEST = new BiFunction<Stamp, Stamp, Stamp>() {
+		public Stamp apply(Stamp s1, Stamp s2) {
+			return s1.sequence > s2.sequence ? s1 : s2;
+		}
+	};
+
+	private static final class Stamp {
+
+		private final long sequence;
+
+		private final long time;
+
+		public Stamp(long sequence, long time) {
+			this.sequence = sequence;
+			this.time = time;
+		}
+
+	}
+
+}
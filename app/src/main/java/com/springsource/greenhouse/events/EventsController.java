@@ -15,16 +15,24 @@
  */
 package com.springsource.greenhouse.events;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.social.twitter.api.SearchResults;
 import org.springframework.social.twitter.api.Twitter;
@@ -39,6 +47,8 @@ import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import com.springsource.greenhouse.account.Account;
 import com.springsource.greenhouse.utils.Location;
@@ -55,10 +65,20 @@ public class EventsController {
 
 	private final Twitter twitter;
 
+	private final TweetSearchCache tweetSearchCache;
+
+	private final TweetDispatcher tweetDispatcher;
+
+	private final EventBundleService eventBundleService;
+
 	@Inject
-	public EventsController(EventRepository eventRepository, Twitter twitter) {
+	public EventsController(EventRepository eventRepository, Twitter twitter, TweetSearchCache tweetSearchCache,
+			TweetDispatcher tweetDispatcher, EventBundleService eventBundleService) {
 		this.eventRepository = eventRepository;
 		this.twitter = twitter;
+		this.tweetSearchCache = tweetSearchCache;
+		this.tweetDispatcher = tweetDispatcher;
+		this.eventBundleService = eventBundleService;
 	}
 
 	// for web service (JSON) clients
@@ -67,28 +87,105 @@ public class EventsController {
 	 * Writes a list of events to the response body in JSON format.
 	 * Matches only 'GET /events' requests and returns JSON content.
 	 * Otherwise sends 404.
+	 * Sends 304 if the client's copy of the list is still current.
 	 * TODO: Send 406 if unsupported representation (e.g., XML) is requested.
 	 * See SPR-7353.
 	 */
 	@GetMapping(value = "/events", produces = "application/json")
 	public List<Event> upcomingEvents(
 			@RequestHeader("Accept") String acceptHeader,
-			@RequestParam(value = "after", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Long afterMillis) {
+			@RequestParam(value = "after", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Long afterMillis,
+			WebRequest request) {
 		checkMediaType(acceptHeader);
+		if (notModified(request, eventRepository.findUpcomingEventsVersion(afterMillis))) {
+			return null;
+		}
 		return eventRepository.findUpcomingEvents(afterMillis);
 	}
 
+	/**
+	 * Writes a page of upcoming events to the response body in JSON format.
+	 * Matches 'GET /events' requests that specify a page size; the next page is requested with the returned cursor.
+	 */
+	@GetMapping(value = "/events", produces = "application/json", params = "pageSize")
+	public Page<Event> upcomingEventsPage(
+			@RequestHeader("Accept") String acceptHeader,
+			@RequestParam(value = "after", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Long afterMillis,
+			@RequestParam(required = false) String cursor, @RequestParam Integer pageSize, WebRequest request) {
+		checkMediaType(acceptHeader);
+		if (notModified(request, eventRepository.findUpcomingEventsVersion(afterMillis))) {
+			return null;
+		}
+		return eventRepository.findUpcomingEvents(afterMillis, cursor, pageSize);
+	}
+
+	/**
+	 * Writes the event's offline bundle, its whole schedule in one JSON document, to the response body.
+	 * The document is gzip-encoded if the client accepts it, and sent decompressed otherwise; the two have different entity tags.
+	 * Sends 304 if the client's copy is still current, and 206 with the requested bytes for a Range request,
+	 * so an interrupted download can be resumed.
+	 */
+	@GetMapping(value = "/events/{eventId}/bundle", produces = "application/json")
+	public ResponseEntity<Resource> bundle(@PathVariable Long eventId,
+			@RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding,
+			WebRequest request, HttpServletResponse response) {
+		EventBundle bundle = eventBundleService.getBundle(eventId);
+		boolean gzip = acceptsGzip(acceptEncoding);
+		response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (request.checkNotModified(gzip ? bundle.getTag() : bundle.getTag() + "-identity", bundle.getLastModified())) {
+			return null;
+		}
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.setCacheControl(CacheControl.maxAge(BUNDLE_MAX_AGE, TimeUnit.SECONDS).mustRevalidate());
+		if (!gzip) {
+			return new ResponseEntity<Resource>(new ByteArrayResource(bundle.getBytes()), headers, HttpStatus.OK);
+		}
+		headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+		if (bundle.getUrl() != null) {
+			headers.set(HttpHeaders.CONTENT_LOCATION, bundle.getUrl());
+		}
+		return new ResponseEntity<Resource>(new ByteArrayResource(bundle.getCompressedBytes()), headers, HttpStatus.OK);
+	}
+
+	/**
+	 * Writes the changes to the event's schedule, and to the attendee's favorites, since the client's watermark to the response body.
+	 * A client syncs by passing back the watermarks of the previous delta; a bundle carries only the schedule watermark.
+	 */
+	@GetMapping(value = "/events/{eventId}/changes", produces = "application/json")
+	public EventDelta changes(@PathVariable Long eventId, @RequestParam(defaultValue = "0") Long since,
+			@RequestParam(defaultValue = "0") Long favoritesSince, Account account) {
+		return eventRepository.findChangesSince(eventId, account.getId(), since, favoritesSince);
+	}
+
+	/**
+	 * Writes the Event, sessions, and session leaders matching a search query to the response body, best match first.
+	 * Sends 304 if the client's copy is still current.
+	 */
+	@GetMapping(value = "/events/{eventId}/search", produces = "application/json")
+	public List<EventSearchResult> search(@PathVariable Long eventId, @RequestParam("q") String query, WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId))) {
+			return null;
+		}
+		return eventRepository.search(eventId, query);
+	}
+
 	/**
 	 * Writes the event's favorite list to the response body.
+	 * Sends 304 if the client's copy is still current.
 	 */
 	@GetMapping(value = "/events/{eventId}/favorites", produces = "application/json")
-	public List<EventSession> favorites(@PathVariable Long eventId, Account account) {
+	public List<EventSession> favorites(@PathVariable Long eventId, Account account, WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId).forAttendee(account.getId()))) {
+			return null;
+		}
 		return eventRepository.findEventFavorites(eventId, account.getId());
 	}
 
 	/**
 	 * Writes a page of tweet search results for an event to the response body.
 	 * Page number and size can be specified by the client. If not specified, returns the first page with 10 results by default.
+	 * Results are shared between clients for a short time; see {@link TweetSearchCache}.
 	 */
 	@GetMapping(value = "/events/{eventId}/tweets", produces = "application/json")
 	public SearchResults tweets(@PathVariable Long eventId, @RequestParam(defaultValue = "1") Integer page,
@@ -96,48 +193,134 @@ public class EventsController {
 		String searchString = eventRepository.findEventSearchString(eventId);
 		if (searchString != null && !searchString.isEmpty()) {
 			// Spring Social 1.1.2 doesn't support page number directly, use pageSize only
-			return twitter.searchOperations().search(searchString, pageSize);
+			return tweetSearchCache.search(twitter.searchOperations(), searchString, pageSize);
 		}
 		return null;
 	}
 
 	/**
-	 * Posts a tweet about an event to Twitter.
-	 * Returns OK status if successful.
+	 * Accepts a tweet about an event for posting to Twitter.
+	 * Returns 202 Accepted with the dispatch status; its progress can be polled at the Location returned.
 	 */
 	@PostMapping(value = "/events/{eventId}/tweets")
-	public ResponseEntity<String> postTweet(@PathVariable Long eventId, @RequestParam String status,
-			Location currentLocation) {
-		twitter.timelineOperations().updateStatus(status);
-		return new ResponseEntity<String>(HttpStatus.OK);
+	public ResponseEntity<TweetDispatch> postTweet(@PathVariable Long eventId, @RequestParam String status,
+			Location currentLocation, Account account) {
+		return accepted(tweetDispatcher.tweet(account.getId(), twitter.timelineOperations(), status));
 	}
 
 	/**
-	 * Retweets another event tweet.
+	 * Accepts a retweet of another event tweet for posting to Twitter.
 	 */
 	@PostMapping(value = "/events/{eventId}/retweet")
-	public ResponseEntity<String> postRetweet(@PathVariable Long eventId, @RequestParam Long tweetId) {
-		twitter.timelineOperations().retweet(tweetId);
-		return new ResponseEntity<String>(HttpStatus.OK);
+	public ResponseEntity<TweetDispatch> postRetweet(@PathVariable Long eventId, @RequestParam Long tweetId,
+			Account account) {
+		return accepted(tweetDispatcher.retweet(account.getId(), twitter.timelineOperations(), tweetId));
+	}
+
+	/**
+	 * Writes the status of a tweet or retweet previously accepted for the member to the response body.
+	 * Sends 404 if the dispatch is unknown.
+	 */
+	@GetMapping(value = "/events/tweets/dispatches/{dispatchId}", produces = "application/json")
+	public ResponseEntity<TweetDispatch> tweetDispatch(@PathVariable String dispatchId, Account account) {
+		TweetDispatch dispatch = tweetDispatcher.getDispatch(account.getId(), dispatchId);
+		if (dispatch == null) {
+			return new ResponseEntity<TweetDispatch>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<TweetDispatch>(dispatch, HttpStatus.OK);
 	}
 
 	/**
 	 * Writes the list of attendee's favorite sessions to the response body.
+	 * Sends 304 if the client's copy is still current.
 	 */
 	@GetMapping(value = "/events/{eventId}/sessions/favorites", produces = "application/json")
-	public List<EventSession> favoriteSessions(@PathVariable Long eventId, Account account) {
+	public List<EventSession> favoriteSessions(@PathVariable Long eventId, Account account, WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId).forAttendee(account.getId()))) {
+			return null;
+		}
 		return eventRepository.findAttendeeFavorites(eventId, account.getId());
 	}
 
+	/**
+	 * Writes the pairs of the attendee's favorite sessions that overlap in time to the response body.
+	 * Sends 304 if the client's copy is still current.
+	 */
+	@GetMapping(value = "/events/{eventId}/sessions/favorites/conflicts", produces = "application/json")
+	public List<FavoriteConflict> favoriteConflicts(@PathVariable Long eventId, Account account, WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId).forAttendee(account.getId()))) {
+			return null;
+		}
+		return eventRepository.findFavoriteConflicts(eventId, account.getId());
+	}
+
+	/**
+	 * Writes a page of the attendee's favorite sessions to the response body.
+	 */
+	@GetMapping(value = "/events/{eventId}/sessions/favorites", produces = "application/json", params = "pageSize")
+	public Page<EventSession> favoriteSessionsPage(@PathVariable Long eventId, Account account,
+			@RequestParam(required = false) String cursor, @RequestParam Integer pageSize, WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId).forAttendee(account.getId()))) {
+			return null;
+		}
+		return eventRepository.findAttendeeFavorites(eventId, account.getId(), cursor, pageSize);
+	}
+
 	/**
 	 * Writes sessions for the specified day to the response body.
+	 * Sends 304 if the client's copy is still current.
 	 */
 	@GetMapping(value = "/events/{eventId}/sessions/{day}", produces = "application/json")
 	public List<EventSession> sessionsOnDay(@PathVariable Long eventId,
-			@PathVariable @DateTimeFormat(iso = ISO.DATE) LocalDate day, Account account) {
+			@PathVariable @DateTimeFormat(iso = ISO.DATE) LocalDate day, Account account, WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId).forAttendee(account.getId()))) {
+			return null;
+		}
 		return eventRepository.findSessionsOnDay(eventId, day, account.getId());
 	}
 
+	/**
+	 * Writes a page of the sessions for the specified day to the response body.
+	 */
+	@GetMapping(value = "/events/{eventId}/sessions/{day}", produces = "application/json", params = "pageSize")
+	public Page<EventSession> sessionsOnDayPage(@PathVariable Long eventId,
+			@PathVariable @DateTimeFormat(iso = ISO.DATE) LocalDate day, Account account,
+			@RequestParam(required = false) String cursor, @RequestParam Integer pageSize, WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId).forAttendee(account.getId()))) {
+			return null;
+		}
+		return eventRepository.findSessionsOnDay(eventId, day, account.getId(), cursor, pageSize);
+	}
+
+	/**
+	 * Writes a session's description and its leaders' profiles to the response body.
+	 * Session lists leave these out; the details are cacheable by clients and sends 304 if the client's copy is still current.
+	 * The details only change with the schedule, so ratings and favorites do not invalidate the client's copy.
+	 */
+	@GetMapping(value = "/events/{eventId}/sessions/{sessionId}/detail", produces = "application/json")
+	public ResponseEntity<EventSessionDetail> sessionDetail(@PathVariable Long eventId, @PathVariable Integer sessionId,
+			WebRequest request) {
+		if (notModified(request, eventRepository.findScheduleVersion(eventId))) {
+			return null;
+		}
+		return ResponseEntity.ok()
+				.cacheControl(CacheControl.maxAge(SESSION_DETAIL_MAX_AGE, TimeUnit.SECONDS).mustRevalidate())
+				.body(eventRepository.findSessionDetail(eventId, sessionId));
+	}
+
+	/**
+	 * Writes the sessions most often favorited together with a session, other than the attendee's favorites, to the response body.
+	 * Sends 304 if the client's copy is still current.
+	 */
+	@GetMapping(value = "/events/{eventId}/sessions/{sessionId}/recommendations", produces = "application/json")
+	public List<EventSession> recommendedSessions(@PathVariable Long eventId, @PathVariable Integer sessionId,
+			Account account, WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId).forAttendee(account.getId()))) {
+			return null;
+		}
+		return eventRepository.findRecommendedSessions(eventId, sessionId, account.getId());
+	}
+
 	/**
 	 * Toggles a session as an attendee's favorite.
 	 * Writes the new favorite status to the response body.
@@ -147,6 +330,19 @@ public class EventsController {
 		return eventRepository.toggleFavorite(eventId, sessionId, account.getId());
 	}
 
+	/**
+	 * Toggles a session as an attendee's favorite.
+	 * Writes the new favorite status, with the attendee's other favorites that overlap the session, to the response body.
+	 */
+	@PutMapping(value = "/events/{eventId}/sessions/{sessionId}/favorite", params = "conflicts")
+	public FavoriteToggle toggleFavoriteWithConflicts(@PathVariable Long eventId, @PathVariable Integer sessionId,
+			Account account) {
+		boolean favorite = eventRepository.toggleFavorite(eventId, sessionId, account.getId());
+		List<Integer> conflicts = favorite ? eventRepository.findConflictingFavorites(eventId, sessionId, account.getId())
+				: Collections.<Integer>emptyList();
+		return new FavoriteToggle(favorite, conflicts);
+	}
+
 	/**
 	 * 出席者がセッションに与えた評価を追加または更新します。
 	 * セッションの新しい平均評価をレスポンスのボディに書き込みます。
@@ -157,6 +353,31 @@ public class EventsController {
 		return eventRepository.rate(eventId, sessionId, account.getId(), new Rating(value, comment));
 	}
 
+	/**
+	 * Writes how many attendees gave the session each rating to the response body.
+	 * Sends 304 if the client's copy is still current.
+	 */
+	@GetMapping(value = "/events/{eventId}/sessions/{sessionId}/ratings", produces = "application/json")
+	public RatingHistogram ratingHistogram(@PathVariable Long eventId, @PathVariable Integer sessionId, WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId))) {
+			return null;
+		}
+		return eventRepository.findRatingHistogram(eventId, sessionId);
+	}
+
+	/**
+	 * Writes a page of the comments attendees left when rating the session to the response body, most recent first.
+	 */
+	@GetMapping(value = "/events/{eventId}/sessions/{sessionId}/ratings/comments", produces = "application/json")
+	public Page<RatingComment> ratingComments(@PathVariable Long eventId, @PathVariable Integer sessionId,
+			@RequestParam(required = false) String cursor, @RequestParam(defaultValue = "20") Integer pageSize,
+			WebRequest request) {
+		if (notModified(request, eventRepository.findEventVersion(eventId))) {
+			return null;
+		}
+		return eventRepository.findRatingComments(eventId, sessionId, cursor, pageSize);
+	}
+
 	/**
 	 * Writes a page of tweet search results for a session to the response body.
 	 */
@@ -166,29 +387,27 @@ public class EventsController {
 		String searchString = eventRepository.findSessionSearchString(eventId, sessionId);
 		if (searchString != null && !searchString.isEmpty()) {
 			// Spring Social 1.1.2 doesn't support page number directly, use pageSize only
-			return twitter.searchOperations().search(searchString, pageSize);
+			return tweetSearchCache.search(twitter.searchOperations(), searchString, pageSize);
 		}
 		return null;
 	}
 
 	/**
-	 * Posts a tweet about a session.
+	 * Accepts a tweet about a session for posting to Twitter.
 	 */
 	@PostMapping(value = "/events/{eventId}/sessions/{sessionId}/tweets")
-	public ResponseEntity<String> postSessionTweet(@PathVariable Long eventId, @PathVariable Integer sessionId,
-			@RequestParam String status, Location currentLocation) {
-		twitter.timelineOperations().updateStatus(status);
-		return new ResponseEntity<String>(HttpStatus.OK);
+	public ResponseEntity<TweetDispatch> postSessionTweet(@PathVariable Long eventId, @PathVariable Integer sessionId,
+			@RequestParam String status, Location currentLocation, Account account) {
+		return accepted(tweetDispatcher.tweet(account.getId(), twitter.timelineOperations(), status));
 	}
 
 	/**
-	 * Retweets a session tweet.
+	 * Accepts a retweet of a session tweet for posting to Twitter.
 	 */
 	@PostMapping(value = "/events/{eventId}/sessions/{sessionId}/retweet")
-	public ResponseEntity<String> postSessionRetweet(@PathVariable Long eventId, @PathVariable Integer sessionId,
-			@RequestParam Long tweetId) {
-		twitter.timelineOperations().retweet(tweetId);
-		return new ResponseEntity<String>(HttpStatus.OK);
+	public ResponseEntity<TweetDispatch> postSessionRetweet(@PathVariable Long eventId, @PathVariable Integer sessionId,
+			@RequestParam Long tweetId, Account account) {
+		return accepted(tweetDispatcher.retweet(account.getId(), twitter.timelineOperations(), tweetId));
 	}
 
 	// for web browser (HTML) clients
@@ -202,6 +421,56 @@ public class EventsController {
 		return "events/list";
 	}
 
+	/**
+	 * Sets the ETag and Last-Modified headers from the version of the data about to be written,
+	 * and answers true if the client's conditional headers show its copy is current, in which case a 304 has been prepared.
+	 */
+	private boolean notModified(WebRequest request, EventVersion version) {
+		return request.checkNotModified(version.getTag(), version.getLastModified());
+	}
+
+	/**
+	 * Whether an Accept-Encoding header accepts gzip with a non-zero quality, by name or else by wildcard.
+	 */
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		Boolean wildcard = null;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			String name = parts[0].trim();
+			if (name.equalsIgnoreCase("gzip")) {
+				return !refused(parts);
+			}
+			if (name.equals("*")) {
+				wildcard = !refused(parts);
+			}
+		}
+		return wildcard != null && wildcard;
+	}
+
+	private static boolean refused(String[] codingParts) {
+		for (int i = 1; i < codingParts.length; i++) {
+			String param = codingParts[i].trim();
+			if (param.startsWith("q=") && param.substring(2).trim().matches("0(\\.0*)?")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final long BUNDLE_MAX_AGE = 300;
+
+	private static final long SESSION_DETAIL_MAX_AGE = 300;
+
+	private ResponseEntity<TweetDispatch> accepted(TweetDispatch dispatch) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setLocation(ServletUriComponentsBuilder.fromCurrentContextPath()
+				.path("/events/tweets/dispatches/{dispatchId}").buildAndExpand(dispatch.getId()).toUri());
+		return new ResponseEntity<TweetDispatch>(dispatch, headers, HttpStatus.ACCEPTED);
+	}
+
 	private void checkMediaType(@RequestHeader("Accept") String acceptHeader) {
 		if (!acceptHeader.contains("application/json")) {
 			throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, "Unsupported media type");
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+/**
+ * Two of an attendee's favorite sessions that overlap in time.
+ */
+public final class FavoriteConflict {
+
+	private final Integer sessionId;
+
+	private final Integer conflictingSessionId;
+
+	public FavoriteConflict(Integer sessionId, Integer conflictingSessionId) {
+		this.sessionId = sessionId;
+		this.conflictingSessionId = conflictingSessionId;
+	}
+
+	/**
+	 * The id of the session that starts first.
+	 */
+	public Integer getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * The id of the session that starts before the first one ends.
+	 */
+	public Integer getConflictingSessionId() {
+		return conflictingSessionId;
+	}
+
+}
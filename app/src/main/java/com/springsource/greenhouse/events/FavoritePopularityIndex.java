@@ -0,0 +1,283 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Live count of how many attendees marked each session of an Event as a favorite.
+ * Counts are striped counters, so concurrent favorite toggles do not contend on a lock.
+ * The most favorited sessions are cached per Event and recomputed from the counters, never from the favorites table, after a count changes.
+ * An Event's counts are seeded from the system of record the first time the Event is used, and may be {@link #reconcileAll() reconciled} with it periodically.
+ * Subclasses decide how the counts are loaded.
+ */
+abstract class FavoritePopularityIndex {
+
+	private static final Logger logger = LoggerFactory.getLogger(FavoritePopularityIndex.class);
+
+	private final int maxFavorites;
+
+	private final ConcurrentMap<Long, EventPopularity> events = new ConcurrentHashMap<Long, EventPopularity>();
+
+	/**
+	 * Creates an index that answers the maxFavorites most favorited sessions of each Event.
+	 */
+	public FavoritePopularityIndex(int maxFavorites) {
+		this.maxFavorites = maxFavorites;
+	}
+
+	/**
+	 * The ids of the Event's most favorited sessions, most favorited first; ties are broken by session id.
+	 * Sessions nobody has favorited are not included.
+	 */
+	public List<Integer> findMostFavorited(Long eventId) {
+		return popularity(eventId).mostFavorited();
+	}
+
+	/**
+	 * The number of attendees who marked the session as a favorite.
+	 */
+	public long getFavoriteCount(Long eventId, Integer sessionId) {
+		LongAdder count = popularity(eventId).counts.get(sessionId);
+		return count != null ? count.sum() : 0;
+	}
+
+	/**
+	 * Ensures the Event's counts are seeded.
+	 * Writers call this before changing the favorites table so the seed does not already include their change.
+	 */
+	public void prepare(Long eventId) {
+		popularity(eventId);
+	}
+
+	/**
+	 * Records a favorite being added or removed.
+	 * Should be called once the change is committed.
+	 */
+	public void favoriteChanged(Long eventId, Integer sessionId, boolean favorite) {
+		popularity(eventId).add(sessionId, favorite ? 1 : -1);
+	}
+
+	/**
+	 * Compares the Event's counts with the system of record and corrects any that drifted.
+	 * A session whose count changes while the check runs is left to the next check, so a toggle committing meanwhile is not taken for drift.
+	 * @return the number of sessions whose count was corrected
+	 */
+	public int reconcile(Long eventId) {
+		EventPopularity popularity = popularity(eventId);
+		Map<Integer, Long> before = popularity.snapshot();
+		Map<Integer, Long> expected = loadFavoriteCounts(eventId);
+		Map<Integer, Long> actual = popularity.snapshot();
+		Set<Integer> sessionIds = new HashSet<Integer>(expected.keySet());
+		sessionIds.addAll(actual.keySet());
+		int corrected = 0;
+		for (Integer sessionId : sessionIds) {
+			long count = countOf(actual, sessionId);
+			if (count != countOf(before, sessionId)) {
+				continue;
+			}
+			long drift = countOf(expected, sessionId) - count;
+			if (drift != 0) {
+				logger.warn("Favorite count of session {} of event {} drifted by {}; correcting", new Object[] { sessionId, eventId,
+						drift });
+				popularity.add(sessionId, drift);
+				corrected++;
+			}
+		}
+		return corrected;
+	}
+
+	/**
+	 * Reconciles the counts of every Event seeded so far.
+	 * An Event that cannot be checked is logged and skipped.
+	 * @return the number of sessions whose count was corrected
+	 * @see #reconcile(Long)
+	 */
+	public int reconcileAll() {
+		int corrected = 0;
+		for (Long eventId : events.keySet()) {
+			try {
+				corrected += reconcile(eventId);
+			} catch (RuntimeException e) {
+				logger.warn("Unable to reconcile favorite counts of event " + eventId, e);
+			}
+		}
+		if (corrected > 0) {
+			logger.info("Corrected {} drifted favorite counts", corrected);
+		}
+		return corrected;
+	}
+
+	// subclassing hooks
+
+	/**
+	 * Load the number of favorites of each favorited session of the Event from the system of record.
+	 */
+	protected abstract Map<Integer, Long> loadFavoriteCounts(Long eventId);
+
+	// internal helpers
+
+	private static long countOf(Map<Integer, Long> counts, Integer sessionId) {
+		Long count = counts.get(sessionId);
+		return count != null ? count : 0;
+	}
+
+	private EventPopularity popularity(Long eventId) {
+		EventPopularity popularity = events.get(eventId);
+		if (popularity == null) {
+			synchronized (events) {
+				popularity = events.get(eventId);
+				if (popularity == null) {
+					popularity = new EventPopularity(maxFavorites, loadFavoriteCounts(eventId));
+					events.put(eventId, popularity);
+				}
+			}
+		}
+		return popularity;
+	}
+
+	private static final class EventPopularity {
+
+		private final int maxFavorites;
+
+		private final ConcurrentMap<Integer, LongAdder> counts = new ConcurrentHashMap<Integer, LongAdder>();
+
+		private final AtomicLong version = new AtomicLong();
+
+		private volatile Ranking mostFavorited;
+
+		public EventPopularity(int maxFavorites, Map<Integer, Long> seed) {
+			this.maxFavorites = maxFavorites;
+			for (Map.Entry<Integer, Long> entry : seed.entrySet()) {
+				counter(entry.getKey()).add(entry.getValue());
+			}
+		}
+
+		public void add(Integer sessionId, long delta) {
+			counter(sessionId).add(delta);
+			version.incrementAndGet();
+		}
+
+		public Map<Integer, Long> snapshot() {
+			Map<Integer, Long> snapshot = new HashMap<Integer, Long>(counts.size() * 2);
+			for (Map.Entry<Integer, LongAdder> entry : counts.entrySet()) {
+				snapshot.put(entry.getKey(), entry.getValue().sum());
+			}
+			return snapshot;
+		}
+
+		/**
+		 * The most favorited sessions, recomputed if any count changed since the last ranking.
+		 * A ranking is stamped with the version of the counts it was computed from, so one computed while counts changed is never served.
+		 */
+		public List<Integer> mostFavorited() {
+			long currentVersion = version.get();
+			Ranking ranking = mostFavorited;
+			if (ranking == null || ranking.version != currentVersion) {
+				ranking = new Ranking(currentVersion, computeMostFavorited());
+				mostFavorited = ranking;
+			}
+			return ranking.sessionIds;
+		}
+
+		private LongAdder counter(Integer sessionId) {
+			LongAdder counter = counts.get(sessionId);
+			if (counter == null) {
+				LongAdder newCounter = new LongAdder();
+				counter = counts.putIfAbsent(sessionId, newCounter);
+				if (counter == null) {
+					counter = newCounter;
+				}
+			}
+			return counter;
+		}
+
+		private List<Integer> computeMostFavorited() {
+			PriorityQueue<SessionCount> top = new PriorityQueue<SessionCount>(maxFavorites + 1);
+			for (Map.Entry<Integer, LongAdder> entry : counts.entrySet()) {
+				long count = entry.getValue().sum();
+				if (count > 0) {
+					top.add(new SessionCount(entry.getKey(), count));
+					if (top.size() > maxFavorites) {
+						top.poll();
+					}
+				}
+			}
+			List<SessionCount> sorted = new ArrayList<SessionCount>(top);
+			Collections.sort(sorted, Collections.reverseOrder());
+			List<Integer> sessionIds = new ArrayList<Integer>(sorted.size());
+			for (SessionCount sessionCount : sorted) {
+				sessionIds.add(sessionCount.sessionId);
+			}
+			return Collections.unmodifiableList(sessionIds);
+		}
+
+	}
+
+	/**
+	 * The most favorited sessions of an Event, as of a version of its counts.
+	 */
+	private static final class Ranking {
+
+		private final long version;
+
+		private final List<Integer> sessionIds;
+
+		public Ranking(long version, List<Integer> sessionIds) {
+			this.version = version;
+			this.sessionIds = sessionIds;
+		}
+
+	}
+
+	/**
+	 * Orders least favorited first, so the head of a bounded priority queue is the one to drop.
+	 */
+	private static final class SessionCount implements Comparable<SessionCount> {
+
+		private final Integer sessionId;
+
+		private final long count;
+
+		public SessionCount(Integer sessionId, long count) {
+			this.sessionId = sessionId;
+			this.count = count;
+		}
+
+		public int compareTo(SessionCount other) {
+			if (count != other.count) {
+				return count < other.count ? -1 : 1;
+			}
+			return other.sessionId.compareTo(sessionId);
+		}
+
+	}
+
+}
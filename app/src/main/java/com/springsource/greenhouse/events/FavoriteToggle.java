@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.List;
+
+/**
+ * The outcome of toggling a favorite, with the attendee's other favorites that overlap the session.
+ */
+public final class FavoriteToggle {
+
+	private final boolean favorite;
+
+	private final List<Integer> conflictingSessionIds;
+
+	public FavoriteToggle(boolean favorite, List<Integer> conflictingSessionIds) {
+		this.favorite = favorite;
+		this.conflictingSessionIds = conflictingSessionIds;
+	}
+
+	/**
+	 * True if the session is now a favorite.
+	 */
+	public boolean isFavorite() {
+		return favorite;
+	}
+
+	/**
+	 * True if the session is now a favorite and overlaps another of the attendee's favorites.
+	 */
+	public boolean isConflicting() {
+		return !conflictingSessionIds.isEmpty();
+	}
+
+	/**
+	 * The ids of the attendee's other favorites that overlap the session; empty if the session is no longer a favorite.
+	 */
+	public List<Integer> getConflictingSessionIds() {
+		return conflictingSessionIds;
+	}
+
+}
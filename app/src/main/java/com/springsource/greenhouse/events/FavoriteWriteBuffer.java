@@ -0,0 +1,433 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind buffer for favorite toggles.
+ * A toggle is applied at once to an in-memory copy of the attendee's favorite sessions and queued for writing;
+ * repeated toggles of the same session by the same attendee are coalesced into one change, and a change that undoes itself is dropped.
+ * Queued changes are written whenever {@link #flush()} is called; once {@code batchSize} of them are pending, a flush is requested off the toggling thread.
+ * A reader may write just one attendee's changes with {@link #flush(Long, Long)}, so it sees them without writing anyone else's.
+ * An attendee's changes are written by one flush at a time, so a newer change never overtakes an older one.
+ * The in-memory copy of an attendee's favorites is only kept while they have changes not yet written, so it stays bounded and is reloaded fresh afterwards;
+ * it is loaded without holding the buffer's lock, so one attendee's load never delays another's toggle.
+ * Subclasses decide how favorites are loaded and written, and where requested flushes run.
+ */
+abstract class FavoriteWriteBuffer {
+
+	private final int batchSize;
+
+	private final Map<AttendeeKey, BitSet> favorites = new HashMap<AttendeeKey, BitSet>();
+
+	private final Map<ChangeKey, FavoriteChange> pending = new LinkedHashMap<ChangeKey, FavoriteChange>();
+
+	private final Map<AttendeeKey, Set<ChangeKey>> pendingByAttendee = new HashMap<AttendeeKey, Set<ChangeKey>>();
+
+	private final Set<AttendeeKey> writing = new HashSet<AttendeeKey>();
+
+	private final Map<AttendeeKey, LoadStamp> loadStamps = new HashMap<AttendeeKey, LoadStamp>();
+
+	private final Object flushMonitor = new Object();
+
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+	/**
+	 * Creates a buffer that requests a flush once batchSize changes are pending.
+	 */
+	public FavoriteWriteBuffer(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Toggles whether the session is one of the attendee's favorites.
+	 * @return true if the session is now a favorite, false if it no longer is
+	 */
+	public boolean toggle(Long eventId, Integer sessionId, Long attendeeId) {
+		AttendeeKey attendee = new AttendeeKey(eventId, attendeeId);
+		boolean favorite;
+		boolean full;
+		while (true) {
+			LoadStamp stamp;
+			long releasesBeforeLoad;
+			synchronized (this) {
+				BitSet sessionIds = favorites.get(attendee);
+				if (sessionIds != null) {
+					favorite = !sessionIds.get(sessionId);
+					sessionIds.set(sessionId, favorite);
+					ChangeKey key = new ChangeKey(eventId, sessionId, attendeeId);
+					FavoriteChange change = removePending(key);
+					if (change == null) {
+						addPending(key, new FavoriteChange(eventId, sessionId, attendeeId, favorite));
+					} else if (change.isFavorite() == favorite) {
+						addPending(key, change);
+					} else {
+						releaseIfWritten(attendee);
+					}
+					full = pending.size() >= batchSize;
+					break;
+				}
+				stamp = loadStamps.get(attendee);
+				if (stamp == null) {
+					stamp = new LoadStamp();
+					loadStamps.put(attendee, stamp);
+				}
+				stamp.loaders++;
+				releasesBeforeLoad = stamp.releases;
+			}
+			BitSet loaded = null;
+			try {
+				loaded = loadFavoriteSessionIds(eventId, attendeeId);
+			} finally {
+				synchronized (this) {
+					if (--stamp.loaders == 0) {
+						loadStamps.remove(attendee);
+					}
+					// favorites released during the load may have been loaded before their changes were written
+					if (loaded != null && !favorites.containsKey(attendee) && stamp.releases == releasesBeforeLoad) {
+						favorites.put(attendee, loaded);
+					}
+				}
+			}
+		}
+		if (full && flushRequested.compareAndSet(false, true)) {
+			requestFlush();
+		}
+		return favorite;
+	}
+
+	/**
+	 * The ids of the sessions the attendee marked as favorites, including changes not yet written.
+	 * The returned set is a copy the caller may modify.
+	 */
+	public BitSet getFavoriteSessionIds(Long eventId, Long attendeeId) {
+		synchronized (this) {
+			BitSet sessionIds = favorites.get(new AttendeeKey(eventId, attendeeId));
+			if (sessionIds != null) {
+				return (BitSet) sessionIds.clone();
+			}
+		}
+		return loadFavoriteSessionIds(eventId, attendeeId);
+	}
+
+	/**
+	 * Whether any of the attendee's changes are waiting to be written or being written.
+	 */
+	public boolean hasPendingChanges(Long eventId, Long attendeeId) {
+		AttendeeKey attendee = new AttendeeKey(eventId, attendeeId);
+		synchronized (this) {
+			return pendingByAttendee.containsKey(attendee) || writing.contains(attendee);
+		}
+	}
+
+	/**
+	 * The number of attendees whose favorites are held in memory.
+	 */
+	public int getAttendeeCount() {
+		synchronized (this) {
+			return favorites.size();
+		}
+	}
+
+	/**
+	 * The number of changes waiting to be written.
+	 */
+	public int getPendingCount() {
+		synchronized (this) {
+			return pending.size();
+		}
+	}
+
+	/**
+	 * Writes every pending change, except those of attendees whose changes are being written by a flush of their own;
+	 * those are left for the next flush.
+	 * Such flushes are serialized with one another.
+	 * If the write fails the changes are queued again, unless they were undone in the meantime.
+	 */
+	public void flush() {
+		synchronized (flushMonitor) {
+			flushRequested.set(false);
+			List<FavoriteChange> changes = new ArrayList<FavoriteChange>();
+			synchronized (this) {
+				Iterator<FavoriteChange> pendingChanges = pending.values().iterator();
+				while (pendingChanges.hasNext()) {
+					FavoriteChange change = pendingChanges.next();
+					AttendeeKey attendee = new AttendeeKey(change.eventId, change.attendeeId);
+					if (!writing.contains(attendee)) {
+						changes.add(change);
+						pendingChanges.remove();
+						pendingByAttendee.remove(attendee);
+					}
+				}
+				if (changes.isEmpty()) {
+					return;
+				}
+				for (FavoriteChange change : changes) {
+					writing.add(new AttendeeKey(change.eventId, change.attendeeId));
+				}
+			}
+			writeTaken(changes);
+		}
+	}
+
+	/**
+	 * Writes the attendee's pending changes, and only theirs, so the attendee's next read of the system of record sees them.
+	 * Waits only if a flush is already writing the attendee's changes.
+	 * If the write fails the changes are queued again, unless they were undone in the meantime.
+	 */
+	public void flush(Long eventId, Long attendeeId) {
+		AttendeeKey attendee = new AttendeeKey(eventId, attendeeId);
+		List<FavoriteChange> changes = new ArrayList<FavoriteChange>();
+		synchronized (this) {
+			while (writing.contains(attendee)) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted waiting for the favorites of attendee " + attendeeId + " to be written", e);
+				}
+			}
+			Set<ChangeKey> keys = pendingByAttendee.remove(attendee);
+			if (keys == null) {
+				return;
+			}
+			for (ChangeKey key : keys) {
+				changes.add(pending.remove(key));
+			}
+			writing.add(attendee);
+		}
+		writeTaken(changes);
+	}
+
+	// subclassing hooks
+
+	/**
+	 * Load the ids of the sessions the attendee marked as favorites from the system of record.
+	 */
+	protected abstract BitSet loadFavoriteSessionIds(Long eventId, Long attendeeId);
+
+	/**
+	 * Write a batch of changes to the system of record.
+	 * Each change is the net effect of one or more toggles of a session by an attendee, in the order first made.
+	 */
+	protected abstract void write(List<FavoriteChange> changes);
+
+	/**
+	 * Arrange for {@link #flush()} to be called soon, on a thread other than the caller's.
+	 * Called when a toggle fills a batch; not called again until that flush starts.
+	 */
+	protected abstract void requestFlush();
+
+	/**
+	 * A session added to or removed from an attendee's favorites.
+	 */
+	static final class FavoriteChange {
+
+		private final Long eventId;
+
+		private final Integer sessionId;
+
+		private final Long attendeeId;
+
+		private final boolean favorite;
+
+		public FavoriteChange(Long eventId, Integer sessionId, Long attendeeId, boolean favorite) {
+			this.eventId = eventId;
+			this.sessionId = sessionId;
+			this.attendeeId = attendeeId;
+			this.favorite = favorite;
+		}
+
+		public Long getEventId() {
+			return eventId;
+		}
+
+		public Integer getSessionId() {
+			return sessionId;
+		}
+
+		public Long getAttendeeId() {
+			return attendeeId;
+		}
+
+		/**
+		 * True if the session was added to the attendee's favorites, false if it was removed.
+		 */
+		public boolean isFavorite() {
+			return favorite;
+		}
+
+	}
+
+	// internal helpers
+
+	private void writeTaken(List<FavoriteChange> changes) {
+		try {
+			write(changes);
+		} catch (RuntimeException e) {
+			finished(changes, false);
+			throw e;
+		}
+		finished(changes, true);
+	}
+
+	/**
+	 * Ends the writing of the attendees' changes, waking readers waiting on them.
+	 * Written changes release the in-memory favorites of attendees with no newer changes; failed ones are queued again.
+	 */
+	private synchronized void finished(List<FavoriteChange> changes, boolean written) {
+		if (!written) {
+			requeue(changes);
+		}
+		for (FavoriteChange change : changes) {
+			writing.remove(new AttendeeKey(change.eventId, change.attendeeId));
+		}
+		if (written) {
+			for (FavoriteChange change : changes) {
+				releaseIfWritten(new AttendeeKey(change.eventId, change.attendeeId));
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Drops the in-memory favorites of the attendee if none of their changes are pending or being written.
+	 */
+	private void releaseIfWritten(AttendeeKey attendee) {
+		if (!pendingByAttendee.containsKey(attendee) && !writing.contains(attendee) && favorites.remove(attendee) != null) {
+			LoadStamp stamp = loadStamps.get(attendee);
+			if (stamp != null) {
+				stamp.releases++;
+			}
+		}
+	}
+
+	private void requeue(List<FavoriteChange> changes) {
+		Map<ChangeKey, FavoriteChange> newer = new LinkedHashMap<ChangeKey, FavoriteChange>(pending);
+		pending.clear();
+		pendingByAttendee.clear();
+		for (FavoriteChange change : changes) {
+			ChangeKey key = new ChangeKey(change.eventId, change.sessionId, change.attendeeId);
+			// a newer change to the same favorite can only be the one undoing it
+			if (newer.remove(key) == null) {
+				addPending(key, change);
+			}
+		}
+		for (Map.Entry<ChangeKey, FavoriteChange> change : newer.entrySet()) {
+			addPending(change.getKey(), change.getValue());
+		}
+	}
+
+	private void addPending(ChangeKey key, FavoriteChange change) {
+		pending.put(key, change);
+		AttendeeKey attendee = new AttendeeKey(key.eventId, key.attendeeId);
+		Set<ChangeKey> keys = pendingByAttendee.get(attendee);
+		if (keys == null) {
+			keys = new LinkedHashSet<ChangeKey>();
+			pendingByAttendee.put(attendee, keys);
+		}
+		keys.add(key);
+	}
+
+	private FavoriteChange removePending(ChangeKey key) {
+		FavoriteChange change = pending.remove(key);
+		if (change != null) {
+			AttendeeKey attendee = new AttendeeKey(key.eventId, key.attendeeId);
+			Set<ChangeKey> keys = pendingByAttendee.get(attendee);
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				pendingByAttendee.remove(attendee);
+			}
+		}
+		return change;
+	}
+
+	/**
+	 * The loads of an attendee's favorites in progress, and how often the attendee's favorites were released since they began.
+	 */
+	private static final class LoadStamp {
+
+		private int loaders;
+
+		private long releases;
+
+	}
+
+	private static final class AttendeeKey {
+
+		private final Long eventId;
+
+		private final Long attendeeId;
+
+		public AttendeeKey(Long eventId, Long attendeeId) {
+			this.eventId = eventId;
+			this.attendeeId = attendeeId;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof AttendeeKey)) {
+				return false;
+			}
+			AttendeeKey other = (AttendeeKey) o;
+			return eventId.equals(other.eventId) && attendeeId.equals(other.attendeeId);
+		}
+
+		public int hashCode() {
+			return eventId.hashCode() * 31 + attendeeId.hashCode();
+		}
+
+	}
+
+	private static final class ChangeKey {
+
+		private final Long eventId;
+
+		private final Integer sessionId;
+
+		private final Long attendeeId;
+
+		public ChangeKey(Long eventId, Integer sessionId, Long attendeeId) {
+			this.eventId = eventId;
+			this.sessionId = sessionId;
+			this.attendeeId = attendeeId;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof ChangeKey)) {
+				return false;
+			}
+			ChangeKey other = (ChangeKey) o;
+			return eventId.equals(other.eventId) && sessionId.equals(other.sessionId) && attendeeId.equals(other.attendeeId);
+		}
+
+		public int hashCode() {
+			return (eventId.hashCode() * 31 + sessionId.hashCode()) * 31 + attendeeId.hashCode();
+		}
+
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a client requests a page with a cursor that was not returned by a previous page.
+ */
+@SuppressWarnings("serial")
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public final class InvalidPageCursorException extends IllegalArgumentException {
+
+	private final String cursor;
+
+	public InvalidPageCursorException(String cursor) {
+		super("Invalid page cursor");
+		this.cursor = cursor;
+	}
+
+	/**
+	 * The cursor the client sent.
+	 */
+	public String getCursor() {
+		return cursor;
+	}
+
+}
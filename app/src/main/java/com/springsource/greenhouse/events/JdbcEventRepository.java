@@ -18,19 +18,49 @@ package com.springsource.greenhouse.events;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
-import org.joda.time.MutableDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ColumnIndexes;
+import org.springframework.jdbc.core.GroupingJoinRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.JoinRowMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.springsource.greenhouse.utils.Location;
 import com.springsource.greenhouse.utils.ResourceReference;
@@ -39,26 +69,162 @@ import com.springsource.greenhouse.utils.SubResourceReference;
 /**
  * EventRepository implementation that stores Event data in a relational
  * database using the JDBC API.
+ * Upcoming events are served from an in-memory {@link UpcomingEventIndex}, and day
+ * schedules from a {@link DayScheduleCache} shared by all attendees; both are
+ * refreshed as this repository is notified of Event changes.
+ * The most favorited sessions are ranked by a {@link FavoritePopularityIndex}
+ * kept current by {@link #toggleFavorite(Long, Integer, Long)}, which also updates the {@link CoFavoriteIndex} recommendations are drawn from.
+ * Session times are held in a {@link SessionIntervalIndex}, which finds overlapping favorites and the end times rating checks against.
+ * Searches are answered from an {@link EventSearchIndex} of the Event, session, and leader text, updated a document at a time as the loader changes them.
+ * Session lists are read as summaries, without descriptions; {@link #findSessionDetail(Long, Integer)} reads those on demand.
+ * Favorite toggles may optionally be written behind through a {@link FavoriteWriteBuffer},
+ * enabled by setting the "events.favorites.writeBehindBatchSize" property.
+ * The popularity counts are periodically reconciled with the favorites table, so counts that drift from it are corrected.
+ * Every change is also counted by {@link EventVersions}, so clients can check whether data changed without reading it.
+ * Favorite toggles are recorded in the {@link EventChangeLog}, so clients can sync only the rows changed since their last sync.
  * 
  * @author Keith Donald
  */
 @Repository
-public class JdbcEventRepository implements EventRepository {
+public class JdbcEventRepository implements EventRepository, EventChangeListener, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(JdbcEventRepository.class);
 
 	private final JdbcTemplate jdbcTemplate;
 
-	@Inject
+	private final UpcomingEventIndex upcomingEventIndex;
+
+	private final DayScheduleCache dayScheduleCache;
+
+	private final FavoritePopularityIndex favoritePopularityIndex;
+
+	private final FavoriteWriteBuffer favoriteWriteBuffer;
+
+	private final EventVersions eventVersions = new EventVersions();
+
+	private final EventChangeLog changeLog;
+
+	private final TransactionTemplate favoriteTransactions;
+
+	private final TransactionTemplate deltaTransactions;
+
+	private final ScheduledExecutorService favoriteFlusher;
+
+	private final ScheduledExecutorService favoriteReconciler;
+
+	private final SessionIntervalIndex sessionIntervalIndex;
+
+	private final CoFavoriteIndex coFavoriteIndex;
+
+	private final EventSearchIndex searchIndex;
+
+	private final ConcurrentMap<Long, String> eventSearchStrings = new ConcurrentHashMap<Long, String>();
+
+	private final ConcurrentMap<Long, ConcurrentMap<Integer, String>> sessionSearchStrings = new ConcurrentHashMap<Long, ConcurrentMap<Integer, String>>();
+
+	private final ConcurrentMap<Long, ConcurrentMap<Integer, Float>> sessionRatings = new ConcurrentHashMap<Long, ConcurrentMap<Integer, Float>>();
+
+	private final EventChangeListener afterCommit = new AfterCommitEventChangeListener(this);
+
+	/**
+	 * Creates a repository that writes each favorite toggle through to the database.
+	 */
 	public JdbcEventRepository(JdbcTemplate jdbcTemplate) {
+		this(jdbcTemplate, 0, 0);
+	}
+
+	/**
+	 * Creates a repository configured by the "events.favorites.writeBehindBatchSize",
+	 * "events.favorites.writeBehindFlushInterval", and "events.favorites.reconcileInterval" (milliseconds) properties.
+	 */
+	@Inject
+	public JdbcEventRepository(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, Environment environment) {
+		this(jdbcTemplate, transactionManager, environment.getProperty("events.favorites.writeBehindBatchSize", Integer.class, 0),
+				environment.getProperty("events.favorites.writeBehindFlushInterval", Long.class, 1000L),
+				environment.getProperty("events.favorites.reconcileInterval", Long.class, 300000L));
+	}
+
+	/**
+	 * Creates a repository that writes favorite toggles behind in transactions on the template's DataSource.
+	 * Favorite counts are not reconciled.
+	 * @see #JdbcEventRepository(JdbcTemplate, PlatformTransactionManager, int, long, long)
+	 */
+	public JdbcEventRepository(JdbcTemplate jdbcTemplate, int favoriteBatchSize, long favoriteFlushInterval) {
+		this(jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()), favoriteBatchSize, favoriteFlushInterval, 0);
+	}
+
+	/**
+	 * Creates a repository that writes favorite toggles behind, once favoriteBatchSize of them are pending
+	 * or every favoriteFlushInterval milliseconds, in transactions of the transaction manager.
+	 * A batch size of 0 writes each toggle through; a flush interval of 0 disables the time trigger.
+	 * Every favoriteReconcileInterval milliseconds the favorite counts of the Events loaded so far are checked against the favorites table;
+	 * an interval of 0 disables the check.
+	 */
+	public JdbcEventRepository(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, int favoriteBatchSize,
+			long favoriteFlushInterval, long favoriteReconcileInterval) {
 		this.jdbcTemplate = jdbcTemplate;
+		this.favoriteTransactions = new TransactionTemplate(transactionManager);
+		this.favoriteTransactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.deltaTransactions = new TransactionTemplate(transactionManager);
+		this.deltaTransactions.setReadOnly(true);
+		this.changeLog = new EventChangeLog(jdbcTemplate);
+		this.upcomingEventIndex = new JdbcUpcomingEventIndex();
+		this.dayScheduleCache = new JdbcDayScheduleCache(MAX_CACHED_DAY_SCHEDULES);
+		this.favoritePopularityIndex = new JdbcFavoritePopularityIndex(MAX_EVENT_FAVORITES);
+		this.sessionIntervalIndex = new JdbcSessionIntervalIndex();
+		this.coFavoriteIndex = new JdbcCoFavoriteIndex();
+		this.searchIndex = new JdbcEventSearchIndex();
+		this.favoriteWriteBuffer = favoriteBatchSize > 0 ? new JdbcFavoriteWriteBuffer(favoriteBatchSize) : null;
+		this.favoriteFlusher = favoriteWriteBuffer != null ? startFavoriteFlusher(favoriteFlushInterval) : null;
+		this.favoriteReconciler = favoriteReconcileInterval > 0 ? startFavoriteReconciler(favoriteReconcileInterval) : null;
 	}
 
 	/**
 	 * Finds upcoming events after the specified time.
+	 * Answered from the upcoming event index; the database is only queried to load Events that changed.
 	 */
 	@Override
 	public List<Event> findUpcomingEvents(Long afterMillis) {
-		return jdbcTemplate.query(SELECT_UPCOMING_EVENTS, eventMapper.list(),
-				new Date(afterMillis != null ? afterMillis : System.currentTimeMillis()));
+		return upcomingEventIndex.findUpcomingEvents(afterMillis != null ? afterMillis : System.currentTimeMillis());
+	}
+
+	/**
+	 * Finds a page of upcoming events after the specified time.
+	 */
+	@Override
+	public Page<Event> findUpcomingEvents(Long afterMillis, String cursor, int pageSize) {
+		return upcomingEventIndex.findUpcomingEvents(afterMillis != null ? afterMillis : System.currentTimeMillis(),
+				PageCursor.decode(cursor), cappedPageSize(pageSize));
+	}
+
+	/**
+	 * Gets the version of the upcoming events after the specified time.
+	 * Events drop off the list as they end, so the version also carries the number of Events still upcoming,
+	 * and is last modified no earlier than the end of the last Event to drop off.
+	 */
+	@Override
+	public EventVersion findUpcomingEventsVersion(Long afterMillis) {
+		long after = afterMillis != null ? afterMillis : System.currentTimeMillis();
+		EventVersion version = eventVersions.getUpcomingEventsVersion();
+		int upcoming = upcomingEventIndex.findUpcomingEvents(after).size();
+		long lastModified = Math.max(version.getLastModified(), upcomingEventIndex.findLastEndedAt(after));
+		return new EventVersion(version.getTag() + "-" + upcoming, lastModified);
+	}
+
+	/**
+	 * Gets the version of an event's schedule, ratings, and favorites.
+	 */
+	@Override
+	public EventVersion findEventVersion(Long eventId) {
+		return eventVersions.getEventVersion(eventId);
+	}
+
+	/**
+	 * Gets the version of an event's schedule as loaded, which ratings and favorites do not change.
+	 */
+	@Override
+	public EventVersion findScheduleVersion(Long eventId) {
+		return eventVersions.getScheduleVersion(eventId);
 	}
 
 	/**
@@ -71,60 +237,177 @@ public class JdbcEventRepository implements EventRepository {
 
 	/**
 	 * Gets the search string for an event.
+	 * Memoized until the Event changes.
 	 */
 	@Override
 	public String findEventSearchString(Long eventId) {
-		return jdbcTemplate.queryForObject(
-				"select g.hashtag from Event e, MemberGroup g where e.id = ? and e.memberGroup = g.id", String.class,
-				eventId);
+		String searchString = eventSearchStrings.get(eventId);
+		if (searchString == null) {
+			searchString = jdbcTemplate.queryForObject(
+					"select g.hashtag from Event e, MemberGroup g where e.id = ? and e.memberGroup = g.id", String.class,
+					eventId);
+			if (searchString != null) {
+				eventSearchStrings.put(eventId, searchString);
+			}
+		}
+		return searchString;
 	}
 
 	/**
 	 * Gets the search string for a session.
+	 * Memoized until the Event or its schedule changes; only sessions found are memoized, so unknown ids leave nothing behind.
 	 */
 	@Override
 	public String findSessionSearchString(Long eventId, Integer sessionId) {
-		return jdbcTemplate.queryForObject(
-				"select (select g.hashtag from Event e, MemberGroup g where e.id = ? and e.memberGroup = g.id) || ' ' || hashtag from EventSession where event = ? and id = ?",
-				String.class, eventId, eventId, sessionId);
+		ConcurrentMap<Integer, String> searchStrings = sessionSearchStrings.get(eventId);
+		String searchString = searchStrings != null ? searchStrings.get(sessionId) : null;
+		if (searchString == null) {
+			searchString = jdbcTemplate.queryForObject(
+					"select (select g.hashtag from Event e, MemberGroup g where e.id = ? and e.memberGroup = g.id) || ' ' || hashtag from EventSession where event = ? and id = ?",
+					String.class, eventId, eventId, sessionId);
+			if (searchString != null) {
+				if (searchStrings == null) {
+					searchStrings = new ConcurrentHashMap<Integer, String>();
+					ConcurrentMap<Integer, String> existing = sessionSearchStrings.putIfAbsent(eventId, searchStrings);
+					if (existing != null) {
+						searchStrings = existing;
+					}
+				}
+				searchStrings.put(sessionId, searchString);
+			}
+		}
+		return searchString;
+	}
+
+	/**
+	 * Searches the Event from the search index; the database is only queried to build the index.
+	 */
+	@Override
+	public List<EventSearchResult> search(Long eventId, String query) {
+		return searchIndex.search(eventId, query, MAX_SEARCH_RESULTS);
 	}
 
 	/**
 	 * Finds sessions on the specified day.
+	 * The day's schedule is shared by all attendees; only the attendee's favorite session ids are queried per call.
+	 * Sessions rated since the schedule was built carry their current rating.
 	 */
-	@Transactional
 	@Override
 	public List<EventSession> findSessionsOnDay(Long eventId, LocalDate day, Long attendeeId) {
-		DateTimeZone eventTimeZone = DateTimeZone
-				.forID(jdbcTemplate.queryForObject("select timezone from Event where id = ?", String.class, eventId));
-		DateTime dayStart = day.toDateTimeAtStartOfDay(eventTimeZone);
-		DateTime dayEnd = dayStart.plusDays(1);
-		return jdbcTemplate.query(SELECT_SESSIONS_ON_DAY, eventSessionMapper.list(), attendeeId, eventId,
-				dayStart.toDate(), dayEnd.toDate());
+		DaySchedule schedule = dayScheduleCache.get(eventId, day);
+		if (schedule.size() == 0) {
+			return schedule.forAttendee(new BitSet(), findSessionRatings(eventId));
+		}
+		return schedule.forAttendee(findFavoriteSessionIds(eventId, attendeeId), findSessionRatings(eventId));
+	}
+
+	/**
+	 * Finds a page of sessions on the specified day from the shared day schedule.
+	 */
+	@Override
+	public Page<EventSession> findSessionsOnDay(Long eventId, LocalDate day, Long attendeeId, String cursor,
+			int pageSize) {
+		PageCursor after = PageCursor.decode(cursor);
+		DaySchedule schedule = dayScheduleCache.get(eventId, day);
+		BitSet favorites = schedule.size() == 0 ? new BitSet() : findFavoriteSessionIds(eventId, attendeeId);
+		return schedule.page(favorites, findSessionRatings(eventId), after, cappedPageSize(pageSize));
+	}
+
+	/**
+	 * Finds the details of a session with its leaders' profiles, in one query.
+	 */
+	@Override
+	public EventSessionDetail findSessionDetail(Long eventId, Integer sessionId) {
+		try {
+			return jdbcTemplate.queryForObject(SELECT_SESSION_DETAIL, sessionDetailMapper.single(), eventId, sessionId);
+		} catch (EmptyResultDataAccessException e) {
+			throw new EventSessionNotFoundException(eventId, sessionId);
+		}
 	}
 
 	/**
 	 * Finds favorite sessions for an event.
+	 * The most favorited sessions are ranked by the popularity index; only their details are queried.
 	 */
 	@Override
 	public List<EventSession> findEventFavorites(Long eventId, Long attendeeId) {
-		return jdbcTemplate.query(SELECT_EVENT_FAVORITES, eventSessionMapper.list(), eventId, attendeeId, eventId);
+		return findSessionsInOrder(eventId, attendeeId, favoritePopularityIndex.findMostFavorited(eventId));
+	}
+
+	/**
+	 * Finds the sessions most often favorited together with a session.
+	 * The sessions are ranked by the co-favorite index, leaving out the attendee's own favorites; only their details are queried.
+	 */
+	@Override
+	public List<EventSession> findRecommendedSessions(Long eventId, Integer sessionId, Long attendeeId) {
+		BitSet excluded = findFavoriteSessionIds(eventId, attendeeId);
+		excluded.set(sessionId);
+		return findSessionsInOrder(eventId, attendeeId,
+				coFavoriteIndex.findCoFavorites(eventId, sessionId, excluded, MAX_RECOMMENDED_SESSIONS));
 	}
 
 	/**
 	 * Finds favorite sessions for an attendee.
+	 * In write-behind mode the attendee's own buffered toggles are written first; other attendees' stay buffered.
 	 */
 	@Override
 	public List<EventSession> findAttendeeFavorites(Long eventId, Long attendeeId) {
+		if (favoriteWriteBuffer != null) {
+			favoriteWriteBuffer.flush(eventId, attendeeId);
+		}
 		return jdbcTemplate.query(SELECT_ATTENDEE_FAVORITES, eventSessionMapper.list(), attendeeId, eventId);
 	}
 
+	/**
+	 * Finds a page of favorite sessions for an attendee.
+	 * One more session than requested is read to tell whether there is a next page; reading stops there.
+	 */
+	@Override
+	public Page<EventSession> findAttendeeFavorites(Long eventId, Long attendeeId, String cursor, int pageSize) {
+		PageCursor after = PageCursor.decode(cursor);
+		int limit = cappedPageSize(pageSize);
+		if (favoriteWriteBuffer != null) {
+			favoriteWriteBuffer.flush(eventId, attendeeId);
+		}
+		final List<KeyedSession> sessions = new ArrayList<KeyedSession>(limit + 1);
+		JoinRowMapper.RootCallbackHandler<KeyedSession> collector = new JoinRowMapper.RootCallbackHandler<KeyedSession>() {
+			public void processRoot(KeyedSession session) {
+				sessions.add(session);
+			}
+		};
+		if (after == null) {
+			jdbcTemplate.query(SELECT_ATTENDEE_FAVORITES_PAGE, keyedSessionMapper.stream(collector, 0, limit + 1),
+					attendeeId, eventId);
+		} else {
+			Timestamp afterTime = new Timestamp(after.getTime());
+			jdbcTemplate.query(SELECT_ATTENDEE_FAVORITES_PAGE_AFTER, keyedSessionMapper.stream(collector, 0, limit + 1),
+					attendeeId, eventId, afterTime, afterTime, after.getId());
+		}
+		String nextCursor = null;
+		if (sessions.size() > limit) {
+			KeyedSession last = sessions.get(limit - 1);
+			nextCursor = new PageCursor(last.startTime, last.session.getId()).encode();
+		}
+		List<EventSession> page = new ArrayList<EventSession>(Math.min(limit, sessions.size()));
+		for (KeyedSession session : sessions.subList(0, Math.min(limit, sessions.size()))) {
+			page.add(session.session);
+		}
+		return new Page<EventSession>(page, nextCursor);
+	}
+
 	/**
 	 * Toggles favorite status.
+	 * In write-behind mode the toggle is buffered; it is visible to this attendee's reads at once and written with the next batch.
 	 */
 	@Transactional
 	@Override
 	public boolean toggleFavorite(Long eventId, Integer sessionId, Long attendeeId) {
+		if (favoriteWriteBuffer != null) {
+			boolean favorite = favoriteWriteBuffer.toggle(eventId, sessionId, attendeeId);
+			eventVersions.eventDataChanged(eventId);
+			return favorite;
+		}
+		favoritePopularityIndex.prepare(eventId);
 		boolean favorite = jdbcTemplate.queryForObject(
 				"select exists(select 1 from EventSessionFavorite where event = ? and session = ? and attendee = ?)",
 				Boolean.class, eventId, sessionId, attendeeId);
@@ -135,54 +418,441 @@ public class JdbcEventRepository implements EventRepository {
 			jdbcTemplate.update("insert into EventSessionFavorite (event, session, attendee) values (?, ?, ?)", eventId,
 					sessionId, attendeeId);
 		}
+		changeLog.favoriteChanged(eventId, sessionId, attendeeId, !favorite);
+		afterCommit.favoriteChanged(eventId, sessionId, attendeeId, !favorite);
 		return !favorite;
 	}
 
+	/**
+	 * Finds the overlapping pairs among an attendee's favorites from the session interval index.
+	 */
+	@Override
+	public List<FavoriteConflict> findFavoriteConflicts(Long eventId, Long attendeeId) {
+		return sessionIntervalIndex.findConflicts(eventId, findFavoriteSessionIds(eventId, attendeeId));
+	}
+
+	/**
+	 * Finds the attendee's favorites overlapping a session from the session interval index.
+	 */
+	@Override
+	public List<Integer> findConflictingFavorites(Long eventId, Integer sessionId, Long attendeeId) {
+		return sessionIntervalIndex.findOverlapping(eventId, sessionId, findFavoriteSessionIds(eventId, attendeeId));
+	}
+
 	/**
 	 * Rates a session.
+	 * The session row holds the running sum and count of its ratings, and the count of each rating value,
+	 * so the new average and distribution are computed without re-reading every rating.
 	 */
 	@Transactional
 	@Override
 	public Float rate(Long eventId, Integer sessionId, Long attendeeId, Rating rating)
 			throws RatingPeriodClosedException {
-		if (!isSessionEnded(eventId, sessionId)) {
+		if (System.currentTimeMillis() <= findSessionEndTime(eventId, sessionId)) {
 			throw new RatingPeriodClosedException(eventId, sessionId);
 		}
-		boolean rated = jdbcTemplate.queryForObject(
-				"select exists(select 1 from EventSessionRating where event = ? and session = ? and attendee = ?)",
-				Boolean.class, eventId, sessionId, attendeeId);
-		if (rated) {
-			jdbcTemplate.update(
-					"update EventSessionRating set rating = ?, comment = ? where event = ? and session = ? and attendee = ?",
-					rating.getValue(), rating.getComment(), eventId, sessionId, attendeeId);
-		} else {
-			jdbcTemplate.update(
-					"insert into EventSessionRating (event, session, attendee, rating, comment) values (?, ?, ?, ?, ?)",
-					eventId, sessionId, attendeeId, rating.getValue(), rating.getComment());
-		}
-		Float newAvgRating = jdbcTemplate.queryForObject(
-				"select round(avg(cast(rating as double)) * 2, 0) / 2 from EventSessionRating where event = ? and session = ? group by event, session",
-				Float.class, eventId, sessionId);
-		jdbcTemplate.update("update EventSession set rating = ? where event = ? and id = ?", newAvgRating, eventId,
-				sessionId);
+		RatingTotals totals = jdbcTemplate.queryForObject(SELECT_RATING_TOTALS_FOR_UPDATE, ratingTotalsMapper,
+				attendeeId, eventId, sessionId);
+		totals.add(rating.getValue());
+		jdbcTemplate.update(MERGE_RATING, eventId, sessionId, attendeeId, rating.getValue(), rating.getComment());
+		Float newAvgRating = totals.average();
+		jdbcTemplate.update(UPDATE_RATING_TOTALS, newAvgRating, totals.sum, totals.count, totals.histogram[0],
+				totals.histogram[1], totals.histogram[2], totals.histogram[3], totals.histogram[4], eventId, sessionId);
+		afterCommit.sessionRated(eventId, sessionId);
 		return newAvgRating;
 	}
 
+	/**
+	 * Finds the distribution of a session's ratings from the counts the session row holds; the ratings are not read.
+	 */
+	@Override
+	public RatingHistogram findRatingHistogram(Long eventId, Integer sessionId) {
+		return jdbcTemplate.queryForObject(SELECT_RATING_HISTOGRAM, new RowMapper<RatingHistogram>() {
+			public RatingHistogram mapRow(ResultSet rs, int rowNum) throws SQLException {
+				float rating = rs.getFloat("rating");
+				return new RatingHistogram(mapHistogram(rs), rs.wasNull() || rs.getInt("ratingCount") == 0 ? null : rating);
+			}
+		}, eventId, sessionId);
+	}
+
+	/**
+	 * Finds a page of a session's rating comments.
+	 * One more comment than requested is read to tell whether there is a next page; the query seeks to the cursor on the rating time index.
+	 */
+	@Override
+	public Page<RatingComment> findRatingComments(Long eventId, Integer sessionId, String cursor, int pageSize) {
+		PageCursor before = PageCursor.decode(cursor);
+		int limit = cappedPageSize(pageSize);
+		final List<RatingComment> comments = new ArrayList<RatingComment>(limit + 1);
+		final long[] lastAttendeeId = new long[limit + 1];
+		RowCallbackHandler collector = new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				lastAttendeeId[comments.size()] = rs.getLong("attendee");
+				comments.add(new RatingComment(rs.getShort("rating"), rs.getString("comment"), rs.getTimestamp("ratedAt").getTime()));
+			}
+		};
+		if (before == null) {
+			jdbcTemplate.query(SELECT_RATING_COMMENTS_PAGE, collector, eventId, sessionId, limit + 1);
+		} else {
+			Timestamp beforeTime = new Timestamp(before.getTime());
+			jdbcTemplate.query(SELECT_RATING_COMMENTS_PAGE_BEFORE, collector, eventId, sessionId, beforeTime, beforeTime,
+					before.getId(), limit + 1);
+		}
+		String nextCursor = null;
+		if (comments.size() > limit) {
+			RatingComment last = comments.get(limit - 1);
+			nextCursor = new PageCursor(last.getRatedAt(), lastAttendeeId[limit - 1]).encode();
+		}
+		return new Page<RatingComment>(new ArrayList<RatingComment>(comments.subList(0, Math.min(limit, comments.size()))), nextCursor);
+	}
+
+	/**
+	 * Finds the changes since a pair of watermarks.
+	 * In write-behind mode the attendee's own buffered toggles are written first, in their own transaction;
+	 * the changes are then read in a read-only transaction.
+	 */
+	@Override
+	public EventDelta findChangesSince(final Long eventId, final Long attendeeId, final long watermark, final long favoritesWatermark) {
+		if (favoriteWriteBuffer != null) {
+			favoriteWriteBuffer.flush(eventId, attendeeId);
+		}
+		return deltaTransactions.execute(new TransactionCallback<EventDelta>() {
+			public EventDelta doInTransaction(TransactionStatus status) {
+				return readChangesSince(eventId, attendeeId, watermark, favoritesWatermark);
+			}
+		});
+	}
+
 	@Transactional
 	public long addEvent() {
 		return 0;
 	}
 
+	/**
+	 * Writes any buffered favorite toggles before the repository is discarded.
+	 */
+	public void destroy() {
+		if (favoriteReconciler != null) {
+			favoriteReconciler.shutdown();
+		}
+		if (favoriteFlusher != null) {
+			favoriteFlusher.shutdown();
+		}
+		if (favoriteWriteBuffer != null) {
+			favoriteWriteBuffer.flush();
+		}
+	}
+
+	// implementing EventChangeListener
+
+	public void eventChanged(Long eventId) {
+		eventVersions.eventChanged(eventId);
+		upcomingEventIndex.invalidate(eventId);
+		sessionIntervalIndex.invalidate(eventId);
+		searchIndex.eventChanged(eventId);
+		eventSearchStrings.remove(eventId);
+		sessionSearchStrings.remove(eventId);
+		sessionRatings.remove(eventId);
+		dayScheduleCache.invalidate(eventId);
+	}
+
+	public void eventScheduleChanged(Long eventId) {
+		eventVersions.scheduleChanged(eventId);
+		sessionIntervalIndex.invalidate(eventId);
+		coFavoriteIndex.invalidate(eventId);
+		sessionSearchStrings.remove(eventId);
+		sessionRatings.remove(eventId);
+		dayScheduleCache.invalidate(eventId);
+	}
+
+	public void sessionChanged(Long eventId, Integer sessionId) {
+		eventVersions.scheduleChanged(eventId);
+		searchIndex.sessionChanged(eventId, sessionId);
+	}
+
+	public void leaderChanged(Long leaderId) {
+		eventVersions.allEventsChanged();
+		searchIndex.leaderChanged(leaderId);
+		dayScheduleCache.invalidateAll();
+	}
+
+	/**
+	 * Records the session's new rating for day schedule reads; the cached schedules are kept.
+	 * The rating is read back under a per-Event lock, so of concurrent votes the last to record it records the latest rating.
+	 */
+	public void sessionRated(Long eventId, Integer sessionId) {
+		eventVersions.eventDataChanged(eventId);
+		ConcurrentMap<Integer, Float> ratings = sessionRatings.get(eventId);
+		if (ratings == null) {
+			ratings = new ConcurrentHashMap<Integer, Float>();
+			ConcurrentMap<Integer, Float> existing = sessionRatings.putIfAbsent(eventId, ratings);
+			if (existing != null) {
+				ratings = existing;
+			}
+		}
+		synchronized (ratings) {
+			Float rating = jdbcTemplate.queryForObject("select rating from EventSession where event = ? and id = ?", Float.class,
+					eventId, sessionId);
+			if (rating != null) {
+				ratings.put(sessionId, rating);
+			} else {
+				ratings.remove(sessionId);
+			}
+		}
+	}
+
+	public void favoriteChanged(Long eventId, Integer sessionId, Long attendeeId, boolean favorite) {
+		eventVersions.eventDataChanged(eventId);
+		favoritePopularityIndex.favoriteChanged(eventId, sessionId, favorite);
+		coFavoriteIndex.favoriteChanged(eventId, sessionId, attendeeId, favorite);
+	}
+
 	// internal helpers
 
+	UpcomingEventIndex getUpcomingEventIndex() {
+		return upcomingEventIndex;
+	}
+
+	DayScheduleCache getDayScheduleCache() {
+		return dayScheduleCache;
+	}
+
+	FavoritePopularityIndex getFavoritePopularityIndex() {
+		return favoritePopularityIndex;
+	}
+
+	SessionIntervalIndex getSessionIntervalIndex() {
+		return sessionIntervalIndex;
+	}
+
+	CoFavoriteIndex getCoFavoriteIndex() {
+		return coFavoriteIndex;
+	}
+
+	EventSearchIndex getSearchIndex() {
+		return searchIndex;
+	}
+
+	FavoriteWriteBuffer getFavoriteWriteBuffer() {
+		return favoriteWriteBuffer;
+	}
+
+	Map<Long, ConcurrentMap<Integer, String>> getSessionSearchStrings() {
+		return sessionSearchStrings;
+	}
+
+	/**
+	 * The ratings of the Event's sessions rated since its day schedules were built, keyed by session id.
+	 */
+	private Map<Integer, Float> findSessionRatings(Long eventId) {
+		Map<Integer, Float> ratings = sessionRatings.get(eventId);
+		return ratings != null ? ratings : Collections.<Integer, Float> emptyMap();
+	}
+
+	/**
+	 * Limits a requested page size to between 1 and {@link #MAX_PAGE_SIZE}.
+	 */
+	private static int cappedPageSize(int pageSize) {
+		return Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+	}
+
+	/**
+	 * Starts a daemon thread that writes buffered favorite toggles when a batch fills and, unless the interval is 0, at a fixed delay.
+	 */
+	private ScheduledExecutorService startFavoriteFlusher(long flushInterval) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("favorite-flusher-");
+		threadFactory.setDaemon(true);
+		ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		if (flushInterval > 0) {
+			flusher.scheduleWithFixedDelay(favoriteFlush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		}
+		return flusher;
+	}
+
+	private final Runnable favoriteFlush = new Runnable() {
+		public void run() {
+			try {
+				favoriteWriteBuffer.flush();
+			} catch (RuntimeException e) {
+				logger.warn("Unable to write buffered favorites; will retry", e);
+			}
+		}
+	};
+
+	/**
+	 * Starts a daemon thread that reconciles the favorite counts of the Events loaded so far at a fixed delay.
+	 */
+	private ScheduledExecutorService startFavoriteReconciler(long reconcileInterval) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("favorite-reconciler-");
+		threadFactory.setDaemon(true);
+		ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		reconciler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				favoritePopularityIndex.reconcileAll();
+			}
+		}, reconcileInterval, reconcileInterval, TimeUnit.MILLISECONDS);
+		return reconciler;
+	}
+
+	/**
+	 * Gets the timezone of an event from the upcoming event index, which is refreshed as events change.
+	 * Only Events the index does not hold are queried.
+	 */
+	private DateTimeZone findEventTimeZone(Long eventId) {
+		Event event = upcomingEventIndex.findEvent(eventId);
+		if (event != null) {
+			return event.getTimeZone();
+		}
+		return EventTimes.timeZone(jdbcTemplate.queryForObject("select timeZone from Event where id = ?", String.class,
+				eventId));
+	}
+
+	/**
+	 * Reads the changes since a pair of watermarks.
+	 * The change logs are folded so only the latest change to each row counts; the changed rows are then read in one query per kind,
+	 * and rows no longer present are returned as tombstones.
+	 */
+	private EventDelta readChangesSince(Long eventId, Long attendeeId, long watermark, long favoritesWatermark) {
+		long latest = changeLog.findLatestVersion(eventId);
+		long latestFavorite = changeLog.findLatestFavoriteVersion(eventId, attendeeId);
+		final Set<Integer> sessionIds = new LinkedHashSet<Integer>();
+		final Set<Long> timeSlotIds = new LinkedHashSet<Long>();
+		final Map<Integer, Boolean> favoriteChanges = new LinkedHashMap<Integer, Boolean>();
+		if (latest > watermark) {
+			jdbcTemplate.query(SELECT_CHANGES_SINCE, new RowCallbackHandler() {
+				public void processRow(ResultSet rs) throws SQLException {
+					if ("TimeSlot".equals(rs.getString("entity"))) {
+						timeSlotIds.add(rs.getLong("timeSlot"));
+					} else {
+						sessionIds.add(rs.getInt("session"));
+					}
+				}
+			}, eventId, watermark, latest);
+		}
+		if (latestFavorite > favoritesWatermark) {
+			jdbcTemplate.query(SELECT_FAVORITE_CHANGES_SINCE, new RowCallbackHandler() {
+				public void processRow(ResultSet rs) throws SQLException {
+					Integer sessionId = rs.getInt("session");
+					favoriteChanges.remove(sessionId);
+					favoriteChanges.put(sessionId, !rs.getBoolean("deleted"));
+				}
+			}, eventId, attendeeId, favoritesWatermark, latestFavorite);
+		}
+		List<EventDelta.Session> sessions = findDeltaSessions(eventId, sessionIds);
+		List<Integer> deletedSessions = new ArrayList<Integer>(sessionIds);
+		for (EventDelta.Session session : sessions) {
+			deletedSessions.remove(session.getId());
+		}
+		List<EventDelta.TimeSlot> timeSlots = findDeltaTimeSlots(eventId, timeSlotIds);
+		List<Long> deletedTimeSlots = new ArrayList<Long>(timeSlotIds);
+		for (EventDelta.TimeSlot timeSlot : timeSlots) {
+			deletedTimeSlots.remove(timeSlot.getId());
+		}
+		List<Integer> favorites = new ArrayList<Integer>();
+		List<Integer> unfavorites = new ArrayList<Integer>();
+		for (Map.Entry<Integer, Boolean> change : favoriteChanges.entrySet()) {
+			if (change.getValue()) {
+				favorites.add(change.getKey());
+			} else {
+				unfavorites.add(change.getKey());
+			}
+		}
+		return new EventDelta(Math.max(latest, watermark), Math.max(latestFavorite, favoritesWatermark), sessions, deletedSessions,
+				timeSlots, deletedTimeSlots, favorites, unfavorites);
+	}
+
+	/**
+	 * Reads the sessions changed, with the ids of their leaders in rank order.
+	 */
+	private List<EventDelta.Session> findDeltaSessions(Long eventId, Set<Integer> sessionIds) {
+		if (sessionIds.isEmpty()) {
+			return new ArrayList<EventDelta.Session>();
+		}
+		Map<String, Object> params = new HashMap<String, Object>(2, 1);
+		params.put("eventId", eventId);
+		params.put("sessionIds", sessionIds);
+		return new NamedParameterJdbcTemplate(jdbcTemplate).query(SELECT_DELTA_SESSIONS, params,
+				deltaSessionMapper.list());
+	}
+
+	/**
+	 * Reads the time slots changed, with their times adjusted to UTC.
+	 */
+	private List<EventDelta.TimeSlot> findDeltaTimeSlots(Long eventId, Set<Long> timeSlotIds) {
+		if (timeSlotIds.isEmpty()) {
+			return new ArrayList<EventDelta.TimeSlot>();
+		}
+		Map<String, Object> params = new HashMap<String, Object>(2, 1);
+		params.put("eventId", eventId);
+		params.put("timeSlotIds", timeSlotIds);
+		return new NamedParameterJdbcTemplate(jdbcTemplate).query(SELECT_DELTA_TIME_SLOTS, params,
+				new RowMapper<EventDelta.TimeSlot>() {
+					public EventDelta.TimeSlot mapRow(ResultSet rs, int rowNum) throws SQLException {
+						DateTimeZone eventTimeZone = EventTimes.timeZone(rs.getString("timeZone"));
+						return new EventDelta.TimeSlot(rs.getLong("id"), rs.getString("label"),
+								EventTimes.toUtcMillis(rs.getTimestamp("startTime"), eventTimeZone),
+								EventTimes.toUtcMillis(rs.getTimestamp("endTime"), eventTimeZone));
+					}
+				});
+	}
+
+	/**
+	 * Gets the sessions with the specified ids, in the order of the ids; ids of sessions that no longer exist are skipped.
+	 */
+	private List<EventSession> findSessionsInOrder(Long eventId, Long attendeeId, List<Integer> sessionIds) {
+		if (sessionIds.isEmpty()) {
+			return new ArrayList<EventSession>();
+		}
+		Map<String, Object> params = new HashMap<String, Object>(4, 1);
+		params.put("attendeeId", attendeeId);
+		params.put("eventId", eventId);
+		params.put("sessionIds", sessionIds);
+		List<EventSession> sessions = new NamedParameterJdbcTemplate(jdbcTemplate).query(SELECT_EVENT_FAVORITES,
+				params, eventSessionMapper.list());
+		Map<Integer, EventSession> sessionsById = new HashMap<Integer, EventSession>(sessions.size() * 2);
+		for (EventSession session : sessions) {
+			sessionsById.put(session.getId(), session);
+		}
+		List<EventSession> ordered = new ArrayList<EventSession>(sessionIds.size());
+		for (Integer sessionId : sessionIds) {
+			EventSession session = sessionsById.get(sessionId);
+			if (session != null) {
+				ordered.add(session);
+			}
+		}
+		return ordered;
+	}
+
+	/**
+	 * Gets the ids of the sessions an attendee marked as favorites, including buffered toggles in write-behind mode.
+	 */
+	private BitSet findFavoriteSessionIds(Long eventId, Long attendeeId) {
+		if (favoriteWriteBuffer != null) {
+			return favoriteWriteBuffer.getFavoriteSessionIds(eventId, attendeeId);
+		}
+		return loadFavoriteSessionIds(eventId, attendeeId);
+	}
+
+	private BitSet loadFavoriteSessionIds(Long eventId, Long attendeeId) {
+		final BitSet favorites = new BitSet();
+		jdbcTemplate.query("select session from EventSessionFavorite where event = ? and attendee = ?",
+				new RowCallbackHandler() {
+					public void processRow(ResultSet rs) throws SQLException {
+						favorites.set(rs.getInt(1));
+					}
+				}, eventId, attendeeId);
+		return favorites;
+	}
+
 	/**
-	 * Checks if a session has ended.
+	 * Gets the end time of a session from the session interval index.
 	 */
-	private boolean isSessionEnded(Long eventId, Integer sessionId) {
-		Date endTime = jdbcTemplate.queryForObject(
-				"select ts.endTime from EventTimeSlot ts, EventSession s where s.event = ? and s.id = ? and ts.id = s.timeSlot",
-				Date.class, eventId, sessionId);
-		return new Date().after(endTime);
+	private long findSessionEndTime(Long eventId, Integer sessionId) {
+		Long endTime = sessionIntervalIndex.getEndTime(eventId, sessionId);
+		if (endTime == null) {
+			throw new EmptyResultDataAccessException("No session " + sessionId + " in event " + eventId, 1);
+		}
+		return endTime;
 	}
 
 	/**
@@ -191,66 +861,568 @@ public class JdbcEventRepository implements EventRepository {
 	private final JoinRowMapper<Event, Long> eventMapper = new JoinRowMapper<Event, Long>() {
 		@Override
 		protected Long mapId(ResultSet rs) throws SQLException {
-			return rs.getLong("id");
+			return rs.getLong(EVENT_COLUMNS.resolve(rs)[EVENT_ID]);
 		}
 
 		@Override
 		protected Event mapRoot(Long id, ResultSet rs) throws SQLException {
-			String eventTimeZone = rs.getString("timeZone");
-			return new Event(id, rs.getString("title"), DateTimeZone.forID(eventTimeZone),
-					adjustEventTimeToUTC(rs.getTimestamp("startTime"), eventTimeZone),
-					adjustEventTimeToUTC(rs.getTimestamp("endTime"), eventTimeZone),
-					rs.getString("slug"), rs.getString("description"), rs.getString("hashtag"),
-					new ResourceReference<String>(rs.getString("groupSlug"), rs.getString("groupName")));
+			return mapEvent(id, rs);
 		}
 
 		@Override
 		protected void addChild(Event event, ResultSet rs) throws SQLException {
-			event.addVenue(
-					new Venue(rs.getLong("venueId"), rs.getString("venueName"), rs.getString("venuePostalAddress"),
-							new Location(rs.getDouble("venueLatitude"), rs.getDouble("venueLongitude")),
-							rs.getString("venueLocationHint")));
+			event.addVenue(mapVenue(rs));
 		}
 	};
 
+	/**
+	 * Maps event IDs, retaining the stored start and end times for the upcoming event index.
+	 * Rows are grouped by event id, so the queries loading the index need not be sorted.
+	 */
+	private final GroupingJoinRowMapper<UpcomingEventIndex.IndexedEvent, Long> indexedEventMapper = new GroupingJoinRowMapper<UpcomingEventIndex.IndexedEvent, Long>(
+			new GroupingJoinRowMapper.ChildMapper<UpcomingEventIndex.IndexedEvent, Long>() {
+				@Override
+				protected Long mapKey(ResultSet rs) throws SQLException {
+					return rs.getLong(EVENT_COLUMNS.resolve(rs)[VENUE_ID]);
+				}
+
+				@Override
+				protected void addChild(UpcomingEventIndex.IndexedEvent indexedEvent, ResultSet rs) throws SQLException {
+					indexedEvent.getEvent().addVenue(mapVenue(rs));
+				}
+			}) {
+		@Override
+		protected Long mapId(ResultSet rs) throws SQLException {
+			return rs.getLong(EVENT_COLUMNS.resolve(rs)[EVENT_ID]);
+		}
+
+		@Override
+		protected UpcomingEventIndex.IndexedEvent mapRoot(Long id, ResultSet rs) throws SQLException {
+			int[] columns = EVENT_COLUMNS.resolve(rs);
+			return new UpcomingEventIndex.IndexedEvent(mapEvent(id, rs), rs.getTimestamp(columns[EVENT_START_TIME]).getTime(),
+					rs.getTimestamp(columns[EVENT_END_TIME]).getTime());
+		}
+	};
+
+	/**
+	 * Loads the upcoming event index from the Event tables.
+	 */
+	private class JdbcUpcomingEventIndex extends UpcomingEventIndex {
+		@Override
+		protected List<IndexedEvent> loadAll() {
+			return jdbcTemplate.query(SELECT_EVENT, indexedEventMapper.list());
+		}
+
+		@Override
+		protected List<IndexedEvent> load(Collection<Long> eventIds) {
+			return new NamedParameterJdbcTemplate(jdbcTemplate).query(SELECT_EVENTS_BY_IDS,
+					Collections.singletonMap("eventIds", eventIds), indexedEventMapper.list());
+		}
+	}
+
+	/**
+	 * Builds day schedules from the EventSession tables.
+	 */
+	private class JdbcDayScheduleCache extends DayScheduleCache {
+		public JdbcDayScheduleCache(int maxSchedules) {
+			super(maxSchedules);
+		}
+
+		@Override
+		protected DaySchedule build(Long eventId, LocalDate day) {
+			DateTime dayStart = day.toDateTimeAtStartOfDay(findEventTimeZone(eventId));
+			DateTime dayEnd = dayStart.plusDays(1);
+			return new DaySchedule(jdbcTemplate.query(SELECT_SESSIONS_ON_DAY, daySessionMapper.list(), eventId,
+					dayStart.toDate(), dayEnd.toDate()));
+		}
+	}
+
+	/**
+	 * Seeds favorite counts from the EventSessionFavorite table.
+	 */
+	private class JdbcFavoritePopularityIndex extends FavoritePopularityIndex {
+		public JdbcFavoritePopularityIndex(int maxFavorites) {
+			super(maxFavorites);
+		}
+
+		@Override
+		protected Map<Integer, Long> loadFavoriteCounts(Long eventId) {
+			final Map<Integer, Long> counts = new HashMap<Integer, Long>();
+			jdbcTemplate.query("select session, count(*) from EventSessionFavorite where event = ? group by session",
+					new RowCallbackHandler() {
+						public void processRow(ResultSet rs) throws SQLException {
+							counts.put(rs.getInt(1), rs.getLong(2));
+						}
+					}, eventId);
+			return counts;
+		}
+	}
+
+	/**
+	 * Loads session intervals from the EventSession and EventTimeSlot tables.
+	 */
+	private class JdbcSessionIntervalIndex extends SessionIntervalIndex {
+		@Override
+		protected List<SessionInterval> load(Long eventId) {
+			return jdbcTemplate.query(SELECT_SESSION_INTERVALS, new RowMapper<SessionInterval>() {
+				public SessionInterval mapRow(ResultSet rs, int rowNum) throws SQLException {
+					return new SessionInterval(rs.getInt(1), rs.getTimestamp(2).getTime(), rs.getTimestamp(3).getTime());
+				}
+			}, eventId);
+		}
+	}
+
+	/**
+	 * Loads attendee favorites from the EventSessionFavorite table.
+	 */
+	private class JdbcCoFavoriteIndex extends CoFavoriteIndex {
+		@Override
+		protected Map<Long, BitSet> loadFavorites(Long eventId) {
+			final Map<Long, BitSet> favorites = new HashMap<Long, BitSet>();
+			jdbcTemplate.query("select attendee, session from EventSessionFavorite where event = ?",
+					new RowCallbackHandler() {
+						public void processRow(ResultSet rs) throws SQLException {
+							Long attendeeId = rs.getLong(1);
+							BitSet attendeeFavorites = favorites.get(attendeeId);
+							if (attendeeFavorites == null) {
+								attendeeFavorites = new BitSet();
+								favorites.put(attendeeId, attendeeFavorites);
+							}
+							attendeeFavorites.set(rs.getInt(2));
+						}
+					}, eventId);
+			return favorites;
+		}
+	}
+
+	/**
+	 * Loads search documents from the Event, EventSession, and Leader tables.
+	 * Titles and names are weighted above hashtags, tracks, and leader names, which are weighted above descriptions and bios.
+	 */
+	private class JdbcEventSearchIndex extends EventSearchIndex {
+		@Override
+		protected List<Document> loadDocuments(Long eventId) {
+			List<Document> documents = new ArrayList<Document>();
+			Document event = loadEvent(eventId);
+			if (event != null) {
+				documents.add(event);
+			}
+			documents.addAll(loadSessions(SELECT_SEARCH_SESSIONS, eventId));
+			documents.addAll(jdbcTemplate.query(SELECT_SEARCH_LEADERS + "where l.id in (select leader from EventSessionLeader where event = ?)",
+					searchLeaderMapper, eventId));
+			return documents;
+		}
+
+		@Override
+		protected Document loadEvent(Long eventId) {
+			List<Document> events = jdbcTemplate.query("select id, title, description from Event where id = ?",
+					new RowMapper<Document>() {
+						public Document mapRow(ResultSet rs, int rowNum) throws SQLException {
+							return new Document(EventSearchResult.Type.EVENT, rs.getLong("id"), rs.getString("title"))
+									.field(rs.getString("title"), 3).field(rs.getString("description"), 1);
+						}
+					}, eventId);
+			return events.isEmpty() ? null : events.get(0);
+		}
+
+		@Override
+		protected Document loadSession(Long eventId, Integer sessionId) {
+			List<Document> sessions = loadSessions(SELECT_SEARCH_SESSIONS + "and s.id = ? ", eventId, sessionId);
+			return sessions.isEmpty() ? null : sessions.get(0);
+		}
+
+		@Override
+		protected Document loadLeader(Long leaderId) {
+			List<Document> leaders = jdbcTemplate.query(SELECT_SEARCH_LEADERS + "where l.id = ?", searchLeaderMapper, leaderId);
+			return leaders.isEmpty() ? null : leaders.get(0);
+		}
+
+		private List<Document> loadSessions(String sql, Object... args) {
+			final Map<Integer, Document> sessions = new LinkedHashMap<Integer, Document>();
+			jdbcTemplate.query(sql + "order by s.id, sl.rank", new RowCallbackHandler() {
+				public void processRow(ResultSet rs) throws SQLException {
+					int sessionId = rs.getInt("id");
+					Document session = sessions.get(sessionId);
+					if (session == null) {
+						session = new Document(EventSearchResult.Type.SESSION, sessionId, rs.getString("title"))
+								.field(rs.getString("title"), 3).field(rs.getString("hashtag"), 2)
+								.field(rs.getString("track"), 2).field(rs.getString("description"), 1);
+						sessions.put(sessionId, session);
+					}
+					long leaderId = rs.getLong("leaderId");
+					if (!rs.wasNull()) {
+						session.leader(leaderId).field(rs.getString("leaderName"), 2);
+					}
+				}
+			}, args);
+			return new ArrayList<Document>(sessions.values());
+		}
+
+		private final RowMapper<Document> searchLeaderMapper = new RowMapper<Document>() {
+			public Document mapRow(ResultSet rs, int rowNum) throws SQLException {
+				return new Document(EventSearchResult.Type.LEADER, rs.getLong("id"), rs.getString("name"))
+						.field(rs.getString("name"), 3).field(rs.getString("company"), 2).field(rs.getString("bio"), 1);
+			}
+		};
+	}
+
+	/**
+	 * Writes buffered favorite toggles in JDBC batches.
+	 */
+	private class JdbcFavoriteWriteBuffer extends FavoriteWriteBuffer {
+		public JdbcFavoriteWriteBuffer(int batchSize) {
+			super(batchSize);
+		}
+
+		@Override
+		protected BitSet loadFavoriteSessionIds(Long eventId, Long attendeeId) {
+			return JdbcEventRepository.this.loadFavoriteSessionIds(eventId, attendeeId);
+		}
+
+		/**
+		 * Hands the flush to the flusher thread, so the toggling transaction never writes a whole batch.
+		 */
+		@Override
+		protected void requestFlush() {
+			favoriteFlusher.execute(favoriteFlush);
+		}
+
+		/**
+		 * Writes the changes and records them in the change log in a transaction of their own, never a caller's,
+		 * so they are committed before the buffer releases them.
+		 */
+		@Override
+		protected void write(final List<FavoriteChange> changes) {
+			favoriteTransactions.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					writeChanges(changes);
+				}
+			});
+		}
+
+		private void writeChanges(List<FavoriteChange> changes) {
+			List<Object[]> added = new ArrayList<Object[]>();
+			List<Object[]> removed = new ArrayList<Object[]>();
+			for (FavoriteChange change : changes) {
+				favoritePopularityIndex.prepare(change.getEventId());
+				Object[] args = new Object[] { change.getEventId(), change.getSessionId(), change.getAttendeeId() };
+				if (change.isFavorite()) {
+					added.add(args);
+				} else {
+					removed.add(args);
+				}
+			}
+			if (!added.isEmpty()) {
+				jdbcTemplate.batchUpdate(MERGE_FAVORITE, added);
+			}
+			if (!removed.isEmpty()) {
+				jdbcTemplate.batchUpdate("delete from EventSessionFavorite where event = ? and session = ? and attendee = ?", removed);
+			}
+			changeLog.favoritesChanged(changes);
+			for (FavoriteChange change : changes) {
+				afterCommit.favoriteChanged(change.getEventId(), change.getSessionId(), change.getAttendeeId(), change.isFavorite());
+			}
+		}
+	}
+
+	/**
+	 * Columns of the Event and Venue rows the event mappers read, resolved once per ResultSet.
+	 */
+	private static final ColumnIndexes EVENT_COLUMNS = new ColumnIndexes("id", "title", "timeZone", "startTime",
+			"endTime", "slug", "description", "hashtag", "groupSlug", "groupName", "venueId", "venueName",
+			"venuePostalAddress", "venueLatitude", "venueLongitude", "venueLocationHint");
+
+	private static final int EVENT_ID = 0;
+	private static final int EVENT_TITLE = 1;
+	private static final int EVENT_TIME_ZONE = 2;
+	private static final int EVENT_START_TIME = 3;
+	private static final int EVENT_END_TIME = 4;
+	private static final int EVENT_SLUG = 5;
+	private static final int EVENT_DESCRIPTION = 6;
+	private static final int EVENT_HASHTAG = 7;
+	private static final int EVENT_GROUP_SLUG = 8;
+	private static final int EVENT_GROUP_NAME = 9;
+	private static final int VENUE_ID = 10;
+	private static final int VENUE_NAME = 11;
+	private static final int VENUE_POSTAL_ADDRESS = 12;
+	private static final int VENUE_LATITUDE = 13;
+	private static final int VENUE_LONGITUDE = 14;
+	private static final int VENUE_LOCATION_HINT = 15;
+
+	private static Event mapEvent(Long id, ResultSet rs) throws SQLException {
+		int[] columns = EVENT_COLUMNS.resolve(rs);
+		DateTimeZone eventTimeZone = EventTimes.timeZone(rs.getString(columns[EVENT_TIME_ZONE]));
+		return new Event(id, rs.getString(columns[EVENT_TITLE]), eventTimeZone,
+				EventTimes.toUtc(rs.getTimestamp(columns[EVENT_START_TIME]), eventTimeZone),
+				EventTimes.toUtc(rs.getTimestamp(columns[EVENT_END_TIME]), eventTimeZone),
+				rs.getString(columns[EVENT_SLUG]), rs.getString(columns[EVENT_DESCRIPTION]),
+				rs.getString(columns[EVENT_HASHTAG]), new ResourceReference<String>(rs.getString(columns[EVENT_GROUP_SLUG]),
+						rs.getString(columns[EVENT_GROUP_NAME])));
+	}
+
+	private static Venue mapVenue(ResultSet rs) throws SQLException {
+		int[] columns = EVENT_COLUMNS.resolve(rs);
+		return new Venue(rs.getLong(columns[VENUE_ID]), rs.getString(columns[VENUE_NAME]),
+				rs.getString(columns[VENUE_POSTAL_ADDRESS]),
+				new Location(rs.getDouble(columns[VENUE_LATITUDE]), rs.getDouble(columns[VENUE_LONGITUDE])),
+				rs.getString(columns[VENUE_LOCATION_HINT]));
+	}
+
 	/**
 	 * Maps session IDs.
 	 */
 	private final JoinRowMapper<EventSession, Integer> eventSessionMapper = new JoinRowMapper<EventSession, Integer>() {
 		@Override
 		protected Integer mapId(ResultSet rs) throws SQLException {
-			return rs.getInt("id");
+			return rs.getInt(SESSION_COLUMNS.resolve(rs)[SESSION_ID]);
 		}
 
 		@Override
 		protected EventSession mapRoot(Integer id, ResultSet rs) throws SQLException {
-			String eventTimeZone = "America/New_York"; // HACK: For now hard-code to S2GX 2012's value while sorting
-														// this out.
-			return new EventSession(id, rs.getString("title"),
-					adjustEventTimeToUTC(rs.getTimestamp("startTime"), eventTimeZone),
-					adjustEventTimeToUTC(rs.getTimestamp("endTime"), eventTimeZone),
-					rs.getString("description"), rs.getString("hashtag"), rs.getFloat("rating"),
-					new SubResourceReference<Long, Integer>(rs.getLong("venue"), rs.getInt("room"),
-							rs.getString("roomName")),
-					rs.getBoolean("favorite"));
+			return mapSession(id, rs);
 		}
 
 		@Override
 		protected void addChild(EventSession session, ResultSet rs) throws SQLException {
-			session.addLeader(new EventSessionLeader(rs.getString("name")));
+			session.addLeader(mapLeader(rs));
+		}
+	};
+
+	/**
+	 * Maps the sessions of a day schedule, grouping rows by session id rather than relying on them arriving together.
+	 * The query still orders by start time and leader rank, since that is the order the schedule is shown in.
+	 */
+	private final GroupingJoinRowMapper<EventSession, Integer> daySessionMapper = new GroupingJoinRowMapper<EventSession, Integer>(
+			new GroupingJoinRowMapper.ChildMapper<EventSession, Long>() {
+				@Override
+				protected Long mapKey(ResultSet rs) throws SQLException {
+					return rs.getLong(DAY_SESSION_COLUMNS.resolve(rs)[DAY_SESSION_LEADER_ID]);
+				}
+
+				@Override
+				protected void addChild(EventSession session, ResultSet rs) throws SQLException {
+					session.addLeader(mapLeader(rs));
+				}
+			}) {
+		@Override
+		protected Integer mapId(ResultSet rs) throws SQLException {
+			return rs.getInt(SESSION_COLUMNS.resolve(rs)[SESSION_ID]);
+		}
+
+		@Override
+		protected EventSession mapRoot(Integer id, ResultSet rs) throws SQLException {
+			return mapSession(id, rs);
 		}
 	};
 
 	/**
-	 * Adjusts event time to UTC.
+	 * Maps session IDs, retaining the stored start time as the key of keyset pagination.
 	 */
-	private static DateTime adjustEventTimeToUTC(Timestamp timestamp, String eventTimeZone) {
-		MutableDateTime mutableDateTime = new DateTime(timestamp).toMutableDateTime();
-		mutableDateTime.setZoneRetainFields(DateTimeZone.forID(eventTimeZone));
-		return mutableDateTime.toDateTime().toDateTime(DateTimeZone.UTC);
+	private final JoinRowMapper<KeyedSession, Integer> keyedSessionMapper = new JoinRowMapper<KeyedSession, Integer>() {
+		@Override
+		protected Integer mapId(ResultSet rs) throws SQLException {
+			return rs.getInt(SESSION_COLUMNS.resolve(rs)[SESSION_ID]);
+		}
+
+		@Override
+		protected KeyedSession mapRoot(Integer id, ResultSet rs) throws SQLException {
+			long startTime = rs.getTimestamp(SESSION_COLUMNS.resolve(rs)[SESSION_START_TIME]).getTime();
+			return new KeyedSession(mapSession(id, rs), startTime);
+		}
+
+		@Override
+		protected void addChild(KeyedSession keyedSession, ResultSet rs) throws SQLException {
+			keyedSession.session.addLeader(mapLeader(rs));
+		}
+	};
+
+	/**
+	 * Maps the summary of a session that session lists carry; the description is left to {@link EventSessionDetail}.
+	 * Session queries carry the Event's time zone, so times are adjusted to UTC without looking it up.
+	 */
+	private static EventSession mapSession(Integer id, ResultSet rs) throws SQLException {
+		int[] columns = SESSION_COLUMNS.resolve(rs);
+		DateTimeZone eventTimeZone = EventTimes.timeZone(rs.getString(columns[SESSION_TIME_ZONE]));
+		return new EventSession(id, rs.getString(columns[SESSION_TITLE]),
+				EventTimes.toUtc(rs.getTimestamp(columns[SESSION_START_TIME]), eventTimeZone),
+				EventTimes.toUtc(rs.getTimestamp(columns[SESSION_END_TIME]), eventTimeZone),
+				null, rs.getString(columns[SESSION_HASHTAG]), rs.getFloat(columns[SESSION_RATING]),
+				new SubResourceReference<Long, Integer>(rs.getLong(columns[SESSION_VENUE]), rs.getInt(columns[SESSION_ROOM]),
+						rs.getString(columns[SESSION_ROOM_NAME])),
+				rs.getBoolean(columns[SESSION_FAVORITE]));
+	}
+
+	private static EventSessionLeader mapLeader(ResultSet rs) throws SQLException {
+		return new EventSessionLeader(rs.getString(SESSION_COLUMNS.resolve(rs)[SESSION_LEADER_NAME]));
+	}
+
+	/**
+	 * Columns of the session rows the session list mappers read, resolved once per ResultSet.
+	 */
+	private static final ColumnIndexes SESSION_COLUMNS = new ColumnIndexes("id", "title", "timeZone", "startTime",
+			"endTime", "hashtag", "rating", "venue", "room", "roomName", "favorite", "name");
+
+	private static final ColumnIndexes DAY_SESSION_COLUMNS = new ColumnIndexes("leader");
+
+	private static final int DAY_SESSION_LEADER_ID = 0;
+
+	private static final int SESSION_ID = 0;
+	private static final int SESSION_TITLE = 1;
+	private static final int SESSION_TIME_ZONE = 2;
+	private static final int SESSION_START_TIME = 3;
+	private static final int SESSION_END_TIME = 4;
+	private static final int SESSION_HASHTAG = 5;
+	private static final int SESSION_RATING = 6;
+	private static final int SESSION_VENUE = 7;
+	private static final int SESSION_ROOM = 8;
+	private static final int SESSION_ROOM_NAME = 9;
+	private static final int SESSION_FAVORITE = 10;
+	private static final int SESSION_LEADER_NAME = 11;
+
+	/**
+	 * A session paired with the start time it is stored with.
+	 */
+	private static final class KeyedSession {
+
+		private final EventSession session;
+
+		private final long startTime;
+
+		public KeyedSession(EventSession session, long startTime) {
+			this.session = session;
+			this.startTime = startTime;
+		}
+
+	}
+
+	/**
+	 * Maps session IDs to the sessions of a delta, collecting the ids of their leaders.
+	 */
+	private final JoinRowMapper<EventDelta.Session, Integer> deltaSessionMapper = new JoinRowMapper<EventDelta.Session, Integer>() {
+		@Override
+		protected Integer mapId(ResultSet rs) throws SQLException {
+			return rs.getInt("id");
+		}
+
+		@Override
+		protected EventDelta.Session mapRoot(Integer id, ResultSet rs) throws SQLException {
+			long timeSlot = rs.getLong("timeSlot");
+			Long timeSlotId = rs.wasNull() ? null : timeSlot;
+			long venue = rs.getLong("venue");
+			Long venueId = rs.wasNull() ? null : venue;
+			int room = rs.getInt("room");
+			Integer roomId = rs.wasNull() ? null : room;
+			return new EventDelta.Session(id, rs.getString("title"), rs.getString("description"),
+					rs.getString("hashtag"), rs.getString("track"), timeSlotId, venueId, roomId, new ArrayList<Long>());
+		}
+
+		@Override
+		protected void addChild(EventDelta.Session session, ResultSet rs) throws SQLException {
+			long leader = rs.getLong("leader");
+			if (!rs.wasNull()) {
+				session.getLeaders().add(leader);
+			}
+		}
+	};
+
+	/**
+	 * Maps a session's details, adding a leader per row.
+	 */
+	private final JoinRowMapper<EventSessionDetail, Integer> sessionDetailMapper = new JoinRowMapper<EventSessionDetail, Integer>() {
+		@Override
+		protected Integer mapId(ResultSet rs) throws SQLException {
+			return rs.getInt("id");
+		}
+
+		@Override
+		protected EventSessionDetail mapRoot(Integer id, ResultSet rs) throws SQLException {
+			return new EventSessionDetail(id, rs.getString("title"), rs.getString("description"), rs.getString("hashtag"),
+					rs.getString("track"));
+		}
+
+		@Override
+		protected void addChild(EventSessionDetail detail, ResultSet rs) throws SQLException {
+			long leaderId = rs.getLong("leaderId");
+			if (!rs.wasNull()) {
+				detail.addLeader(new EventSessionDetail.Leader(leaderId, rs.getString("name"), rs.getString("company"),
+						rs.getString("leaderTitle"), rs.getString("location"), rs.getString("bio"),
+						rs.getString("personalUrl"), rs.getString("twitterUsername")));
+			}
+		}
+	};
+
+	/**
+	 * Maps a session's rating totals, locked for update, along with the attendee's previous rating if any.
+	 */
+	private final RowMapper<RatingTotals> ratingTotalsMapper = new RowMapper<RatingTotals>() {
+		public RatingTotals mapRow(ResultSet rs, int rowNum) throws SQLException {
+			short previousRating = rs.getShort("previousRating");
+			boolean rated = !rs.wasNull();
+			return new RatingTotals(rs.getInt("ratingSum"), rs.getInt("ratingCount"), mapHistogram(rs), rated ? previousRating : null);
+		}
+	};
+
+	private static int[] mapHistogram(ResultSet rs) throws SQLException {
+		return new int[] { rs.getInt("rating1Count"), rs.getInt("rating2Count"), rs.getInt("rating3Count"),
+				rs.getInt("rating4Count"), rs.getInt("rating5Count") };
 	}
 
-	private static final String SELECT_FROM_EVENT_SESSION = "select s.id, s.title, ts.startTime, ts.endTime, s.description, s.hashtag, s.rating, s.venue, s.room, r.name as roomName, (f.attendee is not null) as favorite, l.name from EventSession s ";
+	/**
+	 * Running sum and count of a session's ratings, and the count of each rating value.
+	 */
+	private static final class RatingTotals {
+
+		private int sum;
+
+		private int count;
+
+		private final int[] histogram;
+
+		private final Short previousRating;
+
+		public RatingTotals(int sum, int count, int[] histogram, Short previousRating) {
+			this.sum = sum;
+			this.count = count;
+			this.histogram = histogram;
+			this.previousRating = previousRating;
+		}
+
+		/**
+		 * Adds a rating, replacing the attendee's previous rating if they had one.
+		 */
+		public void add(short rating) {
+			if (previousRating != null) {
+				sum += rating - previousRating;
+				histogram[previousRating - 1]--;
+			} else {
+				sum += rating;
+				count++;
+			}
+			histogram[rating - 1]++;
+		}
+
+		/**
+		 * The average rating, rounded to the nearest half star.
+		 */
+		public Float average() {
+			return Math.round(sum * 2.0 / count) / 2f;
+		}
+
+	}
+
+	private static final int MAX_CACHED_DAY_SCHEDULES = 256;
+
+	private static final int MAX_EVENT_FAVORITES = 10;
+
+	private static final int MAX_RECOMMENDED_SESSIONS = 5;
+
+	private static final int MAX_SEARCH_RESULTS = 25;
+
+	private static final int MAX_PAGE_SIZE = 100;
+
+	private static final String SELECT_FROM_EVENT_SESSION = "select s.id, s.title, ts.startTime, ts.endTime, s.hashtag, s.rating, s.venue, s.room, r.name as roomName, (f.attendee is not null) as favorite, l.name, e.timeZone from EventSession s " +
+			"inner join Event e on s.event = e.id ";
 
 	private static final String SELECT_EVENT = "select e.id, e.title, e.timeZone, e.startTime, e.endTime, e.slug, e.description, g.hashtag, g.slug as groupSlug, g.name as groupName, "
 			+
@@ -260,14 +1432,69 @@ public class JdbcEventRepository implements EventRepository {
 			"inner join EventVenue ev on e.id = ev.event " +
 			"inner join Venue v on ev.venue = v.id";
 
-	private static final String SELECT_UPCOMING_EVENTS = SELECT_EVENT + " where e.endTime > ? order by e.startTime";
+	private static final String SELECT_EVENTS_BY_IDS = SELECT_EVENT + " where e.id in ( :eventIds )";
 
 	private static final String SELECT_EVENT_BY_SLUG = SELECT_EVENT
-			+ " where g.slug = ? and extract(year from e.startTime) = ? and extract(month from e.startTime) = ? and e.slug = ?";
+			+ " where g.slug = ? and e.startYear = ? and e.startMonth = ? and e.slug = ?";
+
+	private static final String RATING_HISTOGRAM_COLUMNS = "s.rating1Count, s.rating2Count, s.rating3Count, s.rating4Count, s.rating5Count";
+
+	private static final String SELECT_RATING_TOTALS_FOR_UPDATE = "select s.ratingSum, s.ratingCount, " + RATING_HISTOGRAM_COLUMNS + ", " +
+			"(select r.rating from EventSessionRating r where r.event = s.event and r.session = s.id and r.attendee = ?) as previousRating " +
+			"from EventSession s where s.event = ? and s.id = ? for update";
+
+	private static final String UPDATE_RATING_TOTALS = "update EventSession set rating = ?, ratingSum = ?, ratingCount = ?, " +
+			"rating1Count = ?, rating2Count = ?, rating3Count = ?, rating4Count = ?, rating5Count = ? where event = ? and id = ?";
+
+	private static final String MERGE_RATING = "merge into EventSessionRating (event, session, attendee, rating, comment, ratedAt) key (event, session, attendee) values (?, ?, ?, ?, ?, current_timestamp)";
+
+	private static final String SELECT_RATING_HISTOGRAM = "select s.rating, s.ratingCount, " + RATING_HISTOGRAM_COLUMNS +
+			" from EventSession s where s.event = ? and s.id = ?";
+
+	private static final String SELECT_RATING_COMMENTS = "select r.attendee, r.rating, r.comment, r.ratedAt from EventSessionRating r " +
+			"where r.event = ? and r.session = ? and r.comment is not null and r.comment <> '' ";
+
+	private static final String SELECT_RATING_COMMENTS_PAGE = SELECT_RATING_COMMENTS +
+			"order by r.ratedAt desc, r.attendee desc limit ?";
+
+	private static final String SELECT_RATING_COMMENTS_PAGE_BEFORE = SELECT_RATING_COMMENTS +
+			"and (r.ratedAt < ? or (r.ratedAt = ? and r.attendee < ?)) " +
+			"order by r.ratedAt desc, r.attendee desc limit ?";
+
+	private static final String SELECT_SESSION_DETAIL = "select s.id, s.title, s.description, s.hashtag, s.track, " +
+			"l.id as leaderId, l.name, l.company, l.title as leaderTitle, l.location, l.bio, l.personalUrl, l.twitterUsername from EventSession s " +
+			"left outer join EventSessionLeader sl on s.event = sl.event and s.id = sl.session " +
+			"left outer join Leader l on sl.leader = l.id " +
+			"where s.event = ? and s.id = ? order by sl.rank, l.id";
+
+	private static final String SELECT_SEARCH_SESSIONS = "select s.id, s.title, s.description, s.hashtag, s.track, l.id as leaderId, l.name as leaderName from EventSession s " +
+			"left outer join EventSessionLeader sl on s.event = sl.event and s.id = sl.session " +
+			"left outer join Leader l on sl.leader = l.id where s.event = ? ";
 
-	private static final String SELECT_SESSIONS_ON_DAY = SELECT_FROM_EVENT_SESSION +
+	private static final String SELECT_SEARCH_LEADERS = "select l.id, l.name, l.company, l.bio from Leader l ";
+
+	private static final String SELECT_SESSION_INTERVALS = "select s.id, ts.startTime, ts.endTime from EventSession s " +
+			"inner join EventTimeSlot ts on ts.id = s.timeSlot where s.event = ?";
+
+	private static final String SELECT_CHANGES_SINCE = "select entity, session, timeSlot, deleted from EventChange " +
+			"where event = ? and version > ? and version <= ? order by version";
+
+	private static final String SELECT_FAVORITE_CHANGES_SINCE = "select session, deleted from EventFavoriteChange " +
+			"where event = ? and attendee = ? and version > ? and version <= ? order by version";
+
+	private static final String SELECT_DELTA_SESSIONS = "select s.id, s.title, s.description, s.hashtag, s.track, s.timeSlot, s.venue, s.room, sl.leader from EventSession s " +
+			"left outer join EventSessionLeader sl on s.event = sl.event and s.id = sl.session " +
+			"where s.event = :eventId and s.id in ( :sessionIds ) order by s.id, sl.rank, sl.leader";
+
+	private static final String SELECT_DELTA_TIME_SLOTS = "select ts.id, ts.label, ts.startTime, ts.endTime, e.timeZone from EventTimeSlot ts " +
+			"inner join Event e on ts.event = e.id " +
+			"where ts.event = :eventId and ts.id in ( :timeSlotIds ) order by ts.startTime, ts.id";
+
+	private static final String MERGE_FAVORITE = "merge into EventSessionFavorite (event, session, attendee) key (event, session, attendee) values (?, ?, ?)";
+
+	private static final String SELECT_SESSIONS_ON_DAY = "select s.id, s.title, ts.startTime, ts.endTime, s.hashtag, s.rating, s.venue, s.room, r.name as roomName, false as favorite, l.name, sl.leader, e.timeZone from EventSession s " +
+			"inner join Event e on s.event = e.id " +
 			"left outer join VenueRoom r on s.venue = r.venue and s.room = r.id " +
-			"left outer join EventSessionFavorite f on s.event = f.event and s.id = f.session and f.attendee = ? " +
 			"inner join EventSessionLeader sl on s.event = sl.event and s.id = sl.session " +
 			"inner join Leader l on sl.leader = l.id " +
 			"inner join EventTimeSlot ts on ts.id = s.timeSlot " +
@@ -275,23 +1502,30 @@ public class JdbcEventRepository implements EventRepository {
 			"order by ts.startTime, s.id, sl.rank";
 
 	private static final String SELECT_EVENT_FAVORITES = SELECT_FROM_EVENT_SESSION +
-			"inner join (select top 10 session, count(*) as favoriteCount from EventSessionFavorite where event = ? group by session) top on s.id = top.session "
-			+
 			"left outer join VenueRoom r on s.venue = r.venue and s.room = r.id " +
-			"left outer join EventSessionFavorite f on s.event = f.event and s.id = f.session and f.attendee = ? " +
+			"left outer join EventSessionFavorite f on s.event = f.event and s.id = f.session and f.attendee = :attendeeId " +
 			"inner join EventSessionLeader sl on s.event = sl.event and s.id = sl.session " +
 			"inner join Leader l on sl.leader = l.id " +
 			"inner join EventTimeSlot ts on ts.id = s.timeSlot " +
-			"where s.event = ? " +
-			"order by top.favoriteCount desc, s.id, sl.rank";
+			"where s.event = :eventId and s.id in ( :sessionIds ) " +
+			"order by s.id, sl.rank";
 
-	private static final String SELECT_ATTENDEE_FAVORITES = SELECT_FROM_EVENT_SESSION +
+	private static final String SELECT_ATTENDEE_FAVORITE_SESSIONS = SELECT_FROM_EVENT_SESSION +
 			"left outer join VenueRoom r on s.venue = r.venue and s.room = r.id " +
 			"inner join EventSessionFavorite f on s.event = f.event and s.id = f.session and f.attendee = ? " +
 			"inner join EventSessionLeader sl on s.event = sl.event and s.id = sl.session " +
 			"inner join Leader l on sl.leader = l.id " +
 			"inner join EventTimeSlot ts on ts.id = s.timeSlot " +
-			"where s.event = ? " +
+			"where s.event = ? ";
+
+	private static final String SELECT_ATTENDEE_FAVORITES = SELECT_ATTENDEE_FAVORITE_SESSIONS +
 			"order by f.rank, s.id, sl.rank";
 
+	private static final String SELECT_ATTENDEE_FAVORITES_PAGE = SELECT_ATTENDEE_FAVORITE_SESSIONS +
+			"order by ts.startTime, s.id, sl.rank";
+
+	private static final String SELECT_ATTENDEE_FAVORITES_PAGE_AFTER = SELECT_ATTENDEE_FAVORITE_SESSIONS +
+			"and (ts.startTime > ? or (ts.startTime = ? and s.id > ?)) " +
+			"order by ts.startTime, s.id, sl.rank";
+
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated list.
+ * The next page is requested by passing {@link #getNextCursor() the next cursor} back to the method that returned this page.
+ * @param <T> the type of the items on the page
+ */
+public final class Page<T> {
+
+	private final List<T> items;
+
+	private final String nextCursor;
+
+	public Page(List<T> items, String nextCursor) {
+		this.items = items;
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * The items on this page, in list order.
+	 */
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * The opaque cursor positioned after the last item on this page; null if this is the last page.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+}
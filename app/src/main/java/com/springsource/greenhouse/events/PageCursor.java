@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Position in a list sorted by a time and then an id, used as a keyset pagination cursor.
+ * The position is the key of the last item returned, so pages stay stable when items are added or removed before it.
+ * Clients see the cursor as an opaque, URL-safe string.
+ */
+final class PageCursor {
+
+	private static final int ENCODED_LENGTH = 16;
+
+	private final long time;
+
+	private final long id;
+
+	public PageCursor(long time, long id) {
+		this.time = time;
+		this.id = id;
+	}
+
+	/**
+	 * The sort time of the last item returned.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * The id of the last item returned.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Whether an item sorted by the time and id comes after this position.
+	 */
+	public boolean isBefore(long time, long id) {
+		return this.time < time || (this.time == time && this.id < id);
+	}
+
+	/**
+	 * Encodes this cursor as an opaque string.
+	 */
+	public String encode() {
+		ByteBuffer bytes = ByteBuffer.allocate(ENCODED_LENGTH);
+		bytes.putLong(time).putLong(id);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.array());
+	}
+
+	/**
+	 * Decodes a cursor previously returned by {@link #encode()}.
+	 * @param cursor the encoded cursor; may be null to indicate the first page
+	 * @return the decoded cursor, or null for the first page
+	 * @throws InvalidPageCursorException if the cursor was not produced by this class
+	 */
+	public static PageCursor decode(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return null;
+		}
+		byte[] bytes;
+		try {
+			bytes = Base64.getUrlDecoder().decode(cursor);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidPageCursorException(cursor);
+		}
+		if (bytes.length != ENCODED_LENGTH) {
+			throw new InvalidPageCursorException(cursor);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		return new PageCursor(buffer.getLong(), buffer.getLong());
+	}
+
+}
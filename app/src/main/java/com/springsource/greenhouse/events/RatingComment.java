@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+/**
+ * An attendee's comment on a session, with the rating it came with.
+ * The attendee is not identified.
+ */
+public final class RatingComment {
+
+	private final short rating;
+
+	private final String comment;
+
+	private final long ratedAt;
+
+	public RatingComment(short rating, String comment, long ratedAt) {
+		this.rating = rating;
+		this.comment = comment;
+		this.ratedAt = ratedAt;
+	}
+
+	/**
+	 * The rating value, from 1 to 5.
+	 */
+	public short getRating() {
+		return rating;
+	}
+
+	/**
+	 * The comment text.
+	 */
+	public String getComment() {
+		return comment;
+	}
+
+	/**
+	 * When the attendee last rated the session, in milliseconds since the epoch.
+	 */
+	public long getRatedAt() {
+		return ratedAt;
+	}
+
+}
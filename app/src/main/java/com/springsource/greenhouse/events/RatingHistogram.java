@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+/**
+ * How many attendees gave a session each rating from one to five stars.
+ */
+public final class RatingHistogram {
+
+	private final int[] counts;
+
+	private final Float averageRating;
+
+	public RatingHistogram(int[] counts, Float averageRating) {
+		this.counts = counts.clone();
+		this.averageRating = averageRating;
+	}
+
+	/**
+	 * The number of ratings of each value; the first element counts one-star ratings and the last five-star ratings.
+	 */
+	public int[] getCounts() {
+		return counts.clone();
+	}
+
+	/**
+	 * The number of ratings of the value.
+	 * @param rating the rating value, from 1 to 5
+	 */
+	public int getCount(int rating) {
+		return counts[rating - 1];
+	}
+
+	/**
+	 * The total number of ratings.
+	 */
+	public int getRatingCount() {
+		int total = 0;
+		for (int count : counts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * The average rating, rounded to the nearest half star; null if the session has not been rated.
+	 */
+	public Float getAverageRating() {
+		return averageRating;
+	}
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-Event index of session time intervals, answering which sessions overlap a session in O(log n + k) time for k overlaps.
+ * Sessions are held sorted by start time in an implicit balanced tree, each node recording the latest end time beneath it,
+ * so subtrees ending before the interval are skipped whole.
+ * An Event's intervals are loaded on first access and kept until the Event's schedule is {@link #invalidate(Long) invalidated};
+ * concurrent requests wait on a single load.
+ * Subclasses decide how intervals are loaded.
+ */
+abstract class SessionIntervalIndex {
+
+	private final ConcurrentMap<Long, FutureTask<Intervals>> intervals = new ConcurrentHashMap<Long, FutureTask<Intervals>>();
+
+	private final AtomicLong loads = new AtomicLong();
+
+	/**
+	 * The end time, in milliseconds, the session is stored with; null if the session has no time slot.
+	 */
+	public Long getEndTime(Long eventId, Integer sessionId) {
+		Intervals eventIntervals = get(eventId);
+		Integer position = eventIntervals.positions.get(sessionId);
+		return position != null ? eventIntervals.ends[position] : null;
+	}
+
+	/**
+	 * The sessions among the candidates that overlap the session, sorted by start time.
+	 * Sessions that merely abut, one ending as the other starts, do not overlap.
+	 * @param candidates the ids of the sessions to consider, such as an attendee's favorites
+	 */
+	public List<Integer> findOverlapping(Long eventId, Integer sessionId, BitSet candidates) {
+		Intervals eventIntervals = get(eventId);
+		List<Integer> overlapping = new ArrayList<Integer>();
+		Integer position = eventIntervals.positions.get(sessionId);
+		if (position != null) {
+			eventIntervals.collectOverlapping(position, candidates, false, overlapping);
+		}
+		return overlapping;
+	}
+
+	/**
+	 * Every pair of overlapping sessions among the specified sessions, ordered by the start time of the earlier session.
+	 */
+	public List<FavoriteConflict> findConflicts(Long eventId, BitSet sessionIds) {
+		Intervals eventIntervals = get(eventId);
+		List<FavoriteConflict> conflicts = new ArrayList<FavoriteConflict>();
+		List<Integer> overlapping = new ArrayList<Integer>();
+		for (int i = 0; i < eventIntervals.ids.length; i++) {
+			int sessionId = eventIntervals.ids[i];
+			if (!sessionIds.get(sessionId)) {
+				continue;
+			}
+			overlapping.clear();
+			eventIntervals.collectOverlapping(i, sessionIds, true, overlapping);
+			for (Integer other : overlapping) {
+				conflicts.add(new FavoriteConflict(sessionId, other));
+			}
+		}
+		return conflicts;
+	}
+
+	/**
+	 * Discards the Event's intervals; they are loaded again on next access.
+	 */
+	public void invalidate(Long eventId) {
+		intervals.remove(eventId);
+	}
+
+	/**
+	 * Discards the intervals of every Event.
+	 */
+	public void invalidateAll() {
+		intervals.clear();
+	}
+
+	/**
+	 * The number of times an Event's intervals were loaded.
+	 */
+	public long getLoadCount() {
+		return loads.get();
+	}
+
+	// subclassing hooks
+
+	/**
+	 * Load the id, start time, and end time of each of the Event's sessions that has a time slot.
+	 */
+	protected abstract List<SessionInterval> load(Long eventId);
+
+	/**
+	 * A session's id with the start and end times it is stored with.
+	 */
+	static final class SessionInterval {
+
+		private final int sessionId;
+
+		private final long startTime;
+
+		private final long endTime;
+
+		public SessionInterval(int sessionId, long startTime, long endTime) {
+			this.sessionId = sessionId;
+			this.startTime = startTime;
+			this.endTime = endTime;
+		}
+
+	}
+
+	// internal helpers
+
+	private Intervals get(final Long eventId) {
+		FutureTask<Intervals> task = intervals.get(eventId);
+		if (task == null) {
+			FutureTask<Intervals> newTask = new FutureTask<Intervals>(new Callable<Intervals>() {
+				public Intervals call() {
+					return new Intervals(load(eventId));
+				}
+			});
+			task = intervals.putIfAbsent(eventId, newTask);
+			if (task == null) {
+				task = newTask;
+				loads.incrementAndGet();
+				task.run();
+			}
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for the session intervals of event " + eventId, e);
+		} catch (ExecutionException e) {
+			intervals.remove(eventId, task);
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Unable to load the session intervals of event " + eventId, e.getCause());
+		}
+	}
+
+	/**
+	 * An Event's session intervals sorted by start time.
+	 * The tree is implicit: the node of the range [low, high) is its middle position, and maxEnds holds the latest end time in that range.
+	 */
+	private static final class Intervals {
+
+		private final int[] ids;
+
+		private final long[] starts;
+
+		private final long[] ends;
+
+		private final long[] maxEnds;
+
+		private final Map<Integer, Integer> positions;
+
+		public Intervals(List<SessionInterval> sessions) {
+			SessionInterval[] sorted = sessions.toArray(new SessionInterval[sessions.size()]);
+			Arrays.sort(sorted, START_TIME_ORDER);
+			ids = new int[sorted.length];
+			starts = new long[sorted.length];
+			ends = new long[sorted.length];
+			maxEnds = new long[sorted.length];
+			positions = new HashMap<Integer, Integer>(sorted.length * 2);
+			for (int i = 0; i < sorted.length; i++) {
+				ids[i] = sorted[i].sessionId;
+				starts[i] = sorted[i].startTime;
+				ends[i] = sorted[i].endTime;
+				positions.put(ids[i], i);
+			}
+			computeMaxEnds(0, sorted.length);
+		}
+
+		/**
+		 * Adds the candidates overlapping the session at the position, other than the session itself.
+		 * @param laterOnly only add sessions sorted after the position, so each overlapping pair is found once
+		 */
+		public void collectOverlapping(int position, BitSet candidates, boolean laterOnly, List<Integer> overlapping) {
+			int limit = firstStartingAtOrAfter(ends[position]);
+			collect(0, ids.length, limit, position, starts[position], candidates, laterOnly, overlapping);
+		}
+
+		private void collect(int low, int high, int limit, int position, long start, BitSet candidates,
+				boolean laterOnly, List<Integer> overlapping) {
+			if (low >= high || low >= limit) {
+				return;
+			}
+			int mid = (low + high) >>> 1;
+			if (maxEnds[mid] <= start) {
+				return;
+			}
+			collect(low, mid, limit, position, start, candidates, laterOnly, overlapping);
+			if (mid < limit && ends[mid] > start && mid != position && (!laterOnly || mid > position)
+					&& candidates.get(ids[mid])) {
+				overlapping.add(ids[mid]);
+			}
+			collect(mid + 1, high, limit, position, start, candidates, laterOnly, overlapping);
+		}
+
+		private long computeMaxEnds(int low, int high) {
+			if (low >= high) {
+				return Long.MIN_VALUE;
+			}
+			int mid = (low + high) >>> 1;
+			long maxEnd = Math.max(ends[mid], Math.max(computeMaxEnds(low, mid), computeMaxEnds(mid + 1, high)));
+			maxEnds[mid] = maxEnd;
+			return maxEnd;
+		}
+
+		private int firstStartingAtOrAfter(long time) {
+			int low = 0;
+			int high = starts.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (starts[mid] < time) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+	}
+
+	private static final Comparator<SessionInterval> START_TIME_ORDER = new Comparator<SessionInterval>() {
+		public int compare(SessionInterval s1, SessionInterval s2) {
+			if (s1.startTime != s2.startTime) {
+				return s1.startTime < s2.startTime ? -1 : 1;
+			}
+			return s1.sessionId < s2.sessionId ? -1 : (s1.sessionId == s2.sessionId ? 0 : 1);
+		}
+	};
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+/**
+ * The status of a tweet or retweet accepted for sending to Twitter.
+ */
+public final class TweetDispatch {
+
+	/**
+	 * Where a dispatch is in its lifecycle.
+	 */
+	public enum Status {
+
+		/**
+		 * Waiting to be sent, or waiting to be retried after a transient failure.
+		 */
+		QUEUED,
+
+		/**
+		 * Accepted by Twitter.
+		 */
+		SENT,
+
+		/**
+		 * Rejected by Twitter, or still failing after the last retry.
+		 */
+		FAILED
+
+	}
+
+	private final String id;
+
+	private final Status status;
+
+	private final int attempts;
+
+	private final String failureReason;
+
+	public TweetDispatch(String id, Status status, int attempts, String failureReason) {
+		this.id = id;
+		this.status = status;
+		this.attempts = attempts;
+		this.failureReason = failureReason;
+	}
+
+	/**
+	 * The id used to look up this dispatch's status.
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Where the dispatch is in its lifecycle.
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * The number of times sending has been attempted so far.
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Why the last attempt failed; null if no attempt has failed.
+	 */
+	public String getFailureReason() {
+		return failureReason;
+	}
+
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.social.RateLimitExceededException;
+import org.springframework.social.ServerException;
+import org.springframework.social.twitter.api.TimelineOperations;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Bounded queue of tweets and retweets waiting to be sent to Twitter, so request threads do not wait on the Twitter API.
+ * Each member's tweets are sent one at a time in the order they were accepted; different members' tweets are sent in parallel,
+ * and no member may have more than their own share of the queue waiting.
+ * Server errors and I/O failures are retried with exponential backoff, holding back the member's later tweets.
+ * A rate limited tweet is parked, with the member's later tweets, until the rate limit window has passed; any other error fails the tweet at once.
+ * The status of recent dispatches is kept so clients can poll for completion.
+ */
+@Component
+public class TweetDispatcher implements DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(TweetDispatcher.class);
+
+	private static final int MAX_RETAINED_DISPATCHES = 10000;
+
+	private static final long MAX_BACKOFF = 60000;
+
+	static final int DEFAULT_MEMBER_CAPACITY = 20;
+
+	static final long DEFAULT_RATE_LIMIT_WINDOW = 15 * 60 * 1000;
+
+	private final int capacity;
+
+	private final int memberCapacity;
+
+	private final long rateLimitWindow;
+
+	private final int maxAttempts;
+
+	private final long initialBackoff;
+
+	private final ScheduledExecutorService executor;
+
+	private final Map<Long, Deque<Job>> memberQueues = new HashMap<Long, Deque<Job>>();
+
+	private final Map<String, Job> dispatches = new LinkedHashMap<String, Job>() {
+		protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+			return size() > MAX_RETAINED_DISPATCHES;
+		}
+	};
+
+	private int depth;
+
+	private final AtomicLong sent = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong retries = new AtomicLong();
+
+	private final AtomicLong latencyNanos = new AtomicLong();
+
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	/**
+	 * Creates a dispatcher configured by the "events.tweets.dispatchThreads", "events.tweets.dispatchCapacity",
+	 * "events.tweets.dispatchMemberCapacity", "events.tweets.dispatchMaxAttempts", "events.tweets.dispatchRetryBackoff" (milliseconds)
+	 * and "events.tweets.dispatchRateLimitWindow" (milliseconds) properties.
+	 */
+	@Inject
+	public TweetDispatcher(Environment environment) {
+		this(environment.getProperty("events.tweets.dispatchThreads", Integer.class, 4),
+				environment.getProperty("events.tweets.dispatchCapacity", Integer.class, 1000),
+				environment.getProperty("events.tweets.dispatchMemberCapacity", Integer.class, DEFAULT_MEMBER_CAPACITY),
+				environment.getProperty("events.tweets.dispatchMaxAttempts", Integer.class, 5),
+				environment.getProperty("events.tweets.dispatchRetryBackoff", Long.class, 1000L),
+				environment.getProperty("events.tweets.dispatchRateLimitWindow", Long.class, DEFAULT_RATE_LIMIT_WINDOW));
+	}
+
+	/**
+	 * Creates a dispatcher with the default member capacity and rate limit window.
+	 * @param threads the number of tweets that may be sent in parallel
+	 * @param capacity the maximum number of tweets waiting to be sent
+	 * @param maxAttempts the number of times a tweet is attempted before it fails
+	 * @param initialBackoff the delay before the first retry in milliseconds; doubled for each further retry
+	 */
+	public TweetDispatcher(int threads, int capacity, int maxAttempts, long initialBackoff) {
+		this(threads, capacity, DEFAULT_MEMBER_CAPACITY, maxAttempts, initialBackoff, DEFAULT_RATE_LIMIT_WINDOW);
+	}
+
+	/**
+	 * Creates a dispatcher.
+	 * @param threads the number of tweets that may be sent in parallel
+	 * @param capacity the maximum number of tweets waiting to be sent
+	 * @param memberCapacity the maximum number of one member's tweets waiting to be sent
+	 * @param maxAttempts the number of times a tweet is attempted, including rate limited attempts, before it fails
+	 * @param initialBackoff the delay before the first retry in milliseconds; doubled for each further retry
+	 * @param rateLimitWindow how long a rate limited tweet is parked before it is attempted again, in milliseconds
+	 */
+	public TweetDispatcher(int threads, int capacity, int memberCapacity, int maxAttempts, long initialBackoff, long rateLimitWindow) {
+		this.capacity = capacity;
+		this.memberCapacity = memberCapacity;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.rateLimitWindow = rateLimitWindow;
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("tweet-dispatcher-");
+		threadFactory.setDaemon(true);
+		this.executor = new ScheduledThreadPoolExecutor(threads, threadFactory);
+	}
+
+	/**
+	 * Accepts a status update for sending.
+	 * @param memberId the id of the member's account, which determines the order tweets are sent in
+	 * @param timeline the member's Twitter API binding, used from another thread
+	 * @param status the text of the tweet
+	 * @throws TweetQueueFullException too many tweets, or too many of the member's tweets, are already waiting to be sent
+	 */
+	public TweetDispatch tweet(Long memberId, final TimelineOperations timeline, final String status) {
+		return enqueue(new Job(memberId) {
+			protected void send() {
+				timeline.updateStatus(status);
+			}
+		});
+	}
+
+	/**
+	 * Accepts a retweet for sending.
+	 * @param memberId the id of the member's account, which determines the order tweets are sent in
+	 * @param timeline the member's Twitter API binding, used from another thread
+	 * @param tweetId the id of the tweet to retweet
+	 * @throws TweetQueueFullException too many tweets, or too many of the member's tweets, are already waiting to be sent
+	 */
+	public TweetDispatch retweet(Long memberId, final TimelineOperations timeline, final long tweetId) {
+		return enqueue(new Job(memberId) {
+			protected void send() {
+				timeline.retweet(tweetId);
+			}
+		});
+	}
+
+	/**
+	 * Gets the status of a dispatch accepted for a member.
+	 * @return the dispatch, or null if it is unknown, no longer retained, or was accepted for another member
+	 */
+	public TweetDispatch getDispatch(Long memberId, String dispatchId) {
+		Job job;
+		synchronized (this) {
+			job = dispatches.get(dispatchId);
+		}
+		return job != null && job.memberId.equals(memberId) ? job.toDispatch() : null;
+	}
+
+	/**
+	 * The number of tweets accepted but not yet sent or failed.
+	 */
+	public synchronized int getQueueDepth() {
+		return depth;
+	}
+
+	/**
+	 * The number of tweets accepted by Twitter.
+	 */
+	public long getSentCount() {
+		return sent.get();
+	}
+
+	/**
+	 * The number of tweets that failed.
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * The number of retries after transient failures, including tweets parked by rate limiting.
+	 */
+	public long getRetryCount() {
+		return retries.get();
+	}
+
+	/**
+	 * The mean time from accepting a tweet to sending or failing it, in milliseconds; 0 if none has completed.
+	 */
+	public double getMeanLatency() {
+		long completed = sent.get() + failed.get();
+		return completed > 0 ? latencyNanos.get() / 1000000.0 / completed : 0;
+	}
+
+	/**
+	 * The longest time from accepting a tweet to sending or failing it, in milliseconds.
+	 */
+	public double getMaxLatency() {
+		return maxLatencyNanos.get() / 1000000.0;
+	}
+
+	/**
+	 * Stops sending; tweets still queued are discarded.
+	 */
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	// internal helpers
+
+	private TweetDispatch enqueue(Job job) {
+		synchronized (this) {
+			if (depth >= capacity) {
+				throw new TweetQueueFullException(capacity);
+			}
+			Deque<Job> queue = memberQueues.get(job.memberId);
+			if (queue != null && queue.size() >= memberCapacity) {
+				throw new TweetQueueFullException(memberCapacity);
+			}
+			depth++;
+			dispatches.put(job.id, job);
+			if (queue == null) {
+				queue = new ArrayDeque<Job>();
+				memberQueues.put(job.memberId, queue);
+				schedule(job.memberId, 0);
+			}
+			queue.add(job);
+		}
+		return job.toDispatch();
+	}
+
+	private void schedule(final Long memberId, long delay) {
+		executor.schedule(new Runnable() {
+			public void run() {
+				sendNext(memberId);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void sendNext(Long memberId) {
+		Job job;
+		synchronized (this) {
+			job = memberQueues.get(memberId).peek();
+		}
+		TweetDispatch.Status outcome = TweetDispatch.Status.SENT;
+		try {
+			job.attempt();
+			sent.incrementAndGet();
+		} catch (RuntimeException e) {
+			if (e instanceof RateLimitExceededException && job.attempts < maxAttempts) {
+				retries.incrementAndGet();
+				logger.debug("Tweet dispatch {} rate limited; parking it for {}ms", job.id, rateLimitWindow);
+				schedule(memberId, rateLimitWindow);
+				return;
+			}
+			if (isTransient(e) && job.attempts < maxAttempts) {
+				retries.incrementAndGet();
+				long backoff = Math.min(initialBackoff << Math.min(job.attempts - 1, 16), MAX_BACKOFF);
+				logger.debug("Retrying tweet dispatch {} in {}ms", new Object[] { job.id, backoff, e });
+				schedule(memberId, backoff);
+				return;
+			}
+			logger.warn("Tweet dispatch {} failed after {} attempt(s)", new Object[] { job.id, job.attempts, e });
+			outcome = TweetDispatch.Status.FAILED;
+			failed.incrementAndGet();
+		}
+		recordLatency(System.nanoTime() - job.acceptedAt);
+		synchronized (this) {
+			depth--;
+			Deque<Job> queue = memberQueues.get(memberId);
+			queue.poll();
+			if (queue.isEmpty()) {
+				memberQueues.remove(memberId);
+			} else {
+				schedule(memberId, 0);
+			}
+		}
+		job.complete(outcome);
+	}
+
+	private boolean isTransient(RuntimeException e) {
+		return e instanceof ServerException || e instanceof ResourceAccessException;
+	}
+
+	private void recordLatency(long elapsed) {
+		latencyNanos.addAndGet(elapsed);
+		long max = maxLatencyNanos.get();
+		while (elapsed > max && !maxLatencyNanos.compareAndSet(max, elapsed)) {
+			max = maxLatencyNanos.get();
+		}
+	}
+
+	/**
+	 * A tweet or retweet waiting to be sent, and its progress so far.
+	 * Progress is only written by the thread currently sending the job.
+	 */
+	private abstract static class Job {
+
+		private final String id = UUID.randomUUID().toString();
+
+		private final Long memberId;
+
+		private final long acceptedAt = System.nanoTime();
+
+		private volatile int attempts;
+
+		private volatile TweetDispatch.Status status = TweetDispatch.Status.QUEUED;
+
+		private volatile String failureReason;
+
+		public Job(Long memberId) {
+			this.memberId = memberId;
+		}
+
+		public void attempt() {
+			attempts++;
+			try {
+				send();
+			} catch (RuntimeException e) {
+				failureReason = e.getMessage();
+				throw e;
+			}
+		}
+
+		public void complete(TweetDispatch.Status outcome) {
+			status = outcome;
+		}
+
+		public TweetDispatch toDispatch() {
+			return new TweetDispatch(id, status, attempts, failureReason);
+		}
+
+		protected abstract void send();
+
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a tweet cannot be accepted because the outbound dispatch queue, or the member's share of it, is full.
+ * Clients may retry later.
+ */
+@SuppressWarnings("serial")
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public final class TweetQueueFullException extends IllegalStateException {
+
+	private final int capacity;
+
+	public TweetQueueFullException(int capacity) {
+		super("Tweet dispatch queue is full");
+		this.capacity = capacity;
+	}
+
+	/**
+	 * The maximum number of tweets that may be waiting to be sent, in all or for the member.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.springframework.core.env.Environment;
+import org.springframework.social.twitter.api.SearchOperations;
+import org.springframework.social.twitter.api.SearchResults;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived cache of tweet search results, keyed by search string and page size; page sizes are clamped to what Twitter returns.
+ * Concurrent searches for the same key are coalesced: the first caller searches Twitter and the others wait for its result,
+ * so a burst of requests for a popular event or session turns into a single outbound search per time-to-live.
+ * Failed searches are not cached; the next caller searches again. Results expire timeToLive after the search completes.
+ * Once the cache grows past its maximum size, expired entries are purged and then the least recently used are evicted.
+ */
+@Component
+public class TweetSearchCache {
+
+	static final long DEFAULT_TIME_TO_LIVE = 30000;
+
+	static final int MAX_ENTRIES = 1000;
+
+	static final int MAX_PAGE_SIZE = 100;
+
+	private static final int RETAINED_ENTRIES = MAX_ENTRIES * 9 / 10;
+
+	private final long timeToLive;
+
+	private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong upstreamSearches = new AtomicLong();
+
+	private final AtomicLong upstreamNanos = new AtomicLong();
+
+	private final AtomicLong maxUpstreamNanos = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final Object purgeMonitor = new Object();
+
+	/**
+	 * Creates a cache configured by the "events.tweets.searchCacheTimeToLive" property (milliseconds).
+	 */
+	@Inject
+	public TweetSearchCache(Environment environment) {
+		this(environment.getProperty("events.tweets.searchCacheTimeToLive", Long.class, DEFAULT_TIME_TO_LIVE));
+	}
+
+	/**
+	 * Creates a cache that keeps search results for timeToLive milliseconds.
+	 */
+	public TweetSearchCache(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Gets the search results for the search string, searching Twitter only if no current results are cached or being fetched.
+	 * @param searchOperations the search API binding to use if Twitter must be searched
+	 * @param searchString the search string, such as an event hashtag
+	 * @param pageSize the number of tweets to return, clamped to between 1 and {@link #MAX_PAGE_SIZE}
+	 */
+	public SearchResults search(final SearchOperations searchOperations, final String searchString, int pageSize) {
+		final int count = Math.max(1, Math.min(pageSize, MAX_PAGE_SIZE));
+		Key key = new Key(searchString, count);
+		long now = System.currentTimeMillis();
+		Entry created = null;
+		while (true) {
+			Entry entry = entries.get(key);
+			if (entry != null && !entry.isExpired(now)) {
+				hits.incrementAndGet();
+				entry.accessed(now);
+				return results(key, entry);
+			}
+			if (created == null) {
+				created = new Entry(timeToLive, now, new Callable<SearchResults>() {
+					public SearchResults call() {
+						return searchUpstream(searchOperations, searchString, count);
+					}
+				});
+			}
+			if (entry == null ? entries.putIfAbsent(key, created) == null : entries.replace(key, entry, created)) {
+				break;
+			}
+		}
+		misses.incrementAndGet();
+		purgeIfFull(now);
+		created.run();
+		return results(key, created);
+	}
+
+	/**
+	 * The number of searches answered from the cache, including those that waited for a search already in flight.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of searches that had to search Twitter.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of unexpired entries evicted because the cache was full.
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * The number of entries held, including expired ones not yet purged.
+	 */
+	public int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * The fraction of searches answered from the cache; 0 if nothing has been searched.
+	 */
+	public double getHitRate() {
+		long hitCount = getHitCount();
+		long total = hitCount + getMissCount();
+		return total > 0 ? (double) hitCount / total : 0;
+	}
+
+	/**
+	 * The number of searches sent to Twitter, successful or not.
+	 */
+	public long getUpstreamSearchCount() {
+		return upstreamSearches.get();
+	}
+
+	/**
+	 * The mean time taken by a search sent to Twitter, in milliseconds; 0 if none has been sent.
+	 */
+	public double getMeanUpstreamLatency() {
+		long searches = upstreamSearches.get();
+		return searches > 0 ? upstreamNanos.get() / 1000000.0 / searches : 0;
+	}
+
+	/**
+	 * The longest time taken by a search sent to Twitter, in milliseconds.
+	 */
+	public double getMaxUpstreamLatency() {
+		return maxUpstreamNanos.get() / 1000000.0;
+	}
+
+	// internal helpers
+
+	private SearchResults results(Key key, Entry entry) {
+		try {
+			return entry.get();
+		} catch (RuntimeException e) {
+			entries.remove(key, entry);
+			throw e;
+		}
+	}
+
+	private SearchResults searchUpstream(SearchOperations searchOperations, String searchString, int pageSize) {
+		long start = System.nanoTime();
+		try {
+			return searchOperations.search(searchString, pageSize);
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			upstreamSearches.incrementAndGet();
+			upstreamNanos.addAndGet(elapsed);
+			long max = maxUpstreamNanos.get();
+			while (elapsed > max && !maxUpstreamNanos.compareAndSet(max, elapsed)) {
+				max = maxUpstreamNanos.get();
+			}
+		}
+	}
+
+	/**
+	 * Purges expired entries once the cache is full; if that is not enough, evicts the least recently used
+	 * down to {@link #RETAINED_ENTRIES}, so the next purge is some way off.
+	 */
+	private void purgeIfFull(long now) {
+		if (entries.size() <= MAX_ENTRIES) {
+			return;
+		}
+		synchronized (purgeMonitor) {
+			if (entries.size() <= MAX_ENTRIES) {
+				return;
+			}
+			List<Map.Entry<Key, Entry>> live = new ArrayList<Map.Entry<Key, Entry>>(entries.size());
+			for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<Key, Entry> mapping = it.next();
+				if (mapping.getValue().isExpired(now)) {
+					it.remove();
+				} else {
+					live.add(mapping);
+				}
+			}
+			if (live.size() <= MAX_ENTRIES) {
+				return;
+			}
+			Collections.sort(live, LEAST_RECENTLY_USED);
+			for (int i = 0; i < live.size() - RETAINED_ENTRIES; i++) {
+				if (entries.remove(live.get(i).getKey(), live.get(i).getValue())) {
+					evictions.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	private static final Comparator<Map.Entry<Key, Entry>> LEAST_RECENTLY_USED = new Comparator<Map.Entry<Key, Entry>>() {
+		public int compare(Map.Entry<Key, Entry> e1, Map.Entry<Key, Entry> e2) {
+			long accessed1 = e1.getValue().lastAccessed;
+			long accessed2 = e2.getValue().lastAccessed;
+			return accessed1 < accessed2 ? -1 : (accessed1 == accessed2 ? 0 : 1);
+		}
+	};
+
+	private static final class Key {
+
+		private final String searchString;
+
+		private final int pageSize;
+
+		public Key(String searchString, int pageSize) {
+			this.searchString = searchString;
+			this.pageSize = pageSize;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return searchString.equals(other.searchString) && pageSize == other.pageSize;
+		}
+
+		@Override
+		public int hashCode() {
+			return searchString.hashCode() * 31 + pageSize;
+		}
+
+	}
+
+	/**
+	 * Search results that are being fetched or have been fetched, the time they expire, and the time they were last read.
+	 * The expiry is stamped when the search completes, so a slow search does not shorten the time its results are kept.
+	 */
+	private static final class Entry extends FutureTask<SearchResults> {
+
+		private final long timeToLive;
+
+		private volatile long expiresAt;
+
+		private volatile long lastAccessed;
+
+		public Entry(long timeToLive, long now, Callable<SearchResults> search) {
+			super(search);
+			this.timeToLive = timeToLive;
+			this.lastAccessed = now;
+		}
+
+		public boolean isExpired(long now) {
+			return isDone() && now >= expiresAt;
+		}
+
+		public void accessed(long now) {
+			lastAccessed = now;
+		}
+
+		@Override
+		protected void set(SearchResults results) {
+			expiresAt = System.currentTimeMillis() + timeToLive;
+			super.set(results);
+		}
+
+		@Override
+		public SearchResults get() {
+			boolean interrupted = false;
+			try {
+				while (true) {
+					try {
+						return super.get();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(cause);
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+	}
+
+}
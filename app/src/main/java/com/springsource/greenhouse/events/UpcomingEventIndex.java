@@ -0,0 +1,327 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versioned, in-memory read model of the Events that may be returned by {@link EventRepository#findUpcomingEvents(Long)}.
+ * Each Event is held with its Venues already joined, and indexed by end time so the "after" filter is a binary search.
+ * The snapshot is loaded on first access; afterwards it is refreshed incrementally by reloading only the Events {@link #invalidate(Long) invalidated} since the last read.
+ * Snapshots are immutable, so readers never block one another or observe a partially applied refresh.
+ * Subclasses decide how Events are loaded from the system of record.
+ */
+abstract class UpcomingEventIndex {
+
+	private volatile Snapshot snapshot;
+
+	private final Set<Long> staleEvents = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong rebuilds = new AtomicLong();
+
+	/**
+	 * The Events that end after the specified time, sorted ascending by start time.
+	 * The returned list is shared between callers and may not be modified.
+	 */
+	public List<Event> findUpcomingEvents(long afterMillis) {
+		return currentSnapshot().upcoming(afterMillis).events;
+	}
+
+	/**
+	 * A page of the Events that end after the specified time, sorted ascending by start time.
+	 * @param after the position after which the page starts; null for the first page
+	 * @param pageSize the maximum number of Events on the page
+	 */
+	public Page<Event> findUpcomingEvents(long afterMillis, PageCursor after, int pageSize) {
+		return currentSnapshot().upcoming(afterMillis).page(after, pageSize);
+	}
+
+	/**
+	 * The end time of the last Event to drop off the upcoming list by the specified time, or 0 if none had ended.
+	 * Dropping off changes the list without any Event changing, so it is a modification time of the list.
+	 */
+	public long findLastEndedAt(long afterMillis) {
+		return currentSnapshot().lastEndedAt(afterMillis);
+	}
+
+	/**
+	 * The Event with the specified id, or null if the index does not hold it.
+	 * The index holds every Event with at least one Venue, whether or not it is upcoming.
+	 */
+	public Event findEvent(Long eventId) {
+		IndexedEvent indexed = currentSnapshot().eventsById.get(eventId);
+		return indexed != null ? indexed.event : null;
+	}
+
+	/**
+	 * Marks an Event as changed in the system of record.
+	 * The Event is reloaded the next time the index is read.
+	 */
+	public void invalidate(Long eventId) {
+		staleEvents.add(eventId);
+	}
+
+	/**
+	 * Discards the snapshot; the next read reloads every Event.
+	 */
+	public void invalidateAll() {
+		synchronized (this) {
+			snapshot = null;
+			staleEvents.clear();
+		}
+	}
+
+	/**
+	 * The version of the current snapshot, incremented on every rebuild; 0 if no snapshot has been loaded.
+	 */
+	public long getVersion() {
+		Snapshot current = snapshot;
+		return current != null ? current.version : 0;
+	}
+
+	/**
+	 * The number of reads answered from the current snapshot without touching the system of record.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of reads that first had to load or refresh the snapshot.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of snapshots built, full or incremental.
+	 */
+	public long getRebuildCount() {
+		return rebuilds.get();
+	}
+
+	// subclassing hooks
+
+	/**
+	 * Load every Event, with its Venues, from the system of record.
+	 */
+	protected abstract List<IndexedEvent> loadAll();
+
+	/**
+	 * Load the specified Events, with their Venues, from the system of record.
+	 * An Event absent from the result is considered deleted.
+	 */
+	protected abstract List<IndexedEvent> load(Collection<Long> eventIds);
+
+	/**
+	 * An Event paired with the start and end times it is stored with, which are what the upcoming filter and sort apply to.
+	 */
+	static final class IndexedEvent {
+
+		private final Event event;
+
+		private final long startTime;
+
+		private final long endTime;
+
+		public IndexedEvent(Event event, long startTime, long endTime) {
+			this.event = event;
+			this.startTime = startTime;
+			this.endTime = endTime;
+		}
+
+		public Event getEvent() {
+			return event;
+		}
+
+	}
+
+	// internal helpers
+
+	private Snapshot currentSnapshot() {
+		Snapshot current = snapshot;
+		if (current != null && staleEvents.isEmpty()) {
+			hits.incrementAndGet();
+			return current;
+		}
+		synchronized (this) {
+			current = snapshot;
+			if (current == null) {
+				staleEvents.clear();
+				current = new Snapshot(1, loadAll());
+			} else if (!staleEvents.isEmpty()) {
+				Set<Long> eventIds = new HashSet<Long>(staleEvents);
+				staleEvents.removeAll(eventIds);
+				current = current.refresh(eventIds, load(eventIds));
+			} else {
+				hits.incrementAndGet();
+				return current;
+			}
+			misses.incrementAndGet();
+			rebuilds.incrementAndGet();
+			snapshot = current;
+			return current;
+		}
+	}
+
+	private static final class Snapshot {
+
+		private final long version;
+
+		private final Map<Long, IndexedEvent> eventsById;
+
+		private final IndexedEvent[] eventsByEndTime;
+
+		private final long[] endTimes;
+
+		private final Map<Integer, Upcoming> upcomingByPosition = new ConcurrentHashMap<Integer, Upcoming>();
+
+		public Snapshot(long version, Collection<IndexedEvent> events) {
+			this.version = version;
+			this.eventsById = new HashMap<Long, IndexedEvent>(events.size() * 2);
+			for (IndexedEvent event : events) {
+				eventsById.put(event.event.getId(), event);
+			}
+			this.eventsByEndTime = eventsById.values().toArray(new IndexedEvent[eventsById.size()]);
+			Arrays.sort(eventsByEndTime, END_TIME_ORDER);
+			this.endTimes = new long[eventsByEndTime.length];
+			for (int i = 0; i < eventsByEndTime.length; i++) {
+				endTimes[i] = eventsByEndTime[i].endTime;
+			}
+		}
+
+		public Snapshot refresh(Set<Long> eventIds, List<IndexedEvent> reloaded) {
+			Map<Long, IndexedEvent> events = new HashMap<Long, IndexedEvent>(eventsById);
+			events.keySet().removeAll(eventIds);
+			for (IndexedEvent event : reloaded) {
+				events.put(event.event.getId(), event);
+			}
+			return new Snapshot(version + 1, events.values());
+		}
+
+		public Upcoming upcoming(long afterMillis) {
+			int position = firstEndingAfter(afterMillis);
+			Upcoming upcoming = upcomingByPosition.get(position);
+			if (upcoming == null) {
+				IndexedEvent[] matches = Arrays.copyOfRange(eventsByEndTime, position, eventsByEndTime.length);
+				Arrays.sort(matches, START_TIME_ORDER);
+				upcoming = new Upcoming(matches);
+				upcomingByPosition.put(position, upcoming);
+			}
+			return upcoming;
+		}
+
+		public long lastEndedAt(long afterMillis) {
+			int position = firstEndingAfter(afterMillis);
+			return position > 0 ? endTimes[position - 1] : 0;
+		}
+
+		private int firstEndingAfter(long afterMillis) {
+			int low = 0;
+			int high = endTimes.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (endTimes[mid] > afterMillis) {
+					high = mid;
+				} else {
+					low = mid + 1;
+				}
+			}
+			return low;
+		}
+
+	}
+
+	/**
+	 * The Events ending after some time, sorted by start time and then id.
+	 */
+	private static final class Upcoming {
+
+		private final IndexedEvent[] eventsByStartTime;
+
+		private final List<Event> events;
+
+		public Upcoming(IndexedEvent[] eventsByStartTime) {
+			this.eventsByStartTime = eventsByStartTime;
+			List<Event> events = new ArrayList<Event>(eventsByStartTime.length);
+			for (IndexedEvent event : eventsByStartTime) {
+				events.add(event.event);
+			}
+			this.events = Collections.unmodifiableList(events);
+		}
+
+		public Page<Event> page(PageCursor after, int pageSize) {
+			int from = after != null ? firstStartingAfter(after) : 0;
+			int to = Math.min(from + pageSize, eventsByStartTime.length);
+			String nextCursor = null;
+			if (to < eventsByStartTime.length) {
+				IndexedEvent last = eventsByStartTime[to - 1];
+				nextCursor = new PageCursor(last.startTime, last.event.getId()).encode();
+			}
+			return new Page<Event>(events.subList(from, to), nextCursor);
+		}
+
+		private int firstStartingAfter(PageCursor after) {
+			int low = 0;
+			int high = eventsByStartTime.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (after.isBefore(eventsByStartTime[mid].startTime, eventsByStartTime[mid].event.getId())) {
+					high = mid;
+				} else {
+					low = mid + 1;
+				}
+			}
+			return low;
+		}
+
+	}
+
+	private static final Comparator<IndexedEvent> END_TIME_ORDER = new Comparator<IndexedEvent>() {
+		public int compare(IndexedEvent e1, IndexedEvent e2) {
+			return compareTimes(e1.endTime, e2.endTime, e1, e2);
+		}
+	};
+
+	private static final Comparator<IndexedEvent> START_TIME_ORDER = new Comparator<IndexedEvent>() {
+		public int compare(IndexedEvent e1, IndexedEvent e2) {
+			return compareTimes(e1.startTime, e2.startTime, e1, e2);
+		}
+	};
+
+	private static int compareTimes(long time1, long time2, IndexedEvent e1, IndexedEvent e2) {
+		if (time1 != time2) {
+			return time1 < time2 ? -1 : 1;
+		}
+		return e1.event.getId().compareTo(e2.event.getId());
+	}
+
+}
@@ -20,6 +20,7 @@ import static java.sql.Types.*;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -37,9 +38,17 @@ import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.springsource.greenhouse.events.AfterCommitEventChangeListener;
+import com.springsource.greenhouse.events.EventChangeListener;
+import com.springsource.greenhouse.events.EventChangeLog;
+
 /**
  * EventLoaderRepository implementation that loads Event data into a relational
  * database using the JDBC API.
+ * Registered {@link EventChangeListener EventChangeListeners} are notified of
+ * each Event written once the loading transaction commits.
+ * Time slots, sessions, and session leaders written are also recorded in the {@link EventChangeLog},
+ * in the loading transaction, so clients can sync only what changed.
  * 
  * @author CraigWalls
  */
@@ -50,9 +59,19 @@ public class JdbcEventLoaderRepository implements EventLoaderRepository {
 
 	private final JdbcTemplate jdbcTemplate;
 
-	@Inject
+	private final EventChangeListener changeListener;
+
+	private final EventChangeLog changeLog;
+
 	public JdbcEventLoaderRepository(JdbcTemplate jdbcTemplate) {
+		this(jdbcTemplate, Collections.<EventChangeListener>emptyList());
+	}
+
+	@Inject
+	public JdbcEventLoaderRepository(JdbcTemplate jdbcTemplate, List<EventChangeListener> changeListeners) {
 		this.jdbcTemplate = jdbcTemplate;
+		this.changeListener = new AfterCommitEventChangeListener(changeListeners);
+		this.changeLog = new EventChangeLog(jdbcTemplate);
 	}
 
 	@Transactional
@@ -80,6 +99,7 @@ public class JdbcEventLoaderRepository implements EventLoaderRepository {
 			jdbcTemplate.update(UPDATE_VENUE, venueData.getName(), venueData.getPostalAddress(),
 					venueData.getLatitude(), venueData.getLongitude(), venueData.getLocationHint(), 1, venueId);
 			logger.info("Updated venue (ID = {})", venueId);
+			changeListener.eventChanged((long) eventId);
 			return eventId;
 		} catch (IncorrectResultSizeDataAccessException e) {
 			// insert if it doesn't exist
@@ -102,6 +122,7 @@ public class JdbcEventLoaderRepository implements EventLoaderRepository {
 			jdbcTemplate.update(INSERT_EVENT_VENUE, eventId, venueId);
 			jdbcTemplate.update(INSERT_EXTERNAL_EVENT, eventId, eventData.getSourceId(), eventData.getSource(),
 					new Date());
+			changeListener.eventChanged(eventId.longValue());
 			return eventId.longValue();
 		}
 	}
@@ -115,6 +136,7 @@ public class JdbcEventLoaderRepository implements EventLoaderRepository {
 			jdbcTemplate.update(UPDATE_LEADER, leaderData.getName(), leaderData.getBio(), leaderData.getPersonalUrl(),
 					leaderData.getTwitterId(), leaderId);
 			logger.info("Updated leader (ID = {})", leaderId);
+			changeListener.leaderChanged((long) leaderId);
 			return leaderId;
 		} catch (IncorrectResultSizeDataAccessException e) {
 			// insert if it doesn't exist
@@ -128,6 +150,7 @@ public class JdbcEventLoaderRepository implements EventLoaderRepository {
 			jdbcTemplate.update(INSERT_EXTERNAL_LEADER, leaderId, leaderData.getSourceId(), leaderData.getSource(),
 					new Date());
 			logger.info("Created leader (ID = {})", leaderId);
+			changeListener.leaderChanged(leaderId);
 			return leaderId;
 		}
 	};
@@ -141,6 +164,8 @@ public class JdbcEventLoaderRepository implements EventLoaderRepository {
 			jdbcTemplate.update(UPDATE_TIMESLOT, timeSlotData.getEventId(), timeSlotData.getLabel(),
 					timeSlotData.getStartTime(), timeSlotData.getEndTime(), timeSlotId);
 			logger.info("Updated timeslot (ID = {})", timeSlotId);
+			changeLog.timeSlotChanged(timeSlotData.getEventId(), (long) timeSlotId);
+			changeListener.eventScheduleChanged(timeSlotData.getEventId());
 			return timeSlotId;
 		} catch (IncorrectResultSizeDataAccessException e) {
 			// insert if it doesn't exist
@@ -155,6 +180,8 @@ public class JdbcEventLoaderRepository implements EventLoaderRepository {
 			jdbcTemplate.update(INSERT_EXTERNAL_TIMESLOT, timeSlotId, timeSlotData.getSourceId(),
 					timeSlotData.getSource(), new Date());
 			logger.info("Created timeslot (ID = {})", timeSlotId);
+			changeLog.timeSlotChanged(timeSlotData.getEventId(), timeSlotId);
+			changeListener.eventScheduleChanged(timeSlotData.getEventId());
 			return timeSlotId;
 		}
 	}
@@ -172,6 +199,9 @@ public class JdbcEventLoaderRepository implements EventLoaderRepository {
 					sessionData.getTitle(), sessionData.getDescription(), sessionData.getHashtag(),
 					sessionData.getVenue(), sessionData.getTimeslot(), sessionKey[0], sessionKey[1]);
 			logger.info("Updated session (EVENT = {}, ID = {})", sessionKey[0], sessionKey[1]);
+			changeLog.sessionChanged(sessionKey[0], (int) sessionKey[1]);
+			changeListener.sessionChanged(sessionKey[0], (int) sessionKey[1]);
+			changeListener.eventScheduleChanged(sessionKey[0]);
 			return 1;
 		} catch (IncorrectResultSizeDataAccessException e) {
 			// insert if it doesn't exist
@@ -189,9 +219,13 @@ public class JdbcEventLoaderRepository implements EventLoaderRepository {
 			int rank = 1;
 			for (Long leaderId : leaderIds) {
 				jdbcTemplate.update(INSERT_SESSION_LEADER, sessionData.getEvent(), newSessionId, leaderId, rank++);
+				changeLog.sessionLeaderChanged(sessionData.getEvent(), newSessionId, leaderId, false);
 			}
+			changeLog.sessionChanged(sessionData.getEvent(), newSessionId);
 
 			logger.info("Created session (EVENT = " + sessionData.getEvent() + ", ID = " + newSessionId + ")");
+			changeListener.sessionChanged(sessionData.getEvent(), newSessionId);
+			changeListener.eventScheduleChanged(sessionData.getEvent());
 			return newSessionId;
 		}
 	}
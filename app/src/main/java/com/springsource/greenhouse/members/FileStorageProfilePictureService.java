@@ -28,6 +28,7 @@ import org.springframework.data.FileStorage;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.springsource.greenhouse.account.AccountChangeListener;
 import com.springsource.greenhouse.account.AccountMapper;
 import com.springsource.greenhouse.utils.ImageUtils;
 
@@ -35,6 +36,7 @@ import com.springsource.greenhouse.utils.ImageUtils;
  * PictureProfileServiceは、プロフィール画像をFileStorageに保存します。
  * プロフィール画像が設定されると、メンバーのアカウントに関連付けられたフラグも設定されます。
  * このフラグは、AccountおよびProfileオブジェクトをマッピングする際にpictureUrlを構築するために使用されます。
+ * フラグの設定後、キャッシュされたアカウントを破棄するようAccountChangeListenerに通知します。
  * 
  * @author Keith Donald
  * @author Craig Walls
@@ -46,6 +48,8 @@ public class FileStorageProfilePictureService implements ProfilePictureService {
 
 	private final JdbcTemplate jdbcTemplate;
 
+	private final AccountChangeListener accountChangeListener;
+
 	private static final String PROFILE_PICS_PATH = "profile-pics/";
 
 	/**
@@ -53,11 +57,14 @@ public class FileStorageProfilePictureService implements ProfilePictureService {
 	 * 
 	 * @param storage      ファイルストレージの実装。例えば、S3やローカルディレクトリにファイルを保存するため。
 	 * @param jdbcTemplate pictureSetフラグを更新するために使用されるデータアクセステンプレート。
+	 * @param accountChangeListener プロフィール画像の変更を通知するリスナー。
 	 */
 	@Inject
-	public FileStorageProfilePictureService(FileStorage storage, JdbcTemplate jdbcTemplate) {
+	public FileStorageProfilePictureService(FileStorage storage, JdbcTemplate jdbcTemplate,
+			AccountChangeListener accountChangeListener) {
 		this.storage = storage;
 		this.jdbcTemplate = jdbcTemplate;
+		this.accountChangeListener = accountChangeListener;
 	}
 
 	/**
@@ -78,6 +85,7 @@ public class FileStorageProfilePictureService implements ProfilePictureService {
 		storage.storeFile(new FileData(PROFILE_PICS_PATH + accountId + "/large.jpg",
 				ImageUtils.scaleImageToWidth(imageBytes, 200), contentType));
 		jdbcTemplate.update("update Member set pictureSet = true where id = ?", accountId);
+		accountChangeListener.accountChanged(accountId);
 	}
 
 	// 内部ヘルパーメソッド
@@ -22,6 +22,7 @@ import java.util.List;
 import javax.inject.Inject;
 
 import org.springframework.data.FileStorage;
+import org.springframework.jdbc.core.ColumnIndexRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
@@ -118,14 +119,22 @@ public class JdbcProfileRepository implements ProfileRepository {
 	}
 
 	/**
-	 * ProfileのRowMapper実装クラス。
+	 * ProfileのRowMapper実装クラス。列はResultSetごとに一度だけ解決したインデックスで読み取ります。
 	 */
-	private class ProfileMapper implements RowMapper<Profile> {
+	private class ProfileMapper extends ColumnIndexRowMapper<Profile> {
+
+		private static final int ID = 0;
+
+		private static final int DISPLAY_NAME = 1;
 
 		private PictureUrlMapper profilePictureUrlMapper = new PictureUrlMapper(pictureUrlFactory, PictureSize.LARGE);
 
-		public Profile mapRow(ResultSet rs, int row) throws SQLException {
-			return new Profile(rs.getLong("id"), rs.getString("displayName"), profilePictureUrlMapper.mapRow(rs, row));
+		public ProfileMapper() {
+			super("id", "displayName");
+		}
+
+		protected Profile mapColumns(ResultSet rs, int[] columns, int row) throws SQLException {
+			return new Profile(rs.getLong(columns[ID]), rs.getString(columns[DISPLAY_NAME]), profilePictureUrlMapper.mapRow(rs, row));
 		}
 	};
 
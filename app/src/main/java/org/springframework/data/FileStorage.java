@@ -39,4 +39,11 @@ public interface FileStorage {
 	// TODO exception hierarchy
 	String storeFile(FileData file);
 
+	/**
+	 * Remove a file from storage; does nothing if there is no such file.
+	 * 
+	 * @param fileName the relative file name
+	 */
+	void deleteFile(String fileName);
+
 }
@@ -104,4 +104,11 @@ public class LocalFileStorage implements FileStorage {
 		return file.toURI().toString();
 	}
 
+	public void deleteFile(String fileName) {
+		File file = new File(storageDirectory, fileName);
+		if (file.exists() && !file.delete()) {
+			throw new FileStorageException("Failed to delete file: " + file.getAbsolutePath());
+		}
+	}
+
 }
\ No newline at end of file
@@ -92,6 +92,20 @@ public class S3FileStorage implements FileStorage {
 		return absoluteUrl(file.getName());
 	}
 
+	/**
+	 * メソッドの説明: ファイルをS3から削除します。
+	 * 
+	 * @param fileName 削除するファイル名
+	 */
+	public void deleteFile(String fileName) {
+		S3Service s3 = createS3Service();
+		try {
+			s3.deleteObject(s3.getBucket(bucketName), fileName);
+		} catch (S3ServiceException e) {
+			throw new S3FileStorageException("S3からオブジェクトを削除できません", e);
+		}
+	}
+
 	// 内部ヘルパーメソッド
 
 	/**
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.jdbc.core;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+/**
+ * ColumnIndexes クラスは、列ラベルの並びを ResultSet ごとに一度だけ列インデックスへ解決します。
+ * 解決結果はスレッドごとに直前の ResultSet と対応付けて保持されるため、同じ ResultSet の 2 行目以降は名前による列検索も割り当ても行いません。
+ * ResultSet は弱参照で保持するので、クエリの終了後に結果が残り続けることはありません。
+ * 1 つのインスタンスを複数のスレッドのマッパーで共有できます。
+ */
+public final class ColumnIndexes {
+
+	private final String[] columnLabels;
+
+	private final ThreadLocal<Resolved> resolved = new ThreadLocal<Resolved>();
+
+	/**
+	 * 指定した列ラベルを解決する ColumnIndexes を作成します。ラベルの大文字と小文字は区別しません。
+	 */
+	public ColumnIndexes(String... columnLabels) {
+		this.columnLabels = columnLabels.clone();
+	}
+
+	/**
+	 * resolve メソッドは、コンストラクタに渡した i 番目のラベルの列インデックス (1 始まり) を i 番目の要素に持つ配列を返します。
+	 * 返された配列は変更しないでください。
+	 * @throws SQLException いずれかのラベルの列が ResultSet にない場合
+	 */
+	public int[] resolve(ResultSet rs) throws SQLException {
+		Resolved current = resolved.get();
+		if (current != null && current.resultSet.get() == rs) {
+			return current.indexes;
+		}
+		int[] indexes = lookup(rs.getMetaData());
+		resolved.set(new Resolved(rs, indexes));
+		return indexes;
+	}
+
+	// internal helpers
+
+	private int[] lookup(ResultSetMetaData metaData) throws SQLException {
+		int columnCount = metaData.getColumnCount();
+		String[] labels = new String[columnCount + 1];
+		for (int column = 1; column <= columnCount; column++) {
+			labels[column] = JdbcUtils.lookupColumnName(metaData, column);
+		}
+		int[] indexes = new int[columnLabels.length];
+		for (int i = 0; i < columnLabels.length; i++) {
+			indexes[i] = indexOf(columnLabels[i], labels);
+		}
+		return indexes;
+	}
+
+	private int indexOf(String columnLabel, String[] labels) throws SQLException {
+		for (int column = 1; column < labels.length; column++) {
+			if (columnLabel.equalsIgnoreCase(labels[column])) {
+				return column;
+			}
+		}
+		throw new SQLException("Column '" + columnLabel + "' not found in result set");
+	}
+
+	private static final class Resolved {
+
+		private final WeakReference<ResultSet> resultSet;
+
+		private final int[] indexes;
+
+		public Resolved(ResultSet resultSet, int[] indexes) {
+			this.resultSet = new WeakReference<ResultSet>(resultSet);
+			this.indexes = indexes;
+		}
+
+	}
+
+}
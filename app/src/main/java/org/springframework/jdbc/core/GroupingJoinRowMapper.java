@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.jdbc.core;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+
+/**
+ * GroupingJoinRowMapper クラスは、{@link JoinRowMapper} と同様に 1対多の結合結果をルート (集約) オブジェクトにマッピングする抽象テンプレートです。
+ * JoinRowMapper と異なり、ルートの ID によるハッシュ索引で行をまとめるため、行がルート ID 順に並んでいる必要はありません。
+ * そのため、マッピングのためだけの order by をクエリから外すことができます。
+ * また、複数の子コレクションを {@link ChildMapper} として同時に扱えます。
+ * 2 つの子テーブルを結合すると行が直積になり同じ子が繰り返し現れるため、ChildMapper ごとに子のキーで重複を検出し、各子を 1 度だけ追加します。
+ * ルートは結果セットに最初に現れた順に返され、子は各ルートの行に最初に現れた順に追加されます。
+ *
+ * @param <R> the root, or aggregate, entity type
+ * @param <I> the root's id property type
+ */
+public abstract class GroupingJoinRowMapper<R, I> {
+
+	private final List<ChildMapper<R, ?>> childMappers;
+
+	/**
+	 * 子コレクションのマッパーを 1 つ持つ GroupingJoinRowMapper を作成します。
+	 */
+	protected GroupingJoinRowMapper(ChildMapper<R, ?> childMapper) {
+		this(Collections.<ChildMapper<R, ?>>singletonList(childMapper));
+	}
+
+	/**
+	 * 指定した子コレクションのマッパーを、リストの順に持つ GroupingJoinRowMapper を作成します。
+	 */
+	protected GroupingJoinRowMapper(List<ChildMapper<R, ?>> childMappers) {
+		this.childMappers = new ArrayList<ChildMapper<R, ?>>(childMappers);
+	}
+
+	/**
+	 * single メソッドは、結果セット全体を正確に 1 つのルートオブジェクト R にマッピングする ResultSetExtractor を返します。
+	 * 行がない場合は EmptyResultDataAccessException、複数のルートがある場合は IncorrectResultSizeDataAccessException をスローします。
+	 */
+	public ResultSetExtractor<R> single() {
+		return singleMapper;
+	}
+
+	/**
+	 * list メソッドは、順序を問わない行を 0..n のルートオブジェクト R のリストにマッピングする ResultSetExtractor を返します。
+	 */
+	public ResultSetExtractor<List<R>> list() {
+		return listMapper;
+	}
+
+	// subclassing hooks
+
+	/**
+	 * mapId メソッドは、ResultSet の現在の行からルートエンティティの ID プロパティ I をマッピングします。
+	 * ID はハッシュキーとして使われるため、equals と hashCode を正しく実装している必要があります。
+	 */
+	protected abstract I mapId(ResultSet rs) throws SQLException;
+
+	/**
+	 * mapRoot メソッドは、ID が最初に現れた行からルートオブジェクト R をマッピングします。
+	 * 直接のプロパティを含み、子の関連プロパティを除外します。
+	 */
+	protected abstract R mapRoot(I id, ResultSet rs) throws SQLException;
+
+	/**
+	 * ChildMapper クラスは、ルートオブジェクト R の 1 つの子コレクションを現在の行からマッピングします。
+	 * @param <R> the root entity type
+	 * @param <K> the type of the key identifying a child within its root
+	 */
+	public abstract static class ChildMapper<R, K> {
+
+		/**
+		 * mapKey メソッドは、ルート内で子を識別するキーを現在の行からマッピングします。
+		 * 外部結合で子がない行では null を返します。
+		 */
+		protected abstract K mapKey(ResultSet rs) throws SQLException;
+
+		/**
+		 * addChild メソッドは、キーが初めて現れた行から子オブジェクトをマッピングし、ルートオブジェクト R に追加します。
+		 */
+		protected abstract void addChild(R root, ResultSet rs) throws SQLException;
+
+	}
+
+	// internal helpers
+
+	private Map<I, Group> group(ResultSet rs) throws SQLException {
+		Map<I, Group> groups = new LinkedHashMap<I, Group>();
+		while (rs.next()) {
+			I id = mapId(rs);
+			Group group = groups.get(id);
+			if (group == null) {
+				group = new Group(mapRoot(id, rs));
+				groups.put(id, group);
+			}
+			group.addChildren(rs);
+		}
+		return groups;
+	}
+
+	private final ResultSetExtractor<R> singleMapper = new ResultSetExtractor<R>() {
+		public R extractData(ResultSet rs) throws SQLException, DataAccessException {
+			Map<I, Group> groups = group(rs);
+			if (groups.isEmpty()) {
+				throw new EmptyResultDataAccessException(1);
+			}
+			if (groups.size() > 1) {
+				throw new IncorrectResultSizeDataAccessException(1, groups.size());
+			}
+			return groups.values().iterator().next().root;
+		}
+	};
+
+	private final ResultSetExtractor<List<R>> listMapper = new ResultSetExtractor<List<R>>() {
+		public List<R> extractData(ResultSet rs) throws SQLException, DataAccessException {
+			Map<I, Group> groups = group(rs);
+			List<R> roots = new ArrayList<R>(groups.size());
+			for (Group group : groups.values()) {
+				roots.add(group.root);
+			}
+			return roots;
+		}
+	};
+
+	/**
+	 * A root and the keys of the children already added to it, one set per child mapper.
+	 */
+	private final class Group {
+
+		private final R root;
+
+		private final List<Set<Object>> childKeys;
+
+		public Group(R root) {
+			this.root = root;
+			this.childKeys = new ArrayList<Set<Object>>(childMappers.size());
+			for (int i = 0; i < childMappers.size(); i++) {
+				childKeys.add(new HashSet<Object>());
+			}
+		}
+
+		public void addChildren(ResultSet rs) throws SQLException {
+			for (int i = 0; i < childMappers.size(); i++) {
+				ChildMapper<R, ?> childMapper = childMappers.get(i);
+				Object key = childMapper.mapKey(rs);
+				if (key != null && childKeys.get(i).add(key)) {
+					childMapper.addChild(root, rs);
+				}
+			}
+		}
+
+	}
+
+}
@@ -15,6 +15,8 @@
  */
 package org.springframework.jdbc.core;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -54,6 +56,54 @@ public abstract class JoinRowMapper<R, I> {
 		return listMapper;
 	}
 
+	/**
+	 * stream メソッドは、ルートオブジェクト R を完成するたびに (mapId の値が変わった時点で) handler に渡す ResultSetExtractor を返します。
+	 * 保持するのは構築中のルート 1 件だけなので、結果全体をリストに溜めずに一定のメモリで処理できます。
+	 * 戻り値は handler に渡したルートの件数です。
+	 */
+	public ResultSetExtractor<Integer> stream(RootCallbackHandler<R> handler) {
+		return stream(handler, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * stream メソッドは、先頭の offset 件のルートを読み飛ばし、最大 limit 件のルートを handler に渡す ResultSetExtractor を返します。
+	 * offset と limit は行数ではなくルートの件数です。limit 件を渡した時点で残りの行は読みません。
+	 */
+	public ResultSetExtractor<Integer> stream(final RootCallbackHandler<R> handler, final int offset, final int limit) {
+		return new ResultSetExtractor<Integer>() {
+			public Integer extractData(ResultSet rs) throws SQLException, DataAccessException {
+				return streamInto(handler, offset, limit, rs);
+			}
+		};
+	}
+
+	/**
+	 * fetchSize メソッドは、ストリーミング用に JDBC ドライバへフェッチサイズのヒントを与える PreparedStatementCreator を返します。
+	 * JdbcTemplate 全体の設定を変えずに、クエリ単位で一度に取得する行数を指定できます。
+	 */
+	public static PreparedStatementCreator fetchSize(final String sql, final int fetchSize, final Object... args) {
+		return new PreparedStatementCreator() {
+			public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+				PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				ps.setFetchSize(fetchSize);
+				new ArgumentPreparedStatementSetter(args).setValues(ps);
+				return ps;
+			}
+		};
+	}
+
+	/**
+	 * RootCallbackHandler インターフェースは、完成したルートオブジェクト R を 1 件ずつ受け取るコールバックです。
+	 */
+	public interface RootCallbackHandler<R> {
+
+		/**
+		 * processRoot メソッドは、子をすべて追加し終えたルートオブジェクトを処理します。
+		 */
+		void processRoot(R root) throws SQLException;
+
+	}
+
 	// subclassing hooks
 
 	/**
@@ -74,6 +124,37 @@ public abstract class JoinRowMapper<R, I> {
 
 	// internal helpers
 
+	private int streamInto(RootCallbackHandler<R> handler, int offset, int limit, ResultSet rs) throws SQLException {
+		int skipped = 0;
+		int count = 0;
+		R root = null;
+		I previousId = null;
+		while (count < limit && rs.next()) {
+			I id = mapId(rs);
+			if (!id.equals(previousId)) {
+				if (root != null) {
+					handler.processRoot(root);
+					count++;
+					root = null;
+				}
+				if (skipped < offset) {
+					skipped++;
+				} else if (count < limit) {
+					root = mapRoot(id, rs);
+				}
+			}
+			if (root != null) {
+				addChild(root, rs);
+			}
+			previousId = id;
+		}
+		if (root != null) {
+			handler.processRoot(root);
+			count++;
+		}
+		return count;
+	}
+
 	private final RowMapper<R> singleMapper = new RowMapper<R>() {
 		public R mapRow(ResultSet rs, int rowNum) throws SQLException {
 			I id = mapId(rs);
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.util.UriTemplate;
+
+public class AccountCacheTest {
+
+	private Map<Long, Account> members;
+
+	private int loads;
+
+	private AccountCache cache;
+
+	@Before
+	public void setup() {
+		members = new HashMap<Long, Account>();
+		addMember(1L, "keith@springsource.com", "kdonald");
+		addMember(2L, "craig@habuma.com", "habuma");
+		addMember(3L, "roy@vmware.com", null);
+		cache = new AccountCache(2) {
+			protected Account loadById(Long accountId) {
+				loads++;
+				return members.get(accountId);
+			}
+
+			protected Account loadBySignin(String signin) throws SignInNotFoundException {
+				loads++;
+				for (Account account : members.values()) {
+					if (signin.equals(account.getEmail()) || signin.equals(account.getUsername())) {
+						return account;
+					}
+				}
+				throw new SignInNotFoundException(signin);
+			}
+		};
+	}
+
+	// ==================== Lookup Tests ====================
+
+	@Test
+	public void testFindBySignin_ShouldHitCache_WhenLoadedById() throws SignInNotFoundException {
+		// Given
+		cache.findById(1L);
+
+		// When
+		Account byEmail = cache.findBySignin("keith@springsource.com");
+		Account byUsername = cache.findBySignin("kdonald");
+
+		// Then
+		assertEquals("Account should be loaded once", 1, loads);
+		assertSame("Email lookup should return the cached account", members.get(1L), byEmail);
+		assertSame("Username lookup should return the cached account", members.get(1L), byUsername);
+		assertEquals("Two lookups should hit", 2, cache.getHitCount());
+		assertEquals("One lookup should miss", 1, cache.getMissCount());
+	}
+
+	@Test(expected = SignInNotFoundException.class)
+	public void testFindBySignin_ShouldThrowException_WhenSigninUnknown() throws SignInNotFoundException {
+		// When
+		cache.findBySignin("stranger@danger.com");
+
+		// Then - Exception should be thrown
+	}
+
+	// ==================== Eviction Tests ====================
+
+	@Test
+	public void testFindById_ShouldEvictLeastRecentlyUsed_WhenFull() throws SignInNotFoundException {
+		// Given
+		cache.findById(1L);
+		cache.findById(2L);
+		cache.findById(1L);
+
+		// When
+		cache.findById(3L);
+
+		// Then
+		assertEquals("Cache should hold its maximum", 2, cache.getSize());
+		cache.findBySignin("kdonald");
+		assertEquals("Recently used account should still be cached", 3, loads);
+		cache.findBySignin("habuma");
+		assertEquals("Evicted account should be loaded again", 4, loads);
+	}
+
+	// ==================== Invalidation Tests ====================
+
+	@Test
+	public void testInvalidate_ShouldReloadAccount_WhenAccountChanged() throws SignInNotFoundException {
+		// Given
+		cache.findBySignin("habuma");
+
+		// When
+		addMember(2L, "craig.walls@vmware.com", "habuma");
+		cache.invalidate(2L);
+
+		// Then
+		assertEquals("Changed account should be reloaded", "craig.walls@vmware.com", cache.findBySignin("habuma").getEmail());
+		assertEquals("Account should be loaded twice", 2, loads);
+		assertEquals("Only the reloaded account should be cached", 1, cache.getSize());
+	}
+
+	@Test
+	public void testFindById_ShouldNotCache_WhenInvalidatedDuringLoad() {
+		// Given
+		AccountCache racingCache = new AccountCache(2) {
+			protected Account loadById(Long accountId) {
+				invalidate(accountId);
+				return members.get(accountId);
+			}
+
+			protected Account loadBySignin(String signin) {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		// When
+		racingCache.findById(1L);
+
+		// Then
+		assertEquals("Account loaded while invalidated should not be cached", 0, racingCache.getSize());
+	}
+
+	// ==================== Helper Methods ====================
+
+	private void addMember(Long id, String email, String username) {
+		members.put(id, new Account(id, "First", "Last", email, username, "http://localhost:8080/picture.jpg",
+				new UriTemplate("http://localhost:8080/members/{id}")));
+	}
+
+}
@@ -17,8 +17,19 @@ package com.springsource.greenhouse.account;
 
 import static org.junit.Assert.*;
 
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.security.crypto.codec.Utf8;
 
 /**
  * Test class for {@link GreenhousePasswordEncoder}.
@@ -314,6 +325,112 @@ public class GreenhousePasswordEncoderTest {
                 encoder2.matches(password, encodedPassword1));
     }
 
+    // ==================== Compatibility Tests ====================
+
+    @Test
+    public void testMatches_ShouldReturnTrue_WhenPasswordEncodedBySaltSecretPasswordDigest() throws Exception {
+        // Given
+        byte[] salt = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 };
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256", "SUN");
+        messageDigest.update(salt);
+        messageDigest.update(Utf8.encode(TEST_SECRET));
+        byte[] digest = messageDigest.digest(Utf8.encode(TEST_PASSWORD));
+        String encodedPassword = new String(Hex.encode(salt)) + new String(Hex.encode(digest));
+
+        // When
+        boolean matches = encoder.matches(TEST_PASSWORD, encodedPassword);
+
+        // Then
+        assertTrue("Passwords stored in the existing format should match", matches);
+        assertFalse("Other passwords should not match", encoder.matches(TEST_PASSWORD_2, encodedPassword));
+        assertFalse("Upper-case hex of a different password should not match",
+                encoder.matches(TEST_PASSWORD_2, encodedPassword.toUpperCase()));
+    }
+
+    // ==================== Concurrency Tests ====================
+
+    @Test
+    public void testMatches_ShouldBeCorrect_WhenCalledFromManyThreads() throws Exception {
+        // Given
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+        // When
+        for (int i = 0; i < 200; i++) {
+            final String password = TEST_PASSWORD + i;
+            results.add(threads.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    String encodedPassword = encoder.encode(password);
+                    return encoder.matches(password, encodedPassword) && !encoder.matches(TEST_PASSWORD_2, encodedPassword);
+                }
+            }));
+        }
+
+        // Then
+        for (Future<Boolean> result : results) {
+            assertTrue("Every thread should match its own password only", result.get());
+        }
+        threads.shutdown();
+    }
+
+    // ==================== Hashing Executor Tests ====================
+
+    @Test
+    public void testMatches_ShouldHashOnExecutor_WhenExecutorProvided() {
+        // Given
+        PasswordHashingExecutor hashingExecutor = new PasswordHashingExecutor(2, 10);
+        GreenhousePasswordEncoder executorEncoder = new GreenhousePasswordEncoder("SHA-256", "SUN", TEST_SECRET, hashingExecutor);
+
+        // When
+        String encodedPassword = executorEncoder.encode(TEST_PASSWORD);
+
+        // Then
+        assertTrue("Password should match", executorEncoder.matches(TEST_PASSWORD, encodedPassword));
+        assertTrue("Encoders sharing a secret should be interchangeable", encoder.matches(TEST_PASSWORD, encodedPassword));
+        hashingExecutor.destroy();
+    }
+
+    @Test
+    public void testExecute_ShouldRejectAtOnce_WhenQueueFull() throws Exception {
+        // Given
+        final PasswordHashingExecutor hashingExecutor = new PasswordHashingExecutor(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        for (int i = 0; i < 2; i++) {
+            callers.submit(new Runnable() {
+                public void run() {
+                    hashingExecutor.execute(new Callable<Object>() {
+                        public Object call() throws Exception {
+                            release.await();
+                            return null;
+                        }
+                    });
+                }
+            });
+        }
+        while (hashingExecutor.getQueueDepth() < 1) {
+            Thread.sleep(10);
+        }
+
+        // When
+        try {
+            hashingExecutor.execute(new Callable<Object>() {
+                public Object call() {
+                    return null;
+                }
+            });
+            fail("Should reject when the queue is full");
+        } catch (PasswordHashingBusyException e) {
+            // Then
+            assertEquals("Capacity should be reported", 1, e.getCapacity());
+            assertEquals("Rejection should be counted", 1, hashingExecutor.getRejectedCount());
+        } finally {
+            release.countDown();
+            callers.shutdown();
+            hashingExecutor.destroy();
+        }
+    }
+
     // ==================== Edge Case Tests ====================
 
     @Test
@@ -19,6 +19,7 @@ import static org.junit.Assert.*;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.joda.time.LocalDate;
 import org.junit.Rule;
@@ -93,6 +94,30 @@ public class JdbcAccountRepositoryTest {
 		// Then - Exception should be thrown
 	}
 
+	@Test
+	public void testAuthenticate_ShouldRehashPassword_WhenStoredInLegacyEncoding()
+			throws SignInNotFoundException, InvalidPasswordException {
+		// Given
+		Executor sameThread = new Executor() {
+			public void execute(Runnable command) {
+				command.run();
+			}
+		};
+		JdbcAccountRepository upgradingRepository = new JdbcAccountRepository(jdbcTemplate,
+				new UpgradingPasswordEncoder(4, NoOpPasswordEncoder.getInstance()), new AccountMapper(
+						new StubFileStorage(), "http://localhost:8080/members/{profileKey}"), sameThread);
+
+		// When
+		upgradingRepository.authenticate(TEST_USERNAME, TEST_PASSWORD);
+
+		// Then
+		String storedPassword = jdbcTemplate.queryForObject("select password from Member where username = ?",
+				String.class, TEST_USERNAME);
+		assertTrue("Password should be rehashed with BCrypt", storedPassword.startsWith("$2a$04$"));
+		assertEquals("Account should still sign in with the rehashed password", "Keith Donald",
+				upgradingRepository.authenticate(TEST_USERNAME, TEST_PASSWORD).getFullName());
+	}
+
 	// ==================== Account Finding Tests ====================
 
 	@Test
@@ -134,6 +159,23 @@ public class JdbcAccountRepositoryTest {
 		assertExpectedAccount(account);
 	}
 
+	@Test
+	public void testFindById_ShouldServeFromCache_UntilPasswordChanged() throws Exception {
+		// Given
+		accountRepository.findById(TEST_ACCOUNT_ID);
+
+		// When
+		Account bySignin = accountRepository.findBySignin(TEST_USERNAME_2);
+		accountRepository.changePassword(TEST_ACCOUNT_ID, "newpassword");
+		accountRepository.findById(TEST_ACCOUNT_ID);
+
+		// Then
+		assertExpectedAccount(bySignin);
+		assertEquals("Sign-in lookup should hit the cache", 1, accountRepository.getAccountCache().getHitCount());
+		assertEquals("Account should be reloaded after its password changed", 2,
+				accountRepository.getAccountCache().getMissCount());
+	}
+
 	// ==================== Error Handling Tests ====================
 
 	@Test(expected = SignInNotFoundException.class)
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+
+public class ProfileReferenceLookupTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private ExecutorService executor;
+
+	private AccountMapper accountMapper;
+
+	@Before
+	public void setup() {
+		db = new GreenhouseTestDatabaseBuilder().member().getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		for (int i = 1; i <= 10; i++) {
+			jdbcTemplate.update("insert into Member (firstName, lastName, email, password, username, gender, birthdate) "
+					+ "values (?, ?, ?, ?, ?, ?, ?)", "Member", String.valueOf(i), "member" + i + "@vmware.com", "password", "member" + i, "M", "1977-12-01");
+		}
+		executor = Executors.newFixedThreadPool(2);
+		accountMapper = new AccountMapper(new StubFileStorage(), "http://localhost:8080/members/{profileKey}");
+	}
+
+	@After
+	public void destroy() {
+		executor.shutdown();
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	// ==================== Chunked Lookup Tests ====================
+
+	@Test
+	public void testFind_ShouldMergeChunksInInputOrder_WhenIdsSpanSeveralChunks() {
+		// Given
+		ProfileReferenceLookup lookup = new ProfileReferenceLookup(jdbcTemplate, accountMapper.getReferenceMapper(), 3, 100, executor);
+
+		// When
+		List<ProfileReference> references = lookup.find(Arrays.asList(9L, 2L, 42L, 7L, 2L, 1L, 10L, 4L));
+
+		// Then
+		assertEquals("Unknown and repeated ids should be left out", Arrays.asList("member9", "member2", "member7", "member1",
+				"member10", "member4"), ids(references));
+		assertEquals("Label should be the member's name", "Member 9", references.get(0).getLabel());
+	}
+
+	@Test
+	public void testFind_ShouldReturnEmptyList_WhenNoIdsGiven() {
+		// Given
+		ProfileReferenceLookup lookup = new ProfileReferenceLookup(jdbcTemplate, accountMapper.getReferenceMapper(), 3, 100, executor);
+
+		// Then
+		assertTrue("No ids should find no references", lookup.find(Collections.<Long>emptyList()).isEmpty());
+	}
+
+	// ==================== Temp Table Lookup Tests ====================
+
+	@Test
+	public void testFind_ShouldJoinTempTable_WhenIdsExceedThreshold() {
+		// Given
+		ProfileReferenceLookup lookup = new ProfileReferenceLookup(jdbcTemplate, accountMapper.getReferenceMapper(), 3, 4, executor);
+
+		// When
+		List<ProfileReference> first = lookup.find(Arrays.asList(5L, 3L, 8L, 42L, 6L, 1L));
+		List<ProfileReference> second = lookup.find(Arrays.asList(10L, 2L, 9L, 4L, 7L));
+
+		// Then
+		assertEquals("Temp table lookup should keep input order", Arrays.asList("member5", "member3", "member8", "member6",
+				"member1"), ids(first));
+		assertEquals("Earlier ids should not leak into a later lookup", Arrays.asList("member10", "member2", "member9",
+				"member4", "member7"), ids(second));
+	}
+
+	// ==================== Helper Methods ====================
+
+	private List<String> ids(List<ProfileReference> references) {
+		List<String> ids = new ArrayList<String>(references.size());
+		for (ProfileReference reference : references) {
+			ids.add(reference.getId());
+		}
+		return ids;
+	}
+
+}
@@ -27,5 +27,8 @@ public class StubFileStorage implements FileStorage {
 	public String storeFile(FileData file) {
 		return absoluteUrl(file.getName());
 	}
+
+	public void deleteFile(String fileName) {
+	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+public class UpgradingPasswordEncoderTest {
+
+	private static final String TEST_PASSWORD = "password";
+
+	private final GreenhousePasswordEncoder legacy = new GreenhousePasswordEncoder("SHA-256", "SUN", "secret");
+
+	private final UpgradingPasswordEncoder encoder = new UpgradingPasswordEncoder(5, legacy);
+
+	// ==================== Format Detection Tests ====================
+
+	@Test
+	public void testMatches_ShouldUseLegacyEncoder_WhenPasswordNotBCrypt() {
+		// Given
+		String encoded = legacy.encode(TEST_PASSWORD);
+
+		// Then
+		assertTrue("Legacy password should match", encoder.matches(TEST_PASSWORD, encoded));
+		assertFalse("Wrong password should not match", encoder.matches("bogus", encoded));
+		assertTrue("Legacy password should need upgrading", encoder.upgradeEncoding(encoded));
+	}
+
+	@Test
+	public void testEncode_ShouldProduceBCrypt_WhenEncodingNewPassword() {
+		// When
+		String encoded = encoder.encode(TEST_PASSWORD);
+
+		// Then
+		assertTrue("Encoded password should be BCrypt at the target cost", encoded.startsWith("$2a$05$"));
+		assertTrue("Encoded password should match", encoder.matches(TEST_PASSWORD, encoded));
+		assertFalse("Encoded password should not need upgrading", encoder.upgradeEncoding(encoded));
+	}
+
+	@Test
+	public void testUpgradeEncoding_ShouldBeTrue_WhenBCryptCostLowerThanTarget() {
+		// Given
+		String weaker = new BCryptPasswordEncoder(4).encode(TEST_PASSWORD);
+		String stronger = new BCryptPasswordEncoder(6).encode(TEST_PASSWORD);
+
+		// Then
+		assertTrue("Weaker BCrypt password should still match", encoder.matches(TEST_PASSWORD, weaker));
+		assertTrue("Weaker BCrypt password should need upgrading", encoder.upgradeEncoding(weaker));
+		assertFalse("Stronger BCrypt password should not need upgrading", encoder.upgradeEncoding(stronger));
+	}
+
+	@Test
+	public void testMatches_ShouldBeFalse_WhenEncodedPasswordNull() {
+		assertFalse("Null encoded password should not match", encoder.matches(TEST_PASSWORD, null));
+		assertFalse("Null encoded password should not need upgrading", encoder.upgradeEncoding(null));
+	}
+
+	// ==================== Calibration Tests ====================
+
+	@Test
+	public void testCalibrateStrength_ShouldNotGoBelowMinimum_WhenBudgetTiny() {
+		// When
+		int strength = UpgradingPasswordEncoder.calibrateStrength(0, 6);
+
+		// Then
+		assertEquals("Strength should be the minimum", 6, strength);
+	}
+
+	@Test
+	public void testCalibrateStrength_ShouldIncreaseStrength_WhenBudgetLarger() {
+		// When
+		int strength = UpgradingPasswordEncoder.calibrateStrength(50, 4);
+
+		// Then
+		assertTrue("Strength should be above the BCrypt minimum", strength > 4);
+		assertTrue("Strength should stay well below slow costs", strength < 16);
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.account;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+public class UsernamePasswordAuthenticationProviderTest {
+
+	private AccountRepository accountRepository;
+
+	private UsernamePasswordAuthenticationProvider provider;
+
+	@Before
+	public void setup() {
+		accountRepository = mock(AccountRepository.class);
+		provider = new UsernamePasswordAuthenticationProvider(accountRepository);
+	}
+
+	// ==================== Authentication Tests ====================
+
+	@Test
+	public void testAuthenticate_ShouldThrowBadCredentials_WhenPasswordInvalid() throws Exception {
+		// Given
+		when(accountRepository.authenticate("kdonald", "wrong")).thenThrow(new InvalidPasswordException());
+
+		// When
+		try {
+			provider.authenticate(new UsernamePasswordAuthenticationToken("kdonald", "wrong"));
+			fail("Invalid password should not authenticate");
+		} catch (BadCredentialsException e) {
+			// Then
+			assertTrue("Cause should be kept", e.getCause() instanceof InvalidPasswordException);
+		}
+	}
+
+	@Test
+	public void testAuthenticate_ShouldThrowAuthenticationServiceException_WhenPasswordHashingBusy() throws Exception {
+		// Given
+		when(accountRepository.authenticate("kdonald", "melbourne")).thenThrow(new PasswordHashingBusyException(100));
+
+		// When
+		try {
+			provider.authenticate(new UsernamePasswordAuthenticationToken("kdonald", "melbourne"));
+			fail("Busy password hashing should not authenticate");
+		} catch (AuthenticationServiceException e) {
+			// Then
+			assertTrue("Cause should be kept", e.getCause() instanceof PasswordHashingBusyException);
+		}
+	}
+
+}
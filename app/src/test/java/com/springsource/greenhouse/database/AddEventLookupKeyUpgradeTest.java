@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.database;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+public class AddEventLookupKeyUpgradeTest {
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void setup() {
+		db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(db);
+		jdbcTemplate.execute("create table Event (id identity primary key, title varchar not null, startTime timestamp not null, slug varchar not null, memberGroup bigint not null)");
+		jdbcTemplate.update("insert into Event (id, title, startTime, slug, memberGroup) values (1, 'SpringOne', '2010-10-19 08:00:00', 's2gx', 1)");
+		jdbcTemplate.update("insert into Event (id, title, startTime, slug, memberGroup) values (2, 'SpringOne Again', '2010-10-28 08:00:00', 's2gx', 1)");
+		jdbcTemplate.update("insert into Event (id, title, startTime, slug, memberGroup) values (3, 'SpringOne Next Year', '2011-10-19 08:00:00', 's2gx', 1)");
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	// ==================== Upgrade ====================
+
+	@Test
+	public void testUpgrade_ShouldRenameLaterDuplicates_WhenLookupKeysCollide() {
+		// When
+		upgrade();
+
+		// Then
+		List<String> slugs = jdbcTemplate.queryForList("select slug from Event order by id", String.class);
+		assertEquals("First event should keep its slug", "s2gx", slugs.get(0));
+		assertEquals("Later duplicate should be made unique", "s2gx-2", slugs.get(1));
+		assertEquals("Event in another month should keep its slug", "s2gx", slugs.get(2));
+	}
+
+	@Test(expected = DataIntegrityViolationException.class)
+	public void testUpgrade_ShouldEnforceLookupKey_WhenUpgraded() {
+		// Given
+		upgrade();
+
+		// When
+		jdbcTemplate.update("insert into Event (id, title, startTime, slug, memberGroup) values (4, 'Duplicate', '2010-10-20 08:00:00', 's2gx', 1)");
+	}
+
+	// ==================== Helper Methods ====================
+
+	private void upgrade() {
+		ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+		populator.addScript(new ClassPathResource("upgrade/v6/AddEventLookupKey.sql", DatabaseUpgrader.class));
+		DatabasePopulatorUtils.execute(populator, db);
+	}
+
+}
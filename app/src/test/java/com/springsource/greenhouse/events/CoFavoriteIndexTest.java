@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoFavoriteIndexTest {
+
+	private static final long TEST_EVENT_ID = 1L;
+
+	private Map<Long, BitSet> favorites;
+
+	private CoFavoriteIndex index;
+
+	@Before
+	public void setup() {
+		favorites = new HashMap<Long, BitSet>();
+		index = new CoFavoriteIndex() {
+			protected Map<Long, BitSet> loadFavorites(Long eventId) {
+				return favorites;
+			}
+		};
+	}
+
+	// ==================== Recommendation Tests ====================
+
+	@Test
+	public void testFindCoFavorites_ShouldRankByCount_WhenAttendeesShareFavorites() {
+		// Given
+		addFavorites(1L, 1, 2, 3);
+		addFavorites(2L, 1, 3);
+		addFavorites(3L, 1, 4);
+		addFavorites(4L, 2, 4);
+
+		// When
+		List<Integer> coFavorites = index.findCoFavorites(TEST_EVENT_ID, 1, new BitSet(), 10);
+
+		// Then
+		assertEquals("Most shared session should come first, ties by id", Arrays.asList(3, 2, 4), coFavorites);
+		assertEquals("Counts should be symmetric", 2, index.getCoFavoriteCount(TEST_EVENT_ID, 3, 1));
+		assertEquals("Sessions never favorited together should have no count", 0, index.getCoFavoriteCount(TEST_EVENT_ID, 3, 4));
+	}
+
+	@Test
+	public void testFindCoFavorites_ShouldLeaveOutExcludedSessions_WhenLimited() {
+		// Given
+		addFavorites(1L, 1, 2, 3, 4);
+		addFavorites(2L, 1, 3, 4);
+		addFavorites(3L, 1, 4);
+		BitSet excluded = new BitSet();
+		excluded.set(4);
+
+		// When
+		List<Integer> coFavorites = index.findCoFavorites(TEST_EVENT_ID, 1, excluded, 1);
+
+		// Then
+		assertEquals("Only the top session that is not excluded should be returned", Arrays.asList(3), coFavorites);
+	}
+
+	// ==================== Incremental Update Tests ====================
+
+	@Test
+	public void testFavoriteChanged_ShouldUpdateCountsIncrementally_WhenFavoriteToggled() {
+		// Given
+		addFavorites(1L, 1, 2);
+		index.prepare(TEST_EVENT_ID);
+
+		// When
+		index.favoriteChanged(TEST_EVENT_ID, 3, 1L, true);
+		index.favoriteChanged(TEST_EVENT_ID, 3, 2L, true);
+		index.favoriteChanged(TEST_EVENT_ID, 2, 1L, false);
+
+		// Then
+		assertEquals("Added favorite should pair with the attendee's other favorites", 1, index.getCoFavoriteCount(TEST_EVENT_ID, 1, 3));
+		assertEquals("Removed favorite should no longer pair", 0, index.getCoFavoriteCount(TEST_EVENT_ID, 1, 2));
+		assertEquals("Matrix should not be rebuilt", 1, index.getLoadCount());
+		assertEquals("Recommendations should follow the changes", Arrays.asList(3), index.findCoFavorites(TEST_EVENT_ID, 1, new BitSet(), 10));
+	}
+
+	@Test
+	public void testFavoriteChanged_ShouldIgnoreChange_WhenAlreadyReflected() {
+		// Given
+		addFavorites(1L, 1, 2);
+		index.prepare(TEST_EVENT_ID);
+
+		// When
+		index.favoriteChanged(TEST_EVENT_ID, 2, 1L, true);
+		index.favoriteChanged(TEST_EVENT_ID, 5, 1L, false);
+
+		// Then
+		assertEquals("Change counted by the build should not be counted twice", 1, index.getCoFavoriteCount(TEST_EVENT_ID, 1, 2));
+	}
+
+	@Test
+	public void testFavoriteChanged_ShouldNotBuild_WhenEventNotLoaded() {
+		// When
+		index.favoriteChanged(TEST_EVENT_ID, 1, 1L, true);
+
+		// Then
+		assertEquals("Change should not build the matrix", 0, index.getLoadCount());
+	}
+
+	@Test
+	public void testFavoriteChanged_ShouldApplyAfterBuild_WhenChangedWhileBuilding() {
+		// Given
+		addFavorites(1L, 1, 2);
+		index = new CoFavoriteIndex() {
+			protected Map<Long, BitSet> loadFavorites(Long eventId) {
+				Map<Long, BitSet> snapshot = new HashMap<Long, BitSet>(favorites);
+				favoriteChanged(eventId, 3, 1L, true);
+				return snapshot;
+			}
+		};
+
+		// When
+		List<Integer> coFavorites = index.findCoFavorites(TEST_EVENT_ID, 1, new BitSet(), 10);
+
+		// Then
+		assertEquals("Change committed after the build read favorites should be applied", Arrays.asList(2, 3), coFavorites);
+		assertEquals("Matrix should be built once", 1, index.getLoadCount());
+	}
+
+	// ==================== Rebuild Tests ====================
+
+	@Test
+	public void testRebuild_ShouldMatchPairCounts_WhenManyAttendees() {
+		// Given
+		Random random = new Random(42);
+		int sessionCount = 60;
+		int[][] expected = new int[sessionCount][sessionCount];
+		for (long attendeeId = 0; attendeeId < 5000; attendeeId++) {
+			BitSet attendeeFavorites = new BitSet();
+			for (int i = 0; i < 6; i++) {
+				attendeeFavorites.set(random.nextInt(sessionCount));
+			}
+			favorites.put(attendeeId, attendeeFavorites);
+			for (int s = attendeeFavorites.nextSetBit(0); s >= 0; s = attendeeFavorites.nextSetBit(s + 1)) {
+				for (int t = attendeeFavorites.nextSetBit(0); t >= 0; t = attendeeFavorites.nextSetBit(t + 1)) {
+					if (s != t) {
+						expected[s][t]++;
+					}
+				}
+			}
+		}
+		index.prepare(TEST_EVENT_ID);
+
+		// When
+		index.rebuild(TEST_EVENT_ID);
+
+		// Then
+		assertEquals("Matrix should be built twice", 2, index.getLoadCount());
+		for (int s = 0; s < sessionCount; s++) {
+			for (int t = 0; t < sessionCount; t++) {
+				if (s != t) {
+					assertEquals("Count of sessions " + s + " and " + t, expected[s][t], index.getCoFavoriteCount(TEST_EVENT_ID, s, t));
+				}
+			}
+		}
+	}
+
+	// ==================== Helper Methods ====================
+
+	private void addFavorites(Long attendeeId, int... sessionIds) {
+		BitSet attendeeFavorites = new BitSet();
+		for (int sessionId : sessionIds) {
+			attendeeFavorites.set(sessionId);
+		}
+		favorites.put(attendeeId, attendeeFavorites);
+	}
+
+}
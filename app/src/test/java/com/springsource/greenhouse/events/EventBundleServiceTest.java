@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.FileData;
+import org.springframework.data.FileStorage;
+import org.springframework.data.FileStorageException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
+
+public class EventBundleServiceTest {
+
+	private static final long TEST_EVENT_ID = 1L;
+
+	private EmbeddedDatabase db;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private FileStorage storage;
+
+	private EventBundleService bundleService;
+
+	@Before
+	public void setup() {
+		db = new GreenhouseTestDatabaseBuilder().member().group().activity().invite().venue().event()
+				.testData(JdbcEventRepositoryTest.class).getDatabase();
+		jdbcTemplate = new JdbcTemplate(db);
+		storage = mock(FileStorage.class);
+		when(storage.storeFile(any(FileData.class))).thenReturn("http://localhost/resources/event-bundles/1.json.gz");
+		bundleService = new EventBundleService(jdbcTemplate, storage);
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void testGetBundle_ShouldWriteWholeSchedule_WhenEventExists() throws IOException {
+		// When
+		EventBundle bundle = bundleService.getBundle(TEST_EVENT_ID);
+		JsonNode document = decompress(bundle);
+
+		// Then
+		assertEquals("Event should be bundled", "SpringOne2gx", document.get("event").get("title").asText());
+		assertEquals("Event hashtag should be bundled", "#s2gx", document.get("event").get("hashtag").asText());
+		assertEquals("Venues should be bundled", 1, document.get("venues").size());
+		assertEquals("Rooms should be bundled", 9, document.get("rooms").size());
+		assertEquals("Time slots should be bundled", 6, document.get("timeSlots").size());
+		JsonNode session = document.get("sessions").get(0);
+		assertEquals("Sessions should be ordered by id", 1, session.get("id").asInt());
+		assertEquals("Sessions should refer to their leaders by id", 1, session.get("leaders").get(0).asLong());
+		assertEquals("Session should refer to its room", 2, session.get("room").asInt());
+		assertEquals("Bundle should be stored", "http://localhost/resources/event-bundles/1.json.gz", bundle.getUrl());
+	}
+
+	@Test
+	public void testGetBundle_ShouldGenerateOnce_UntilScheduleChanged() {
+		// Given
+		EventBundle first = bundleService.getBundle(TEST_EVENT_ID);
+		jdbcTemplate.update("update EventSession set title = 'Mastering MVC 3.1' where event = 1 and id = 1");
+
+		// When
+		EventBundle cached = bundleService.getBundle(TEST_EVENT_ID);
+		bundleService.eventScheduleChanged(TEST_EVENT_ID);
+		EventBundle regenerated = bundleService.getBundle(TEST_EVENT_ID);
+
+		// Then
+		assertSame("Bundle should be reused until the schedule changes", first, cached);
+		assertFalse("Changed schedule should change the tag", first.getTag().equals(regenerated.getTag()));
+		assertEquals("Bundle should be generated once per change", 2, bundleService.getGenerationCount());
+		verify(storage, times(2)).storeFile(any(FileData.class));
+	}
+
+	@Test
+	public void testGetBundle_ShouldServeFromMemory_WhenStorageFails() {
+		// Given
+		reset(storage);
+		when(storage.storeFile(any(FileData.class))).thenThrow(new FileStorageException("storage down"));
+
+		// When
+		EventBundle bundle = bundleService.getBundle(TEST_EVENT_ID);
+
+		// Then
+		assertNull("Bundle should have no stored copy", bundle.getUrl());
+		assertTrue("Bundle should still be generated", bundle.getCompressedBytes().length > 0);
+	}
+
+	@Test
+	public void testGetBundle_ShouldDeleteSupersededCopy_WhenRegenerated() {
+		// Given
+		EventBundle first = bundleService.getBundle(TEST_EVENT_ID);
+		jdbcTemplate.update("update EventSession set title = 'Mastering MVC 3.1' where event = 1 and id = 1");
+		bundleService.eventScheduleChanged(TEST_EVENT_ID);
+
+		// When
+		bundleService.getBundle(TEST_EVENT_ID);
+
+		// Then
+		verify(storage).deleteFile("event-bundles/1/" + first.getTag() + ".json.gz");
+	}
+
+	@Test(expected = EventNotFoundException.class)
+	public void testGetBundle_ShouldThrowNotFound_WhenEventDoesNotExist() {
+		bundleService.getBundle(9999L);
+	}
+
+	@Test
+	public void testGetBytes_ShouldDecompressDocument_WhenClientDoesNotAcceptGzip() throws IOException {
+		// Given
+		EventBundle bundle = bundleService.getBundle(TEST_EVENT_ID);
+
+		// When
+		JsonNode document = new ObjectMapper().readTree(bundle.getBytes());
+
+		// Then
+		assertEquals("Decompressed document should match", decompress(bundle), document);
+	}
+
+	// ==================== Helper Methods ====================
+
+	private JsonNode decompress(EventBundle bundle) throws IOException {
+		return new ObjectMapper().readTree(new GZIPInputStream(new ByteArrayInputStream(bundle.getCompressedBytes())));
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.springsource.greenhouse.events.EventSearchIndex.Document;
+import com.springsource.greenhouse.events.EventSearchResult.Type;
+
+public class EventSearchIndexTest {
+
+	private static final long TEST_EVENT_ID = 1L;
+
+	private Map<Long, Document> sessions;
+
+	private Map<Long, Document> leaders;
+
+	private EventSearchIndex index;
+
+	@Before
+	public void setup() {
+		sessions = new HashMap<Long, Document>();
+		leaders = new HashMap<Long, Document>();
+		index = new EventSearchIndex() {
+			protected List<Document> loadDocuments(Long eventId) {
+				List<Document> documents = new ArrayList<Document>(sessions.values());
+				documents.addAll(leaders.values());
+				return documents;
+			}
+
+			protected Document loadEvent(Long eventId) {
+				return null;
+			}
+
+			protected Document loadSession(Long eventId, Integer sessionId) {
+				return sessions.get(sessionId.longValue());
+			}
+
+			protected Document loadLeader(Long leaderId) {
+				return leaders.get(leaderId);
+			}
+		};
+	}
+
+	// ==================== Tokenizer Tests ====================
+
+	@Test
+	public void testTokenize_ShouldSplitOnPunctuation_WhenTextHasHashtags() {
+		// When
+		List<String> tokens = EventSearchIndex.tokenize("#S2GX: Spring-MVC 3.1");
+
+		// Then
+		assertEquals("Tokens should be lower-case runs of letters and digits", Arrays.asList("s2gx", "spring", "mvc", "3", "1"), tokens);
+	}
+
+	// ==================== Search Tests ====================
+
+	@Test
+	public void testSearch_ShouldRankTitleMatchesFirst_WhenTermInTitleAndDescription() {
+		// Given
+		addSession(1, "Mastering Spring MVC", "Building web applications");
+		addSession(2, "Choices in Mobile Development", "Native apps talk to Spring MVC backends");
+		addSession(3, "Groovy and Grails", "Dynamic languages on the JVM");
+
+		// When
+		List<EventSearchResult> results = index.search(TEST_EVENT_ID, "mvc", 10);
+
+		// Then
+		assertEquals("Two sessions should match", 2, results.size());
+		assertEquals("Title match should rank first", Long.valueOf(1), results.get(0).getId());
+		assertEquals("Description match should rank second", Long.valueOf(2), results.get(1).getId());
+		assertTrue("Scores should be descending", results.get(0).getScore() > results.get(1).getScore());
+	}
+
+	@Test
+	public void testSearch_ShouldMatchEveryToken_WhenQueryHasPrefixes() {
+		// Given
+		addSession(1, "Mastering Spring MVC", null);
+		addSession(2, "Spring Mobile", null);
+		addSession(3, "Mobile Web Applications", null);
+
+		// When
+		List<EventSearchResult> results = index.search(TEST_EVENT_ID, "spr mob", 10);
+
+		// Then
+		assertEquals("Only the session matching both prefixes should be returned", 1, results.size());
+		assertEquals("Spring Mobile should match", Long.valueOf(2), results.get(0).getId());
+		assertTrue("Query without tokens should match nothing", index.search(TEST_EVENT_ID, " -- ", 10).isEmpty());
+	}
+
+	@Test
+	public void testSearch_ShouldPreferExactMatches_WhenTokenAlsoPrefixesLongerWords() {
+		// Given
+		addSession(1, "Web Services", null);
+		addSession(2, "Webflow in Depth", null);
+
+		// When
+		List<EventSearchResult> results = index.search(TEST_EVENT_ID, "web", 10);
+
+		// Then
+		assertEquals("Both sessions should match", 2, results.size());
+		assertEquals("Exact match should rank first", Long.valueOf(1), results.get(0).getId());
+	}
+
+	// ==================== Incremental Update Tests ====================
+
+	@Test
+	public void testSessionChanged_ShouldReindexSession_WhenTitleChanged() {
+		// Given
+		addSession(1, "Mastering Spring MVC", null);
+		index.search(TEST_EVENT_ID, "mvc", 10);
+
+		// When
+		addSession(1, "Spring Integration", null);
+		index.sessionChanged(TEST_EVENT_ID, 1);
+
+		// Then
+		assertTrue("Old title should no longer match", index.search(TEST_EVENT_ID, "mvc", 10).isEmpty());
+		assertEquals("New title should match", 1, index.search(TEST_EVENT_ID, "integration", 10).size());
+		assertEquals("Index should not be rebuilt", 1, index.getLoadCount());
+	}
+
+	@Test
+	public void testLeaderChanged_ShouldReindexLeaderAndSessions_WhenNameChanged() {
+		// Given
+		leaders.put(7L, new Document(Type.LEADER, 7, "Keith Donald").field("Keith Donald", 3));
+		sessions.put(1L, new Document(Type.SESSION, 1, "Mastering MVC").field("Mastering MVC", 3).leader(7).field("Keith Donald", 2));
+		index.search(TEST_EVENT_ID, "keith", 10);
+
+		// When
+		leaders.put(7L, new Document(Type.LEADER, 7, "Keith Allen Donald").field("Keith Allen Donald", 3));
+		sessions.put(1L, new Document(Type.SESSION, 1, "Mastering MVC").field("Mastering MVC", 3).leader(7).field("Keith Allen Donald", 2));
+		index.leaderChanged(7L);
+		List<EventSearchResult> results = index.search(TEST_EVENT_ID, "allen", 10);
+
+		// Then
+		assertEquals("Leader and session should match the new name", 2, results.size());
+		assertEquals("Leader name should rank first", Type.LEADER, results.get(0).getType());
+		assertEquals("Session led by the leader should match", Type.SESSION, results.get(1).getType());
+	}
+
+	@Test
+	public void testSessionChanged_ShouldDoNothing_WhenIndexNotBuilt() {
+		// When
+		index.sessionChanged(TEST_EVENT_ID, 1);
+
+		// Then
+		assertEquals("Change should not build the index", 0, index.getLoadCount());
+	}
+
+	// ==================== Helper Methods ====================
+
+	private void addSession(long id, String title, String description) {
+		sessions.put(id, new Document(Type.SESSION, id, title).field(title, 3).field(description, 1));
+	}
+
+}
@@ -17,14 +17,22 @@ package com.springsource.greenhouse.events;
 
 import static org.junit.Assert.*;
 
+import java.sql.Timestamp;
 import java.util.List;
 
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.springsource.greenhouse.database.GreenhouseTestDatabaseBuilder;
 import com.springsource.greenhouse.utils.Location;
@@ -77,6 +85,67 @@ public class JdbcEventRepositoryTest {
 		assertEventVenue(event);
 	}
 
+	@Test
+	public void testFindUpcomingEvents_ShouldReturnEventsEndingAfterTime_SortedByStartTime() {
+		// When
+		List<Event> upcoming = eventRepository.findUpcomingEvents(new DateTime(2010, 1, 1, 0, 0).getMillis());
+		List<Event> all = eventRepository.findUpcomingEvents(new DateTime(2009, 1, 1, 0, 0).getMillis());
+		List<Event> none = eventRepository.findUpcomingEvents(new DateTime(2011, 1, 1, 0, 0).getMillis());
+
+		// Then
+		assertEquals("Should return the 2010 event only", 1, upcoming.size());
+		assertEquals("Upcoming event should be the 2010 event", Long.valueOf(1L), upcoming.get(0).getId());
+		assertEventGroup(upcoming.get(0));
+		assertEventVenue(upcoming.get(0));
+		assertEquals("Should return both events", 2, all.size());
+		assertEquals("Events should be sorted by start time", Long.valueOf(2L), all.get(0).getId());
+		assertEquals("Events should be sorted by start time", Long.valueOf(1L), all.get(1).getId());
+		assertTrue("Should return no events", none.isEmpty());
+	}
+
+	@Test
+	public void testFindUpcomingEvents_ShouldReturnPagesInOrder_WhenFollowingCursor() {
+		// Given
+		long after = new DateTime(2009, 1, 1, 0, 0).getMillis();
+
+		// When
+		Page<Event> first = eventRepository.findUpcomingEvents(after, null, 1);
+		Page<Event> second = eventRepository.findUpcomingEvents(after, first.getNextCursor(), 1);
+
+		// Then
+		assertEquals("First page should hold the earlier event", Long.valueOf(2L), first.getItems().get(0).getId());
+		assertNotNull("First page should have a next cursor", first.getNextCursor());
+		assertEquals("Second page should hold the later event", Long.valueOf(1L), second.getItems().get(0).getId());
+		assertNull("Last page should have no next cursor", second.getNextCursor());
+	}
+
+	@Test(expected = InvalidPageCursorException.class)
+	public void testFindUpcomingEvents_ShouldThrowException_WhenCursorIsInvalid() {
+		eventRepository.findUpcomingEvents(null, "not-a-cursor", 10);
+	}
+
+	@Test
+	public void testFindUpcomingEvents_ShouldServeFromIndex_UntilEventChanged() {
+		// Given
+		long after = new DateTime(2010, 1, 1, 0, 0).getMillis();
+		UpcomingEventIndex index = ((JdbcEventRepository) eventRepository).getUpcomingEventIndex();
+		eventRepository.findUpcomingEvents(after);
+		jdbcTemplate.update("update Event set title = 'SpringOne 2GX' where id = 1");
+
+		// When
+		String cachedTitle = eventRepository.findUpcomingEvents(after).get(0).getTitle();
+		((EventChangeListener) eventRepository).eventChanged(1L);
+		String reloadedTitle = eventRepository.findUpcomingEvents(after).get(0).getTitle();
+
+		// Then
+		assertEquals("Title should be served from the index", "SpringOne2gx", cachedTitle);
+		assertEquals("Title should be reloaded after the event changed", "SpringOne 2GX", reloadedTitle);
+		assertEquals("Index should be loaded once, then refreshed once", 2, index.getRebuildCount());
+		assertEquals("Index version should reflect the refresh", 2, index.getVersion());
+		assertEquals("Reads that did not rebuild should be hits", 1, index.getHitCount());
+		assertEquals("Reads that rebuilt should be misses", 2, index.getMissCount());
+	}
+
 	@Test
 	public void testFindEventSearchString_ShouldReturnHashtag_WhenEventExists() {
 		// When
@@ -95,6 +164,35 @@ public class JdbcEventRepositoryTest {
 		assertEquals("Session search string should combine event and session hashtags", "#s2gx #mvc", searchString);
 	}
 
+	@Test
+	public void testFindSessionSearchString_ShouldBeMemoized_UntilScheduleChanged() {
+		// Given
+		eventRepository.findSessionSearchString(TEST_EVENT_ID, 1);
+		jdbcTemplate.update("update EventSession set hashtag = '#springmvc' where event = 1 and id = 1");
+
+		// When
+		String memoized = eventRepository.findSessionSearchString(TEST_EVENT_ID, 1);
+		((EventChangeListener) eventRepository).eventScheduleChanged(TEST_EVENT_ID);
+		String reloaded = eventRepository.findSessionSearchString(TEST_EVENT_ID, 1);
+
+		// Then
+		assertEquals("Search string should be memoized", "#s2gx #mvc", memoized);
+		assertEquals("Search string should be reloaded after the schedule changed", "#s2gx #springmvc", reloaded);
+	}
+
+	@Test
+	public void testFindSessionSearchString_ShouldNotMemoize_WhenSessionDoesNotExist() {
+		// When
+		try {
+			eventRepository.findSessionSearchString(999L, 1);
+			fail("Unknown session should not be found");
+		} catch (EmptyResultDataAccessException e) {
+			// Then
+			assertTrue("Unknown event should leave nothing memoized",
+					((JdbcEventRepository) eventRepository).getSessionSearchStrings().isEmpty());
+		}
+	}
+
 	// ==================== Session Finding Tests ====================
 
 	@Test
@@ -111,6 +209,22 @@ public class JdbcEventRepositoryTest {
 		assertMobileSession(sessions.get(1), true);
 	}
 
+	@Test
+	public void testFindSessionsOnDay_ShouldAdjustTimesFromEventTimeZone_WhenMappingSessions() {
+		// Given
+		LocalDate sessionDate = new LocalDate(2010, 10, 21);
+		DateTime stored = new DateTime(jdbcTemplate.queryForObject(
+				"select startTime from EventTimeSlot where label = 'Time Slot 4'", Timestamp.class));
+
+		// When
+		EventSession session = eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_ATTENDEE_ID).get(0);
+
+		// Then
+		assertEquals("Session start should be in UTC", DateTimeZone.UTC, session.getStartTime().getZone());
+		assertEquals("Stored time should be the wall-clock time in the event's time zone", stored.toLocalDateTime(),
+				session.getStartTime().withZone(DateTimeZone.forID("America/Chicago")).toLocalDateTime());
+	}
+
 	@Test
 	public void testFindSessionsOnDay_ShouldReturnSingleSession_WhenOnlyOneSessionExists() {
 		// Given
@@ -121,6 +235,132 @@ public class JdbcEventRepositoryTest {
 
 		// Then
 		assertEquals("Should return 1 session", 1, sessions.size());
+		assertNull("Session lists should leave out the description", sessions.get(0).getDescription());
+	}
+
+	@Test
+	public void testFindSessionDetail_ShouldReturnDescriptionAndLeaders_WhenSessionExists() {
+		// When
+		EventSessionDetail detail = eventRepository.findSessionDetail(TEST_EVENT_ID, 1);
+
+		// Then
+		assertEquals("Session title should match", "Mastering MVC 3", detail.getTitle());
+		assertTrue("Session description should be read",
+				detail.getDescription().startsWith("A deep-dive into the latest capabilities of Spring MVC"));
+		assertEquals("Session track should be read", "web", detail.getTrack());
+		assertEquals("Session should have 1 leader", 1, detail.getLeaders().size());
+		assertEquals("Leader should be Keith Donald", "Keith Donald", detail.getLeaders().get(0).getName());
+	}
+
+	@Test(expected = EventSessionNotFoundException.class)
+	public void testFindSessionDetail_ShouldThrowNotFound_WhenSessionDoesNotExist() {
+		// When
+		eventRepository.findSessionDetail(TEST_EVENT_ID, 99);
+	}
+
+	@Test
+	public void testFindSessionsOnDay_ShouldShareScheduleAcrossAttendees_WithAttendeeFavorites() {
+		// Given
+		LocalDate sessionDate = new LocalDate(2010, 10, 21);
+		DayScheduleCache cache = ((JdbcEventRepository) eventRepository).getDayScheduleCache();
+
+		// When
+		List<EventSession> memberSessions = eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_MEMBER_ID);
+		List<EventSession> attendeeSessions = eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_ATTENDEE_ID);
+
+		// Then
+		assertEquals("Schedule should be built once", 1, cache.getBuildCount());
+		assertEquals("Second attendee should reuse the schedule", 1, cache.getHitCount());
+		assertSocialSession(memberSessions.get(0), true);
+		assertMobileSession(memberSessions.get(1), true);
+		assertSocialSession(attendeeSessions.get(0), false);
+		assertMobileSession(attendeeSessions.get(1), false);
+	}
+
+	@Test
+	public void testFindSessionsOnDay_ShouldRebuildSchedule_WhenEventScheduleChanged() {
+		// Given
+		LocalDate sessionDate = new LocalDate(2010, 10, 21);
+		eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_MEMBER_ID);
+		jdbcTemplate.update("update EventSession set title = 'Social-Ready Web Applications' where event = 1 and id = 3");
+
+		// When
+		((EventChangeListener) eventRepository).eventScheduleChanged(TEST_EVENT_ID);
+		List<EventSession> sessions = eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_MEMBER_ID);
+
+		// Then
+		assertEquals("Changed title should be visible", "Social-Ready Web Applications", sessions.get(0).getTitle());
+		assertEquals("Schedule should be rebuilt", 2, ((JdbcEventRepository) eventRepository).getDayScheduleCache().getBuildCount());
+	}
+
+	@Test
+	public void testFindSessionsOnDay_ShouldKeepScheduleAndShowNewRating_WhenSessionRated() throws RatingPeriodClosedException {
+		// Given
+		LocalDate sessionDate = new LocalDate(2010, 10, 21);
+		eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_MEMBER_ID);
+
+		// When
+		Float rating = eventRepository.rate(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID, new Rating((short) 1, "Too slow"));
+		List<EventSession> sessions = eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_MEMBER_ID);
+		Page<EventSession> page = eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_ATTENDEE_ID, null, 1);
+
+		// Then
+		assertEquals("Schedule should not be rebuilt", 1, ((JdbcEventRepository) eventRepository).getDayScheduleCache().getBuildCount());
+		assertEquals("Rated session should carry its new rating", rating, sessions.get(0).getRating());
+		assertTrue("Favorite should be kept", sessions.get(0).isFavorite());
+		assertEquals("Paged session should carry its new rating", rating, page.getItems().get(0).getRating());
+		assertFalse("Other attendee's favorite should not be shown", page.getItems().get(0).isFavorite());
+	}
+
+	@Test
+	public void testFindSessionsOnDay_ShouldReturnPagesInOrder_WhenFollowingCursor() {
+		// Given
+		LocalDate sessionDate = new LocalDate(2010, 10, 21);
+
+		// When
+		Page<EventSession> first = eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_MEMBER_ID, null, 1);
+		Page<EventSession> second = eventRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_MEMBER_ID,
+				first.getNextCursor(), 1);
+
+		// Then
+		assertEquals("First page should hold one session", 1, first.getItems().size());
+		assertSocialSession(first.getItems().get(0), true);
+		assertMobileSession(second.getItems().get(0), true);
+		assertNull("Last page should have no next cursor", second.getNextCursor());
+	}
+
+	// ==================== Search Tests ====================
+
+	@Test
+	public void testSearch_ShouldFindSessionsAndLeaders_WhenQueryMatches() {
+		// When
+		List<EventSearchResult> mvcResults = eventRepository.search(TEST_EVENT_ID, "MVC");
+		List<EventSearchResult> keithResults = eventRepository.search(TEST_EVENT_ID, "kei don");
+
+		// Then
+		assertEquals("MVC session should rank first", EventSearchResult.Type.SESSION, mvcResults.get(0).getType());
+		assertEquals("MVC session should be session 1", "Mastering MVC 3", mvcResults.get(0).getTitle());
+		assertEquals("Leader should rank first by name", EventSearchResult.Type.LEADER, keithResults.get(0).getType());
+		assertEquals("Leader should be Keith Donald", "Keith Donald", keithResults.get(0).getTitle());
+		assertTrue("Sessions led by the leader should match", keithResults.size() > 1);
+	}
+
+	@Test
+	public void testSessionChanged_ShouldReindexSession_WhenLoaderUpdatesTitle() {
+		// Given
+		eventRepository.search(TEST_EVENT_ID, "mvc");
+		jdbcTemplate.update("update EventSession set title = 'Spring Batch Deep Dive' where event = 1 and id = 1");
+
+		// When
+		((EventChangeListener) eventRepository).sessionChanged(TEST_EVENT_ID, 1);
+		((EventChangeListener) eventRepository).eventScheduleChanged(TEST_EVENT_ID);
+		List<EventSearchResult> results = eventRepository.search(TEST_EVENT_ID, "batch");
+
+		// Then
+		assertEquals("Renamed session should match", 1, results.size());
+		assertEquals("Renamed session should be session 1", Long.valueOf(1), results.get(0).getId());
+		assertEquals("Index should be updated without rebuilding", 1,
+				((JdbcEventRepository) eventRepository).getSearchIndex().getLoadCount());
 	}
 
 	// ==================== Favorite Tests ====================
@@ -147,6 +387,22 @@ public class JdbcEventRepositoryTest {
 		assertMobileSession(favorites.get(1), true);
 	}
 
+	@Test
+	public void testFindAttendeeFavorites_ShouldReturnPagesInOrder_WhenFollowingCursor() {
+		// When
+		Page<EventSession> first = eventRepository.findAttendeeFavorites(TEST_EVENT_ID, TEST_MEMBER_ID, null, 1);
+		Page<EventSession> second = eventRepository.findAttendeeFavorites(TEST_EVENT_ID, TEST_MEMBER_ID,
+				first.getNextCursor(), 1);
+		Page<EventSession> all = eventRepository.findAttendeeFavorites(TEST_EVENT_ID, TEST_MEMBER_ID, null, 1000);
+
+		// Then
+		assertSocialSession(first.getItems().get(0), true);
+		assertNotNull("First page should have a next cursor", first.getNextCursor());
+		assertMobileSession(second.getItems().get(0), true);
+		assertNull("Last page should have no next cursor", second.getNextCursor());
+		assertEquals("Page should hold every favorite", 2, all.getItems().size());
+	}
+
 	@Test
 	public void testToggleFavorite_ShouldToggleFavoriteStatus() {
 		// Given
@@ -167,6 +423,190 @@ public class JdbcEventRepositoryTest {
 		assertTrue("Second toggle should return true (favorite removed)", secondResult);
 	}
 
+	@Test
+	public void testFindEventFavorites_ShouldRankByFavoriteCount_WhenFavoriteToggled() {
+		// Given
+		eventRepository.findEventFavorites(TEST_EVENT_ID, TEST_ATTENDEE_ID);
+
+		// When
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 4, TEST_ATTENDEE_ID);
+		List<EventSession> favorites = eventRepository.findEventFavorites(TEST_EVENT_ID, TEST_ATTENDEE_ID);
+
+		// Then
+		FavoritePopularityIndex popularityIndex = ((JdbcEventRepository) eventRepository).getFavoritePopularityIndex();
+		assertEquals("Favorite count should be incremented", 2, popularityIndex.getFavoriteCount(TEST_EVENT_ID, 4));
+		assertEquals("Should return 2 favorites", 2, favorites.size());
+		assertMobileSession(favorites.get(0), true);
+		assertSocialSession(favorites.get(1), false);
+	}
+
+	@Test
+	public void testToggleFavorite_ShouldBeReadYourWrites_WhenWritingBehind() {
+		// Given
+		JdbcEventRepository writeBehindRepository = new JdbcEventRepository(jdbcTemplate, 100, 0);
+		LocalDate sessionDate = new LocalDate(2010, 10, 21);
+
+		// When
+		boolean favorite = writeBehindRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		writeBehindRepository.toggleFavorite(TEST_EVENT_ID, 4, TEST_MEMBER_ID);
+		List<EventSession> sessions = writeBehindRepository.findSessionsOnDay(TEST_EVENT_ID, sessionDate, TEST_ATTENDEE_ID);
+
+		// Then
+		assertTrue("Toggle should add the favorite", favorite);
+		assertSocialSession(sessions.get(0), true);
+		assertEquals("Toggle should not be written yet", Integer.valueOf(0), jdbcTemplate.queryForObject(
+				"select count(*) from EventSessionFavorite where attendee = 2", Integer.class));
+		List<EventSession> favorites = writeBehindRepository.findAttendeeFavorites(TEST_EVENT_ID, TEST_ATTENDEE_ID);
+		assertEquals("Pending toggle should be written before reading favorites", 1, favorites.size());
+		assertEquals("Only the reader's toggle should be written", 1, writeBehindRepository.getFavoriteWriteBuffer().getPendingCount());
+		assertFalse("Reader's changes should no longer be pending",
+				writeBehindRepository.getFavoriteWriteBuffer().hasPendingChanges(TEST_EVENT_ID, TEST_ATTENDEE_ID));
+		assertTrue("Other attendee's changes should stay pending",
+				writeBehindRepository.getFavoriteWriteBuffer().hasPendingChanges(TEST_EVENT_ID, TEST_MEMBER_ID));
+	}
+
+	@Test
+	public void testToggleFavorite_ShouldCoalesceToggles_WhenWritingBehind() {
+		// Given
+		JdbcEventRepository writeBehindRepository = new JdbcEventRepository(jdbcTemplate, 100, 0);
+
+		// When
+		writeBehindRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		writeBehindRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		writeBehindRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_MEMBER_ID);
+
+		// Then
+		assertEquals("Toggles that undo each other should be dropped", 1,
+				writeBehindRepository.getFavoriteWriteBuffer().getPendingCount());
+		assertEquals("Attendee whose toggles undid each other should be released", 1,
+				writeBehindRepository.getFavoriteWriteBuffer().getAttendeeCount());
+		writeBehindRepository.destroy();
+		assertEquals("Removed favorite should be written on shutdown", Integer.valueOf(1), jdbcTemplate.queryForObject(
+				"select count(*) from EventSessionFavorite where event = 1", Integer.class));
+		assertEquals("Popularity should follow the written change", 0,
+				writeBehindRepository.getFavoritePopularityIndex().getFavoriteCount(TEST_EVENT_ID, 3));
+	}
+
+	@Test
+	public void testToggleFavorite_ShouldWriteBatchOnFlusherThread_WhenBatchSizeReached() throws InterruptedException {
+		// Given
+		JdbcEventRepository writeBehindRepository = new JdbcEventRepository(jdbcTemplate, 2, 0);
+		FavoriteWriteBuffer buffer = writeBehindRepository.getFavoriteWriteBuffer();
+
+		// When
+		writeBehindRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		writeBehindRepository.toggleFavorite(TEST_EVENT_ID, 4, TEST_ATTENDEE_ID);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (buffer.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		// Then
+		assertEquals("Buffer should be empty", 0, buffer.getPendingCount());
+		assertEquals("Batch should be written", Integer.valueOf(2), jdbcTemplate.queryForObject(
+				"select count(*) from EventSessionFavorite where attendee = 2", Integer.class));
+		writeBehindRepository.destroy();
+	}
+
+	@Test
+	public void testFlush_ShouldReleaseAttendeeFavorites_WhenChangesWritten() {
+		// Given
+		JdbcEventRepository writeBehindRepository = new JdbcEventRepository(jdbcTemplate, 100, 0);
+		FavoriteWriteBuffer buffer = writeBehindRepository.getFavoriteWriteBuffer();
+		writeBehindRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		assertEquals("Attendee with pending changes should be held", 1, buffer.getAttendeeCount());
+
+		// When
+		buffer.flush();
+
+		// Then
+		assertEquals("Written attendee should be released", 0, buffer.getAttendeeCount());
+		assertTrue("Favorites should be reloaded from the table",
+				buffer.getFavoriteSessionIds(TEST_EVENT_ID, TEST_ATTENDEE_ID).get(3));
+		assertEquals("Reads should not hold attendees", 0, buffer.getAttendeeCount());
+		writeBehindRepository.destroy();
+	}
+
+	@Test
+	public void testReconcile_ShouldCorrectFavoriteCounts_WhenFavoritesChangedOutsideRepository() {
+		// Given
+		FavoritePopularityIndex popularityIndex = ((JdbcEventRepository) eventRepository).getFavoritePopularityIndex();
+		assertEquals("Counts should match after seeding", 0, popularityIndex.reconcile(TEST_EVENT_ID));
+		jdbcTemplate.update("insert into EventSessionFavorite (event, session, attendee, rank) values (1, 3, 2, 1)");
+
+		// When
+		int corrected = popularityIndex.reconcile(TEST_EVENT_ID);
+
+		// Then
+		assertEquals("One session count should be corrected", 1, corrected);
+		assertEquals("Favorite count should match the table", 2, popularityIndex.getFavoriteCount(TEST_EVENT_ID, 3));
+		assertEquals("Most favorited session should come first", Integer.valueOf(3), popularityIndex.findMostFavorited(TEST_EVENT_ID).get(0));
+	}
+
+	@Test
+	public void testReconcile_ShouldCorrectFavoriteCountsOnSchedule_WhenEventLoaded() throws InterruptedException {
+		// Given
+		JdbcEventRepository reconcilingRepository = new JdbcEventRepository(jdbcTemplate,
+				new DataSourceTransactionManager(db), 0, 0, 10);
+		FavoritePopularityIndex popularityIndex = reconcilingRepository.getFavoritePopularityIndex();
+		long seeded = popularityIndex.getFavoriteCount(TEST_EVENT_ID, 3);
+
+		// When
+		jdbcTemplate.update("insert into EventSessionFavorite (event, session, attendee, rank) values (1, 3, 2, 1)");
+		long deadline = System.currentTimeMillis() + 5000;
+		while (popularityIndex.getFavoriteCount(TEST_EVENT_ID, 3) == seeded && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		// Then
+		assertEquals("Favorite count should be corrected without a caller", seeded + 1, popularityIndex.getFavoriteCount(TEST_EVENT_ID, 3));
+		reconcilingRepository.destroy();
+	}
+
+	@Test
+	public void testFindRecommendedSessions_ShouldReturnCoFavorites_WhenAttendeesShareFavorites() {
+		// Given
+		eventRepository.findRecommendedSessions(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 5, TEST_ATTENDEE_ID);
+
+		// When
+		List<EventSession> attendeeRecommendations = eventRepository.findRecommendedSessions(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		List<EventSession> memberRecommendations = eventRepository.findRecommendedSessions(TEST_EVENT_ID, 3, TEST_MEMBER_ID);
+
+		// Then
+		assertEquals("Attendee should be recommended the session favorited with session 3 only", 1, attendeeRecommendations.size());
+		assertMobileSession(attendeeRecommendations.get(0), false);
+		assertEquals("Member should be recommended the attendee's other favorite", 1, memberRecommendations.size());
+		assertEquals("Member should be recommended session 5", Integer.valueOf(5), memberRecommendations.get(0).getId());
+		assertEquals("Co-favorites should be updated without rebuilding", 1,
+				((JdbcEventRepository) eventRepository).getCoFavoriteIndex().getLoadCount());
+	}
+
+	// ==================== Conflict Tests ====================
+
+	@Test
+	public void testFindFavoriteConflicts_ShouldReturnOverlappingPairs_WhenFavoritesOverlap() {
+		// Given
+		jdbcTemplate.update("update EventTimeSlot set endTime = dateadd('MINUTE', 45, endTime) where label = 'Time Slot 2'");
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 1, TEST_ATTENDEE_ID);
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 2, TEST_ATTENDEE_ID);
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+
+		// When
+		List<FavoriteConflict> conflicts = eventRepository.findFavoriteConflicts(TEST_EVENT_ID, TEST_ATTENDEE_ID);
+		List<Integer> conflicting = eventRepository.findConflictingFavorites(TEST_EVENT_ID, 2, TEST_ATTENDEE_ID);
+
+		// Then
+		assertEquals("One pair should overlap", 1, conflicts.size());
+		assertEquals("Earlier session should come first", Integer.valueOf(1), conflicts.get(0).getSessionId());
+		assertEquals("Later session should conflict", Integer.valueOf(2), conflicts.get(0).getConflictingSessionId());
+		assertEquals("Session 2 should overlap session 1 only", 1, conflicting.size());
+		assertEquals("Session 2 should overlap session 1", Integer.valueOf(1), conflicting.get(0));
+		assertTrue("Attendees without overlaps should have no conflicts",
+				eventRepository.findFavoriteConflicts(TEST_EVENT_ID, TEST_MEMBER_ID).isEmpty());
+	}
+
 	// ==================== Rating Tests ====================
 
 	@Test
@@ -187,6 +627,247 @@ public class JdbcEventRepositoryTest {
 		assertEquals("Average rating should be calculated correctly", new Float(3.5), averageRating);
 	}
 
+	@Test
+	public void testRate_ShouldReplacePreviousRating_WhenAttendeeRatesAgain() throws RatingPeriodClosedException {
+		// Given
+		long eventId = 2L;
+		int sessionId = 6;
+		eventRepository.rate(eventId, sessionId, 1L, new Rating((short) 5, "Rocked"));
+		eventRepository.rate(eventId, sessionId, 2L, new Rating((short) 4, "Rocked"));
+
+		// When
+		Float averageRating = eventRepository.rate(eventId, sessionId, 1L, new Rating((short) 1, "Changed my mind"));
+
+		// Then
+		assertEquals("Average rating should use the replaced rating", new Float(2.5), averageRating);
+		assertEquals("Rating sum should be maintained", Integer.valueOf(5),
+				jdbcTemplate.queryForObject("select ratingSum from EventSession where event = 2 and id = 6", Integer.class));
+		assertEquals("Rating count should not count the attendee twice", Integer.valueOf(2),
+				jdbcTemplate.queryForObject("select ratingCount from EventSession where event = 2 and id = 6", Integer.class));
+	}
+
+	@Test
+	public void testFindRatingHistogram_ShouldCountEachRating_WhenAttendeesRerate() throws RatingPeriodClosedException {
+		// Given
+		long eventId = 2L;
+		int sessionId = 6;
+		eventRepository.rate(eventId, sessionId, 1L, new Rating((short) 5, "Rocked"));
+		eventRepository.rate(eventId, sessionId, 2L, new Rating((short) 4, "Solid"));
+		eventRepository.rate(eventId, sessionId, 1L, new Rating((short) 2, "Changed my mind"));
+
+		// When
+		RatingHistogram histogram = eventRepository.findRatingHistogram(eventId, sessionId);
+
+		// Then
+		assertArrayEquals("Replaced rating should move buckets", new int[] { 0, 1, 0, 1, 0 }, histogram.getCounts());
+		assertEquals("Histogram should count each attendee once", 2, histogram.getRatingCount());
+		assertEquals("Average should match the session rating", new Float(3), histogram.getAverageRating());
+	}
+
+	@Test
+	public void testFindRatingComments_ShouldPageMostRecentFirst_WhenCursorFollowed() throws RatingPeriodClosedException {
+		// Given
+		long eventId = 2L;
+		int sessionId = 6;
+		eventRepository.rate(eventId, sessionId, 1L, new Rating((short) 5, "Rocked"));
+		eventRepository.rate(eventId, sessionId, 2L, new Rating((short) 4, ""));
+		eventRepository.rate(eventId, sessionId, 3L, new Rating((short) 3, "Too fast"));
+		jdbcTemplate.update("update EventSessionRating set ratedAt = dateadd('MINUTE', -attendee, ratedAt) where event = 2");
+
+		// When
+		Page<RatingComment> first = eventRepository.findRatingComments(eventId, sessionId, null, 1);
+		Page<RatingComment> second = eventRepository.findRatingComments(eventId, sessionId, first.getNextCursor(), 1);
+
+		// Then
+		assertEquals("Most recent comment should come first", "Rocked", first.getItems().get(0).getComment());
+		assertNotNull("First page should have a next cursor", first.getNextCursor());
+		assertEquals("Rating without a comment should be skipped", "Too fast", second.getItems().get(0).getComment());
+		assertNull("Second page should be the last", second.getNextCursor());
+	}
+
+	@Test
+	public void testFindRatingComments_ShouldNotSkipComment_WhenRatedWithinCursorMillisecond() throws RatingPeriodClosedException {
+		// Given
+		long eventId = 2L;
+		int sessionId = 6;
+		eventRepository.rate(eventId, sessionId, 1L, new Rating((short) 5, "Rocked"));
+		eventRepository.rate(eventId, sessionId, 3L, new Rating((short) 3, "Too fast"));
+		jdbcTemplate.update("update EventSessionRating set ratedAt = timestamp '2026-01-01 10:00:00.123200' where event = 2 and attendee = 1");
+		jdbcTemplate.update("update EventSessionRating set ratedAt = timestamp '2026-01-01 10:00:00.123400' where event = 2 and attendee = 3");
+
+		// When
+		Page<RatingComment> first = eventRepository.findRatingComments(eventId, sessionId, null, 1);
+		Page<RatingComment> second = eventRepository.findRatingComments(eventId, sessionId, first.getNextCursor(), 1);
+
+		// Then
+		assertEquals("Comments should be read in full", 2, first.getItems().size() + second.getItems().size());
+		assertFalse("Second page should hold the other comment",
+				first.getItems().get(0).getComment().equals(second.getItems().get(0).getComment()));
+	}
+
+	// ==================== Version Tests ====================
+
+	@Test
+	public void testFindEventVersion_ShouldChange_WhenEventDataChanges() {
+		// Given
+		EventVersion initial = eventRepository.findEventVersion(TEST_EVENT_ID);
+		EventVersion other = eventRepository.findEventVersion(2L);
+
+		// When
+		EventVersion unchanged = eventRepository.findEventVersion(TEST_EVENT_ID);
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 1, TEST_ATTENDEE_ID);
+		EventVersion afterFavorite = eventRepository.findEventVersion(TEST_EVENT_ID);
+		((EventChangeListener) eventRepository).eventScheduleChanged(TEST_EVENT_ID);
+		EventVersion afterSchedule = eventRepository.findEventVersion(TEST_EVENT_ID);
+
+		// Then
+		assertEquals("Version should be stable while nothing changes", initial.getTag(), unchanged.getTag());
+		assertFalse("Favorite toggle should change the version", initial.getTag().equals(afterFavorite.getTag()));
+		assertFalse("Schedule change should change the version", afterFavorite.getTag().equals(afterSchedule.getTag()));
+		assertEquals("Other events should keep their version", other.getTag(), eventRepository.findEventVersion(2L).getTag());
+		assertFalse("Attendee versions should differ between attendees",
+				afterSchedule.forAttendee(1L).getTag().equals(afterSchedule.forAttendee(2L).getTag()));
+	}
+
+	@Test
+	public void testFindScheduleVersion_ShouldChangeOnlyWithSchedule_WhenEventDataChanges() {
+		// Given
+		EventVersion initial = eventRepository.findScheduleVersion(TEST_EVENT_ID);
+
+		// When
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 1, TEST_ATTENDEE_ID);
+		((EventChangeListener) eventRepository).sessionRated(TEST_EVENT_ID, 1);
+		EventVersion afterFavoriteAndRating = eventRepository.findScheduleVersion(TEST_EVENT_ID);
+		((EventChangeListener) eventRepository).sessionChanged(TEST_EVENT_ID, 1);
+		EventVersion afterSessionChanged = eventRepository.findScheduleVersion(TEST_EVENT_ID);
+
+		// Then
+		assertEquals("Favorites and ratings should not change the schedule version", initial.getTag(), afterFavoriteAndRating.getTag());
+		assertFalse("Session change should change the schedule version", initial.getTag().equals(afterSessionChanged.getTag()));
+	}
+
+	@Test
+	public void testFindUpcomingEventsVersion_ShouldChange_WhenEventChangedOrListShrinks() {
+		// Given
+		long after = new DateTime(2009, 1, 1, 0, 0).getMillis();
+		EventVersion initial = eventRepository.findUpcomingEventsVersion(after);
+
+		// When
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 1, TEST_ATTENDEE_ID);
+		EventVersion afterFavorite = eventRepository.findUpcomingEventsVersion(after);
+		EventVersion later = eventRepository.findUpcomingEventsVersion(new DateTime(2010, 1, 1, 0, 0).getMillis());
+		((EventChangeListener) eventRepository).eventChanged(TEST_EVENT_ID);
+		EventVersion afterEventChanged = eventRepository.findUpcomingEventsVersion(after);
+
+		// Then
+		assertEquals("Favorites should not change the upcoming list version", initial.getTag(), afterFavorite.getTag());
+		assertFalse("Fewer upcoming events should change the version", initial.getTag().equals(later.getTag()));
+		assertFalse("Event change should change the version", initial.getTag().equals(afterEventChanged.getTag()));
+	}
+
+	@Test
+	public void testFindUpcomingEventsVersion_ShouldBeModifiedWhenEventEnds_WhenEventDropsOff() {
+		// Given
+		jdbcTemplate.update("update Event set endTime = '2099-06-01 12:00:00' where id = ?", TEST_EVENT_ID);
+		((EventChangeListener) eventRepository).eventChanged(TEST_EVENT_ID);
+		long endTime = jdbcTemplate.queryForObject("select endTime from Event where id = ?", Timestamp.class, TEST_EVENT_ID).getTime();
+
+		// When
+		EventVersion beforeEnd = eventRepository.findUpcomingEventsVersion(endTime - 1);
+		EventVersion afterEnd = eventRepository.findUpcomingEventsVersion(endTime + 1);
+
+		// Then
+		assertTrue("Version should not be modified by an event still upcoming", beforeEnd.getLastModified() < endTime);
+		assertEquals("Version should be modified when the event dropped off", endTime, afterEnd.getLastModified());
+	}
+
+	// ==================== Delta Sync Tests ====================
+
+	@Test
+	public void testFindChangesSince_ShouldReturnLatestFavoriteChange_WhenToggledRepeatedly() {
+		// Given
+		EventDelta initial = eventRepository.findChangesSince(TEST_EVENT_ID, TEST_ATTENDEE_ID, 0, 0);
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 4, TEST_ATTENDEE_ID);
+		EventDelta afterFavorite = eventRepository.findChangesSince(TEST_EVENT_ID, TEST_ATTENDEE_ID, initial.getWatermark(),
+				initial.getFavoritesWatermark());
+
+		// When
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		EventDelta sinceStart = eventRepository.findChangesSince(TEST_EVENT_ID, TEST_ATTENDEE_ID, initial.getWatermark(),
+				initial.getFavoritesWatermark());
+		EventDelta sinceFavorite = eventRepository.findChangesSince(TEST_EVENT_ID, TEST_ATTENDEE_ID, afterFavorite.getWatermark(),
+				afterFavorite.getFavoritesWatermark());
+
+		// Then
+		assertEquals("Nothing should have changed yet", 0, initial.getFavoritesWatermark());
+		assertEquals("Favorites should be returned", 2, afterFavorite.getFavorites().size());
+		assertEquals("Only the latest change should count", Integer.valueOf(4), sinceStart.getFavorites().get(0));
+		assertEquals("Removed favorite should be a tombstone", Integer.valueOf(3), sinceStart.getUnfavorites().get(0));
+		assertEquals("Only changes after the watermark should be returned", 0, sinceFavorite.getFavorites().size());
+		assertEquals("Favorites watermark should advance", afterFavorite.getFavoritesWatermark() + 1, sinceFavorite.getFavoritesWatermark());
+		assertEquals("Favorites should not advance the schedule watermark", 0, sinceFavorite.getWatermark());
+		assertEquals("Other attendees should not see the favorites", 0,
+				eventRepository.findChangesSince(TEST_EVENT_ID, 1L, 0, 0).getFavorites().size());
+	}
+
+	@Test
+	public void testFindChangesSince_ShouldKeepBufferedFavorites_WhenCallerRollsBack() {
+		// Given
+		final JdbcEventRepository writeBehindRepository = new JdbcEventRepository(jdbcTemplate, 100, 0);
+		writeBehindRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+
+		// When
+		EventDelta delta = new TransactionTemplate(new DataSourceTransactionManager(db)).execute(new TransactionCallback<EventDelta>() {
+			public EventDelta doInTransaction(TransactionStatus status) {
+				status.setRollbackOnly();
+				return writeBehindRepository.findChangesSince(TEST_EVENT_ID, TEST_ATTENDEE_ID, 0, 0);
+			}
+		});
+
+		// Then
+		assertEquals("Buffered favorite should be returned", Integer.valueOf(3), delta.getFavorites().get(0));
+		assertEquals("Buffered favorite should survive the caller's rollback", Integer.valueOf(1), jdbcTemplate.queryForObject(
+				"select count(*) from EventSessionFavorite where attendee = 2", Integer.class));
+		assertFalse("Written favorite should not be pending",
+				writeBehindRepository.getFavoriteWriteBuffer().hasPendingChanges(TEST_EVENT_ID, TEST_ATTENDEE_ID));
+		writeBehindRepository.destroy();
+	}
+
+	@Test
+	public void testToggleFavorite_ShouldNotLockScheduleSequence_WhenFavoriteChanged() {
+		// When
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 3, TEST_ATTENDEE_ID);
+		eventRepository.toggleFavorite(TEST_EVENT_ID, 3, 1L);
+
+		// Then
+		assertEquals("Schedule sequence should not be touched", Integer.valueOf(0),
+				jdbcTemplate.queryForObject("select count(*) from EventChangeSequence", Integer.class));
+		assertEquals("Each attendee should have their own sequence", Integer.valueOf(2),
+				jdbcTemplate.queryForObject("select count(*) from EventFavoriteChangeSequence where event = ?", Integer.class, TEST_EVENT_ID));
+	}
+
+	@Test
+	public void testFindChangesSince_ShouldReturnTombstone_WhenSessionRemoved() {
+		// Given
+		EventChangeLog changeLog = new EventChangeLog(jdbcTemplate);
+		changeLog.sessionChanged(TEST_EVENT_ID, 1);
+		changeLog.sessionChanged(TEST_EVENT_ID, 99);
+		changeLog.timeSlotChanged(TEST_EVENT_ID, 1L);
+
+		// When
+		EventDelta delta = eventRepository.findChangesSince(TEST_EVENT_ID, TEST_ATTENDEE_ID, 0, 0);
+
+		// Then
+		assertEquals("Changed session should be returned", 1, delta.getSessions().size());
+		EventDelta.Session session = delta.getSessions().get(0);
+		assertEquals("Session should be read in full", "Mastering MVC 3", session.getTitle());
+		assertEquals("Session should refer to its leaders", Long.valueOf(1), session.getLeaders().get(0));
+		assertEquals("Missing session should be a tombstone", Integer.valueOf(99), delta.getDeletedSessions().get(0));
+		assertEquals("Changed time slot should be returned", Long.valueOf(1), delta.getTimeSlots().get(0).getId());
+		assertEquals("Watermark should be the latest change", 3, delta.getWatermark());
+	}
+
 	// ==================== Helper Methods ====================
 
 	private void assertEventGroup(Event event) {
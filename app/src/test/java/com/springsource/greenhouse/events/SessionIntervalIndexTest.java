@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionIntervalIndexTest {
+
+	private static final long TEST_EVENT_ID = 1L;
+
+	private List<SessionIntervalIndex.SessionInterval> sessions;
+
+	private long[][] times;
+
+	private SessionIntervalIndex index;
+
+	@Before
+	public void setup() {
+		sessions = new ArrayList<SessionIntervalIndex.SessionInterval>();
+		index = new SessionIntervalIndex() {
+			protected List<SessionInterval> load(Long eventId) {
+				return sessions;
+			}
+		};
+	}
+
+	@Test
+	public void testFindOverlapping_ShouldIgnoreAbuttingSessions_WhenOneEndsAsAnotherStarts() {
+		// Given
+		addSession(1, 0, 60);
+		addSession(2, 60, 120);
+		addSession(3, 30, 90);
+
+		// When
+		List<Integer> overlapping = index.findOverlapping(TEST_EVENT_ID, 1, all(3));
+
+		// Then
+		assertEquals("Only the session starting before the end should overlap", Arrays.asList(3), overlapping);
+		assertEquals("End time should be indexed", Long.valueOf(120), index.getEndTime(TEST_EVENT_ID, 2));
+		assertNull("Unknown sessions should have no end time", index.getEndTime(TEST_EVENT_ID, 9));
+	}
+
+	@Test
+	public void testFindConflicts_ShouldMatchPairwiseScan_WhenScheduleIsLarge() {
+		// Given
+		Random random = new Random(42);
+		int sessionCount = 500;
+		times = new long[sessionCount + 1][];
+		for (int id = 1; id <= sessionCount; id++) {
+			long start = random.nextInt(3 * 24 * 60);
+			addSession(id, start, start + 30 + random.nextInt(120));
+		}
+		BitSet favorites = new BitSet();
+		for (int i = 0; i < 60; i++) {
+			favorites.set(1 + random.nextInt(sessionCount));
+		}
+
+		// When
+		List<FavoriteConflict> conflicts = index.findConflicts(TEST_EVENT_ID, favorites);
+
+		// Then
+		Set<String> expected = new HashSet<String>();
+		for (int a = favorites.nextSetBit(0); a >= 0; a = favorites.nextSetBit(a + 1)) {
+			for (int b = favorites.nextSetBit(a + 1); b >= 0; b = favorites.nextSetBit(b + 1)) {
+				if (times[a][0] < times[b][1] && times[b][0] < times[a][1]) {
+					expected.add(Math.min(a, b) + "-" + Math.max(a, b));
+				}
+			}
+		}
+		Set<String> actual = new HashSet<String>();
+		for (FavoriteConflict conflict : conflicts) {
+			int a = conflict.getSessionId();
+			int b = conflict.getConflictingSessionId();
+			assertTrue("Each pair should be reported once", actual.add(Math.min(a, b) + "-" + Math.max(a, b)));
+		}
+		assertEquals("Conflicts should match a pairwise scan", expected, actual);
+		assertEquals("Intervals should be loaded once", 1, index.getLoadCount());
+	}
+
+	@Test
+	public void testGetEndTime_ShouldReload_WhenInvalidated() {
+		// Given
+		addSession(1, 0, 60);
+		index.getEndTime(TEST_EVENT_ID, 1);
+		sessions.clear();
+		addSession(1, 0, 90);
+
+		// When
+		Long cached = index.getEndTime(TEST_EVENT_ID, 1);
+		index.invalidate(TEST_EVENT_ID);
+		Long reloaded = index.getEndTime(TEST_EVENT_ID, 1);
+
+		// Then
+		assertEquals("End time should be cached", Long.valueOf(60), cached);
+		assertEquals("End time should be reloaded", Long.valueOf(90), reloaded);
+		assertEquals("Intervals should be loaded twice", 2, index.getLoadCount());
+	}
+
+	// ==================== Helper Methods ====================
+
+	private void addSession(int id, long start, long end) {
+		sessions.add(new SessionIntervalIndex.SessionInterval(id, start, end));
+		if (times != null) {
+			times[id] = new long[] { start, end };
+		}
+	}
+
+	private BitSet all(int sessionCount) {
+		BitSet sessionIds = new BitSet();
+		sessionIds.set(1, sessionCount + 1);
+		return sessionIds;
+	}
+
+}
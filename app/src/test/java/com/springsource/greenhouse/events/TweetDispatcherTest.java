@@ -0,0 +1,232 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.social.DuplicateStatusException;
+import org.springframework.social.RateLimitExceededException;
+import org.springframework.social.ServerDownException;
+import org.springframework.social.twitter.api.TimelineOperations;
+import org.springframework.social.twitter.api.Tweet;
+
+public class TweetDispatcherTest {
+
+	private static final long TEST_MEMBER_ID = 1L;
+
+	private TweetDispatcher dispatcher;
+
+	private TimelineOperations timeline;
+
+	@Before
+	public void setup() {
+		dispatcher = new TweetDispatcher(4, 3, 3, 10);
+		timeline = mock(TimelineOperations.class);
+	}
+
+	@After
+	public void destroy() {
+		dispatcher.destroy();
+	}
+
+	@Test
+	public void testTweet_ShouldSendInAcceptedOrder_WhenMemberTweetsRepeatedly() throws Exception {
+		// Given
+		final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+		when(timeline.updateStatus(anyString())).thenAnswer(new Answer<Tweet>() {
+			public Tweet answer(InvocationOnMock invocation) throws Throwable {
+				Thread.sleep(5);
+				sent.add((String) invocation.getArguments()[0]);
+				return null;
+			}
+		});
+
+		// When
+		dispatcher.tweet(TEST_MEMBER_ID, timeline, "first");
+		dispatcher.tweet(TEST_MEMBER_ID, timeline, "second");
+		TweetDispatch last = dispatcher.tweet(TEST_MEMBER_ID, timeline, "third");
+		TweetDispatch completed = awaitCompletion(last);
+
+		// Then
+		assertEquals("Last tweet should be sent", TweetDispatch.Status.SENT, completed.getStatus());
+		assertEquals("Tweets should be sent in accepted order", Arrays.asList("first", "second", "third"), sent);
+		assertEquals("Every tweet should be counted", 3, dispatcher.getSentCount());
+		assertEquals("Queue should be drained", 0, dispatcher.getQueueDepth());
+	}
+
+	@Test
+	public void testRetweet_ShouldRetry_WhenTwitterIsDown() throws Exception {
+		// Given
+		when(timeline.retweet(42L)).thenThrow(new ServerDownException("twitter", "down")).thenReturn(null);
+
+		// When
+		TweetDispatch completed = awaitCompletion(dispatcher.retweet(TEST_MEMBER_ID, timeline, 42L));
+
+		// Then
+		assertEquals("Retweet should be sent after a retry", TweetDispatch.Status.SENT, completed.getStatus());
+		assertEquals("Retweet should be attempted twice", 2, completed.getAttempts());
+		assertEquals("Retry should be counted", 1, dispatcher.getRetryCount());
+	}
+
+	@Test
+	public void testTweet_ShouldFailWithoutRetry_WhenTwitterRejectsTweet() throws Exception {
+		// Given
+		when(timeline.updateStatus("again")).thenThrow(new DuplicateStatusException("twitter", "duplicate"));
+
+		// When
+		TweetDispatch completed = awaitCompletion(dispatcher.tweet(TEST_MEMBER_ID, timeline, "again"));
+
+		// Then
+		assertEquals("Tweet should fail", TweetDispatch.Status.FAILED, completed.getStatus());
+		assertEquals("Tweet should not be retried", 1, completed.getAttempts());
+		assertEquals("Failure reason should be kept", "duplicate", completed.getFailureReason());
+		assertEquals("Failure should be counted", 1, dispatcher.getFailedCount());
+	}
+
+	@Test
+	public void testTweet_ShouldThrowException_WhenQueueIsFull() throws Exception {
+		// Given
+		final CountDownLatch release = new CountDownLatch(1);
+		when(timeline.updateStatus(anyString())).thenAnswer(new Answer<Tweet>() {
+			public Tweet answer(InvocationOnMock invocation) throws Throwable {
+				release.await(5, TimeUnit.SECONDS);
+				return null;
+			}
+		});
+		dispatcher.tweet(TEST_MEMBER_ID, timeline, "1");
+		dispatcher.tweet(TEST_MEMBER_ID, timeline, "2");
+		TweetDispatch last = dispatcher.tweet(2L, timeline, "3");
+
+		// When
+		try {
+			dispatcher.tweet(TEST_MEMBER_ID, timeline, "4");
+			fail("Queue should be full");
+		} catch (TweetQueueFullException e) {
+			// expected
+		} finally {
+			release.countDown();
+		}
+
+		// Then
+		assertEquals("Queued tweets should still be sent", TweetDispatch.Status.SENT, awaitCompletion(2L, last).getStatus());
+	}
+
+	@Test
+	public void testTweet_ShouldFailWithoutRetry_WhenErrorIsNotTransient() throws Exception {
+		// Given
+		when(timeline.updateStatus("bug")).thenThrow(new IllegalArgumentException("bad argument"));
+
+		// When
+		TweetDispatch completed = awaitCompletion(dispatcher.tweet(TEST_MEMBER_ID, timeline, "bug"));
+
+		// Then
+		assertEquals("Tweet should fail", TweetDispatch.Status.FAILED, completed.getStatus());
+		assertEquals("Tweet should not be retried", 1, completed.getAttempts());
+		assertEquals("No retry should be counted", 0, dispatcher.getRetryCount());
+	}
+
+	@Test
+	public void testTweet_ShouldParkUntilWindowPasses_WhenRateLimited() throws Exception {
+		// Given
+		dispatcher.destroy();
+		dispatcher = new TweetDispatcher(4, 3, 3, 3, 10, 200);
+		when(timeline.updateStatus("limited")).thenThrow(new RateLimitExceededException("twitter")).thenReturn(null);
+
+		// When
+		TweetDispatch dispatch = dispatcher.tweet(TEST_MEMBER_ID, timeline, "limited");
+		Thread.sleep(100);
+		TweetDispatch parked = dispatcher.getDispatch(TEST_MEMBER_ID, dispatch.getId());
+		TweetDispatch completed = awaitCompletion(dispatch);
+
+		// Then
+		assertEquals("Tweet should wait out the rate limit window", TweetDispatch.Status.QUEUED, parked.getStatus());
+		assertEquals("Tweet should be sent after the window", TweetDispatch.Status.SENT, completed.getStatus());
+		assertEquals("Tweet should be attempted twice", 2, completed.getAttempts());
+	}
+
+	@Test
+	public void testTweet_ShouldThrowException_WhenMemberQueueIsFull() throws Exception {
+		// Given
+		dispatcher.destroy();
+		dispatcher = new TweetDispatcher(4, 10, 2, 3, 10, 200);
+		final CountDownLatch release = new CountDownLatch(1);
+		when(timeline.updateStatus(anyString())).thenAnswer(new Answer<Tweet>() {
+			public Tweet answer(InvocationOnMock invocation) throws Throwable {
+				release.await(5, TimeUnit.SECONDS);
+				return null;
+			}
+		});
+		dispatcher.tweet(TEST_MEMBER_ID, timeline, "1");
+		dispatcher.tweet(TEST_MEMBER_ID, timeline, "2");
+
+		// When
+		try {
+			dispatcher.tweet(TEST_MEMBER_ID, timeline, "3");
+			fail("Member queue should be full");
+		} catch (TweetQueueFullException e) {
+			assertEquals("Member capacity should be reported", 2, e.getCapacity());
+		}
+		TweetDispatch other = dispatcher.tweet(2L, timeline, "other");
+		release.countDown();
+
+		// Then
+		assertEquals("Other members should still be accepted", TweetDispatch.Status.SENT, awaitCompletion(2L, other).getStatus());
+	}
+
+	@Test
+	public void testGetDispatch_ShouldReturnNull_WhenRequestedByAnotherMember() throws Exception {
+		// Given
+		TweetDispatch dispatch = dispatcher.tweet(TEST_MEMBER_ID, timeline, "mine");
+
+		// When
+		TweetDispatch other = dispatcher.getDispatch(2L, dispatch.getId());
+
+		// Then
+		assertNull("Other members should not see the dispatch", other);
+		assertNull("Unknown dispatches should not be found", dispatcher.getDispatch(TEST_MEMBER_ID, "unknown"));
+		assertNotNull("Owner should see the dispatch", dispatcher.getDispatch(TEST_MEMBER_ID, dispatch.getId()));
+	}
+
+	// ==================== Helper Methods ====================
+
+	private TweetDispatch awaitCompletion(TweetDispatch dispatch) throws InterruptedException {
+		return awaitCompletion(TEST_MEMBER_ID, dispatch);
+	}
+
+	private TweetDispatch awaitCompletion(Long memberId, TweetDispatch dispatch) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		TweetDispatch current = dispatcher.getDispatch(memberId, dispatch.getId());
+		while (current.getStatus() == TweetDispatch.Status.QUEUED && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			current = dispatcher.getDispatch(memberId, dispatch.getId());
+		}
+		return current;
+	}
+
+}
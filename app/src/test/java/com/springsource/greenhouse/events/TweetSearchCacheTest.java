@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.springsource.greenhouse.events;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.social.twitter.api.SearchMetadata;
+import org.springframework.social.twitter.api.SearchOperations;
+import org.springframework.social.twitter.api.SearchResults;
+import org.springframework.social.twitter.api.Tweet;
+import org.springframework.social.twitter.api.Twitter;
+
+public class TweetSearchCacheTest {
+
+	private Twitter twitter;
+
+	private SearchOperations searchOperations;
+
+	private SearchResults results;
+
+	@Before
+	public void setup() {
+		twitter = mock(Twitter.class);
+		searchOperations = mock(SearchOperations.class);
+		when(twitter.searchOperations()).thenReturn(searchOperations);
+		results = new SearchResults(Collections.<Tweet>emptyList(), new SearchMetadata(0, 0));
+	}
+
+	@Test
+	public void testSearch_ShouldSearchOnce_WhenRepeatedWithinTimeToLive() {
+		// Given
+		TweetSearchCache cache = new TweetSearchCache(60000);
+		when(searchOperations.search("#s2gx", 10)).thenReturn(results);
+
+		// When
+		SearchResults first = cache.search(twitter.searchOperations(), "#s2gx", 10);
+		SearchResults second = cache.search(twitter.searchOperations(), "#s2gx", 10);
+
+		// Then
+		assertSame("Repeated search should return the cached results", first, second);
+		verify(searchOperations, times(1)).search("#s2gx", 10);
+		assertEquals("Second search should be a hit", 1, cache.getHitCount());
+		assertEquals("First search should be a miss", 1, cache.getMissCount());
+		assertEquals("Hit rate should be one half", 0.5, cache.getHitRate(), 0.0001);
+		assertEquals("Upstream search should be counted", 1, cache.getUpstreamSearchCount());
+	}
+
+	@Test
+	public void testSearch_ShouldSearchAgain_WhenPageSizeDiffersOrEntryExpired() {
+		// Given
+		TweetSearchCache cache = new TweetSearchCache(0);
+		when(searchOperations.search(anyString(), anyInt())).thenReturn(results);
+
+		// When
+		cache.search(searchOperations, "#s2gx", 10);
+		cache.search(searchOperations, "#s2gx", 10);
+		cache.search(searchOperations, "#s2gx", 20);
+
+		// Then
+		verify(searchOperations, times(2)).search("#s2gx", 10);
+		verify(searchOperations, times(1)).search("#s2gx", 20);
+		assertEquals("Every search should be a miss", 0, cache.getHitCount());
+	}
+
+	@Test
+	public void testSearch_ShouldNotCacheFailure_WhenUpstreamSearchFails() {
+		// Given
+		TweetSearchCache cache = new TweetSearchCache(60000);
+		when(searchOperations.search("#s2gx", 10)).thenThrow(new IllegalStateException("rate limited")).thenReturn(results);
+
+		// When
+		try {
+			cache.search(searchOperations, "#s2gx", 10);
+			fail("Failure should be propagated");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		SearchResults retried = cache.search(searchOperations, "#s2gx", 10);
+
+		// Then
+		assertSame("Retry should search again", results, retried);
+		verify(searchOperations, times(2)).search("#s2gx", 10);
+	}
+
+	@Test
+	public void testSearch_ShouldCoalesceSearches_WhenRequestedConcurrently() throws Exception {
+		// Given
+		final TweetSearchCache cache = new TweetSearchCache(60000);
+		final CountDownLatch searching = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		when(searchOperations.search("#s2gx", 10)).thenAnswer(new Answer<SearchResults>() {
+			public SearchResults answer(InvocationOnMock invocation) throws Throwable {
+				searching.countDown();
+				release.await(5, TimeUnit.SECONDS);
+				return results;
+			}
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<SearchResults>> searches = new ArrayList<Future<SearchResults>>();
+
+		// When
+		try {
+			for (int i = 0; i < 8; i++) {
+				searches.add(executor.submit(new Callable<SearchResults>() {
+					public SearchResults call() {
+						return cache.search(searchOperations, "#s2gx", 10);
+					}
+				}));
+			}
+			assertTrue("Upstream search should start", searching.await(5, TimeUnit.SECONDS));
+			Thread.sleep(100);
+			release.countDown();
+			for (Future<SearchResults> search : searches) {
+				assertSame("Every caller should get the shared results", results, search.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		// Then
+		verify(searchOperations, times(1)).search("#s2gx", 10);
+		assertEquals("Waiting callers should be hits", 7, cache.getHitCount());
+		assertTrue("Upstream latency should be measured", cache.getMaxUpstreamLatency() > 0);
+	}
+
+	@Test
+	public void testSearch_ShouldShareClampedKey_WhenPageSizeOutOfRange() {
+		// Given
+		TweetSearchCache cache = new TweetSearchCache(60000);
+		when(searchOperations.search(anyString(), anyInt())).thenReturn(results);
+
+		// When
+		cache.search(searchOperations, "#s2gx", 5000);
+		cache.search(searchOperations, "#s2gx", TweetSearchCache.MAX_PAGE_SIZE);
+		cache.search(searchOperations, "#s2gx", -1);
+
+		// Then
+		verify(searchOperations, times(1)).search("#s2gx", TweetSearchCache.MAX_PAGE_SIZE);
+		verify(searchOperations, times(1)).search("#s2gx", 1);
+		assertEquals("Oversized page should hit the clamped entry", 1, cache.getHitCount());
+	}
+
+	@Test
+	public void testSearch_ShouldEvictLeastRecentlyUsed_WhenFullOfUnexpiredEntries() {
+		// Given
+		TweetSearchCache cache = new TweetSearchCache(60000);
+		when(searchOperations.search(anyString(), anyInt())).thenReturn(results);
+
+		// When
+		for (int i = 0; i <= TweetSearchCache.MAX_ENTRIES; i++) {
+			cache.search(searchOperations, "#tag" + i, 10);
+		}
+
+		// Then
+		assertTrue("Cache should not grow past its maximum size", cache.getSize() <= TweetSearchCache.MAX_ENTRIES);
+		assertTrue("Unexpired entries should be evicted", cache.getEvictionCount() > 0);
+	}
+
+	@Test
+	public void testSearch_ShouldKeepResultsForTimeToLive_WhenUpstreamSearchIsSlow() {
+		// Given
+		TweetSearchCache cache = new TweetSearchCache(1000);
+		when(searchOperations.search("#s2gx", 10)).thenAnswer(new Answer<SearchResults>() {
+			public SearchResults answer(InvocationOnMock invocation) throws Throwable {
+				Thread.sleep(1200);
+				return results;
+			}
+		});
+
+		// When
+		cache.search(searchOperations, "#s2gx", 10);
+		cache.search(searchOperations, "#s2gx", 10);
+
+		// Then
+		verify(searchOperations, times(1)).search("#s2gx", 10);
+		assertEquals("Search right after a slow one should be a hit", 1, cache.getHitCount());
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.jdbc.core;
+
+import static org.junit.Assert.*;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class ColumnIndexRowMapperTest {
+
+	private EmbeddedDatabase db;
+	private JdbcTemplate jdbcTemplate;
+
+	private List<int[]> resolvedColumns;
+	private RowMapper<String> speakerMapper;
+
+	@Before
+	public void setup() {
+		db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+		jdbcTemplate = new JdbcTemplate(db);
+		jdbcTemplate.execute("create table Speaker (id int primary key, name varchar, company varchar)");
+		jdbcTemplate.update("insert into Speaker (id, name, company) values (1, 'Keith', 'SpringSource')");
+		jdbcTemplate.update("insert into Speaker (id, name, company) values (2, 'Craig', 'VMware')");
+		resolvedColumns = new ArrayList<int[]>();
+		speakerMapper = new ColumnIndexRowMapper<String>("name", "company") {
+			protected String mapColumns(ResultSet rs, int[] columns, int rowNum) throws SQLException {
+				resolvedColumns.add(columns);
+				return rs.getString(columns[0]) + " (" + rs.getString(columns[1]) + ")";
+			}
+		};
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	// ==================== Mapping Tests ====================
+
+	@Test
+	public void testMapRow_ShouldReadColumnsByLabel_WhenSelectOrderDiffers() {
+		// When
+		List<String> speakers = jdbcTemplate.query("select company, id, name from Speaker order by id", speakerMapper);
+
+		// Then
+		assertEquals("Columns should be read by label", Arrays.asList("Keith (SpringSource)", "Craig (VMware)"), speakers);
+		assertArrayEquals("Indexes should follow the select order", new int[] { 3, 1 }, resolvedColumns.get(0));
+	}
+
+	@Test
+	public void testMapRow_ShouldResolveOncePerResultSet_WhenMappingManyRows() {
+		// When
+		jdbcTemplate.query("select name, company from Speaker order by id", speakerMapper);
+		jdbcTemplate.query("select id, company, name from Speaker order by id", speakerMapper);
+
+		// Then
+		assertSame("Rows of one result set should share the resolved indexes", resolvedColumns.get(0), resolvedColumns.get(1));
+		assertNotSame("Another result set should be resolved again", resolvedColumns.get(1), resolvedColumns.get(2));
+		assertArrayEquals("Indexes should follow the second select order", new int[] { 3, 2 }, resolvedColumns.get(2));
+	}
+
+	@Test(expected = DataAccessException.class)
+	public void testMapRow_ShouldThrowException_WhenColumnMissing() {
+		// When
+		jdbcTemplate.query("select id, name from Speaker", speakerMapper);
+
+		// Then - Exception should be thrown
+	}
+
+}
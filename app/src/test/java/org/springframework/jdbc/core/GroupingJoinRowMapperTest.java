@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.jdbc.core;
+
+import static org.junit.Assert.*;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class GroupingJoinRowMapperTest {
+
+	private EmbeddedDatabase db;
+	private JdbcTemplate jdbcTemplate;
+
+	private static final String SELECT_PRESENTATIONS = "select p.id, p.title, s.name, t.tag from Presentation p "
+			+ "inner join Speaker s on p.id = s.presentation "
+			+ "left outer join Tag t on p.id = t.presentation ";
+
+	@Before
+	public void setup() {
+		db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+		jdbcTemplate = new JdbcTemplate(db);
+		jdbcTemplate.execute("create table Presentation (id int primary key, title varchar)");
+		jdbcTemplate.execute("create table Speaker (presentation int, name varchar)");
+		jdbcTemplate.execute("create table Tag (presentation int, tag varchar)");
+		jdbcTemplate.update("insert into Presentation (id, title) values (1, 'Spring MVC')");
+		jdbcTemplate.update("insert into Presentation (id, title) values (2, 'Spring Social')");
+		jdbcTemplate.update("insert into Speaker (presentation, name) values (1, 'Keith')");
+		jdbcTemplate.update("insert into Speaker (presentation, name) values (1, 'Craig')");
+		jdbcTemplate.update("insert into Speaker (presentation, name) values (2, 'Craig')");
+		jdbcTemplate.update("insert into Tag (presentation, tag) values (1, 'web')");
+		jdbcTemplate.update("insert into Tag (presentation, tag) values (1, 'mvc')");
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void testList_ShouldGroupRoots_WhenRowsAreUnordered() {
+		// When
+		List<Presentation> presentations = jdbcTemplate.query(SELECT_PRESENTATIONS + "order by s.name desc, p.id desc",
+				presentationMapper.list());
+
+		// Then
+		assertEquals("Should return one root per id", 2, presentations.size());
+		assertEquals("Roots should be in order of first appearance", 1, presentations.get(0).id);
+		assertEquals("Children should be grouped under their root", Arrays.asList("Keith", "Craig"),
+				presentations.get(0).speakers);
+		assertEquals("Interleaved root should be mapped once", Arrays.asList("Craig"), presentations.get(1).speakers);
+	}
+
+	@Test
+	public void testList_ShouldAddEachChildOnce_WhenJoiningMultipleChildCollections() {
+		// When
+		List<Presentation> presentations = jdbcTemplate.query(SELECT_PRESENTATIONS + "order by p.id, s.name, t.tag",
+				presentationMapper.list());
+
+		// Then
+		Presentation mvc = presentations.get(0);
+		assertEquals("Speakers should not be repeated for every tag", Arrays.asList("Craig", "Keith"), mvc.speakers);
+		assertEquals("Tags should not be repeated for every speaker", Arrays.asList("mvc", "web"), mvc.tags);
+		assertTrue("Outer joined rows without a child should add no child", presentations.get(1).tags.isEmpty());
+	}
+
+	@Test
+	public void testSingle_ShouldReturnRoot_WhenOneRootMatches() {
+		// When
+		Presentation presentation = jdbcTemplate.query(SELECT_PRESENTATIONS + "where p.id = 1", presentationMapper.single());
+
+		// Then
+		assertEquals("Should map the root", "Spring MVC", presentation.title);
+		assertEquals("Should map every child", 2, presentation.speakers.size());
+	}
+
+	@Test(expected = EmptyResultDataAccessException.class)
+	public void testSingle_ShouldThrowException_WhenNoRootMatches() {
+		jdbcTemplate.query(SELECT_PRESENTATIONS + "where p.id = 3", presentationMapper.single());
+	}
+
+	@Test(expected = IncorrectResultSizeDataAccessException.class)
+	public void testSingle_ShouldThrowException_WhenSeveralRootsMatch() {
+		jdbcTemplate.query(SELECT_PRESENTATIONS, presentationMapper.single());
+	}
+
+	// ==================== Helper Methods ====================
+
+	private final GroupingJoinRowMapper.ChildMapper<Presentation, String> speakerMapper = new GroupingJoinRowMapper.ChildMapper<Presentation, String>() {
+		@Override
+		protected String mapKey(ResultSet rs) throws SQLException {
+			return rs.getString("name");
+		}
+
+		@Override
+		protected void addChild(Presentation presentation, ResultSet rs) throws SQLException {
+			presentation.speakers.add(rs.getString("name"));
+		}
+	};
+
+	private final GroupingJoinRowMapper.ChildMapper<Presentation, String> tagMapper = new GroupingJoinRowMapper.ChildMapper<Presentation, String>() {
+		@Override
+		protected String mapKey(ResultSet rs) throws SQLException {
+			return rs.getString("tag");
+		}
+
+		@Override
+		protected void addChild(Presentation presentation, ResultSet rs) throws SQLException {
+			presentation.tags.add(rs.getString("tag"));
+		}
+	};
+
+	private final GroupingJoinRowMapper<Presentation, Integer> presentationMapper = new GroupingJoinRowMapper<Presentation, Integer>(
+			Arrays.<GroupingJoinRowMapper.ChildMapper<Presentation, ?>>asList(speakerMapper, tagMapper)) {
+		@Override
+		protected Integer mapId(ResultSet rs) throws SQLException {
+			return rs.getInt("id");
+		}
+
+		@Override
+		protected Presentation mapRoot(Integer id, ResultSet rs) throws SQLException {
+			return new Presentation(id, rs.getString("title"));
+		}
+	};
+
+	private static class Presentation {
+
+		private final int id;
+
+		private final String title;
+
+		private final List<String> speakers = new ArrayList<String>();
+
+		private final List<String> tags = new ArrayList<String>();
+
+		public Presentation(int id, String title) {
+			this.id = id;
+			this.title = title;
+		}
+
+	}
+
+}
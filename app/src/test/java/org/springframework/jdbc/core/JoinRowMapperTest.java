@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.jdbc.core;
+
+import static org.junit.Assert.*;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+public class JoinRowMapperTest {
+
+	private EmbeddedDatabase db;
+	private JdbcTemplate jdbcTemplate;
+
+	private static final String SELECT_PRESENTATIONS = "select p.id, p.title, s.name from Presentation p "
+			+ "inner join Speaker s on p.id = s.presentation order by p.id, s.name";
+
+	@Before
+	public void setup() {
+		db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+		jdbcTemplate = new JdbcTemplate(db);
+		jdbcTemplate.execute("create table Presentation (id int primary key, title varchar)");
+		jdbcTemplate.execute("create table Speaker (presentation int, name varchar)");
+		for (int i = 1; i <= 5; i++) {
+			jdbcTemplate.update("insert into Presentation (id, title) values (?, ?)", i, "Presentation " + i);
+			jdbcTemplate.update("insert into Speaker (presentation, name) values (?, ?)", i, "Speaker A" + i);
+			jdbcTemplate.update("insert into Speaker (presentation, name) values (?, ?)", i, "Speaker B" + i);
+		}
+	}
+
+	@After
+	public void destroy() {
+		if (db != null) {
+			db.shutdown();
+		}
+	}
+
+	@Test
+	public void testStream_ShouldEmitCompleteRoots_InResultSetOrder() {
+		// Given
+		List<Presentation> presentations = new ArrayList<Presentation>();
+
+		// When
+		Integer count = jdbcTemplate.query(SELECT_PRESENTATIONS, presentationMapper.stream(collectInto(presentations)));
+
+		// Then
+		assertEquals("Should emit every root", Integer.valueOf(5), count);
+		assertEquals("Streamed roots should match the list mapper",
+				jdbcTemplate.query(SELECT_PRESENTATIONS, presentationMapper.list()).toString(), presentations.toString());
+		assertEquals("Each root should have all of its children", 2, presentations.get(4).speakers.size());
+	}
+
+	@Test
+	public void testStream_ShouldSkipAndLimitRoots_WhenOffsetAndLimitProvided() {
+		// Given
+		List<Presentation> presentations = new ArrayList<Presentation>();
+
+		// When
+		Integer count = jdbcTemplate.query(SELECT_PRESENTATIONS, presentationMapper.stream(collectInto(presentations), 1, 2));
+
+		// Then
+		assertEquals("Should emit limit roots", Integer.valueOf(2), count);
+		assertEquals("Should start after offset roots", 2, presentations.get(0).id);
+		assertEquals("Should stop after limit roots", 3, presentations.get(1).id);
+		assertEquals("Last root should have all of its children", 2, presentations.get(1).speakers.size());
+	}
+
+	@Test
+	public void testStream_ShouldApplyFetchSize_WhenUsingFetchSizeStatement() {
+		// Given
+		List<Presentation> presentations = new ArrayList<Presentation>();
+
+		// When
+		Integer count = jdbcTemplate.query(
+				JoinRowMapper.fetchSize(SELECT_PRESENTATIONS.replace("order by", "where p.id > ? order by"), 2, 3),
+				presentationMapper.stream(collectInto(presentations)));
+
+		// Then
+		assertEquals("Should bind the statement arguments", Integer.valueOf(2), count);
+		assertEquals("Should emit the matching roots", 4, presentations.get(0).id);
+	}
+
+	// ==================== Helper Methods ====================
+
+	private JoinRowMapper.RootCallbackHandler<Presentation> collectInto(final List<Presentation> presentations) {
+		return new JoinRowMapper.RootCallbackHandler<Presentation>() {
+			public void processRoot(Presentation presentation) {
+				presentations.add(presentation);
+			}
+		};
+	}
+
+	private final JoinRowMapper<Presentation, Integer> presentationMapper = new JoinRowMapper<Presentation, Integer>() {
+		@Override
+		protected Integer mapId(ResultSet rs) throws SQLException {
+			return rs.getInt("id");
+		}
+
+		@Override
+		protected Presentation mapRoot(Integer id, ResultSet rs) throws SQLException {
+			return new Presentation(id, rs.getString("title"));
+		}
+
+		@Override
+		protected void addChild(Presentation presentation, ResultSet rs) throws SQLException {
+			presentation.speakers.add(rs.getString("name"));
+		}
+	};
+
+	private static class Presentation {
+
+		private final int id;
+
+		private final String title;
+
+		private final List<String> speakers = new ArrayList<String>();
+
+		public Presentation(int id, String title) {
+			this.id = id;
+			this.title = title;
+		}
+
+		public String toString() {
+			return id + ":" + title + speakers;
+		}
+
+	}
+
+}